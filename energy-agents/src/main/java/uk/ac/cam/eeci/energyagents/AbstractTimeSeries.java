@@ -0,0 +1,50 @@
+package uk.ac.cam.eeci.energyagents;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The time index shared by all time series, independent of the type of their values.
+ */
+public abstract class AbstractTimeSeries {
+
+    protected final TimeIndex index;
+
+    protected AbstractTimeSeries(TimeIndex index) {
+        this.index = index;
+    }
+
+    /**
+     *
+     * @return the time index of the time series
+     */
+    public List<ZonedDateTime> getIndex() {
+        return this.index.asList();
+    }
+
+    /**
+     *
+     * @return the time index of the time series, see {@link TimeIndex}
+     */
+    public TimeIndex getTimeIndex() {
+        return this.index;
+    }
+
+    /**
+     *
+     * @return the constant time step size if time step size is constant
+     */
+    public Optional<Duration> getConstantTimeStepSize() {
+        return this.index.getConstantTimeStepSize();
+    }
+
+    /**
+     *
+     * @return the length of the time series
+     */
+    public int size() {
+        return this.index.size();
+    }
+}
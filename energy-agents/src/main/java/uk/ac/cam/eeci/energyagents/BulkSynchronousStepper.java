@@ -0,0 +1,686 @@
+package uk.ac.cam.eeci.energyagents;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntFunction;
+
+/**
+ * Steps people and dwellings in bulk, without sending a message to each of them.
+ * <br><br>
+ * Dwellings are partitioned into contiguous chunks of similar size, one per worker, and each
+ * chunk takes along the people living in its dwellings. All people are stepped first, one chunk
+ * per thread in a plain loop, followed by a barrier; then all dwellings are stepped the same way.
+ * As people only ever talk to their own home and dwellings only to their occupants, no two
+ * threads access the same agent during a phase. Dwellings sharing a {@link DwellingBlock} are
+ * ordered by their slot, so that each chunk can advance its dwellings' thermal state in as few
+ * calls to the block as possible.
+ * <br><br>
+ * As chunks are independent of each other, each chunk can alternatively be run over a window of
+ * many steps at once, without any barrier in between steps. The observable state of the agents
+ * -- air temperatures, thermal powers, and activities -- is recorded after each step of the
+ * window and can be restored afterwards, one step after another, for logging. Memory hence
+ * grows with the size of the window, not with the length of the simulation.
+ * <br><br>
+ * As the activities of people depend neither on their home nor on each other, the trajectories
+ * of all people of a chunk can also be generated ahead of time for a window of steps and be
+ * reduced to the occupancy of each dwelling: the number of people at home, the number of people
+ * asleep, and their metabolic heat gain. The reduction applies the changes of occupants one by one
+ * in the order of the occupants, exactly like occupants push them to their home when stepped, so
+ * that the metabolic heat gain is rounded the same way. Dwellings are then stepped from these
+ * series, without asking their occupants for anything. The heating set points of consecutive dwellings sharing a
+ * heating control strategy are determined in a single call to the strategy.
+ * <br><br>
+ * Trajectories are generated either step by step, or -- once the holding times of activities
+ * have been prepared for the horizon -- from one change of activity to the next, see
+ * {@link HoldingTimes}. The latter leaves the distribution of trajectories unchanged, but uses
+ * the random numbers of people differently. It keeps only the changes of activity of a window,
+ * ordered by step, and applies them to the activities of people and the occupancy of their homes
+ * when their step is stepped, so that steps in which few people change their activity are cheap.
+ * <br><br>
+ * Agents must be served by the {@link uk.ac.cam.eeci.framework.WorkerPool.Backend#DIRECT}
+ * backend, so that the messages they send to each other are plain method calls. The results
+ * are then the same as the ones of the actor engine.
+ */
+class BulkSynchronousStepper {
+
+    private static class Chunk {
+        private final List<Dwelling> dwellings = new ArrayList<>();
+        private final List<Person> people = new ArrayList<>();
+        private final List<Integer> numberResidents = new ArrayList<>(); // residents are ordered like dwellings
+        private final List<Dwelling> dwellingsWithoutBlock = new ArrayList<>();
+        private final List<DwellingBlock> blocks = new ArrayList<>();
+        private final List<int[]> slotRanges = new ArrayList<>();
+        private int numberSlots; // summed over all slot ranges
+        private final List<SynchronousHeatingControlStrategy> strategies = new ArrayList<>();
+        private final List<int[]> strategyRanges = new ArrayList<>();
+        // observable state after each step of a window, step-major; dwellings in the order of their slot ranges
+        private int recordingStart;
+        private double[] recordedAirTemperatures;
+        private double[] recordedThermalPowers;
+        private byte[] recordedActivities;
+        // activity trajectories of people and occupancy of dwellings in a window of steps, step-major
+        private int trajectoryStart;
+        private byte[] trajectories;
+        private int[] numberPeopleAtHome;
+        private int[] numberPeopleAsleep;
+        private double[] metabolicHeatGains;
+        private double[] heatingSetPoints;
+        private int[] departures; // the step in which each person next changes its activity; -1 if not sampled
+        // changes of activity in a window of steps, ordered by step and then by person; the ones of
+        // each step start at the offset of the step
+        private int[] departureOffsets;
+        private int[] departingPeople;
+        private byte[] departureActivities;
+        private int numberDepartures;
+        private int[] homeOfPerson; // index of each person's dwelling in this chunk; -1 if none
+        // location of each person and occupancy of each dwelling after the last generated step; after
+        // the last stepped step if generated from departures
+        private boolean[] personAtHome;
+        private boolean[] personAsleep;
+        private double[] personMetabolicHeatGain;
+        private int[] dwellingPeopleAtHome;
+        private int[] dwellingPeopleAsleep;
+        private double[] dwellingMetabolicHeatGain;
+
+        /**
+         * Finds the ranges of consecutive slots in the blocks of the dwellings.
+         */
+        private void findSlotRanges() {
+            for (Dwelling dwelling : this.dwellings) {
+                DwellingBlock block = dwelling.getBlock();
+                if (block == null) {
+                    this.dwellingsWithoutBlock.add(dwelling);
+                    continue;
+                }
+                int slot = dwelling.getSlot();
+                this.numberSlots += 1;
+                int last = this.blocks.size() - 1;
+                if (last >= 0 && this.blocks.get(last) == block && this.slotRanges.get(last)[1] == slot) {
+                    this.slotRanges.get(last)[1] = slot + 1;
+                } else {
+                    this.blocks.add(block);
+                    this.slotRanges.add(new int[]{slot, slot + 1});
+                }
+            }
+        }
+
+        /**
+         * Finds the ranges of consecutive dwellings sharing a heating control strategy. Dwellings
+         * without a block are stepped on their own and are left out.
+         */
+        private void findStrategyRanges() {
+            HeatingControlStrategy previous = null;
+            for (int i = 0; i < this.dwellings.size(); i++) {
+                Dwelling dwelling = this.dwellings.get(i);
+                HeatingControlStrategy strategy = dwelling.getHeatingControlStrategy();
+                if (dwelling.getBlock() == null) {
+                    previous = null;
+                    continue;
+                }
+                if (strategy == null) {
+                    String msg = "Dwellings stepped from trajectories must have a heating control strategy.";
+                    throw new IllegalStateException(msg);
+                }
+                int last = this.strategies.size() - 1;
+                if (strategy == previous) {
+                    this.strategyRanges.get(last)[1] = i + 1;
+                } else {
+                    this.strategies.add(SynchronousHeatingControlStrategy.of(strategy));
+                    this.strategyRanges.add(new int[]{i, i + 1});
+                }
+                previous = strategy;
+            }
+        }
+
+        private void stepPeople(StepContext context) {
+            for (Person person : this.people) {
+                person.step(context);
+            }
+        }
+
+        /**
+         * @param prepareStep gathers the inputs of the dwelling with the given index, if it has a block,
+         *                    for its next step
+         */
+        private void stepDwellings(StepContext context, IntFunction<CompletableFuture<Void>> prepareStep)
+                throws InterruptedException, ExecutionException {
+            for (Dwelling dwelling : this.dwellingsWithoutBlock) {
+                dwelling.step(context).get();
+            }
+            for (int i = 0; i < this.dwellings.size(); i++) {
+                if (this.dwellings.get(i).getBlock() != null) {
+                    prepareStep.apply(i).get();
+                }
+            }
+            for (int i = 0; i < this.blocks.size(); i++) {
+                int[] slotRange = this.slotRanges.get(i);
+                this.blocks.get(i).step(slotRange[0], slotRange[1]);
+            }
+        }
+
+        private void runWindow(StepContext[] contexts, double[] externalTemperatures)
+                throws InterruptedException, ExecutionException {
+            int numberSteps = contexts.length;
+            this.recordingStart = numberSteps > 0 ? contexts[0].getStepIndex() : 0;
+            int numberDwellingValues = arrayLength(numberSteps, this.numberSlots);
+            int numberPeopleValues = arrayLength(numberSteps, this.people.size());
+            if (this.recordedAirTemperatures == null || this.recordedAirTemperatures.length < numberDwellingValues
+                    || this.recordedActivities.length < numberPeopleValues) {
+                this.recordedAirTemperatures = new double[numberDwellingValues];
+                this.recordedThermalPowers = new double[numberDwellingValues];
+                this.recordedActivities = new byte[numberPeopleValues];
+            }
+            for (int step = 0; step < numberSteps; step++) {
+                CompletableFuture<Double> temperature = CompletableFuture.completedFuture(externalTemperatures[step]);
+                StepContext context = contexts[step];
+                this.stepPeople(context);
+                this.stepDwellings(context, i -> this.dwellings.get(i).prepareStep(context, temperature));
+                int offset = step * this.numberSlots;
+                for (int i = 0; i < this.blocks.size(); i++) {
+                    DwellingBlock block = this.blocks.get(i);
+                    int[] slotRange = this.slotRanges.get(i);
+                    for (int slot = slotRange[0]; slot < slotRange[1]; slot++, offset++) {
+                        this.recordedAirTemperatures[offset] = block.getAirTemperature(slot);
+                        this.recordedThermalPowers[offset] = block.getThermalPower(slot);
+                    }
+                }
+                offset = step * this.people.size();
+                for (int i = 0; i < this.people.size(); i++) {
+                    this.recordedActivities[offset + i] = (byte) this.people.get(i).getCurrentActivity().ordinal();
+                }
+            }
+        }
+
+        /**
+         * Generates the activity trajectories of all people for the given steps and reduces them to
+         * the occupancy of each dwelling.
+         *
+         * @param holdingTimes the holding times of each markov chain; null to generate step by step
+         */
+        private void generateTrajectories(StepContext[] contexts,
+                                          Map<HeterogeneousMarkovChain<Person.Activity>,
+                                                  HoldingTimes<Person.Activity>> holdingTimes) {
+            this.trajectoryStart = contexts.length > 0 ? contexts[0].getStepIndex() : 0;
+            if (this.personAtHome == null) {
+                this.initialiseOccupancy();
+            }
+            if (holdingTimes == null) {
+                this.generateTrajectoriesStepByStep(contexts);
+            } else {
+                this.generateDepartures(contexts.length, holdingTimes);
+            }
+        }
+
+        /**
+         * Fills the trajectories of all people step by step, and the occupancy of each dwelling in
+         * each step.
+         */
+        private void generateTrajectoriesStepByStep(StepContext[] contexts) {
+            int numberSteps = contexts.length;
+            int numberPeople = this.people.size();
+            int numberDwellings = this.dwellings.size();
+            int numberPeopleValues = arrayLength(numberSteps, numberPeople);
+            int numberDwellingValues = arrayLength(numberSteps, numberDwellings);
+            if (this.trajectories == null || this.trajectories.length < numberPeopleValues
+                    || this.numberPeopleAtHome.length < numberDwellingValues) {
+                this.trajectories = new byte[numberPeopleValues];
+                this.numberPeopleAtHome = new int[numberDwellingValues];
+                this.numberPeopleAsleep = new int[numberDwellingValues];
+                this.metabolicHeatGains = new double[numberDwellingValues];
+                this.heatingSetPoints = new double[numberDwellingValues];
+            }
+            for (int p = 0; p < numberPeople; p++) {
+                Person person = this.people.get(p);
+                for (int step = 0; step < numberSteps; step++) {
+                    this.trajectories[step * numberPeople + p] = (byte) person.advance(contexts[step]).ordinal();
+                }
+            }
+            for (int step = 0; step < numberSteps; step++) {
+                int p = 0;
+                for (int i = 0; i < numberDwellings; i++) {
+                    for (int end = p + this.numberResidents.get(i); p < end; p++) {
+                        this.moveResident(i, p, this.trajectories[step * numberPeople + p]);
+                    }
+                    this.numberPeopleAtHome[step * numberDwellings + i] = this.dwellingPeopleAtHome[i];
+                    this.numberPeopleAsleep[step * numberDwellings + i] = this.dwellingPeopleAsleep[i];
+                    this.metabolicHeatGains[step * numberDwellings + i] = this.dwellingMetabolicHeatGain[i];
+                }
+            }
+        }
+
+        /**
+         * Takes over the occupancy that people pushed to their homes so far.
+         */
+        private void initialiseOccupancy() {
+            int numberPeople = this.people.size();
+            int numberDwellings = this.dwellings.size();
+            this.personAtHome = new boolean[numberPeople];
+            this.personAsleep = new boolean[numberPeople];
+            this.personMetabolicHeatGain = new double[numberPeople];
+            for (int p = 0; p < numberPeople; p++) {
+                Person person = this.people.get(p);
+                Person.Activity activity = person.getCurrentActivity();
+                this.personAtHome[p] = AT_OWN_HOME[activity.ordinal()];
+                this.personAsleep[p] = this.personAtHome[p] && ASLEEP[activity.ordinal()];
+                this.personMetabolicHeatGain[p] = this.personAtHome[p] ? person.getMetabolicRate(activity) : 0.0;
+            }
+            this.dwellingPeopleAtHome = new int[numberDwellings];
+            this.dwellingPeopleAsleep = new int[numberDwellings];
+            this.dwellingMetabolicHeatGain = new double[numberDwellings];
+            this.homeOfPerson = new int[numberPeople];
+            Arrays.fill(this.homeOfPerson, -1);
+            int p = 0;
+            for (int i = 0; i < numberDwellings; i++) {
+                Dwelling dwelling = this.dwellings.get(i);
+                this.dwellingPeopleAtHome[i] = dwelling.getNumberPeopleAtHome();
+                this.dwellingPeopleAsleep[i] = dwelling.getNumberPeopleAsleep();
+                this.dwellingMetabolicHeatGain[i] = dwelling.getMetabolicHeatGain();
+                for (int end = p + this.numberResidents.get(i); p < end; p++) {
+                    this.homeOfPerson[p] = i;
+                }
+            }
+        }
+
+        /**
+         * Applies a change of activity of a resident to the occupancy of its dwelling, with the
+         * same arithmetic as {@link Person#step(StepContext)} and
+         * {@link Dwelling#updateOccupancy(int, int, double)}.
+         */
+        private void moveResident(int dwelling, int person, int activity) {
+            boolean atHome = AT_OWN_HOME[activity];
+            boolean asleep = atHome && ASLEEP[activity];
+            if (atHome == this.personAtHome[person] && asleep == this.personAsleep[person]) {
+                return;
+            }
+            double metabolicHeatGain = atHome ? this.people.get(person).getMetabolicRate(ACTIVITIES[activity]) : 0.0;
+            this.dwellingPeopleAtHome[dwelling] += (atHome ? 1 : 0) - (this.personAtHome[person] ? 1 : 0);
+            this.dwellingPeopleAsleep[dwelling] += (asleep ? 1 : 0) - (this.personAsleep[person] ? 1 : 0);
+            if (this.dwellingPeopleAtHome[dwelling] == 0) {
+                this.dwellingMetabolicHeatGain[dwelling] = 0.0;
+            } else {
+                this.dwellingMetabolicHeatGain[dwelling] += metabolicHeatGain - this.personMetabolicHeatGain[person];
+            }
+            this.personAtHome[person] = atHome;
+            this.personAsleep[person] = asleep;
+            this.personMetabolicHeatGain[person] = metabolicHeatGain;
+        }
+
+        /**
+         * Collects the changes of activity of all people in the given steps, activity by activity:
+         * a random number is drawn only when a person changes its activity, not in every step.
+         * Afterwards, people are back at the activity they had before the window, and change it
+         * only once the step of the change is stepped.
+         */
+        private void generateDepartures(
+                int numberSteps,
+                Map<HeterogeneousMarkovChain<Person.Activity>, HoldingTimes<Person.Activity>> holdingTimes) {
+            int numberPeople = this.people.size();
+            if (this.departures == null) {
+                this.departures = new int[numberPeople];
+                Arrays.fill(this.departures, -1);
+                this.departingPeople = new int[numberPeople];
+                this.departureActivities = new byte[numberPeople];
+                this.heatingSetPoints = new double[this.dwellings.size()];
+            }
+            int[] departureSteps = new int[this.departingPeople.length];
+            this.numberDepartures = 0;
+            int end = this.trajectoryStart + numberSteps;
+            for (int p = 0; p < numberPeople; p++) {
+                Person person = this.people.get(p);
+                HoldingTimes<Person.Activity> personHoldingTimes = holdingTimes.get(person.getMarkovChain());
+                Person.Activity activityBeforeWindow = person.getCurrentActivity();
+                int step = this.trajectoryStart;
+                while (step < end) {
+                    if (this.departures[p] < step) {
+                        this.departures[p] = person.sampleDeparture(personHoldingTimes, step);
+                    }
+                    step = Math.min(this.departures[p], end);
+                    if (step < end) {
+                        if (this.numberDepartures == departureSteps.length) {
+                            int capacity = 2 * departureSteps.length + 1;
+                            departureSteps = Arrays.copyOf(departureSteps, capacity);
+                            this.departingPeople = Arrays.copyOf(this.departingPeople, capacity);
+                            this.departureActivities = Arrays.copyOf(this.departureActivities, capacity);
+                        }
+                        departureSteps[this.numberDepartures] = step - this.trajectoryStart;
+                        this.departingPeople[this.numberDepartures] = p;
+                        this.departureActivities[this.numberDepartures] =
+                                (byte) person.depart(personHoldingTimes, step).ordinal();
+                        this.numberDepartures++;
+                        step++;
+                    }
+                }
+                person.restoreActivity(activityBeforeWindow);
+            }
+            this.sortDeparturesByStep(numberSteps, departureSteps);
+        }
+
+        /**
+         * Orders the departures collected person by person by their step, keeping the order of
+         * people within each step.
+         */
+        private void sortDeparturesByStep(int numberSteps, int[] departureSteps) {
+            this.departureOffsets = new int[numberSteps + 1];
+            for (int d = 0; d < this.numberDepartures; d++) {
+                this.departureOffsets[departureSteps[d] + 1]++;
+            }
+            for (int step = 0; step < numberSteps; step++) {
+                this.departureOffsets[step + 1] += this.departureOffsets[step];
+            }
+            int[] next = Arrays.copyOf(this.departureOffsets, numberSteps);
+            int[] people = new int[this.departingPeople.length];
+            byte[] activities = new byte[this.departureActivities.length];
+            for (int d = 0; d < this.numberDepartures; d++) {
+                int position = next[departureSteps[d]]++;
+                people[position] = this.departingPeople[d];
+                activities[position] = this.departureActivities[d];
+            }
+            this.departingPeople = people;
+            this.departureActivities = activities;
+        }
+
+        /**
+         * Steps all dwellings from the occupancy generated for the given step, and sets the
+         * activities of people to the ones of their trajectories.
+         */
+        private void stepDwellingsFromTrajectories(StepContext context)
+                throws InterruptedException, ExecutionException {
+            if (this.departureOffsets != null) {
+                this.stepDwellingsFromDepartures(context);
+                return;
+            }
+            int step = context.getStepIndex() - this.trajectoryStart;
+            int offset = step * this.dwellings.size();
+            for (int i = 0; i < this.strategies.size(); i++) {
+                int[] range = this.strategyRanges.get(i);
+                this.strategies.get(i).currentHeatingSetPoints(context, this.numberPeopleAtHome,
+                        this.numberPeopleAsleep, offset + range[0], offset + range[1], this.heatingSetPoints);
+            }
+            this.stepDwellings(context, i -> this.dwellings.get(i).prepareStep(context,
+                    this.metabolicHeatGains[offset + i], this.heatingSetPoints[offset + i]));
+            int numberPeople = this.people.size();
+            for (int p = 0; p < numberPeople; p++) {
+                this.people.get(p).restoreActivity(ACTIVITIES[this.trajectories[step * numberPeople + p]]);
+            }
+        }
+
+        /**
+         * Applies the departures of the given step to the activities of the departing people and
+         * to the occupancy of their homes, and steps all dwellings from that occupancy.
+         */
+        private void stepDwellingsFromDepartures(StepContext context)
+                throws InterruptedException, ExecutionException {
+            int step = context.getStepIndex() - this.trajectoryStart;
+            for (int d = this.departureOffsets[step]; d < this.departureOffsets[step + 1]; d++) {
+                int p = this.departingPeople[d];
+                int activity = this.departureActivities[d];
+                if (this.homeOfPerson[p] >= 0) {
+                    this.moveResident(this.homeOfPerson[p], p, activity);
+                }
+                this.people.get(p).restoreActivity(ACTIVITIES[activity]);
+            }
+            for (int i = 0; i < this.strategies.size(); i++) {
+                int[] range = this.strategyRanges.get(i);
+                this.strategies.get(i).currentHeatingSetPoints(context, this.dwellingPeopleAtHome,
+                        this.dwellingPeopleAsleep, range[0], range[1], this.heatingSetPoints);
+            }
+            this.stepDwellings(context, i -> this.dwellings.get(i).prepareStep(context,
+                    this.dwellingMetabolicHeatGain[i], this.heatingSetPoints[i]));
+        }
+
+        private void restore(int stepIndex) {
+            int step = stepIndex - this.recordingStart;
+            int offset = step * this.numberSlots;
+            for (int i = 0; i < this.blocks.size(); i++) {
+                DwellingBlock block = this.blocks.get(i);
+                int[] slotRange = this.slotRanges.get(i);
+                for (int slot = slotRange[0]; slot < slotRange[1]; slot++, offset++) {
+                    block.restoreOutputs(slot, this.recordedAirTemperatures[offset], this.recordedThermalPowers[offset]);
+                }
+            }
+            offset = step * this.people.size();
+            for (int i = 0; i < this.people.size(); i++) {
+                this.people.get(i).restoreActivity(ACTIVITIES[this.recordedActivities[offset + i]]);
+            }
+        }
+    }
+
+    private final static Person.Activity[] ACTIVITIES = Person.Activity.values();
+    private final static boolean[] AT_OWN_HOME = new boolean[ACTIVITIES.length];
+    private final static boolean[] ASLEEP = new boolean[ACTIVITIES.length];
+
+    static {
+        for (Person.Activity activity : ACTIVITIES) {
+            AT_OWN_HOME[activity.ordinal()] = Person.isAtOwnHome(activity);
+            ASLEEP[activity.ordinal()] = Person.SLEEP_ACTIVITIES.contains(activity);
+        }
+    }
+
+    private final List<Chunk> chunks;
+    private final List<Person> peopleWithoutHome;
+    private final Chunk peopleWithoutHomeChunk;
+    private final ExecutorService threads;
+    private Map<HeterogeneousMarkovChain<Person.Activity>, HoldingTimes<Person.Activity>> holdingTimes = null;
+
+    /**
+     * @param dwellings all dwellings to be stepped
+     * @param people all people to be stepped
+     * @param numberChunks the number of chunks and threads to use
+     */
+    BulkSynchronousStepper(Collection<DwellingReference> dwellings, Collection<PersonReference> people,
+                           int numberChunks) {
+        if (numberChunks < 1) {
+            String msg = String.format("Number of chunks must be positive, but is %d.", numberChunks);
+            throw new IllegalArgumentException(msg);
+        }
+        Map<Dwelling, List<Person>> residents = new IdentityHashMap<>();
+        for (DwellingReference dwelling : dwellings) {
+            residents.put(dwelling.referent, new ArrayList<>());
+        }
+        this.peopleWithoutHome = new ArrayList<>();
+        for (PersonReference personReference : people) {
+            Person person = personReference.referent;
+            DwellingReference home = person.getHome();
+            if (home != null && residents.containsKey(home.referent)) {
+                residents.get(home.referent).add(person);
+            } else {
+                this.peopleWithoutHome.add(person);
+            }
+        }
+        List<DwellingReference> orderedDwellings = new ArrayList<>(dwellings);
+        orderedDwellings.sort(Comparator.comparingInt(dwelling ->
+                dwelling.referent.getBlock() == null ? -1 : dwelling.referent.getSlot()));
+        this.chunks = partition(orderedDwellings, residents, numberChunks);
+        this.chunks.forEach(Chunk::findSlotRanges);
+        this.chunks.forEach(Chunk::findStrategyRanges);
+        this.peopleWithoutHomeChunk = new Chunk();
+        this.peopleWithoutHomeChunk.people.addAll(this.peopleWithoutHome);
+        this.threads = Executors.newFixedThreadPool(numberChunks, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-synchronous-stepper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static List<Chunk> partition(Collection<DwellingReference> dwellings,
+                                         Map<Dwelling, List<Person>> residents, int numberChunks) {
+        double totalSize = dwellings.size() + residents.values().stream().mapToInt(List::size).sum();
+        double chunkSize = totalSize / numberChunks;
+        List<Chunk> chunks = new ArrayList<>();
+        Chunk chunk = new Chunk();
+        int sizeSoFar = 0;
+        for (DwellingReference dwellingReference : dwellings) {
+            Dwelling dwelling = dwellingReference.referent;
+            chunk.dwellings.add(dwelling);
+            chunk.people.addAll(residents.get(dwelling));
+            chunk.numberResidents.add(residents.get(dwelling).size());
+            sizeSoFar += 1 + residents.get(dwelling).size();
+            if (sizeSoFar >= chunkSize * (chunks.size() + 1) && chunks.size() < numberChunks - 1) {
+                chunks.add(chunk);
+                chunk = new Chunk();
+            }
+        }
+        if (!chunk.dwellings.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Steps all people and returns once all are done.
+     */
+    void stepPeople(StepContext context) throws InterruptedException, ExecutionException {
+        List<Callable<Void>> steps = new ArrayList<>();
+        for (Chunk chunk : this.chunks) {
+            steps.add(() -> {
+                chunk.stepPeople(context);
+                return null;
+            });
+        }
+        awaitAll(this.threads.invokeAll(steps));
+        for (Person person : this.peopleWithoutHome) {
+            person.step(context);
+        }
+    }
+
+    /**
+     * Steps all dwellings and returns once all are done.
+     */
+    void stepDwellings(StepContext context) throws InterruptedException, ExecutionException {
+        List<Callable<Void>> steps = new ArrayList<>();
+        for (Chunk chunk : this.chunks) {
+            steps.add(() -> {
+                chunk.stepDwellings(context, i -> chunk.dwellings.get(i).prepareStep(context));
+                return null;
+            });
+        }
+        awaitAll(this.threads.invokeAll(steps));
+    }
+
+    /**
+     * Generates the activity trajectories of all people for the given steps, one chunk per task,
+     * and returns once all are done. The trajectories replace the ones generated before.
+     *
+     * @param contexts the context of each step to generate, consecutive
+     */
+    void generateTrajectories(StepContext[] contexts) throws InterruptedException, ExecutionException {
+        List<Callable<Void>> generations = new ArrayList<>();
+        for (Chunk chunk : this.chunksAndPeopleWithoutHome()) {
+            generations.add(() -> {
+                chunk.generateTrajectories(contexts, this.holdingTimes);
+                return null;
+            });
+        }
+        awaitAll(this.threads.invokeAll(generations));
+    }
+
+    /**
+     * Prepares the holding times of the activities of all people for the given horizon, one
+     * markov chain per task, and returns once all are done. Trajectories are generated from one
+     * change of activity to the next afterwards.
+     *
+     * @param horizon the context of each step of the horizon, consecutive
+     */
+    void prepareHoldingTimes(StepContext[] horizon) throws InterruptedException, ExecutionException {
+        Map<HeterogeneousMarkovChain<Person.Activity>, Future<HoldingTimes<Person.Activity>>> holdingTimes =
+                new IdentityHashMap<>();
+        for (Chunk chunk : this.chunksAndPeopleWithoutHome()) {
+            for (Person person : chunk.people) {
+                holdingTimes.computeIfAbsent(person.getMarkovChain(), markovChain -> this.threads.submit(
+                        () -> new HoldingTimes<>(markovChain, ACTIVITIES, horizon)));
+            }
+        }
+        Map<HeterogeneousMarkovChain<Person.Activity>, HoldingTimes<Person.Activity>> prepared =
+                new IdentityHashMap<>();
+        for (Map.Entry<HeterogeneousMarkovChain<Person.Activity>, Future<HoldingTimes<Person.Activity>>> entry
+                : holdingTimes.entrySet()) {
+            prepared.put(entry.getKey(), entry.getValue().get());
+        }
+        this.holdingTimes = prepared;
+    }
+
+    /**
+     * Steps all dwellings from the occupancy generated for the given step and returns once all
+     * are done. Afterwards, the activities of all people are the ones of their trajectories.
+     */
+    void stepDwellingsFromTrajectories(StepContext context) throws InterruptedException, ExecutionException {
+        List<Callable<Void>> steps = new ArrayList<>();
+        for (Chunk chunk : this.chunksAndPeopleWithoutHome()) {
+            steps.add(() -> {
+                chunk.stepDwellingsFromTrajectories(context);
+                return null;
+            });
+        }
+        awaitAll(this.threads.invokeAll(steps));
+    }
+
+    /**
+     * Runs each chunk over a window of steps as an independent task, without any barrier in
+     * between steps, and returns once all are done. People without a home in any chunk are run
+     * as a task of their own. The recorded states replace the ones of the window before.
+     *
+     * @param contexts the context of each step of the window, consecutive
+     * @param externalTemperatures the external temperature of each step of the window
+     */
+    void runWindow(StepContext[] contexts, double[] externalTemperatures)
+            throws InterruptedException, ExecutionException {
+        List<Callable<Void>> windows = new ArrayList<>();
+        for (Chunk chunk : this.chunksAndPeopleWithoutHome()) {
+            windows.add(() -> {
+                chunk.runWindow(contexts, externalTemperatures);
+                return null;
+            });
+        }
+        awaitAll(this.threads.invokeAll(windows));
+    }
+
+    /**
+     * Restores the observable state of all agents as recorded after the given step of the last window.
+     *
+     * @param stepIndex the index of the step, within the last window
+     */
+    void restore(int stepIndex) {
+        for (Chunk chunk : this.chunksAndPeopleWithoutHome()) {
+            chunk.restore(stepIndex);
+        }
+    }
+
+    private List<Chunk> chunksAndPeopleWithoutHome() {
+        List<Chunk> chunks = new ArrayList<>(this.chunks);
+        chunks.add(this.peopleWithoutHomeChunk);
+        return chunks;
+    }
+
+    /**
+     * @return the number of agents in each chunk
+     */
+    int[] getChunkSizes() {
+        return this.chunks.stream()
+                .mapToInt(chunk -> chunk.dwellings.size() + chunk.people.size())
+                .toArray();
+    }
+
+    void shutdown() {
+        this.threads.shutdown();
+    }
+
+    /**
+     * @return the length of an array holding a value of each agent in each step
+     * @throws IllegalArgumentException if an array can not be that long
+     */
+    private static int arrayLength(int numberSteps, int numberAgents) {
+        long length = Math.multiplyExact((long) numberSteps, (long) numberAgents);
+        if (length > Integer.MAX_VALUE - 8) { // the largest array length safe on all JVMs
+            String msg = String.format("Can not hold values of %d agents in each of %d steps; use fewer steps at once.",
+                    numberAgents, numberSteps);
+            throw new IllegalArgumentException(msg);
+        }
+        return (int) length;
+    }
+
+    private static void awaitAll(List<Future<Void>> futures) throws InterruptedException, ExecutionException {
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+    }
+}
@@ -2,6 +2,8 @@ package uk.ac.cam.eeci.energyagents;
 
 import uk.ac.cam.eeci.framework.EndSimulationException;
 import uk.ac.cam.eeci.framework.ISimulation;
+import uk.ac.cam.eeci.framework.Reference;
+import uk.ac.cam.eeci.framework.WorkerPool;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -22,6 +24,41 @@ import java.util.concurrent.ExecutionException;
  */
 public class CitySimulation implements ISimulation {
 
+    /**
+     * The way people and dwellings are stepped.
+     */
+    public enum Engine {
+        /** Each agent is sent a step message and all answers are awaited. */
+        ACTOR,
+        /**
+         * Agents are stepped in contiguous chunks, one per worker, with a barrier after people
+         * and after dwellings. Requires the {@link WorkerPool.Backend#DIRECT} backend.
+         */
+        BULK_SYNCHRONOUS,
+        /**
+         * Each chunk of the bulk synchronous engine runs over a window of many steps as an
+         * independent task, without any barrier in between steps. Afterwards, the recorded states
+         * of all agents are logged step by step, before the next window is run. Requires the
+         * {@link WorkerPool.Backend#DIRECT} backend.
+         */
+        HORIZON_MAJOR,
+        /**
+         * The activity trajectories of all people are generated ahead of time for a window of steps,
+         * one chunk of the bulk synchronous engine per worker, and reduced to the occupancy of each
+         * dwelling. Dwellings are then stepped from their occupancy without talking to their
+         * occupants. Requires the {@link WorkerPool.Backend#DIRECT} backend.
+         */
+        PIPELINED,
+        /**
+         * Like the pipelined engine, but the activity trajectories of people are generated from
+         * one change of activity to the next, sampling the time of each change from the holding
+         * times of activities prepared for the whole horizon. Trajectories follow the same
+         * distribution as the ones of all other engines, but are not identical to them. Requires the
+         * {@link WorkerPool.Backend#DIRECT} backend.
+         */
+        EVENT_DRIVEN
+    }
+
     private final static Logger logger = LogManager.getLogger(CitySimulation.class.getName());
 
     public final static String METADATA_KEY_SIM_START = "startOfSimulation";
@@ -31,12 +68,17 @@ public class CitySimulation implements ISimulation {
     private final static DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ISO_ZONED_DATE_TIME;
     private final static String METADATA_FILE_NAME = "/metadata.properties";
     private final static String MODEL_VERSION_KEY = "model.version";
+    private final static int TRAJECTORY_WINDOW_SIZE = 36; // steps of occupant trajectories generated at once
+    private final static int HORIZON_WINDOW_SIZE = 144; // steps chunks of the horizon-major engine run at once
 
     private final Set<DwellingReference> dwellings;
     private final Set<PersonReference> people;
     private final EnvironmentReference environment;
     private final DataLoggerReference dataLoggerReference;
     private final Duration timeStepSize;
+    private final BulkSynchronousStepper bulkSynchronousStepper;
+    private final Engine engine;
+    private final int numberSteps;
     private ZonedDateTime currentTime;
     private int remainingSteps;
     private LocalDateTime simulationStartTime = LocalDateTime.MIN;
@@ -48,13 +90,42 @@ public class CitySimulation implements ISimulation {
     public CitySimulation(Collection<DwellingReference> dwellings, Collection<PersonReference> people,
                           EnvironmentReference environment, DataLoggerReference dataLoggerReference,
                           ZonedDateTime startTime, Duration timeStepSize, int numberSteps) {
-        this.dwellings = new HashSet<>(dwellings);
-        this.people = new HashSet<>(people);
+        this(dwellings, people, environment, dataLoggerReference, startTime, timeStepSize, numberSteps,
+                Engine.ACTOR);
+    }
+
+    /**
+     * @param dwellings The set of all dwellings in the city.
+     * @param people The set of all people in the city.
+     * @param engine The engine stepping people and dwellings.
+     */
+    public CitySimulation(Collection<DwellingReference> dwellings, Collection<PersonReference> people,
+                          EnvironmentReference environment, DataLoggerReference dataLoggerReference,
+                          ZonedDateTime startTime, Duration timeStepSize, int numberSteps, Engine engine) {
+        // people are stepped in the given order by all engines, so that each dwelling sums up the
+        // metabolic heat gains of its occupants in the same order
+        this.dwellings = new LinkedHashSet<>(dwellings);
+        this.people = new LinkedHashSet<>(people);
+        if (engine != Engine.ACTOR) {
+            if (Reference.pool.getBackend() != WorkerPool.Backend.DIRECT) {
+                String msg = String.format("The %s engine requires the %s backend, but it is %s.",
+                        engine, WorkerPool.Backend.DIRECT, Reference.pool.getBackend());
+                throw new IllegalStateException(msg);
+            }
+            this.bulkSynchronousStepper = new BulkSynchronousStepper(this.dwellings, this.people,
+                    Reference.pool.getNumberWorkers());
+            logger.info(String.format("Stepping agents in chunks of sizes %s.",
+                    Arrays.toString(this.bulkSynchronousStepper.getChunkSizes())));
+        } else {
+            this.bulkSynchronousStepper = null;
+        }
         this.environment = environment;
         this.dataLoggerReference = dataLoggerReference;
         this.currentTime = startTime;
         this.timeStepSize = timeStepSize;
         this.remainingSteps = numberSteps;
+        this.numberSteps = numberSteps;
+        this.engine = engine;
     }
 
     @Override
@@ -71,9 +142,71 @@ public class CitySimulation implements ISimulation {
 
     private void performStep() throws ExecutionException, InterruptedException, EndSimulationException {
         logger.debug(String.format("Simulating step at time %s.", this.currentTime));
+        int step = this.numberSteps - this.remainingSteps;
+        if (this.engine == Engine.HORIZON_MAJOR) {
+            if (step % HORIZON_WINDOW_SIZE == 0) {
+                this.runWindow(step);
+            }
+            this.bulkSynchronousStepper.restore(step);
+        } else if (this.engine == Engine.PIPELINED || this.engine == Engine.EVENT_DRIVEN) {
+            if (step == 0 && this.engine == Engine.EVENT_DRIVEN) {
+                this.bulkSynchronousStepper.prepareHoldingTimes(this.horizon());
+            }
+            if (step % TRAJECTORY_WINDOW_SIZE == 0) {
+                this.generateTrajectories(step);
+            }
+            this.bulkSynchronousStepper.stepDwellingsFromTrajectories(new StepContext(step, this.currentTime));
+        } else {
+            StepContext context = new StepContext(step, this.currentTime);
+            if (this.bulkSynchronousStepper != null) {
+                this.bulkSynchronousStepper.stepPeople(context);
+                this.bulkSynchronousStepper.stepDwellings(context);
+            } else {
+                this.stepAgents(context);
+            }
+        }
+        this.environment.step().get();
+        this.currentTime = this.currentTime.plus(this.timeStepSize);
+        if (this.dataLoggerReference != null) {
+            this.dataLoggerReference.step(this.currentTime).get();
+        }
+    }
+
+    private void runWindow(int firstStep) throws ExecutionException, InterruptedException {
+        int numberSteps = Math.min(HORIZON_WINDOW_SIZE, this.numberSteps - firstStep);
+        logger.debug(String.format("Simulating %d steps of the horizon from step %d.", numberSteps, firstStep));
+        StepContext[] contexts = new StepContext[numberSteps];
+        double[] externalTemperatures = new double[numberSteps];
+        for (int i = 0; i < numberSteps; i++) {
+            contexts[i] = new StepContext(firstStep + i, this.currentTime.plus(this.timeStepSize.multipliedBy(i)));
+            externalTemperatures[i] = this.environment.referent.getTemperature(firstStep + i);
+        }
+        this.bulkSynchronousStepper.runWindow(contexts, externalTemperatures);
+    }
+
+    /**
+     * @return the context of each step of the horizon; only valid before the first step
+     */
+    private StepContext[] horizon() {
+        StepContext[] contexts = new StepContext[this.numberSteps];
+        for (int step = 0; step < this.numberSteps; step++) {
+            contexts[step] = new StepContext(step, this.currentTime.plus(this.timeStepSize.multipliedBy(step)));
+        }
+        return contexts;
+    }
+
+    private void generateTrajectories(int firstStep) throws ExecutionException, InterruptedException {
+        StepContext[] contexts = new StepContext[Math.min(TRAJECTORY_WINDOW_SIZE, this.numberSteps - firstStep)];
+        for (int i = 0; i < contexts.length; i++) {
+            contexts[i] = new StepContext(firstStep + i, this.currentTime.plus(this.timeStepSize.multipliedBy(i)));
+        }
+        this.bulkSynchronousStepper.generateTrajectories(contexts);
+    }
+
+    private void stepAgents(StepContext context) throws ExecutionException, InterruptedException {
         List<CompletableFuture<Void>> peopleSteps = new ArrayList<>();
         for (PersonReference person : this.people) {
-            peopleSteps.add(person.step());
+            peopleSteps.add(person.step(context));
         }
         CompletableFuture<Void>[] array = new CompletableFuture[peopleSteps.size()];
         array = peopleSteps.toArray(array);
@@ -82,21 +215,18 @@ public class CitySimulation implements ISimulation {
 
         List<CompletableFuture<Void>> dwellingSteps = new ArrayList<>();
         for (DwellingReference dwelling : this.dwellings) {
-            dwellingSteps.add(dwelling.step());
+            dwellingSteps.add(dwelling.step(context));
         }
         CompletableFuture<Void>[] dStepsArray = new CompletableFuture[dwellingSteps.size()];
         dStepsArray = dwellingSteps.toArray(dStepsArray);
         CompletableFuture.allOf(dStepsArray).get();
-
-        this.environment.step().get();
-        this.currentTime = this.currentTime.plus(this.timeStepSize);
-        if (this.dataLoggerReference != null) {
-            this.dataLoggerReference.step(this.currentTime).get();
-        }
     }
 
     @Override
     public void stop() {
+        if (this.bulkSynchronousStepper != null) {
+            this.bulkSynchronousStepper.shutdown();
+        }
         if (this.dataLoggerReference != null) {
             try {
                 logger.info("Attempting to write results to disk.");
@@ -0,0 +1,171 @@
+package uk.ac.cam.eeci.energyagents;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+/**
+ * Writes the record of a data point into a columnar binary file.
+ * <br><br>
+ * The file holds one primitive column per data point source and is meant to be memory mapped,
+ * e.g. with numpy. All numbers are little endian. The layout is:
+ * <ul>
+ *     <li>8 bytes magic "EACOLUMN"</li>
+ *     <li>int32 format version, currently 1</li>
+ *     <li>int32 value type: 1 for float64 values, 2 for int32 codes into a dictionary of strings</li>
+ *     <li>int64 time of the first time step in milliseconds since the epoch</li>
+ *     <li>int64 time step size in milliseconds</li>
+ *     <li>int32 number of time steps T</li>
+ *     <li>int32 number of columns N</li>
+ *     <li>N int32 ids of the data point sources, ascending</li>
+ *     <li>value type 2 only: int32 number of dictionary entries D, followed by D entries each of
+ *         an int32 length in bytes and the UTF-8 encoded string</li>
+ *     <li>zero padding to a multiple of 8 bytes</li>
+ *     <li>N columns of T values each, in the order of the ids</li>
+ * </ul>
+ * The time index is implicit: value t of each column belongs to the first time plus t time steps.
+ */
+class ColumnarResultWriter {
+
+    final static byte[] MAGIC = "EACOLUMN".getBytes(StandardCharsets.US_ASCII);
+    final static int FORMAT_VERSION = 1;
+    final static int VALUE_TYPE_FLOAT64 = 1;
+    final static int VALUE_TYPE_DICTIONARY = 2;
+    private final static int BUFFER_SIZE = 1 << 20;
+
+    private ColumnarResultWriter() {
+        // static helpers only
+    }
+
+    /**
+     * @param file the file to write to; an existing file is replaced
+     * @param record the columns of all data point sources
+     * @throws IOException if writing the file fails
+     * @throws IllegalArgumentException if the time index of the record is not regular
+     */
+    static void write(Path file, DataPointRecord record) throws IOException {
+        Map<Integer, Integer> columnOfId = new TreeMap<>();
+        for (int column = 0; column < record.getIds().size(); column++) {
+            columnOfId.put(record.getIds().get(column), column);
+        }
+        List<Integer> ids = new ArrayList<>(columnOfId.keySet());
+        int[] columns = columnOfId.values().stream().mapToInt(Integer::intValue).toArray();
+        List<ZonedDateTime> index = record.getTimeIndex().asList();
+        long timeStepSize = timeStepSizeInMillis(record.getTimeIndex());
+        DataPointRecord.ValueType valueType = record.getValueType();
+        boolean containsDoubles = valueType == DataPointRecord.ValueType.DOUBLE;
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        int[] codeOfCategory = new int[record.getCategories().size()];
+        Arrays.fill(codeOfCategory, -1);
+        if (valueType == DataPointRecord.ValueType.CATEGORY) {
+            // the dictionary holds only the categories that occur, in the order of their occurrence
+            for (int column : columns) {
+                for (int t = 0; t < record.size(); t++) {
+                    int category = record.getCategoryCode(column, t);
+                    if (codeOfCategory[category] == -1) {
+                        String entry = record.getCategories().get(category).toString();
+                        dictionary.putIfAbsent(entry, dictionary.size());
+                        codeOfCategory[category] = dictionary.get(entry);
+                    }
+                }
+            }
+        } else if (valueType == DataPointRecord.ValueType.OBJECT) {
+            for (int column : columns) {
+                for (int t = 0; t < record.size(); t++) {
+                    dictionary.putIfAbsent(record.getValue(column, t).toString(), dictionary.size());
+                }
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.put(MAGIC);
+            buffer.putInt(FORMAT_VERSION);
+            buffer.putInt(containsDoubles ? VALUE_TYPE_FLOAT64 : VALUE_TYPE_DICTIONARY);
+            buffer.putLong(index.isEmpty() ? 0L : index.get(0).toInstant().toEpochMilli());
+            buffer.putLong(timeStepSize);
+            buffer.putInt(index.size());
+            buffer.putInt(ids.size());
+            for (Integer id : ids) {
+                ensureCapacity(channel, buffer, Integer.BYTES);
+                buffer.putInt(id);
+            }
+            if (!containsDoubles) {
+                ensureCapacity(channel, buffer, Integer.BYTES);
+                buffer.putInt(dictionary.size());
+                for (String entry : dictionary.keySet()) {
+                    byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+                    ensureCapacity(channel, buffer, Integer.BYTES + bytes.length);
+                    buffer.putInt(bytes.length);
+                    buffer.put(bytes);
+                }
+            }
+            long position = channel.position() + buffer.position();
+            ensureCapacity(channel, buffer, Long.BYTES);
+            for (long padding = (8 - position % 8) % 8; padding > 0; padding--) {
+                buffer.put((byte) 0);
+            }
+            for (int column : columns) {
+                for (int t = 0; t < record.size(); t++) {
+                    if (containsDoubles) {
+                        ensureCapacity(channel, buffer, Double.BYTES);
+                        buffer.putDouble(record.getDouble(column, t));
+                    } else if (valueType == DataPointRecord.ValueType.CATEGORY) {
+                        ensureCapacity(channel, buffer, Integer.BYTES);
+                        buffer.putInt(codeOfCategory[record.getCategoryCode(column, t)]);
+                    } else {
+                        ensureCapacity(channel, buffer, Integer.BYTES);
+                        buffer.putInt(dictionary.get(record.getValue(column, t).toString()));
+                    }
+                }
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    private static long timeStepSizeInMillis(TimeIndex timeIndex) {
+        if (timeIndex.size() < 2) {
+            return 0L;
+        }
+        if (timeIndex.isRegular()) {
+            return Duration.between(timeIndex.get(0), timeIndex.get(1)).toMillis();
+        }
+        List<ZonedDateTime> index = timeIndex.asList();
+        long timeStepSize = Duration.between(index.get(0), index.get(1)).toMillis();
+        for (int i = 2; i < index.size(); i++) {
+            if (Duration.between(index.get(i - 1), index.get(i)).toMillis() != timeStepSize) {
+                String msg = String.format("Time index must be regular, but step %d differs from step size %d ms.",
+                        i, timeStepSize);
+                throw new IllegalArgumentException(msg);
+            }
+        }
+        return timeStepSize;
+    }
+
+    private static void ensureCapacity(FileChannel channel, ByteBuffer buffer, int numberBytes)
+            throws IOException {
+        if (buffer.remaining() < numberBytes) {
+            flush(channel, buffer);
+        }
+        if (buffer.remaining() < numberBytes) {
+            String msg = String.format("Cannot write entry of %d bytes.", numberBytes);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -1,6 +1,7 @@
 package uk.ac.cam.eeci.energyagents;
 
 import uk.ac.cam.eeci.framework.Conductor;
+import uk.ac.cam.eeci.framework.ISimulation;
 import uk.ac.cam.eeci.framework.Reference;
 import uk.ac.cam.eeci.framework.WorkerPool;
 import org.apache.commons.cli.*;
@@ -25,6 +26,12 @@ public class CommandLineInterface {
     private String inputFilePath;
     private String outputFilePath;
     private int numberWorkers;
+    private WorkerPool.Placement placement;
+    private ScenarioOptions scenarioOptions;
+    private int numberReplicas;
+    private Ensemble.Output ensembleOutput;
+    private boolean sweep;
+    private boolean identicalOccupants;
 
     public static void main(String ... args) {
 
@@ -42,6 +49,67 @@ public class CommandLineInterface {
         nWorker.setRequired(false);
         options.addOption(nWorker);
 
+        Option placement = new Option("p", "placement", true,
+                "placement of agents on workers: HASH, ROUND_ROBIN, or WEIGHTED");
+        placement.setRequired(false);
+        options.addOption(placement);
+
+        Option backend = new Option("b", "backend", true,
+                "execution backend of workers: SINGLE_THREAD, FORK_JOIN, or VIRTUAL_THREAD");
+        backend.setRequired(false);
+        options.addOption(backend);
+
+        Option engine = new Option("e", "engine", true,
+                "engine stepping the agents: ACTOR, BULK_SYNCHRONOUS, HORIZON_MAJOR, PIPELINED, or EVENT_DRIVEN (all but ACTOR ignore the backend)");
+        engine.setRequired(false);
+        options.addOption(engine);
+
+        Option logging = new Option("l", "logging", true,
+                "logging of results: IN_MEMORY or STREAMING (constant memory)");
+        logging.setRequired(false);
+        options.addOption(logging);
+
+        Option sink = new Option("s", "sink", true,
+                "output of results: SQLITE or COLUMNAR (binary files next to the output db, IN_MEMORY logging only)");
+        sink.setRequired(false);
+        options.addOption(sink);
+
+        Option cache = new Option("c", "cache", true,
+                "directory of compiled scenarios, reused by later runs of the same scenario db");
+        cache.setRequired(false);
+        options.addOption(cache);
+
+        Option replicas = new Option("r", "replicas", true,
+                "number of replicas of an ensemble, differing in the random numbers of people (default: no ensemble)");
+        replicas.setRequired(false);
+        options.addOption(replicas);
+
+        Option ensembleOutput = new Option("x", "ensembleOutput", true,
+                "output of an ensemble: REPLICAS (one output per replica) or STATISTICS (mean and percentiles of district averages)");
+        ensembleOutput.setRequired(false);
+        options.addOption(ensembleOutput);
+
+        Option sweep = new Option("v", "sweep", false,
+                "run a variant for each row of the parameters table, each writing an output of its own");
+        sweep.setRequired(false);
+        options.addOption(sweep);
+
+        Option identicalOccupants = new Option("t", "identicalOccupants", false,
+                "people of all variants of a sweep follow identical trajectories of activities");
+        identicalOccupants.setRequired(false);
+        options.addOption(identicalOccupants);
+
+        Option random = new Option("g", "random", true,
+                "generator of random numbers of people: JAVA_UTIL_RANDOM (as earlier versions) or COUNTER_BASED");
+        random.setRequired(false);
+        options.addOption(random);
+
+        Option integrator = new Option("d", "integrator", true,
+                "discretisation in time of dwellings: CRANK_NICOLSON (as ISO 13790) or EXPONENTIAL " +
+                "(exact, for coarse time steps)");
+        integrator.setRequired(false);
+        options.addOption(integrator);
+
         CommandLineParser parser = new DefaultParser();
         HelpFormatter formatter = new HelpFormatter();
         CommandLine cmd;
@@ -60,6 +128,35 @@ public class CommandLineInterface {
         cli.inputFilePath = cmd.getOptionValue("input");
         cli.outputFilePath = cmd.getOptionValue("output");
         cli.numberWorkers = Integer.valueOf(cmd.getOptionValue("nWorker", "4"));
+        cli.placement = WorkerPool.Placement.valueOf(cmd.getOptionValue("placement", "WEIGHTED"));
+        cli.scenarioOptions = new ScenarioOptions()
+                .withBackend(WorkerPool.Backend.valueOf(cmd.getOptionValue("backend", "SINGLE_THREAD")))
+                .withEngine(CitySimulation.Engine.valueOf(cmd.getOptionValue("engine", "ACTOR")))
+                .withLoggingMode(DataLogger.Mode.valueOf(cmd.getOptionValue("logging", "IN_MEMORY")))
+                .withSink(DataLogger.Sink.valueOf(cmd.getOptionValue("sink", "SQLITE")))
+                .withCompiledScenarioDirectory(cmd.getOptionValue("cache"))
+                .withRandomNumberGenerator(Person.RandomNumberGenerator.valueOf(
+                        cmd.getOptionValue("random", "JAVA_UTIL_RANDOM")))
+                .withIntegrator(DwellingBlock.Integrator.valueOf(cmd.getOptionValue("integrator", "CRANK_NICOLSON")));
+        cli.numberReplicas = Integer.valueOf(cmd.getOptionValue("replicas", "0"));
+        cli.ensembleOutput = Ensemble.Output.valueOf(cmd.getOptionValue("ensembleOutput", "REPLICAS"));
+        cli.sweep = cmd.hasOption("sweep");
+        cli.identicalOccupants = cmd.hasOption("identicalOccupants");
+        if (cli.sweep && cli.numberReplicas > 0) {
+            System.out.println("A sweep can not be run as an ensemble of replicas.");
+            formatter.printHelp(TOOL_NAME, options);
+
+            System.exit(1);
+            return;
+        }
+        if (cli.scenarioOptions.getLoggingMode() == DataLogger.Mode.STREAMING
+                && cli.scenarioOptions.getSink() == DataLogger.Sink.COLUMNAR) {
+            System.out.println("Columnar output requires IN_MEMORY logging.");
+            formatter.printHelp(TOOL_NAME, options);
+
+            System.exit(1);
+            return;
+        }
         cli.run();
     }
 
@@ -67,12 +164,22 @@ public class CommandLineInterface {
         logger.info(String.format("Hi there. This is %s version %s.", TOOL_NAME, CitySimulation.inferModelVersion()));
         logTempFileName();
         Reference.pool.shutdown();
-        Reference.pool = new WorkerPool(this.numberWorkers);
+        Reference.pool = new WorkerPool(this.numberWorkers, this.placement, this.scenarioOptions.getBackend());
         Reference.pool.setCurrentExecutor(Reference.pool.main); // FIXME shouldnt be here
         logger.info(String.format("Attempting to read scenario description from file %s.", this.inputFilePath));
-        CitySimulation citySimulation;
+        ISimulation citySimulation;
         try {
-            citySimulation = ScenarioBuilder.readScenario(this.inputFilePath, this.outputFilePath);
+            if (this.sweep) {
+                citySimulation = ScenarioBuilder.readSweep(this.inputFilePath, this.outputFilePath,
+                        this.identicalOccupants, this.scenarioOptions);
+            } else if (this.numberReplicas > 0) {
+                citySimulation = ScenarioBuilder.readEnsemble(this.inputFilePath, this.outputFilePath,
+                        this.numberReplicas, this.ensembleOutput, this.scenarioOptions);
+            } else {
+                citySimulation = ScenarioBuilder.readScenario(this.inputFilePath, this.outputFilePath,
+                        this.scenarioOptions);
+            }
+            logger.info(Reference.pool.loadReport());
             logger.info("Start of the simulation.");
             new Conductor(citySimulation).run();
             logger.info("Simulation terminated gracefully.");
@@ -0,0 +1,547 @@
+package uk.ac.cam.eeci.energyagents;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+import uk.ac.cam.eeci.energyagents.Person.Activity;
+
+/**
+ * The input of a scenario, decoded from the scenario database and stored in a binary file.
+ * <br><br>
+ * Compiled scenarios are keyed by the SHA-256 hash of the scenario database they were compiled
+ * from, so that repeated runs of an unchanged database need neither SQLite nor parsing. On later
+ * runs, the file is memory mapped and its rows are decoded directly into agents. All numbers are
+ * big endian. The layout is:
+ * <ul>
+ *     <li>8 bytes magic "EASCENAR"</li>
+ *     <li>int32 format version, currently 2</li>
+ *     <li>32 bytes SHA-256 hash of the scenario database</li>
+ *     <li>int32 number of rows followed by the rows, for each of the simulation parameters, the
+ *         environment, the dwellings, the people, and the markov chain ids</li>
+ *     <li>int32 number of markov chain tables, followed by each table as int32 number of entries
+ *         and the entries</li>
+ * </ul>
+ */
+final class CompiledScenario {
+
+    final static byte[] MAGIC = "EASCENAR".getBytes(StandardCharsets.US_ASCII);
+    final static int FORMAT_VERSION = 2;
+    final static String FILE_EXTENSION = ".scenario";
+    final static int NUMBER_DWELLING_PARAMETERS = 13;
+
+    private final static int HASH_SIZE = 32;
+    private final static int ENVIRONMENT_ROW_SIZE = Long.BYTES + Integer.BYTES + Double.BYTES;
+    private final static int DWELLING_ROW_SIZE = 2 * Integer.BYTES + NUMBER_DWELLING_PARAMETERS * Double.BYTES + 1;
+    private final static int PERSON_ROW_SIZE = 6 * Integer.BYTES + 1;
+    private final static int MARKOV_CHAIN_ID_ROW_SIZE = 2 * Integer.BYTES;
+    private final static int MARKOV_CHAIN_ENTRY_SIZE = 1 + Long.BYTES + 2 + Double.BYTES;
+
+    /**
+     * The simulation parameters of a scenario; times of day are in nanoseconds of the day.
+     * <br><br>
+     * The control strategy type is the ordinal of the type of heating control strategy of all
+     * dwellings; -1 if each dwelling keeps its own.
+     */
+    static final class ParameterRow {
+        long initialEpochSecond;
+        int initialNano;
+        long timeStepSizeInSeconds;
+        int numberTimeSteps;
+        boolean logThermalPower;
+        boolean logTemperature;
+        boolean logActivity;
+        boolean logAggregated;
+        double setPointWhileHome;
+        double setPointWhileAsleep;
+        long wakeUpTime;
+        long leaveHomeTime;
+        long comeHomeTime;
+        long bedTime;
+        int controlStrategyType = -1;
+    }
+
+    /**
+     * One time stamp of the external temperature.
+     */
+    static final class EnvironmentRow {
+        long epochSecond;
+        int nano;
+        double temperature;
+    }
+
+    /**
+     * One dwelling; its parameters are in the order of the parameters of the {@link Dwelling} constructor.
+     */
+    static final class DwellingRow {
+        int id;
+        int districtId;
+        final double[] parameters = new double[NUMBER_DWELLING_PARAMETERS];
+        int controlStrategyType;
+    }
+
+    /**
+     * One person; the initial activity is the ordinal of the {@link Activity}.
+     */
+    static final class PersonRow {
+        int id;
+        int dwellingId;
+        int markovChainId;
+        int randomSeed;
+        int activeMetabolicRate;
+        int passiveMetabolicRate;
+        int initialActivity;
+    }
+
+    private final ByteBuffer buffer;
+    private final int parametersPosition;
+    private final int environmentPosition;
+    private final int dwellingsPosition;
+    private final int peoplePosition;
+    private final int markovChainIdsPosition;
+    private final int markovChainTablesPosition;
+
+    private CompiledScenario(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.parametersPosition = MAGIC.length + Integer.BYTES + HASH_SIZE;
+        this.environmentPosition = this.skipRows(this.parametersPosition, ParameterCodec.SIZE);
+        this.dwellingsPosition = this.skipRows(this.environmentPosition, ENVIRONMENT_ROW_SIZE);
+        this.peoplePosition = this.skipRows(this.dwellingsPosition, DWELLING_ROW_SIZE);
+        this.markovChainIdsPosition = this.skipRows(this.peoplePosition, PERSON_ROW_SIZE);
+        this.markovChainTablesPosition = this.skipRows(this.markovChainIdsPosition, MARKOV_CHAIN_ID_ROW_SIZE);
+    }
+
+    private int skipRows(int position, int rowSize) {
+        return position + Integer.BYTES + this.buffer.getInt(position) * rowSize;
+    }
+
+    /**
+     * @param scenarioDatabase the scenario database
+     * @return the SHA-256 hash of the content of the scenario database
+     * @throws IOException if the database cannot be read
+     */
+    static byte[] hash(Path scenarioDatabase) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex); // every Java platform supports SHA-256
+        }
+        byte[] chunk = new byte[1 << 20];
+        try (InputStream in = new DigestInputStream(Files.newInputStream(scenarioDatabase), digest)) {
+            while (in.read(chunk) != -1) {
+                // the digest is updated while reading
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @param directory the directory of compiled scenarios
+     * @param hash the hash of the scenario database
+     * @return the file of the compiled scenario of the scenario database
+     */
+    static Path file(Path directory, byte[] hash) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : hash) {
+            name.append(String.format("%02x", b));
+        }
+        return directory.resolve(name.append(FILE_EXTENSION).toString());
+    }
+
+    /**
+     * Memory maps a compiled scenario.
+     *
+     * @param file the file of the compiled scenario
+     * @param hash the hash of the scenario database the compiled scenario must stem from
+     * @return the compiled scenario; empty if the file does not exist, or if it is of another
+     *         format version or stems from another scenario database
+     * @throws IOException if the file exists but cannot be read
+     */
+    static Optional<CompiledScenario> open(Path file, byte[] hash) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            byte[] storedHash = new byte[HASH_SIZE];
+            buffer.get(magic);
+            int version = buffer.getInt();
+            buffer.get(storedHash);
+            if (!Arrays.equals(magic, MAGIC) || version != FORMAT_VERSION || !Arrays.equals(storedHash, hash)) {
+                return Optional.empty();
+            }
+            return Optional.of(new CompiledScenario(buffer));
+        } catch (BufferUnderflowException|IndexOutOfBoundsException ex) {
+            throw new IOException(String.format("Compiled scenario %s is corrupt.", file), ex);
+        }
+    }
+
+    /**
+     * @return the simulation parameters
+     */
+    ParameterRow parameters() {
+        return this.allParameters().get(0);
+    }
+
+    /**
+     * @return all rows of simulation parameters, in the order of the scenario database
+     */
+    List<ParameterRow> allParameters() {
+        ByteBuffer in = this.rowsAt(this.parametersPosition);
+        List<ParameterRow> rows = new ArrayList<>();
+        for (int i = in.getInt(); i > 0; i--) {
+            rows.add(ParameterCodec.read(in));
+        }
+        return rows;
+    }
+
+    /**
+     * @return the time stamps of the external temperature
+     */
+    Rows<EnvironmentRow> environmentRows() {
+        return new Rows<>(this.rowsAt(this.environmentPosition), new EnvironmentRow(), (in, row) -> {
+            row.epochSecond = in.getLong();
+            row.nano = in.getInt();
+            row.temperature = in.getDouble();
+        });
+    }
+
+    /**
+     * @return the dwellings
+     */
+    Rows<DwellingRow> dwellingRows() {
+        return new Rows<>(this.rowsAt(this.dwellingsPosition), new DwellingRow(), (in, row) -> {
+            row.id = in.getInt();
+            row.districtId = in.getInt();
+            for (int p = 0; p < NUMBER_DWELLING_PARAMETERS; p++) {
+                row.parameters[p] = in.getDouble();
+            }
+            row.controlStrategyType = in.get();
+        });
+    }
+
+    /**
+     * @return the people
+     */
+    Rows<PersonRow> personRows() {
+        return new Rows<>(this.rowsAt(this.peoplePosition), new PersonRow(), (in, row) -> {
+            row.id = in.getInt();
+            row.dwellingId = in.getInt();
+            row.markovChainId = in.getInt();
+            row.randomSeed = in.getInt();
+            row.activeMetabolicRate = in.getInt();
+            row.passiveMetabolicRate = in.getInt();
+            row.initialActivity = in.get();
+        });
+    }
+
+    /**
+     * @return the position of the markov chain table in {@link #markovChainTables()} of each markov chain id
+     */
+    Map<Integer, Integer> markovChainIds() {
+        ByteBuffer in = this.rowsAt(this.markovChainIdsPosition);
+        Map<Integer, Integer> tables = new HashMap<>();
+        for (int i = in.getInt(); i > 0; i--) {
+            tables.put(in.getInt(), in.getInt());
+        }
+        return tables;
+    }
+
+    /**
+     * @return the entries of all markov chain tables
+     */
+    List<List<MarkovChainReader.MarkovChainEntry>> markovChainTables() {
+        ByteBuffer in = this.rowsAt(this.markovChainTablesPosition);
+        Activity[] activities = Activity.values();
+        List<List<MarkovChainReader.MarkovChainEntry>> tables = new ArrayList<>();
+        for (int table = in.getInt(); table > 0; table--) {
+            int numberEntries = in.getInt();
+            List<MarkovChainReader.MarkovChainEntry> entries = new ArrayList<>(numberEntries);
+            for (int entry = 0; entry < numberEntries; entry++) {
+                String day = MarkovChainReader.DAYS[in.get()];
+                LocalTime time = LocalTime.ofNanoOfDay(in.getLong());
+                Activity from = activities[in.get()];
+                Activity to = activities[in.get()];
+                entries.add(new MarkovChainReader.MarkovChainEntry(day, time, from, to, in.getDouble()));
+            }
+            tables.add(entries);
+        }
+        return tables;
+    }
+
+    /**
+     * A cursor over the rows of a section, decoding each row into a single reused row object.
+     *
+     * @param <R> the type of the rows
+     */
+    static final class Rows<R> {
+
+        private final ByteBuffer in;
+        private final R row;
+        private final BiConsumer<ByteBuffer, R> decoder;
+        private int remainingRows;
+
+        private Rows(ByteBuffer in, R row, BiConsumer<ByteBuffer, R> decoder) {
+            this.in = in;
+            this.row = row;
+            this.decoder = decoder;
+            this.remainingRows = in.getInt();
+        }
+
+        /**
+         * @return false if there are no more rows; otherwise decodes the next row into {@link #row()}
+         */
+        boolean next() {
+            if (this.remainingRows == 0) {
+                return false;
+            }
+            this.remainingRows--;
+            this.decoder.accept(this.in, this.row);
+            return true;
+        }
+
+        /**
+         * @return the current row; overwritten by {@link #next()}
+         */
+        R row() {
+            return this.row;
+        }
+    }
+
+    private ByteBuffer rowsAt(int position) {
+        ByteBuffer in = this.buffer.duplicate();
+        in.position(position);
+        return in;
+    }
+
+    private static final class ParameterCodec {
+
+        private final static int SIZE = Long.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES + 4
+                + 2 * Double.BYTES + 4 * Long.BYTES + Integer.BYTES;
+
+        private static void write(DataOutputStream out, ParameterRow row) throws IOException {
+            out.writeLong(row.initialEpochSecond);
+            out.writeInt(row.initialNano);
+            out.writeLong(row.timeStepSizeInSeconds);
+            out.writeInt(row.numberTimeSteps);
+            out.writeBoolean(row.logThermalPower);
+            out.writeBoolean(row.logTemperature);
+            out.writeBoolean(row.logActivity);
+            out.writeBoolean(row.logAggregated);
+            out.writeDouble(row.setPointWhileHome);
+            out.writeDouble(row.setPointWhileAsleep);
+            out.writeLong(row.wakeUpTime);
+            out.writeLong(row.leaveHomeTime);
+            out.writeLong(row.comeHomeTime);
+            out.writeLong(row.bedTime);
+            out.writeInt(row.controlStrategyType);
+        }
+
+        private static ParameterRow read(ByteBuffer in) {
+            ParameterRow row = new ParameterRow();
+            row.initialEpochSecond = in.getLong();
+            row.initialNano = in.getInt();
+            row.timeStepSizeInSeconds = in.getLong();
+            row.numberTimeSteps = in.getInt();
+            row.logThermalPower = in.get() != 0;
+            row.logTemperature = in.get() != 0;
+            row.logActivity = in.get() != 0;
+            row.logAggregated = in.get() != 0;
+            row.setPointWhileHome = in.getDouble();
+            row.setPointWhileAsleep = in.getDouble();
+            row.wakeUpTime = in.getLong();
+            row.leaveHomeTime = in.getLong();
+            row.comeHomeTime = in.getLong();
+            row.bedTime = in.getLong();
+            row.controlStrategyType = in.getInt();
+            return row;
+        }
+    }
+
+    /**
+     * Records the rows of a scenario while it is read from the scenario database, and writes them
+     * as a compiled scenario.
+     * <br><br>
+     * Markov chain tables may be recorded concurrently; all other rows must be recorded by a
+     * single thread.
+     */
+    static final class Recorder {
+
+        private final List<ParameterRow> parameters = new ArrayList<>();
+        private final Section environment = new Section();
+        private final Section dwellings = new Section();
+        private final Section people = new Section();
+        private final Map<Integer, String> markovChainIds = new HashMap<>();
+        private final Map<String, List<MarkovChainReader.MarkovChainEntry>> markovChainTables = new HashMap<>();
+
+        void record(ParameterRow row) {
+            this.parameters.add(row);
+        }
+
+        void record(EnvironmentRow row) {
+            try {
+                this.environment.out.writeLong(row.epochSecond);
+                this.environment.out.writeInt(row.nano);
+                this.environment.out.writeDouble(row.temperature);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex); // in memory only
+            }
+            this.environment.numberRows++;
+        }
+
+        void record(DwellingRow row) {
+            try {
+                this.dwellings.out.writeInt(row.id);
+                this.dwellings.out.writeInt(row.districtId);
+                for (double parameter : row.parameters) {
+                    this.dwellings.out.writeDouble(parameter);
+                }
+                this.dwellings.out.writeByte(row.controlStrategyType);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex); // in memory only
+            }
+            this.dwellings.numberRows++;
+        }
+
+        void record(PersonRow row) {
+            try {
+                this.people.out.writeInt(row.id);
+                this.people.out.writeInt(row.dwellingId);
+                this.people.out.writeInt(row.markovChainId);
+                this.people.out.writeInt(row.randomSeed);
+                this.people.out.writeInt(row.activeMetabolicRate);
+                this.people.out.writeInt(row.passiveMetabolicRate);
+                this.people.out.writeByte(row.initialActivity);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex); // in memory only
+            }
+            this.people.numberRows++;
+        }
+
+        void recordMarkovChainIds(Map<Integer, String> tableNameOfMarkovChainId) {
+            this.markovChainIds.putAll(tableNameOfMarkovChainId);
+        }
+
+        synchronized void recordMarkovChainTable(String tableName, List<MarkovChainReader.MarkovChainEntry> entries) {
+            this.markovChainTables.put(tableName, entries);
+        }
+
+        /**
+         * Writes all recorded rows as compiled scenario.
+         * <br><br>
+         * The file is written next to its final location first and moved there once complete,
+         * so that concurrent runs never see a partially written compiled scenario.
+         *
+         * @param file the file of the compiled scenario
+         * @param hash the hash of the scenario database
+         * @throws IOException if writing the file fails
+         */
+        synchronized void write(Path file, byte[] hash) throws IOException {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                    this.writeTo(out, hash);
+                }
+                try {
+                    Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+
+        /**
+         * Compiles all recorded rows in memory, without writing a file.
+         *
+         * @return the compiled scenario
+         */
+        synchronized CompiledScenario compile() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                this.writeTo(out, new byte[HASH_SIZE]);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex); // in memory only
+            }
+            return new CompiledScenario(ByteBuffer.wrap(bytes.toByteArray()));
+        }
+
+        private void writeTo(DataOutputStream out, byte[] hash) throws IOException {
+            out.write(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.write(hash);
+            out.writeInt(this.parameters.size());
+            for (ParameterRow row : this.parameters) {
+                ParameterCodec.write(out, row);
+            }
+            this.environment.writeTo(out);
+            this.dwellings.writeTo(out);
+            this.people.writeTo(out);
+            List<String> tableNames = new ArrayList<>(new TreeSet<>(this.markovChainIds.values()));
+            Map<String, Integer> positionOfTable = new HashMap<>();
+            for (String tableName : tableNames) {
+                positionOfTable.put(tableName, positionOfTable.size());
+            }
+            out.writeInt(this.markovChainIds.size());
+            for (Map.Entry<Integer, String> entry : this.markovChainIds.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(positionOfTable.get(entry.getValue()));
+            }
+            out.writeInt(tableNames.size());
+            for (String tableName : tableNames) {
+                writeMarkovChainTable(out, this.markovChainTables.get(tableName));
+            }
+        }
+
+        private static void writeMarkovChainTable(DataOutputStream out,
+                                                  List<MarkovChainReader.MarkovChainEntry> entries)
+                throws IOException {
+            List<String> days = Arrays.asList(MarkovChainReader.DAYS);
+            List<MarkovChainReader.MarkovChainEntry> relevantEntries = new ArrayList<>();
+            for (MarkovChainReader.MarkovChainEntry entry : entries) {
+                if (days.contains(entry.getDay())) {
+                    relevantEntries.add(entry); // markov chains ignore all other days
+                }
+            }
+            out.writeInt(relevantEntries.size());
+            for (MarkovChainReader.MarkovChainEntry entry : relevantEntries) {
+                out.writeByte(days.indexOf(entry.getDay()));
+                out.writeLong(entry.getTimeOfDay().toNanoOfDay());
+                out.writeByte(entry.getFromActivity().ordinal());
+                out.writeByte(entry.getToActivity().ordinal());
+                out.writeDouble(entry.getProbability());
+            }
+        }
+
+        private static final class Section {
+            private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            private final DataOutputStream out = new DataOutputStream(this.bytes);
+            private int numberRows = 0;
+
+            private void writeTo(DataOutputStream out) throws IOException {
+                out.writeInt(this.numberRows);
+                this.bytes.writeTo(out);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package uk.ac.cam.eeci.energyagents;
+
+import java.util.Random;
+
+/**
+ * A counter-based random number generator: the n-th random number of a stream is a hash of
+ * the key of the stream and of n.
+ * <br><br>
+ * Any random number of the stream can hence be computed directly, see {@link #doubleAt(long)},
+ * and the stream can be jumped to any position, see {@link #setCounter(long)}. Streams of
+ * different seeds are independent, including streams of adjacent seeds. The hash is the
+ * finaliser of SplitMix64, applied to the Weyl sequence of the key.
+ * <br><br>
+ * Unlike {@link Random}, drawing a number neither synchronises nor updates any atomic state.
+ * Instances must therefore not be shared between threads without external synchronisation;
+ * each person owns its own instance anyway.
+ */
+public class CounterBasedRandom extends Random {
+
+    private final static long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private final static double DOUBLE_UNIT = 0x1.0p-53;
+
+    private long key;
+    private long counter;
+
+    /**
+     * @param seed the seed of the stream
+     */
+    public CounterBasedRandom(long seed) {
+        super(seed);
+    }
+
+    /**
+     * Restarts the stream of the given seed at its first number.
+     *
+     * @param seed the seed of the stream
+     */
+    @Override
+    public void setSeed(long seed) {
+        super.setSeed(seed);
+        this.key = mix(seed ^ GOLDEN_GAMMA);
+        this.counter = 0;
+    }
+
+    /**
+     * @return the position of the next random number within the stream
+     */
+    public long getCounter() {
+        return this.counter;
+    }
+
+    /**
+     * Jumps to any position within the stream.
+     *
+     * @param counter the position of the next random number within the stream
+     */
+    public void setCounter(long counter) {
+        this.counter = counter;
+    }
+
+    /**
+     * @param counter any position within the stream
+     * @return the random number between 0 (inclusive) and 1 (exclusive) at the position,
+     *         independent of the position of the stream
+     */
+    public double doubleAt(long counter) {
+        return (this.longAt(counter) >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * Fills the block with the next random numbers between 0 (inclusive) and 1 (exclusive), as
+     * if {@link #nextDouble()} was called once for each element.
+     *
+     * @param block the block to fill
+     */
+    public void nextDoubles(double[] block) {
+        for (int i = 0; i < block.length; i++) {
+            block[i] = this.doubleAt(this.counter + i);
+        }
+        this.counter += block.length;
+    }
+
+    @Override
+    public double nextDouble() {
+        return this.doubleAt(this.counter++);
+    }
+
+    @Override
+    public long nextLong() {
+        return this.longAt(this.counter++);
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (this.longAt(this.counter++) >>> (64 - bits));
+    }
+
+    private long longAt(long counter) {
+        return mix(this.key + (counter + 1) * GOLDEN_GAMMA);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
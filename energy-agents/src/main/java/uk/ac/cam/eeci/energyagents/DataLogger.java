@@ -9,13 +9,32 @@ import java.util.concurrent.CompletableFuture;
 
 /**
  * DataLogger logs data points during the simulation at each time step.
+ * <br><br>
+ * In memory mode, all values are kept until the end of the simulation and are written to the
+ * output at once. In streaming mode, values are handed to a background writer at each time
+ * step, so that memory consumption does not grow with the length of the simulation. The output
+ * of both modes is identical.
+ * <br><br>
+ * Data points are written as tables of the output database by default. Alternatively, each data
+ * point can be written into a columnar binary file next to the output database, see
+ * {@link #columnarFilename(String, String)}; the input and metadata remain in the database.
  */
 public class DataLogger {
 
     public final static String METADATA_TABLE_NAME = "metadata";
+    private final static int STREAM_QUEUE_CAPACITY = 64;
     private final Set<DataPointReference> dataPoints;
     private final String inputFilename;
     private final String outputFilename;
+    private final Mode mode;
+    private final Sink sink;
+    private final Map<DataPointReference, String> namesOfDataPoints;
+    private final Map<DataPointReference, List<Integer>> idsOfDataPoints;
+    private ResultStreamWriter streamWriter = null;
+
+    public enum Mode {IN_MEMORY, STREAMING}
+
+    public enum Sink {SQLITE, COLUMNAR}
 
 
     /**
@@ -25,9 +44,42 @@ public class DataLogger {
      * @param outputFilename The output file name where data gets logged to.
      */
     public DataLogger(Collection<DataPointReference> dataPoints, String inputFilename, String outputFilename) {
+        this(dataPoints, inputFilename, outputFilename, Mode.IN_MEMORY);
+    }
+
+    /**
+     *
+     * @param dataPoints The DataPoints to be logged.
+     * @param inputFilename The input file which is copied to the output.
+     * @param outputFilename The output file name where data gets logged to.
+     * @param mode Whether data is kept in memory or streamed to the output during the simulation.
+     */
+    public DataLogger(Collection<DataPointReference> dataPoints, String inputFilename, String outputFilename,
+                      Mode mode) {
+        this(dataPoints, inputFilename, outputFilename, mode, Sink.SQLITE);
+    }
+
+    /**
+     *
+     * @param dataPoints The DataPoints to be logged.
+     * @param inputFilename The input file which is copied to the output.
+     * @param outputFilename The output file name where data gets logged to.
+     * @param mode Whether data is kept in memory or streamed to the output during the simulation.
+     * @param sink Whether data points are written into the output database or into columnar files.
+     */
+    public DataLogger(Collection<DataPointReference> dataPoints, String inputFilename, String outputFilename,
+                      Mode mode, Sink sink) {
+        if (mode == Mode.STREAMING && sink == Sink.COLUMNAR) {
+            String msg = "Columnar files are written at the end of the simulation and can not be streamed.";
+            throw new IllegalArgumentException(msg);
+        }
         this.dataPoints = new HashSet<>(dataPoints);
         this.inputFilename = inputFilename;
         this.outputFilename = outputFilename;
+        this.mode = mode;
+        this.sink = sink;
+        this.namesOfDataPoints = new HashMap<>();
+        this.idsOfDataPoints = new HashMap<>();
     }
 
     /**
@@ -35,6 +87,9 @@ public class DataLogger {
      * @param currentTime The current simulation time.
      */
     public CompletableFuture<Void> step(ZonedDateTime currentTime) {
+        if (this.mode == Mode.STREAMING) {
+            return this.stream(currentTime);
+        }
         CompletableFuture<Void>[] steps = new CompletableFuture[this.dataPoints.size()];
         int i = 0;
         for (DataPointReference dataPoint : this.dataPoints) {
@@ -44,98 +99,141 @@ public class DataLogger {
         return CompletableFuture.allOf(steps);
     }
 
+    private CompletableFuture<Void> stream(ZonedDateTime currentTime) {
+        CompletableFuture<Void> start = CompletableFuture.completedFuture(null);
+        if (this.streamWriter == null) {
+            start = this.startStreaming();
+        }
+        return start.thenCompose(unused -> {
+            CompletableFuture<Void>[] steps = new CompletableFuture[this.dataPoints.size()];
+            int i = 0;
+            for (DataPointReference<?, ?> dataPoint : this.dataPoints) {
+                String name = this.namesOfDataPoints.get(dataPoint);
+                List<Integer> ids = this.idsOfDataPoints.get(dataPoint);
+                steps[i] = dataPoint.getCurrentValues(currentTime)
+                        .thenAccept(values -> this.streamWriter.write(name, ids, currentTime, values));
+                i++;
+            }
+            return CompletableFuture.allOf(steps);
+        });
+    }
+
+    private CompletableFuture<Void> startStreaming() {
+        this.copyInput();
+        this.streamWriter = new ResultStreamWriter(this.outputFilename, STREAM_QUEUE_CAPACITY);
+        Map<DataPointReference, CompletableFuture<String>> names = new HashMap<>();
+        Map<DataPointReference, CompletableFuture<List<Integer>>> ids = new HashMap<>();
+        for (DataPointReference<?, ?> dataPoint : this.dataPoints) {
+            names.put(dataPoint, dataPoint.getName());
+            ids.put(dataPoint, dataPoint.getIds());
+        }
+        List<CompletableFuture<?>> all = new ArrayList<>(names.values());
+        all.addAll(ids.values());
+        return CompletableFuture.allOf(all.toArray(new CompletableFuture[all.size()]))
+                .thenRun(() -> {
+                    names.forEach((dataPoint, name) -> this.namesOfDataPoints.put(dataPoint, name.join()));
+                    ids.forEach((dataPoint, id) -> this.idsOfDataPoints.put(dataPoint, id.join()));
+                });
+    }
+
     /**
      * Writes all logged data to the previously specified file.
      * @param metaData meta data to be written to the output.
      */
     public CompletableFuture<Void> write(HashMap<String, String> metaData) {
-        CompletableFuture<Void> steps = CompletableFuture.completedFuture(null);
-        steps.thenRun(this::copyInput);
-
-        for (DataPointReference dp : this.dataPoints) {
-            steps = steps
-                    .thenCompose(unused -> dp.getName())
-                    .thenCompose(name -> dp.getRecord().thenCompose(m -> CompletableFuture.completedFuture(new DataPointInternals(name, m))))
-                    .thenAccept(this::writeDataPoint);
+        if (this.mode == Mode.STREAMING) {
+            if (this.streamWriter == null) {
+                this.copyInput();
+            } else {
+                try {
+                    this.streamWriter.finish();
+                } catch (IllegalStateException ex) {
+                    CompletableFuture<Void> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(ex);
+                    return failed;
+                }
+            }
+            this.writeMetadata(metaData);
+            return CompletableFuture.completedFuture(null);
         }
-        steps = steps.thenAccept(unused -> this.writeMetadata(metaData));
-        return steps;
+        this.copyInput();
+        Map<DataPointReference, CompletableFuture<String>> names = new HashMap<>();
+        Map<DataPointReference, CompletableFuture<DataPointRecord>> records = new HashMap<>();
+        for (DataPointReference dataPoint : this.dataPoints) {
+            names.put(dataPoint, dataPoint.getName());
+            records.put(dataPoint, dataPoint.getColumnarRecord());
+        }
+        List<CompletableFuture<?>> all = new ArrayList<>(names.values());
+        all.addAll(records.values());
+        CompletableFuture<Void> gathered = CompletableFuture.allOf(all.toArray(new CompletableFuture[all.size()]));
+        if (this.sink == Sink.COLUMNAR) {
+            return gathered.thenRun(() -> {
+                for (DataPointReference dataPoint : this.dataPoints) {
+                    this.writeColumnarDataPoint(names.get(dataPoint).join(), records.get(dataPoint).join());
+                }
+                this.writeMetadata(metaData);
+            });
+        }
+        return gathered.thenRun(() -> {
+            try (ResultDatabaseWriter writer = new ResultDatabaseWriter(this.outputFilename)) {
+                for (DataPointReference dataPoint : this.dataPoints) {
+                    writeDataPoint(writer, names.get(dataPoint).join(), records.get(dataPoint).join());
+                }
+                writeMetadata(writer, metaData);
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+                System.out.println("Failed to write results to database.");
+            }
+        });
     }
 
-    private static class DataPointInternals {
-        private final String dpName;
-        private final Map<Integer, TimeSeries<Object>> values;
-
-        public DataPointInternals(Object dpName, Object values) { // FIXME raw type
-            this.dpName = dpName.toString();
-            this.values = (Map<Integer, TimeSeries<Object>>) values;
+    /**
+     * @param outputFilename the output file name of the simulation
+     * @param dataPointName the name of a data point
+     * @return the name of the columnar file of the data point, placed next to the output file
+     */
+    public static String columnarFilename(String outputFilename, String dataPointName) {
+        Path output = FileSystems.getDefault().getPath(outputFilename);
+        String baseName = output.getFileName().toString();
+        int extension = baseName.lastIndexOf('.');
+        if (extension > 0) {
+            baseName = baseName.substring(0, extension);
         }
+        return output.resolveSibling(String.format("%s.%s.columns", baseName, dataPointName)).toString();
     }
 
-    private void writeDataPoint(Object dpAsObject) { // FIXME raw type
-        DataPointInternals dp = (DataPointInternals) dpAsObject;
-        try (Connection conn = DriverManager.getConnection(String.format("jdbc:sqlite:%s", this.outputFilename))){
-            writeDataPointToDatabase(conn, dp);
-        } catch (SQLException ex) {
+    private void writeColumnarDataPoint(String name, DataPointRecord record) {
+        Path file = FileSystems.getDefault().getPath(columnarFilename(this.outputFilename, name));
+        try {
+            ColumnarResultWriter.write(file, record);
+        } catch (IOException|IllegalArgumentException ex) {
             ex.printStackTrace();
-            System.out.println(String.format("Failed to write datapoint %s.", dp.dpName));
+            System.out.println(String.format("Failed to write datapoint %s.", name));
         }
     }
 
-    private static void writeDataPointToDatabase(Connection conn, DataPointInternals dp)
-            throws SQLException {
-        boolean dataPointContainsDoubles = dataPointContainsDoubles(dp.values);
-        String valueDataType;
-        if (dataPointContainsDoubles) {
-            valueDataType = "DOUBLE PRECISION";
-        } else {
-            valueDataType = "VARCHAR(100)";
-        }
-        try (Statement stat = conn.createStatement()) {
-            stat.executeUpdate(String.format("drop table if exists %s;", dp.dpName));
-            stat.executeUpdate(String.format(
-                    "create table %s (timestamp TIMESTAMP, id INTEGER, value %s);", dp.dpName, valueDataType));
-            PreparedStatement prep = conn.prepareStatement(
-                    String.format("insert into %s values (?, ?, ?);", dp.dpName));
-            int numberTimeSteps = anyTimeSeries(dp.values).getIndex().size();
-            for (int i = 0; i < numberTimeSteps; i++) {
-                for (Integer j : dp.values.keySet()) {
-                    prep.setTimestamp(1, Timestamp.from(dp.values.get(j).getIndex().get(i).toInstant()));
-                    prep.setInt(2, j);
-                    if (dataPointContainsDoubles) {
-                        Double value = (Double) dp.values.get(j).getValues().get(i);
-                        prep.setDouble(3, value);
-                    } else {
-                        String value = dp.values.get(j).getValues().get(i).toString();
-                        prep.setString(3, value);
-                    }
-                    prep.addBatch();
-                }
-                conn.setAutoCommit(false);
-                prep.executeBatch();
-                conn.setAutoCommit(true);
-            }
+    private static void writeDataPoint(ResultDatabaseWriter writer, String name,
+                                       DataPointRecord record) {
+        try {
+            writer.writeDataPoint(name, record);
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            System.out.println(String.format("Failed to write datapoint %s.", name));
         }
     }
 
-    private static boolean dataPointContainsDoubles(Map<Integer, TimeSeries<Object>> dataPointValues) {
-        try { // FIXME ugly duck typing
-            Double value = (Double) anyTimeSeries(dataPointValues).getValues().get(0);
-            return true;
-        } catch (ClassCastException cce) {
-            return false;
+    private void writeMetadata(HashMap<String, String> metadata) {
+        try (ResultDatabaseWriter writer = new ResultDatabaseWriter(this.outputFilename)) {
+            writeMetadata(writer, metadata);
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            System.out.println("Failed to write results to database.");
         }
     }
 
-    private static TimeSeries<Object> anyTimeSeries(Map<Integer, TimeSeries<Object>> timeSeriesMap) {
-        int indexOfAnyTimeSeries = new ArrayList<>(timeSeriesMap.keySet()).get(0);
-        return timeSeriesMap.get(indexOfAnyTimeSeries);
-
-    }
-
-    private void writeMetadata(HashMap<String, String> metadata) {
-        try (Connection conn = DriverManager.getConnection(String.format("jdbc:sqlite:%s", this.outputFilename))) {
-            writeMetadata(conn, metadata);
+    private static void writeMetadata(ResultDatabaseWriter writer, HashMap<String, String> metadata) {
+        try {
+            writer.writeMetadata(metadata);
         } catch (SQLException ex) {
             ex.printStackTrace();
             System.out.println("Failed to write metadata to database.");
@@ -156,24 +254,4 @@ public class DataLogger {
         }
     }
 
-    private static void writeMetadata(Connection conn, HashMap<String, String> metadata) throws SQLException {
-        try (Statement stat = conn.createStatement()) {
-            stat.executeUpdate(String.format("drop table if exists %s;", METADATA_TABLE_NAME));
-            stat.executeUpdate(String.format(
-                    "create table %s (key VARCHAR(100), value VARCHAR(100));", METADATA_TABLE_NAME));
-            PreparedStatement prep = conn.prepareStatement(
-                    String.format("insert into %s values (?, ?);", METADATA_TABLE_NAME));
-
-            for (Map.Entry<String, String> entry : metadata.entrySet()) {
-                prep.setString(1, entry.getKey());
-                prep.setString(2, entry.getValue());
-                prep.addBatch();
-            }
-            conn.setAutoCommit(false);
-            prep.executeBatch();
-            conn.setAutoCommit(true);
-        }
-
-    }
-
 }
@@ -1,28 +1,39 @@
 package uk.ac.cam.eeci.energyagents;
 
-import org.javatuples.Pair;
-
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
  * A data point defines a time varying data source to be logged.
+ * <br><br>
+ * The record is held in one column per data point source. Double values are held in primitive
+ * columns and enum values as their ordinals; all other values are held as objects. Should a
+ * value not fit the type of the columns, all columns are converted to objects.
  *
  * @param <K> The type from which data shall be logged.
  * @param <T> Data type to be logged.
  */
 public class DataPoint<K, T> {
 
-    private final List<T> values;
-    private final List<ZonedDateTime> index;
+    private final static int INITIAL_CAPACITY = 16;
+    private final static int MAX_NUMBER_CATEGORIES = 256;
+
+    private enum Storage { UNDECIDED, DOUBLES, CATEGORIES, OBJECTS }
+
+    private final TimeIndex index;
     private final List<K> dataPointSources;
-    private final Map<K, Integer> indexOfDataPointSources;
-    private final Function<K, CompletableFuture<T>> valueSupplier;
+    private final List<Integer> ids;
+    private final BiFunction<K, ZonedDateTime, CompletableFuture<T>> valueSupplier;
     private final String name;
+    private Storage storage;
+    private int capacity;
+    private double[][] doubleColumns;
+    private byte[][] categoryColumns;
+    private List<?> categories;
+    private Object[][] objectColumns;
 
     /**
      *
@@ -31,65 +42,223 @@ public class DataPoint<K, T> {
      * @param valueSupplier a function through which the current value of the data point can be accessed.
      */
     public DataPoint(String name, Map<Integer, K> dataPointSources, Function<K, CompletableFuture<T>> valueSupplier) {
+        this(name, dataPointSources, valueSupplier, INITIAL_CAPACITY);
+    }
+
+    /**
+     *
+     * @param name name of the data point
+     * @param dataPointSources the data point sources, a map from unique ids to data point sources
+     * @param valueSupplier a function through which the current value of the data point can be accessed.
+     * @param expectedNumberTimeSteps the number of time steps to allocate memory for in advance
+     */
+    public DataPoint(String name, Map<Integer, K> dataPointSources, Function<K, CompletableFuture<T>> valueSupplier,
+                     int expectedNumberTimeSteps) {
+        this(name, dataPointSources, (source, time) -> valueSupplier.apply(source), expectedNumberTimeSteps);
+    }
+
+    /**
+     *
+     * @param name name of the data point
+     * @param dataPointSources the data point sources, a map from unique ids to data point sources
+     * @param valueSupplier a function through which the value of the data point at a given time can be
+     *                      accessed; the time is null when unknown
+     * @param expectedNumberTimeSteps the number of time steps to allocate memory for in advance
+     */
+    public DataPoint(String name, Map<Integer, K> dataPointSources,
+                     BiFunction<K, ZonedDateTime, CompletableFuture<T>> valueSupplier, int expectedNumberTimeSteps) {
         this.name = name;
-        this.values = new ArrayList<>();
-        this.index = new ArrayList<>();
+        this.index = new TimeIndex();
         this.valueSupplier = valueSupplier;
-        this.dataPointSources = new ArrayList<>(dataPointSources.values());
-        this.indexOfDataPointSources = dataPointSources.entrySet()
-                .stream()
-                .collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey));
+        this.dataPointSources = new ArrayList<>(dataPointSources.size());
+        this.ids = new ArrayList<>(dataPointSources.size());
+        for (Map.Entry<Integer, K> entry : dataPointSources.entrySet()) {
+            this.ids.add(entry.getKey());
+            this.dataPointSources.add(entry.getValue());
+        }
+        this.storage = Storage.UNDECIDED;
+        this.capacity = Math.max(1, expectedNumberTimeSteps);
     }
 
     public String getName() {
         return this.name;
     }
 
+    /**
+     * @return the ids of all data point sources, in the order of {@link #getCurrentValues()}
+     */
+    public List<Integer> getIds() {
+        return new ArrayList<>(this.ids);
+    }
+
+    /**
+     * Records the current values of all data point sources.
+     *
+     * @param currentTime the current time
+     */
     public CompletableFuture<Void> step(ZonedDateTime currentTime) {
-        Map<K, T> values = new ConcurrentHashMap<>();
-        CompletableFuture<Void>[] updates = new CompletableFuture[this.dataPointSources.size()];
-        for (int i = 0; i < this.dataPointSources.size(); ++i) {
-            updates[i] = this.getValue(this.dataPointSources.get(i))
-                    .thenAccept(pair -> values.put(pair.getValue0(), pair.getValue1()));
-        }
-        return CompletableFuture.allOf(updates)
-                .thenRun(() -> this.values.addAll(this.mapToSortedList(values)))
+        return this.collectCurrentValues(currentTime)
+                .thenAccept(this::record)
                 .thenRun(() -> this.index.add(currentTime));
     }
 
+    /**
+     * Determines the current values of all data point sources without recording them.
+     *
+     * @return the current values, in the order of {@link #getIds()}
+     */
+    public CompletableFuture<List<T>> getCurrentValues() {
+        return this.getCurrentValues(null);
+    }
+
+    /**
+     * Determines the current values of all data point sources without recording them.
+     *
+     * @param currentTime the current time; null if unknown
+     * @return the current values, in the order of {@link #getIds()}
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<List<T>> getCurrentValues(ZonedDateTime currentTime) {
+        return this.collectCurrentValues(currentTime).thenApply(values -> (List<T>) Arrays.asList(values));
+    }
+
+    /**
+     *
+     * @return the complete record of historic values of the data point, in one column per data
+     *         point source
+     */
+    public DataPointRecord getColumnarRecord() {
+        TimeIndex index = new TimeIndex(this.index);
+        switch (this.storage) {
+            case CATEGORIES:
+                return DataPointRecord.ofCategories(this.ids, index, this.categoryColumns, this.categories);
+            case OBJECTS:
+                return DataPointRecord.ofObjects(this.ids, index, this.objectColumns);
+            case DOUBLES:
+                return DataPointRecord.ofDoubles(this.ids, index, this.doubleColumns);
+            default:
+                return DataPointRecord.ofDoubles(this.ids, index, new double[this.ids.size()][0]);
+        }
+    }
+
     /**
      *
      * @return the complete record of historic values of the data point
      */
+    @SuppressWarnings("unchecked")
     public Map<Integer, TimeSeries<T>> getRecord(){
-        List<TimeSeries<T>> timeSeries = new ArrayList<>();
-        for (int i = 0; i < this.dataPointSources.size(); i++) {
-            timeSeries.add(i, new TimeSeries<>());
-        }
-        for (int i=0; i < this.values.size(); i++) {
-            int listIndex = i % this.dataPointSources.size();
-            int timeStepIndex = Math.floorDiv(i, this.dataPointSources.size());
-            timeSeries.get(listIndex).add(this.index.get(timeStepIndex), this.values.get(i));
-        }
+        DataPointRecord record = this.getColumnarRecord();
         Map<Integer, TimeSeries<T>> timeSeriesMap = new HashMap<>();
-        for (K source : this.dataPointSources) {
-            int internalIndex = this.dataPointSources.indexOf(source);
-            int externalIndex = this.indexOfDataPointSources.get(source);
-            timeSeriesMap.put(externalIndex, timeSeries.get(internalIndex));
+        for (int column = 0; column < this.ids.size(); column++) {
+            List<T> values = new ArrayList<>((List<T>) record.getColumn(column));
+            timeSeriesMap.put(this.ids.get(column), new TimeSeries<>(new TimeIndex(this.index), values));
         }
         return timeSeriesMap;
     }
 
-    private CompletableFuture<Pair<K, T>> getValue(K dataPointSource) {
-        return this.valueSupplier.apply(dataPointSource).thenApplyAsync(temp -> new Pair<>(dataPointSource, temp));
+    private CompletableFuture<Object[]> collectCurrentValues(ZonedDateTime currentTime) {
+        Object[] values = new Object[this.dataPointSources.size()];
+        CompletableFuture<Void>[] updates = new CompletableFuture[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            final int position = i;
+            updates[i] = this.valueSupplier.apply(this.dataPointSources.get(i), currentTime)
+                    .thenAccept(value -> values[position] = value);
+        }
+        return CompletableFuture.allOf(updates).thenApply(v -> values);
+    }
+
+    private void record(Object[] values) {
+        int timeStep = this.index.size();
+        if (this.storage == Storage.UNDECIDED) {
+            this.allocateColumns(values);
+        }
+        if (timeStep == this.capacity) {
+            this.growColumns();
+        }
+        if (this.storage == Storage.DOUBLES) {
+            for (int i = 0; i < values.length; i++) {
+                if (!(values[i] instanceof Double)) {
+                    this.convertToObjectColumns(timeStep);
+                    break;
+                }
+                this.doubleColumns[i][timeStep] = (Double) values[i];
+            }
+        } else if (this.storage == Storage.CATEGORIES) {
+            for (int i = 0; i < values.length; i++) {
+                if (!this.isCategory(values[i])) {
+                    this.convertToObjectColumns(timeStep);
+                    break;
+                }
+                this.categoryColumns[i][timeStep] = (byte) ((Enum<?>) values[i]).ordinal();
+            }
+        }
+        if (this.storage == Storage.OBJECTS) {
+            for (int i = 0; i < values.length; i++) {
+                this.objectColumns[i][timeStep] = values[i];
+            }
+        }
+    }
+
+    private void allocateColumns(Object[] values) {
+        Object anyValue = values.length == 0 ? null : values[0];
+        if (anyValue instanceof Double) {
+            this.storage = Storage.DOUBLES;
+            this.doubleColumns = new double[values.length][this.capacity];
+        } else if (anyValue instanceof Enum
+                && ((Enum<?>) anyValue).getDeclaringClass().getEnumConstants().length <= MAX_NUMBER_CATEGORIES) {
+            this.storage = Storage.CATEGORIES;
+            this.categories = Arrays.asList(((Enum<?>) anyValue).getDeclaringClass().getEnumConstants());
+            this.categoryColumns = new byte[values.length][this.capacity];
+        } else {
+            this.storage = Storage.OBJECTS;
+            this.objectColumns = new Object[values.length][this.capacity];
+        }
+    }
+
+    private boolean isCategory(Object value) {
+        return value instanceof Enum
+                && ((Enum<?>) value).getDeclaringClass() == ((Enum<?>) this.categories.get(0)).getDeclaringClass();
+    }
+
+    private void growColumns() {
+        // columns are replaced rather than modified, as exported records share them
+        this.capacity *= 2;
+        switch (this.storage) {
+            case DOUBLES:
+                double[][] doubleColumns = new double[this.doubleColumns.length][];
+                for (int i = 0; i < doubleColumns.length; i++) {
+                    doubleColumns[i] = Arrays.copyOf(this.doubleColumns[i], this.capacity);
+                }
+                this.doubleColumns = doubleColumns;
+                break;
+            case CATEGORIES:
+                byte[][] categoryColumns = new byte[this.categoryColumns.length][];
+                for (int i = 0; i < categoryColumns.length; i++) {
+                    categoryColumns[i] = Arrays.copyOf(this.categoryColumns[i], this.capacity);
+                }
+                this.categoryColumns = categoryColumns;
+                break;
+            default:
+                Object[][] objectColumns = new Object[this.objectColumns.length][];
+                for (int i = 0; i < objectColumns.length; i++) {
+                    objectColumns[i] = Arrays.copyOf(this.objectColumns[i], this.capacity);
+                }
+                this.objectColumns = objectColumns;
+        }
     }
 
-    private List<T> mapToSortedList(Map<K, T> valueMap) {
-        List<T> values = new ArrayList<>(this.dataPointSources.size());
-        for (K dataPointSource : this.dataPointSources) {
-            values.add(valueMap.get(dataPointSource));
+    private void convertToObjectColumns(int numberTimeSteps) {
+        DataPointRecord record = this.getColumnarRecord();
+        this.objectColumns = new Object[this.dataPointSources.size()][this.capacity];
+        for (int i = 0; i < this.objectColumns.length; i++) {
+            for (int t = 0; t < numberTimeSteps; t++) {
+                this.objectColumns[i][t] = record.getValue(i, t);
+            }
         }
-        return values;
+        this.storage = Storage.OBJECTS;
+        this.doubleColumns = null;
+        this.categoryColumns = null;
+        this.categories = null;
     }
 
 }
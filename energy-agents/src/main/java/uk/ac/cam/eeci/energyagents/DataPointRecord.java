@@ -0,0 +1,212 @@
+package uk.ac.cam.eeci.energyagents;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The complete record of a data point, in one column per data point source.
+ * <br><br>
+ * Numbers are held in primitive columns and enum values as their ordinals, so neither has to be
+ * boxed when the record is exported. Values of any other type are held as objects. The columns
+ * share a single time index.
+ */
+public final class DataPointRecord {
+
+    /**
+     * The way values are held in the columns of a record.
+     */
+    public enum ValueType {
+        /** Double values, see {@link #getDouble(int, int)}. */
+        DOUBLE,
+        /** Enum values, see {@link #getCategoryCode(int, int)}. */
+        CATEGORY,
+        /** Values of any other type, see {@link #getValue(int, int)}. */
+        OBJECT
+    }
+
+    private final List<Integer> ids;
+    private final TimeIndex index;
+    private final ValueType valueType;
+    private final double[][] doubles;
+    private final byte[][] categoryCodes;
+    private final List<?> categories;
+    private final Object[][] objects;
+
+    private DataPointRecord(List<Integer> ids, TimeIndex index, ValueType valueType, double[][] doubles,
+                            byte[][] categoryCodes, List<?> categories, Object[][] objects) {
+        this.ids = Collections.unmodifiableList(ids);
+        this.index = index;
+        this.valueType = valueType;
+        this.doubles = doubles;
+        this.categoryCodes = categoryCodes;
+        this.categories = categories;
+        this.objects = objects;
+    }
+
+    /**
+     * @param ids the ids of the data point sources, one for each column
+     * @param index the time index, one time stamp for each row
+     * @param columns the values of each data point source; may be longer than the index
+     */
+    static DataPointRecord ofDoubles(List<Integer> ids, TimeIndex index, double[][] columns) {
+        return new DataPointRecord(ids, index, ValueType.DOUBLE, columns, null, Collections.emptyList(), null);
+    }
+
+    /**
+     * @param ids the ids of the data point sources, one for each column
+     * @param index the time index, one time stamp for each row
+     * @param columns the unsigned ordinal of each value of each data point source; may be longer
+     *                than the index
+     * @param categories the enum constants, in the order of their ordinals
+     */
+    static DataPointRecord ofCategories(List<Integer> ids, TimeIndex index, byte[][] columns, List<?> categories) {
+        return new DataPointRecord(ids, index, ValueType.CATEGORY, null, columns, categories, null);
+    }
+
+    /**
+     * @param ids the ids of the data point sources, one for each column
+     * @param index the time index, one time stamp for each row
+     * @param columns the values of each data point source; may be longer than the index
+     */
+    static DataPointRecord ofObjects(List<Integer> ids, TimeIndex index, Object[][] columns) {
+        return new DataPointRecord(ids, index, ValueType.OBJECT, null, null, Collections.emptyList(), columns);
+    }
+
+    /**
+     * @return the ids of the data point sources, in the order of the columns
+     */
+    public List<Integer> getIds() {
+        return this.ids;
+    }
+
+    /**
+     * @return the time index shared by all columns
+     */
+    public TimeIndex getTimeIndex() {
+        return this.index;
+    }
+
+    /**
+     * @return the number of time steps in the record
+     */
+    public int size() {
+        return this.index.size();
+    }
+
+    /**
+     * @return the way values are held in the columns of this record
+     */
+    public ValueType getValueType() {
+        return this.valueType;
+    }
+
+    /**
+     * @param column the position of the data point source in {@link #getIds()}
+     * @param timeStep the position of the time step in {@link #getTimeIndex()}
+     * @return the value
+     * @throws IllegalStateException if the record does not contain doubles
+     */
+    public double getDouble(int column, int timeStep) {
+        this.checkTimeStep(timeStep);
+        if (this.valueType != ValueType.DOUBLE) {
+            throw new IllegalStateException(String.format("Record contains values of type %s.", this.valueType));
+        }
+        return this.doubles[column][timeStep];
+    }
+
+    /**
+     * @param column the position of the data point source in {@link #getIds()}
+     * @param timeStep the position of the time step in {@link #getTimeIndex()}
+     * @return the position of the value in {@link #getCategories()}
+     * @throws IllegalStateException if the record does not contain categories
+     */
+    public int getCategoryCode(int column, int timeStep) {
+        this.checkTimeStep(timeStep);
+        if (this.valueType != ValueType.CATEGORY) {
+            throw new IllegalStateException(String.format("Record contains values of type %s.", this.valueType));
+        }
+        return Byte.toUnsignedInt(this.categoryCodes[column][timeStep]);
+    }
+
+    /**
+     * @return all possible values of a record of categories; empty for other records
+     */
+    public List<?> getCategories() {
+        return this.categories;
+    }
+
+    /**
+     * Returns any value, independent of the way it is held.
+     * <br><br>
+     * Boxes double values; prefer the accessor of the {@link ValueType} of the record.
+     *
+     * @param column the position of the data point source in {@link #getIds()}
+     * @param timeStep the position of the time step in {@link #getTimeIndex()}
+     * @return the value
+     */
+    public Object getValue(int column, int timeStep) {
+        switch (this.valueType) {
+            case DOUBLE:
+                return this.getDouble(column, timeStep);
+            case CATEGORY:
+                return this.categories.get(this.getCategoryCode(column, timeStep));
+            default:
+                this.checkTimeStep(timeStep);
+                return this.objects[column][timeStep];
+        }
+    }
+
+    /**
+     * @param column the position of the data point source in {@link #getIds()}
+     * @return all values of the column, as a list view on the record
+     */
+    List<Object> getColumn(int column) {
+        return new AbstractList<Object>() {
+            @Override
+            public Object get(int timeStep) {
+                return DataPointRecord.this.getValue(column, timeStep);
+            }
+
+            @Override
+            public int size() {
+                return DataPointRecord.this.size();
+            }
+        };
+    }
+
+    private void checkTimeStep(int timeStep) {
+        if (timeStep < 0 || timeStep >= this.size()) {
+            throw new IndexOutOfBoundsException(String.format("Index %d of %d.", timeStep, this.size()));
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof DataPointRecord))
+            return false;
+        if (other == this)
+            return true;
+
+        DataPointRecord rhs = (DataPointRecord) other;
+        if (!this.ids.equals(rhs.ids) || !this.index.equals(rhs.index)) {
+            return false;
+        }
+        for (int column = 0; column < this.ids.size(); column++) {
+            if (!this.getColumn(column).equals(rhs.getColumn(column))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        Object[] columns = new Object[this.ids.size()];
+        for (int column = 0; column < columns.length; column++) {
+            columns[column] = this.getColumn(column);
+        }
+        return this.ids.hashCode() ^ this.index.hashCode() ^ Arrays.deepHashCode(columns);
+    }
+}
@@ -3,6 +3,7 @@ package uk.ac.cam.eeci.energyagents;
 import uk.ac.cam.eeci.framework.Reference;
 
 import java.time.ZonedDateTime;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
@@ -22,8 +23,29 @@ public class DataPointReference<K, T> extends Reference<DataPoint<K, T>> {
                 .thenRunAsync(() ->{}, pool.currentExecutor());
     }
 
+    public CompletableFuture<List<Integer>> getIds() {
+        return CompletableFuture.supplyAsync(this.referent::getIds, this.executor)
+                .thenApplyAsync(i -> i, pool.currentExecutor());
+    }
+
+    public CompletableFuture<List<T>> getCurrentValues() {
+        return CompletableFuture.completedFuture(null).thenComposeAsync((p) -> this.referent.getCurrentValues(), this.executor)
+                .thenApplyAsync(i -> i, pool.currentExecutor());
+    }
+
+    public CompletableFuture<List<T>> getCurrentValues(ZonedDateTime currentTime) {
+        return CompletableFuture.completedFuture(null)
+                .thenComposeAsync((p) -> this.referent.getCurrentValues(currentTime), this.executor)
+                .thenApplyAsync(i -> i, pool.currentExecutor());
+    }
+
     public CompletableFuture<Map<Integer, TimeSeries<T>>> getRecord() {
         return CompletableFuture.supplyAsync(this.referent::getRecord, this.executor)
                 .thenApplyAsync(i -> i, pool.currentExecutor());
     }
+
+    public CompletableFuture<DataPointRecord> getColumnarRecord() {
+        return CompletableFuture.supplyAsync(this.referent::getColumnarRecord, this.executor)
+                .thenApplyAsync(i -> i, pool.currentExecutor());
+    }
 }
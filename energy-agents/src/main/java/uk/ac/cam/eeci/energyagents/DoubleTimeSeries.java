@@ -0,0 +1,86 @@
+package uk.ac.cam.eeci.energyagents;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+/**
+ * A time series of double values.
+ * <br><br>
+ * Values are stored in a primitive array, and a regular time index is not stored at all, see
+ * {@link TimeIndex}. Hence, each entry takes up 8 bytes.
+ */
+public class DoubleTimeSeries extends AbstractTimeSeries {
+
+    private final static int INITIAL_CAPACITY = 16;
+
+    private double[] values;
+
+    public DoubleTimeSeries() {
+        super(new TimeIndex());
+        this.values = new double[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Creates a time series with a regular time index.
+     *
+     * @param start the time stamp of the first value
+     * @param timeStepSize the constant time step size
+     * @param values all values of the time series
+     */
+    public DoubleTimeSeries(ZonedDateTime start, Duration timeStepSize, double[] values) {
+        super(new TimeIndex(start, timeStepSize, values.length));
+        this.values = values.clone();
+    }
+
+    /**
+     * Adds a new value to the end of the time series.
+     *
+     * @param timeStamp the time stamp of the new entry
+     * @param value the value of the new entry
+     */
+    public void add(ZonedDateTime timeStamp, double value) {
+        int size = this.size();
+        if (size == this.values.length) {
+            this.values = Arrays.copyOf(this.values, Math.max(INITIAL_CAPACITY, size * 2));
+        }
+        this.values[size] = value;
+        this.index.add(timeStamp);
+    }
+
+    /**
+     *
+     * @param i the position of the value
+     * @return the value at the given position
+     */
+    public double get(int i) {
+        if (i >= this.size()) {
+            throw new IndexOutOfBoundsException(String.format("Index %d of %d.", i, this.size()));
+        }
+        return this.values[i];
+    }
+
+    /**
+     *
+     * @return a copy of all values in the time series
+     */
+    public double[] getValues() {
+        return Arrays.copyOf(this.values, this.size());
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof DoubleTimeSeries))
+            return false;
+        if (other == this)
+            return true;
+
+        DoubleTimeSeries rhs = (DoubleTimeSeries) other;
+        return this.index.equals(rhs.index) & Arrays.equals(this.getValues(), rhs.getValues());
+    }
+
+    @Override
+    public int hashCode() {
+        return this.index.hashCode() ^ Arrays.hashCode(this.getValues());
+    }
+}
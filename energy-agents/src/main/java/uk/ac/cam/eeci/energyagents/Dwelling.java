@@ -2,12 +2,7 @@ package uk.ac.cam.eeci.energyagents;
 
 import java.time.Duration;
 import java.time.ZonedDateTime;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Function;
 
 /**
  * A simple energy model of a dwelling.
@@ -19,43 +14,30 @@ import java.util.function.Function;
  * supposed to be heated. The dwelling consists of only one storey. Ventilation and infiltration
  * is limited to constant natural ventilation, and heat gains are limited to metabolic heat
  * gains.
+ * <br><br>
+ * The thermal state and parameters are stored in a slot of a {@link DwellingBlock}, which may be
+ * shared by many dwellings. The block also defines the discretisation of the model in time, see
+ * {@link DwellingBlock.Integrator}.
+ * <br><br>
+ * Occupants push changes of their presence and activity to the dwelling, which keeps count of
+ * them. Hence, a time step does not require asking the occupants for anything. Neither does it
+ * require sending a message to the heating control strategy, if the strategy is a
+ * {@link SynchronousHeatingControlStrategy}.
  */
 public class Dwelling {
 
-    // Nomenclature of internal variables and parameters derived from the ISO 13790 standard
-    // and not self explanatory. See the standard for further details.
-
-    private static final double HEAT_TRANSMISSION_COEFFICIENT_AIR_TO_SURFACE = 3.45; // ISO 13790 [W/(m^2*K)]
-    private static final double HEAT_TRANSMISSION_COEFFICIENT_MASS_TO_SURFACE = 9.1; // ISO 13790 [W/(m^2*K)]
-    private static final double SURFACE_TO_FLOOR_RATIO = 4.5; // ISO 13790 [-]
-    private static final double HEAT_CAPACITY_AIR = 1200; // ISO 13790 [J/(m3·K)]
-    private static final double TIME_FRACTION_NATURAL_VENTILATION = 1; // constant natural ventilation
-    private static final double SOLAR_HEAT_GAIN = 0.0; // solar gain currently not considered
-
     private final HeatingControlStrategyReference heatingControlStrategy;
+    private final SynchronousHeatingControlStrategy synchronousHeatingControlStrategy; // null if not synchronous
     private final EnvironmentReference environmentReference;
-    private final Set<PersonReference> peopleInDwelling;
     private final Duration timeStepSize;
+    private final ZonedDateTime initialTime;
+    private final DwellingBlock block;
+    private final int slot;
 
-    private final double A_f;
-    private final double A_t;
-    private final double C_m;
-    private final double A_m;
-    private final double H_tr_w;
-    private final double H_tr_ms;
-    private final double H_tr_em;
-    private final double H_tr_is;
-    private final double H_tr_ve;
-    private final double H_tr_1;
-    private final double H_tr_2;
-    private final double H_tr_3;
-    private final double maximumHeatingPower;
-
-    private double currentMassTemperature;
-    private double currentAirTemperature;
-    private double currentMetabolicHeatGain;
-    private double currentThermalPower;
-    private ZonedDateTime currentTime;
+    private int stepsTaken;
+    private int numberPeopleAtHome;
+    private int numberPeopleAsleep;
+    private double metabolicHeatGain;
 
     /**
      *
@@ -86,169 +68,185 @@ public class Dwelling {
                     ZonedDateTime initialTime, Duration timeStepSize,
                     HeatingControlStrategyReference controlStrategyReference,
                     EnvironmentReference environmentReference) {
-        assert maximumHeatingPower >= 0;
-        this.currentMassTemperature = initialDwellingTemperature;
-        this.currentAirTemperature = initialDwellingTemperature;
+        this(thermalMassCapacity, thermalMassArea, floorArea, roomHeight, windowToWallRatio, uWall, uRoof, uFloor,
+                uWindow, transmissionAdjustmentGround, naturalVentilationRate, maximumHeatingPower,
+                initialDwellingTemperature, initialTime, timeStepSize, controlStrategyReference, environmentReference,
+                new DwellingBlock(1));
+    }
+
+    /**
+     *
+     * @param block the block in which the thermal state and parameters of the dwelling are stored
+     * @see #Dwelling(double, double, double, double, double, double, double, double, double, double, double,
+     *      double, double, ZonedDateTime, Duration, HeatingControlStrategyReference, EnvironmentReference)
+     */
+    public Dwelling(double thermalMassCapacity, double thermalMassArea,
+                    double floorArea, double roomHeight, double windowToWallRatio,
+                    double uWall, double uRoof, double uFloor, double uWindow,
+                    double transmissionAdjustmentGround, double naturalVentilationRate,
+                    double maximumHeatingPower, double initialDwellingTemperature,
+                    ZonedDateTime initialTime, Duration timeStepSize,
+                    HeatingControlStrategyReference controlStrategyReference,
+                    EnvironmentReference environmentReference, DwellingBlock block) {
         // FIXME The initial current air temperature is wrong. To determine it one would need to know the
         // environmental conditions from the environment reference. The simulation framework prohibits
         // that at the moment though.
-        this.currentThermalPower = 0;
+        this.block = block;
+        this.slot = block.add(thermalMassCapacity, thermalMassArea, floorArea, roomHeight, windowToWallRatio,
+                uWall, uRoof, uFloor, uWindow, transmissionAdjustmentGround, naturalVentilationRate,
+                maximumHeatingPower, initialDwellingTemperature, timeStepSize);
         this.heatingControlStrategy = controlStrategyReference;
+        if (controlStrategyReference != null
+                && controlStrategyReference.referent instanceof SynchronousHeatingControlStrategy) {
+            this.synchronousHeatingControlStrategy = (SynchronousHeatingControlStrategy) controlStrategyReference.referent;
+        } else {
+            this.synchronousHeatingControlStrategy = null;
+        }
         this.timeStepSize = timeStepSize;
-        this.currentTime = initialTime;
-        this.peopleInDwelling = new HashSet<>();
+        this.initialTime = initialTime;
+        this.stepsTaken = 0;
+        this.numberPeopleAtHome = 0;
+        this.numberPeopleAsleep = 0;
+        this.metabolicHeatGain = 0.0;
         this.environmentReference = environmentReference;
-        this.maximumHeatingPower = maximumHeatingPower;
-
-        double windowAndWallArea = roomHeight * Math.sqrt(floorArea) * 4;
-        double windowArea = windowAndWallArea * windowToWallRatio;
-        double wallArea = windowAndWallArea - windowArea;
-        double A_op = wallArea + 2 * floorArea;
-        double U_op = (uWall * wallArea + uRoof * floorArea + transmissionAdjustmentGround * uFloor * floorArea) / A_op;
-        double H_tr_op = A_op * U_op;
-
-        this.A_f = floorArea;
-        this.A_t = SURFACE_TO_FLOOR_RATIO * this.A_f;
-        this.A_m = thermalMassArea;
-        this.C_m = thermalMassCapacity;
-        this.H_tr_w = windowArea * uWindow;
-        this.H_tr_is = HEAT_TRANSMISSION_COEFFICIENT_AIR_TO_SURFACE * this.A_t;
-        double q_ve = (0.04 + 0.06 * naturalVentilationRate) * floorArea / 1000;
-        this.H_tr_ve = HEAT_CAPACITY_AIR * TIME_FRACTION_NATURAL_VENTILATION * q_ve;
-        this.H_tr_ms = HEAT_TRANSMISSION_COEFFICIENT_MASS_TO_SURFACE * A_m;
-        this.H_tr_em = 1 / ((1/H_tr_op) - (1/this.H_tr_ms));
-        this.H_tr_1 = 1 / ((1/this.H_tr_ve) + (1/this.H_tr_is));
-        this.H_tr_2 = H_tr_1 + this.H_tr_w;
-        this.H_tr_3 = 1 / ((1/H_tr_2) + (1/this.H_tr_ms));
     }
 
     /**
-     * Performs dwelling simulation for the next time step.
+     * Performs dwelling simulation for the time step following the previous one.
      */
     public CompletableFuture<Void> step() {
-        CompletableFuture<Double>[] steps = new CompletableFuture[this.peopleInDwelling.size()];
-        int i = 0;
-        for (PersonReference person : this.peopleInDwelling) {
-            steps[i] = person.getCurrentMetabolicRate();
-            i++;
-        }
-        return CompletableFuture.allOf(steps).thenAccept(v ->
-                    this.currentMetabolicHeatGain = Arrays.stream(steps)
-                            .map(CompletableFuture::join)
-                            .mapToDouble(Double::doubleValue).sum())
-                .thenCombine(this.environmentReference.getCurrentTemperature(), (v, temp) -> temp)
-                .thenAcceptBoth(this.heatingControlStrategy.heatingSetPoint(this.currentTime, this.peopleInDwelling),
-                (temp, setPoint) -> this.step(setPoint, temp));
-    }
-
-    private void step(Optional<Double> heatingSetPoint, double externalTemperature) {
-        double internalHeatGain = this.currentMetabolicHeatGain;
-        double solarHeatGain = SOLAR_HEAT_GAIN;
-        Function<Double, Double> nextMassTemperature = thermalPower ->
-                this.nextTemperature(externalTemperature, thermalPower, internalHeatGain, solarHeatGain);
-        double noPower = 0.0;
-        double nextMassTemperatureNoPower = nextMassTemperature.apply(noPower);
-        double nextAirTemperatureNoPower = this.massToAirTemperature(nextMassTemperatureNoPower, externalTemperature,
-                noPower, internalHeatGain, solarHeatGain);
-        if (!heatingSetPoint.isPresent() || nextAirTemperatureNoPower >= heatingSetPoint.get()) {
-            this.currentMassTemperature = nextMassTemperatureNoPower;
-            this.currentThermalPower = noPower;
-            this.currentAirTemperature = nextAirTemperatureNoPower;
-        }
-        else {
-            double tenWattPowerSquareMeterPower = 10 * this.A_f;
-            double nextMassTemperaturePower10 = nextMassTemperature.apply(tenWattPowerSquareMeterPower);
-            double nextAirTemperaturePower10 = this.massToAirTemperature(nextMassTemperaturePower10, externalTemperature,
-                    tenWattPowerSquareMeterPower, internalHeatGain, solarHeatGain);
-            double unrestrictedPower = (tenWattPowerSquareMeterPower *
-                    (heatingSetPoint.get() - nextAirTemperatureNoPower) /
-                    (nextAirTemperaturePower10 - nextAirTemperatureNoPower));
-            double thermalPower;
-            if (Math.abs(unrestrictedPower) <= Math.abs(this.maximumHeatingPower)) {
-                thermalPower = unrestrictedPower;
-            }
-            else {
-                thermalPower = this.maximumHeatingPower;
-            }
-            this.currentMassTemperature = nextMassTemperature.apply(thermalPower);
-            this.currentThermalPower = thermalPower;
-            this.currentAirTemperature = this.massToAirTemperature(this.currentMassTemperature, externalTemperature,
-                    thermalPower, internalHeatGain, solarHeatGain);
-        }
-        this.currentTime = this.currentTime.plus(this.timeStepSize);
+        ZonedDateTime time = this.initialTime.plus(this.timeStepSize.multipliedBy(this.stepsTaken));
+        return this.step(new StepContext(this.stepsTaken, time));
     }
 
-    public double getCurrentAirTemperature() {
-        return this.currentAirTemperature;
+    /**
+     * Performs dwelling simulation for one time step.
+     *
+     * @param context the current time step
+     */
+    public CompletableFuture<Void> step(StepContext context) {
+        return this.prepareStep(context).thenRun(() -> this.block.step(this.slot, this.slot + 1));
     }
 
-    public double getCurrentThermalPower(){
-        return this.currentThermalPower;
+    /**
+     * Gathers the inputs of the time step and hands them to the block, without performing
+     * the thermal simulation itself. The block can then step many dwellings at once.
+     */
+    CompletableFuture<Void> prepareStep(StepContext context) {
+        return this.prepareStep(context, this.environmentReference.getCurrentTemperature());
     }
 
     /**
-     * Whenever a person wants to enter the dwelling.
-     *
-     * @param person the person to enter
+     * Like {@link #prepareStep(StepContext)}, but with an external temperature that is not
+     * requested from the environment.
      */
-    public void enter(PersonReference person) {
-        this.peopleInDwelling.add(person);
+    CompletableFuture<Void> prepareStep(StepContext context, CompletableFuture<Double> externalTemperature) {
+        return this.prepareStep(context, externalTemperature, this.numberPeopleAtHome, this.numberPeopleAsleep,
+                this.metabolicHeatGain);
     }
 
     /**
-     * Whenever a person wants to leave the dwelling.
+     * Like {@link #prepareStep(StepContext)}, but with an occupancy that has been generated ahead of
+     * time instead of the one pushed by the occupants.
      *
-     * @param person the person to leave
+     * @param numberPeopleAtHome the number of people in the dwelling
+     * @param numberPeopleAsleep the number of people asleep in the dwelling
+     * @param metabolicHeatGain the sum of the metabolic rates of all people in the dwelling [W]
      */
-    public void leave(PersonReference person) {
-        this.peopleInDwelling.remove(person);
+    CompletableFuture<Void> prepareStep(StepContext context, int numberPeopleAtHome, int numberPeopleAsleep,
+                                        double metabolicHeatGain) {
+        return this.prepareStep(context, this.environmentReference.getCurrentTemperature(), numberPeopleAtHome,
+                numberPeopleAsleep, metabolicHeatGain);
     }
 
-    private double massToAirTemperature(double massTemperature, double externalTemperature,
-                                        double thermalPower, double internalGain, double solarGain) {
-        double phi_ia = heatGainOnAirNode(internalGain);
-        double phi_st = heatGainOnSurfaceNode(internalGain, solarGain);
+    private CompletableFuture<Void> prepareStep(StepContext context, CompletableFuture<Double> externalTemperature,
+                                                int numberPeopleAtHome, int numberPeopleAsleep,
+                                                double metabolicHeatGain) {
+        this.stepsTaken = context.getStepIndex() + 1;
+        if (this.synchronousHeatingControlStrategy != null) {
+            double setPoint = this.synchronousHeatingControlStrategy.currentHeatingSetPoint(context,
+                    numberPeopleAtHome, numberPeopleAsleep);
+            return externalTemperature.thenAccept(temp -> this.block.setInputs(this.slot, temp, metabolicHeatGain,
+                    setPoint));
+        }
+        return externalTemperature
+                .thenAcceptBoth(
+                        this.heatingControlStrategy.heatingSetPoint(context, numberPeopleAtHome, numberPeopleAsleep),
+                        (temp, setPoint) -> this.block.setInputs(this.slot, temp, metabolicHeatGain,
+                                setPoint.orElse(Double.NaN)));
+    }
 
-        double theta_m = massTemperature;
-        double theta_e = externalTemperature;
-        double theta_sup = externalTemperature;
-        double theta_s_nom = this.H_tr_ms * theta_m + phi_st + H_tr_w * theta_e + H_tr_1 * (theta_sup + (phi_ia + thermalPower) / this.H_tr_ve);
-        double theta_s_denom = this.H_tr_ms + this.H_tr_w + this.H_tr_1;
-        double theta_s = theta_s_nom / theta_s_denom;
-        double theta_a_nom = this.H_tr_is * theta_s + this.H_tr_ve * theta_sup + phi_ia + thermalPower;
-        double theta_a_denom = this.H_tr_is + this.H_tr_ve;
-        return theta_a_nom / theta_a_denom;
+    /**
+     * Like {@link #prepareStep(StepContext)}, but with a heating set point that has been determined
+     * ahead of time, and with an occupancy that has been generated ahead of time.
+     *
+     * @param metabolicHeatGain the sum of the metabolic rates of all people in the dwelling [W]
+     * @param heatingSetPoint the heating set point [℃]; NaN if heating is off
+     */
+    CompletableFuture<Void> prepareStep(StepContext context, double metabolicHeatGain, double heatingSetPoint) {
+        this.stepsTaken = context.getStepIndex() + 1;
+        return this.environmentReference.getCurrentTemperature()
+                .thenAccept(temp -> this.block.setInputs(this.slot, temp, metabolicHeatGain, heatingSetPoint));
     }
 
-    private double heatGainOnAirNode(double internalGain){
-        return 0.5 * internalGain;
+    /**
+     * @return the heating control strategy of the dwelling; null if there is none
+     */
+    HeatingControlStrategy getHeatingControlStrategy() {
+        return this.heatingControlStrategy == null ? null : this.heatingControlStrategy.referent;
     }
 
-    private double heatGainOnSurfaceNode(double internalGain, double solarGain) {
-        return (1 - this.A_m / this.A_t - this.H_tr_w / (9.1 * this.A_t)) * (0.5 * internalGain + solarGain);
+    DwellingBlock getBlock() {
+        return this.block;
     }
 
-    private double heatGainOnMassNode(double internalGain, double solarGain) {
-        return this.A_m / this.A_t * (0.5 * internalGain + solarGain);
+    int getSlot() {
+        return this.slot;
     }
 
-    private double nextTemperature(double externalTemperature, double thermalPower,
-                                   double internalGain, double solarGain) {
-        double phi_ia = this.heatGainOnAirNode(internalGain);
-        double phi_st = this.heatGainOnSurfaceNode(internalGain, solarGain);
-        double phi_m = this.heatGainOnMassNode(internalGain, solarGain);
+    public double getCurrentAirTemperature() {
+        return this.block.getAirTemperature(this.slot);
+    }
 
-        double theta_e = externalTemperature;
-        double theta_sup = externalTemperature;
-        double phi_2_3 = phi_st + this.H_tr_w * theta_e + this.H_tr_1 * ((phi_ia + thermalPower) / this.H_tr_ve + theta_sup);
-        double phi_tot = phi_m + this.H_tr_em * theta_e + this.H_tr_3 / this.H_tr_2 * phi_2_3;
+    public double getCurrentThermalPower(){
+        return this.block.getThermalPower(this.slot);
+    }
 
-        double Cm_by_dt = this.C_m / (this.timeStepSize.toMillis() / 1000.0);
+    /**
+     * Whenever a person enters or leaves the dwelling, or changes activity inside of it.
+     *
+     * @param deltaPeopleAtHome the change of the number of people in the dwelling
+     * @param deltaPeopleAsleep the change of the number of people asleep in the dwelling
+     * @param deltaMetabolicHeatGain the change of the metabolic heat gain of all people in the dwelling [W]
+     */
+    public void updateOccupancy(int deltaPeopleAtHome, int deltaPeopleAsleep, double deltaMetabolicHeatGain) {
+        this.numberPeopleAtHome += deltaPeopleAtHome;
+        this.numberPeopleAsleep += deltaPeopleAsleep;
+        if (this.numberPeopleAtHome == 0) {
+            this.metabolicHeatGain = 0.0; // no rounding errors may remain in an empty dwelling
+        } else {
+            this.metabolicHeatGain += deltaMetabolicHeatGain;
+        }
+    }
 
-        double theta_m_nom = this.currentMassTemperature * (Cm_by_dt - 0.5 * (this.H_tr_3 + this.H_tr_em)) + phi_tot;
-        double theta_m_denom = Cm_by_dt + 0.5 * (this.H_tr_3 + this.H_tr_em);
+    /**
+     * @return the number of people in the dwelling
+     */
+    public int getNumberPeopleAtHome() {
+        return this.numberPeopleAtHome;
+    }
 
-        return theta_m_nom / theta_m_denom;
+    /**
+     * @return the number of people asleep in the dwelling
+     */
+    public int getNumberPeopleAsleep() {
+        return this.numberPeopleAsleep;
+    }
 
+    /**
+     * @return the metabolic heat gain of all people in the dwelling [W]
+     */
+    public double getMetabolicHeatGain() {
+        return this.metabolicHeatGain;
     }
 }
@@ -0,0 +1,358 @@
+package uk.ac.cam.eeci.energyagents;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * The thermal state and parameters of many dwellings, stored column by column.
+ * <br><br>
+ * This is the thermal kernel behind {@link Dwelling}: each dwelling occupies one slot in the
+ * block, and all parameters, inputs, and states are kept in one primitive array per variable.
+ * Stepping a range of slots is a plain loop free of allocations and boxing, so that whole-city
+ * thermal stepping is bound by memory bandwidth. See {@link Dwelling} for details of the model.
+ * <br><br>
+ * Different slots may be stepped concurrently by different threads, but slots may only be added
+ * before any of them is stepped.
+ * <br><br>
+ * The temperature of the thermal mass is the only state of the model, and with inputs constant
+ * during a time step it relaxes exponentially towards an equilibrium. How a step follows this
+ * relaxation is defined by the {@link Integrator} of the block. The exponential integrator reduces
+ * it to one decay factor and one gain per dwelling, both derived from the time step size when the
+ * dwelling is added; the Crank-Nicolson integrator keeps the arithmetic of the ISO 13790.
+ */
+public class DwellingBlock {
+
+    /**
+     * The discretisation of the thermal mass temperature in time.
+     */
+    public enum Integrator {
+        /**
+         * The Crank-Nicolson scheme of the ISO 13790. Accurate for time steps that are short
+         * compared to the time constant of the dwelling only, e.g. 10 minutes; coarser time steps
+         * damp the relaxation too little and may even overshoot the equilibrium.
+         */
+        CRANK_NICOLSON,
+        /**
+         * The exact solution for inputs constant during the time step. Results of coarse time
+         * steps, e.g. one hour, hence remain close to those of fine time steps.
+         */
+        EXPONENTIAL
+    }
+
+    // Nomenclature of internal variables and parameters derived from the ISO 13790 standard
+    // and not self explanatory. See the standard for further details.
+
+    private static final double HEAT_TRANSMISSION_COEFFICIENT_AIR_TO_SURFACE = 3.45; // ISO 13790 [W/(m^2*K)]
+    private static final double HEAT_TRANSMISSION_COEFFICIENT_MASS_TO_SURFACE = 9.1; // ISO 13790 [W/(m^2*K)]
+    private static final double SURFACE_TO_FLOOR_RATIO = 4.5; // ISO 13790 [-]
+    private static final double HEAT_CAPACITY_AIR = 1200; // ISO 13790 [J/(m3·K)]
+    private static final double TIME_FRACTION_NATURAL_VENTILATION = 1; // constant natural ventilation
+    private static final double SOLAR_HEAT_GAIN = 0.0; // solar gain currently not considered
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // parameters
+    private double[] A_f;
+    private double[] H_tr_w;
+    private double[] H_tr_is;
+    private double[] H_tr_ve;
+    private double[] H_tr_ms;
+    private double[] H_tr_em;
+    private double[] H_tr_1;
+    private double[] H_tr_3_by_H_tr_2;
+    private double[] surfaceGainFraction; // share of half the gains reaching the surface node
+    private double[] massGainFraction; // share of half the gains reaching the mass node
+    private double[] surfaceDenominator;
+    private double[] airDenominator;
+    private double[] massRetention; // factor of the mass temperature of the previous step
+    private double[] massDenominator; // Crank-Nicolson integrator only
+    private double[] massGain; // exponential integrator only: factor of the total heat flow to the mass node
+    private double[] maximumHeatingPower;
+    // inputs
+    private double[] externalTemperature;
+    private double[] internalHeatGain;
+    private double[] heatingSetPoint;
+    // state
+    private double[] massTemperature;
+    private double[] airTemperature;
+    private double[] thermalPower;
+    private int size;
+    private final Integrator integrator;
+
+    public DwellingBlock() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param integrator the discretisation of the thermal mass temperature in time
+     */
+    public DwellingBlock(Integrator integrator) {
+        this(DEFAULT_CAPACITY, integrator);
+    }
+
+    /**
+     * @param capacity the number of dwellings for which memory is reserved up front
+     */
+    public DwellingBlock(int capacity) {
+        this(capacity, Integrator.CRANK_NICOLSON);
+    }
+
+    /**
+     * @param capacity the number of dwellings for which memory is reserved up front
+     * @param integrator the discretisation of the thermal mass temperature in time
+     */
+    public DwellingBlock(int capacity, Integrator integrator) {
+        if (capacity < 1) {
+            String msg = String.format("Capacity must be positive, but is %d.", capacity);
+            throw new IllegalArgumentException(msg);
+        }
+        this.A_f = new double[capacity];
+        this.H_tr_w = new double[capacity];
+        this.H_tr_is = new double[capacity];
+        this.H_tr_ve = new double[capacity];
+        this.H_tr_ms = new double[capacity];
+        this.H_tr_em = new double[capacity];
+        this.H_tr_1 = new double[capacity];
+        this.H_tr_3_by_H_tr_2 = new double[capacity];
+        this.surfaceGainFraction = new double[capacity];
+        this.massGainFraction = new double[capacity];
+        this.surfaceDenominator = new double[capacity];
+        this.airDenominator = new double[capacity];
+        this.massRetention = new double[capacity];
+        this.massDenominator = new double[capacity];
+        this.massGain = new double[capacity];
+        this.maximumHeatingPower = new double[capacity];
+        this.externalTemperature = new double[capacity];
+        this.internalHeatGain = new double[capacity];
+        this.heatingSetPoint = new double[capacity];
+        this.massTemperature = new double[capacity];
+        this.airTemperature = new double[capacity];
+        this.thermalPower = new double[capacity];
+        this.size = 0;
+        this.integrator = integrator;
+    }
+
+    /**
+     * Adds a dwelling to the block. See {@link Dwelling} for a description of the parameters.
+     *
+     * @return the slot of the new dwelling
+     */
+    public synchronized int add(double thermalMassCapacity, double thermalMassArea,
+                                double floorArea, double roomHeight, double windowToWallRatio,
+                                double uWall, double uRoof, double uFloor, double uWindow,
+                                double transmissionAdjustmentGround, double naturalVentilationRate,
+                                double maximumHeatingPower, double initialDwellingTemperature,
+                                Duration timeStepSize) {
+        assert maximumHeatingPower >= 0;
+        if (this.size == this.A_f.length) {
+            this.grow();
+        }
+        int slot = this.size;
+
+        double windowAndWallArea = roomHeight * Math.sqrt(floorArea) * 4;
+        double windowArea = windowAndWallArea * windowToWallRatio;
+        double wallArea = windowAndWallArea - windowArea;
+        double A_op = wallArea + 2 * floorArea;
+        double U_op = (uWall * wallArea + uRoof * floorArea + transmissionAdjustmentGround * uFloor * floorArea) / A_op;
+        double H_tr_op = A_op * U_op;
+
+        double A_t = SURFACE_TO_FLOOR_RATIO * floorArea;
+        double A_m = thermalMassArea;
+        double H_tr_w = windowArea * uWindow;
+        double H_tr_is = HEAT_TRANSMISSION_COEFFICIENT_AIR_TO_SURFACE * A_t;
+        double q_ve = (0.04 + 0.06 * naturalVentilationRate) * floorArea / 1000;
+        double H_tr_ve = HEAT_CAPACITY_AIR * TIME_FRACTION_NATURAL_VENTILATION * q_ve;
+        double H_tr_ms = HEAT_TRANSMISSION_COEFFICIENT_MASS_TO_SURFACE * A_m;
+        double H_tr_em = 1 / ((1/H_tr_op) - (1/H_tr_ms));
+        double H_tr_1 = 1 / ((1/H_tr_ve) + (1/H_tr_is));
+        double H_tr_2 = H_tr_1 + H_tr_w;
+        double H_tr_3 = 1 / ((1/H_tr_2) + (1/H_tr_ms));
+
+        this.A_f[slot] = floorArea;
+        this.H_tr_w[slot] = H_tr_w;
+        this.H_tr_is[slot] = H_tr_is;
+        this.H_tr_ve[slot] = H_tr_ve;
+        this.H_tr_ms[slot] = H_tr_ms;
+        this.H_tr_em[slot] = H_tr_em;
+        this.H_tr_1[slot] = H_tr_1;
+        this.H_tr_3_by_H_tr_2[slot] = H_tr_3 / H_tr_2;
+        this.surfaceGainFraction[slot] = 1 - A_m / A_t - H_tr_w / (9.1 * A_t);
+        this.massGainFraction[slot] = A_m / A_t;
+        this.surfaceDenominator[slot] = H_tr_ms + H_tr_w + H_tr_1;
+        this.airDenominator[slot] = H_tr_is + H_tr_ve;
+        if (this.integrator == Integrator.CRANK_NICOLSON) {
+            double Cm_by_dt = thermalMassCapacity / (timeStepSize.toMillis() / 1000.0);
+            double halfH_tr_3_plus_H_tr_em = 0.5 * (H_tr_3 + H_tr_em);
+            this.massRetention[slot] = Cm_by_dt - halfH_tr_3_plus_H_tr_em;
+            this.massDenominator[slot] = Cm_by_dt + halfH_tr_3_plus_H_tr_em;
+        } else {
+            // the mass node loses heat through H_tr_3 and H_tr_em, and relaxes with their sum
+            // towards the equilibrium in which the total heat flow to the node is lost through them
+            double H_tr_3_plus_H_tr_em = H_tr_3 + H_tr_em;
+            double timeConstantsPerStep = H_tr_3_plus_H_tr_em * (timeStepSize.toMillis() / 1000.0)
+                    / thermalMassCapacity;
+            this.massRetention[slot] = Math.exp(-timeConstantsPerStep);
+            this.massGain[slot] = -Math.expm1(-timeConstantsPerStep) / H_tr_3_plus_H_tr_em;
+        }
+        this.maximumHeatingPower[slot] = maximumHeatingPower;
+        this.massTemperature[slot] = initialDwellingTemperature;
+        this.airTemperature[slot] = initialDwellingTemperature;
+        this.thermalPower[slot] = 0;
+        this.size += 1;
+        return slot;
+    }
+
+    private void grow() {
+        int capacity = 2 * this.A_f.length;
+        this.A_f = Arrays.copyOf(this.A_f, capacity);
+        this.H_tr_w = Arrays.copyOf(this.H_tr_w, capacity);
+        this.H_tr_is = Arrays.copyOf(this.H_tr_is, capacity);
+        this.H_tr_ve = Arrays.copyOf(this.H_tr_ve, capacity);
+        this.H_tr_ms = Arrays.copyOf(this.H_tr_ms, capacity);
+        this.H_tr_em = Arrays.copyOf(this.H_tr_em, capacity);
+        this.H_tr_1 = Arrays.copyOf(this.H_tr_1, capacity);
+        this.H_tr_3_by_H_tr_2 = Arrays.copyOf(this.H_tr_3_by_H_tr_2, capacity);
+        this.surfaceGainFraction = Arrays.copyOf(this.surfaceGainFraction, capacity);
+        this.massGainFraction = Arrays.copyOf(this.massGainFraction, capacity);
+        this.surfaceDenominator = Arrays.copyOf(this.surfaceDenominator, capacity);
+        this.airDenominator = Arrays.copyOf(this.airDenominator, capacity);
+        this.massRetention = Arrays.copyOf(this.massRetention, capacity);
+        this.massDenominator = Arrays.copyOf(this.massDenominator, capacity);
+        this.massGain = Arrays.copyOf(this.massGain, capacity);
+        this.maximumHeatingPower = Arrays.copyOf(this.maximumHeatingPower, capacity);
+        this.externalTemperature = Arrays.copyOf(this.externalTemperature, capacity);
+        this.internalHeatGain = Arrays.copyOf(this.internalHeatGain, capacity);
+        this.heatingSetPoint = Arrays.copyOf(this.heatingSetPoint, capacity);
+        this.massTemperature = Arrays.copyOf(this.massTemperature, capacity);
+        this.airTemperature = Arrays.copyOf(this.airTemperature, capacity);
+        this.thermalPower = Arrays.copyOf(this.thermalPower, capacity);
+    }
+
+    /**
+     * @return the discretisation of the thermal mass temperature in time
+     */
+    public Integrator getIntegrator() {
+        return this.integrator;
+    }
+
+    /**
+     * @return the number of dwellings in this block
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * Sets the inputs of a dwelling for its next step.
+     *
+     * @param slot the slot of the dwelling
+     * @param externalTemperature the external temperature during the step [℃]
+     * @param internalHeatGain the internal heat gain during the step [W]
+     * @param heatingSetPoint the heating set point during the step [℃]; NaN if heating is off
+     */
+    public void setInputs(int slot, double externalTemperature, double internalHeatGain, double heatingSetPoint) {
+        this.externalTemperature[slot] = externalTemperature;
+        this.internalHeatGain[slot] = internalHeatGain;
+        this.heatingSetPoint[slot] = heatingSetPoint;
+    }
+
+    /**
+     * Performs the thermal simulation of the next time step for a range of dwellings, using the
+     * inputs set before.
+     *
+     * @param from the first slot to step, inclusive
+     * @param to the last slot to step, exclusive
+     */
+    public void step(int from, int to) {
+        for (int i = from; i < to; i++) {
+            double theta_e = this.externalTemperature[i];
+            double internalGain = this.internalHeatGain[i];
+            double setPoint = this.heatingSetPoint[i];
+
+            double phi_ia = 0.5 * internalGain;
+            double gains = 0.5 * internalGain + SOLAR_HEAT_GAIN;
+            double phi_st = this.surfaceGainFraction[i] * gains;
+            double phi_m = this.massGainFraction[i] * gains;
+            // all terms independent of the thermal power
+            double massConstant = phi_m + this.H_tr_em[i] * theta_e;
+            double massOld = this.massTemperature[i] * this.massRetention[i];
+            double surfaceConstant = phi_st + this.H_tr_w[i] * theta_e;
+
+            double massNoPower = this.nextMassTemperature(i, 0.0, theta_e, phi_ia, massConstant, massOld,
+                    surfaceConstant);
+            double airNoPower = this.airTemperature(i, massNoPower, 0.0, theta_e, phi_ia, phi_st);
+            if (Double.isNaN(setPoint) || airNoPower >= setPoint) {
+                this.massTemperature[i] = massNoPower;
+                this.thermalPower[i] = 0.0;
+                this.airTemperature[i] = airNoPower;
+            } else {
+                double tenWattPerSquareMeterPower = 10 * this.A_f[i];
+                double massPower10 = this.nextMassTemperature(i, tenWattPerSquareMeterPower, theta_e, phi_ia,
+                        massConstant, massOld, surfaceConstant);
+                double airPower10 = this.airTemperature(i, massPower10, tenWattPerSquareMeterPower, theta_e,
+                        phi_ia, phi_st);
+                double unrestrictedPower = (tenWattPerSquareMeterPower * (setPoint - airNoPower) /
+                        (airPower10 - airNoPower));
+                double power;
+                if (Math.abs(unrestrictedPower) <= Math.abs(this.maximumHeatingPower[i])) {
+                    power = unrestrictedPower;
+                } else {
+                    power = this.maximumHeatingPower[i];
+                }
+                double mass = this.nextMassTemperature(i, power, theta_e, phi_ia, massConstant, massOld,
+                        surfaceConstant);
+                this.massTemperature[i] = mass;
+                this.thermalPower[i] = power;
+                this.airTemperature[i] = this.airTemperature(i, mass, power, theta_e, phi_ia, phi_st);
+            }
+        }
+    }
+
+    private double nextMassTemperature(int i, double thermalPower, double theta_sup, double phi_ia,
+                                       double massConstant, double massOld, double surfaceConstant) {
+        double phi_2_3 = surfaceConstant + this.H_tr_1[i] * ((phi_ia + thermalPower) / this.H_tr_ve[i] + theta_sup);
+        double phi_tot = massConstant + this.H_tr_3_by_H_tr_2[i] * phi_2_3;
+        if (this.integrator == Integrator.EXPONENTIAL) {
+            return massOld + this.massGain[i] * phi_tot;
+        }
+        return (massOld + phi_tot) / this.massDenominator[i];
+    }
+
+    private double airTemperature(int i, double theta_m, double thermalPower, double theta_e,
+                                  double phi_ia, double phi_st) {
+        double theta_sup = theta_e;
+        double theta_s_nom = this.H_tr_ms[i] * theta_m + phi_st + this.H_tr_w[i] * theta_e +
+                this.H_tr_1[i] * (theta_sup + (phi_ia + thermalPower) / this.H_tr_ve[i]);
+        double theta_s = theta_s_nom / this.surfaceDenominator[i];
+        double theta_a_nom = this.H_tr_is[i] * theta_s + this.H_tr_ve[i] * theta_sup + phi_ia + thermalPower;
+        return theta_a_nom / this.airDenominator[i];
+    }
+
+    /**
+     * Overwrites the observable outputs of a dwelling with values recorded earlier, leaving its
+     * thermal state untouched.
+     *
+     * @param slot the slot of the dwelling
+     * @param airTemperature the air temperature of the dwelling [℃]
+     * @param thermalPower the thermal power of the heating system of the dwelling [W]
+     */
+    void restoreOutputs(int slot, double airTemperature, double thermalPower) {
+        this.airTemperature[slot] = airTemperature;
+        this.thermalPower[slot] = thermalPower;
+    }
+
+    /**
+     * @param slot the slot of the dwelling
+     * @return the current air temperature of the dwelling [℃]
+     */
+    public double getAirTemperature(int slot) {
+        return this.airTemperature[slot];
+    }
+
+    /**
+     * @param slot the slot of the dwelling
+     * @return the current thermal power of the heating system of the dwelling [W]
+     */
+    public double getThermalPower(int slot) {
+        return this.thermalPower[slot];
+    }
+}
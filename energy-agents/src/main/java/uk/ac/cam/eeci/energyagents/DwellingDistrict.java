@@ -2,22 +2,50 @@ package uk.ac.cam.eeci.energyagents;
 
 import org.javatuples.Pair;
 
+import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * An urban district comprising of several dwellings.
+ * <br><br>
+ * Statistics of the district are accumulated in a single pass over the dwellings. Statistics
+ * requested repeatedly for the same time are determined only once, so that several data points
+ * derived from them query each dwelling only once per time step.
  */
 public class DwellingDistrict {
 
     private final List<DwellingReference> dwellings;
+    private final Summary airTemperatures;
+    private final Summary thermalPowers;
 
     public DwellingDistrict(Set<DwellingReference> dwellings) {
         this.dwellings = new ArrayList<>(dwellings);
         if (dwellings.size() == 0){
             throw new IllegalArgumentException("DwellingDistrict must contain at least one dwelling.");
         }
+        this.airTemperatures = new Summary(DwellingReference::getCurrentAirTemperature, dwellings.size());
+        this.thermalPowers = new Summary(DwellingReference::getCurrentThermalPower, dwellings.size());
+    }
+
+    /**
+     * @param time the current time; statistics for the same time are determined only once, unless
+     *             null
+     * @return statistics of the current air temperatures of all dwellings
+     */
+    public CompletableFuture<RunningStatistics> getCurrentAirTemperatureStatistics(ZonedDateTime time) {
+        return this.summarise(this.airTemperatures, time);
+    }
+
+    /**
+     * @param time the current time; statistics for the same time are determined only once, unless
+     *             null
+     * @return statistics of the current thermal powers of all dwellings
+     */
+    public CompletableFuture<RunningStatistics> getCurrentThermalPowerStatistics(ZonedDateTime time) {
+        return this.summarise(this.thermalPowers, time);
     }
 
     public CompletableFuture<Map<DwellingReference, Double>> getAllCurrentAirTemperatures() {
@@ -49,4 +77,40 @@ public class DwellingDistrict {
     private CompletableFuture<Pair<DwellingReference, Double>> getThermalPower(DwellingReference dwelling) {
         return dwelling.getCurrentThermalPower().thenApplyAsync(temp -> new Pair<>(dwelling, temp));
     }
+
+    private synchronized CompletableFuture<RunningStatistics> summarise(Summary summary, ZonedDateTime time) {
+        if (summary.statistics != null && time != null && time.equals(summary.time)) {
+            return summary.statistics;
+        }
+        // the values are reused between time steps, unless the last ones are still being accumulated
+        double[] values = summary.statistics == null || summary.statistics.isDone()
+                ? summary.values
+                : new double[this.dwellings.size()];
+        CompletableFuture<Void>[] updates = new CompletableFuture[this.dwellings.size()];
+        for (int i = 0; i < this.dwellings.size(); ++i) {
+            final int position = i;
+            updates[i] = summary.query.apply(this.dwellings.get(i))
+                    .thenAccept(value -> values[position] = value);
+        }
+        summary.time = time;
+        summary.statistics = CompletableFuture.allOf(updates)
+                .thenApply(nothing -> {
+                    RunningStatistics statistics = new RunningStatistics();
+                    statistics.accept(values, 0, values.length);
+                    return statistics;
+                });
+        return summary.statistics;
+    }
+
+    private static class Summary {
+        private final Function<DwellingReference, CompletableFuture<Double>> query;
+        private final double[] values;
+        private ZonedDateTime time;
+        private CompletableFuture<RunningStatistics> statistics;
+
+        private Summary(Function<DwellingReference, CompletableFuture<Double>> query, int numberDwellings) {
+            this.query = query;
+            this.values = new double[numberDwellings];
+        }
+    }
 }
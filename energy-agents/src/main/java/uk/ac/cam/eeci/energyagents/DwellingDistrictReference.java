@@ -2,6 +2,7 @@ package uk.ac.cam.eeci.energyagents;
 
 import uk.ac.cam.eeci.framework.Reference;
 
+import java.time.ZonedDateTime;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
@@ -21,4 +22,14 @@ public class DwellingDistrictReference extends Reference<DwellingDistrict> {
                 .thenApplyAsync((values) -> values, pool.currentExecutor());
     }
 
+    public CompletableFuture<RunningStatistics> getCurrentAirTemperatureStatistics(ZonedDateTime time) {
+        return this.referent.getCurrentAirTemperatureStatistics(time)
+                .thenApplyAsync((statistics) -> statistics, pool.currentExecutor());
+    }
+
+    public CompletableFuture<RunningStatistics> getCurrentThermalPowerStatistics(ZonedDateTime time) {
+        return this.referent.getCurrentThermalPowerStatistics(time)
+                .thenApplyAsync((statistics) -> statistics, pool.currentExecutor());
+    }
+
 }
@@ -15,6 +15,11 @@ public class DwellingReference extends Reference<Dwelling> {
                 .thenRunAsync(() ->{}, pool.currentExecutor());
     }
 
+    public CompletableFuture<Void> step(StepContext context) {
+        return CompletableFuture.completedFuture(null).thenComposeAsync((p) -> this.referent.step(context), this.executor)
+                .thenRunAsync(() ->{}, pool.currentExecutor());
+    }
+
     public CompletableFuture<Double> getCurrentAirTemperature() {
         return CompletableFuture.supplyAsync(this.referent::getCurrentAirTemperature, this.executor)
                 .thenApplyAsync(i -> i, pool.currentExecutor());
@@ -25,13 +30,10 @@ public class DwellingReference extends Reference<Dwelling> {
                 .thenApplyAsync(i -> i, pool.currentExecutor());
     }
 
-    public CompletableFuture<Void> enter(PersonReference person) {
-        return CompletableFuture.runAsync(() -> this.referent.enter(person), this.executor)
-                .thenRunAsync(() ->{}, pool.currentExecutor());
-    }
-
-    public CompletableFuture<Void> leave(PersonReference person) {
-        return CompletableFuture.runAsync(() -> this.referent.leave(person), this.executor)
+    public CompletableFuture<Void> updateOccupancy(int deltaPeopleAtHome, int deltaPeopleAsleep,
+                                                   double deltaMetabolicHeatGain) {
+        return CompletableFuture.runAsync(() -> this.referent.updateOccupancy(deltaPeopleAtHome, deltaPeopleAsleep,
+                deltaMetabolicHeatGain), this.executor)
                 .thenRunAsync(() ->{}, pool.currentExecutor());
     }
 }
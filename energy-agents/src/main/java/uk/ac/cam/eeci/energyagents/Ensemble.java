@@ -0,0 +1,181 @@
+package uk.ac.cam.eeci.energyagents;
+
+import uk.ac.cam.eeci.framework.EndSimulationException;
+import uk.ac.cam.eeci.framework.ISimulation;
+import uk.ac.cam.eeci.framework.Reference;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * An ensemble of replicas of the same scenario, run concurrently in lockstep.
+ * <br><br>
+ * Replicas share all immutable parts of the scenario, i.e. markov chains, weather, and
+ * parameters, and differ only in the random numbers of their people, see
+ * {@link #replicaSeed(int, int)}, and in the mutable state of their agents. Replica 0 uses the
+ * random seeds of the scenario as they are and hence reproduces a single run of the scenario.
+ * <br><br>
+ * Results are either written by each replica into an output of its own, see
+ * {@link #replicaFilename(String, int)}, or summarised over all replicas at each time step into a
+ * single output, see {@link Output#STATISTICS}.
+ * <br><br>
+ * An ensemble can equally run variants of a scenario which differ in their heating, see
+ * {@link ScenarioBuilder#readSweep}; each variant writes into an output of its own, see
+ * {@link #variantFilename(String, int)}.
+ */
+public class Ensemble implements ISimulation {
+
+    /**
+     * The way results of the replicas are written.
+     */
+    public enum Output {
+        /** Each replica writes all its results into an output of its own. */
+        REPLICAS,
+        /**
+         * The district averages of all replicas are summarised by their mean and percentiles
+         * across replicas, at each time step, and written into a single output.
+         */
+        STATISTICS
+    }
+
+    public final static String METADATA_KEY_NUMBER_REPLICAS = "numberReplicas";
+    private final static long SEED_GAMMA = 0x9E3779B97F4A7C15L;
+    private final static Logger logger = LogManager.getLogger(Ensemble.class.getName());
+
+    private final List<CitySimulation> replicas;
+    private final DataLoggerReference dataLoggerReference;
+    private final Duration timeStepSize;
+    private final ExecutorService executor;
+    private ZonedDateTime currentTime;
+    private int remainingSteps;
+
+    /**
+     * @param replicas The replicas, all of the same start time, time step size, and number of steps.
+     * @param dataLoggerReference The data logger of results across replicas; null if there is none.
+     */
+    public Ensemble(List<CitySimulation> replicas, DataLoggerReference dataLoggerReference,
+                    ZonedDateTime startTime, Duration timeStepSize, int numberSteps) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("An ensemble requires at least one replica.");
+        }
+        this.replicas = new ArrayList<>(replicas);
+        this.dataLoggerReference = dataLoggerReference;
+        this.currentTime = startTime;
+        this.timeStepSize = timeStepSize;
+        this.remainingSteps = numberSteps;
+        this.executor = Executors.newFixedThreadPool(
+                Math.min(replicas.size(), Runtime.getRuntime().availableProcessors()));
+        logger.info(String.format("Running an ensemble of %d replicas.", replicas.size()));
+    }
+
+    /**
+     * @return the number of replicas
+     */
+    public int getNumberReplicas() {
+        return this.replicas.size();
+    }
+
+    /**
+     * @param randomSeed the random seed of a person in the scenario
+     * @param replica the number of the replica, starting at 0
+     * @return the random seed of the person in the replica; the unchanged seed in replica 0
+     */
+    public static long replicaSeed(int randomSeed, int replica) {
+        return randomSeed + replica * SEED_GAMMA;
+    }
+
+    /**
+     * @param outputFilename the output file name of the ensemble
+     * @param replica the number of the replica, starting at 0
+     * @return the output file name of the replica, placed next to the output file of the ensemble
+     */
+    public static String replicaFilename(String outputFilename, int replica) {
+        return siblingFilename(outputFilename, String.format("replica%d", replica));
+    }
+
+    /**
+     * @param outputFilename the output file name of the ensemble
+     * @param variant the number of the variant, i.e. the row of the parameters table, starting at 0
+     * @return the output file name of the variant, placed next to the output file of the ensemble
+     */
+    public static String variantFilename(String outputFilename, int variant) {
+        return siblingFilename(outputFilename, String.format("variant%d", variant));
+    }
+
+    private static String siblingFilename(String outputFilename, String member) {
+        Path output = FileSystems.getDefault().getPath(outputFilename);
+        String baseName = output.getFileName().toString();
+        String extension = "";
+        int dot = baseName.lastIndexOf('.');
+        if (dot > 0) {
+            extension = baseName.substring(dot);
+            baseName = baseName.substring(0, dot);
+        }
+        return output.resolveSibling(String.format("%s.%s%s", baseName, member, extension)).toString();
+    }
+
+    /**
+     * @param sortedValues values in ascending order
+     * @param percentile the percentile, between 0 and 100
+     * @return the percentile of the values, linearly interpolated between closest ranks; NaN if
+     *         there are no values
+     */
+    static double percentile(double[] sortedValues, double percentile) {
+        if (sortedValues.length == 0) {
+            return Double.NaN;
+        }
+        double rank = percentile / 100 * (sortedValues.length - 1);
+        int lower = (int) Math.floor(rank);
+        int upper = (int) Math.ceil(rank);
+        return sortedValues[lower] + (rank - lower) * (sortedValues[upper] - sortedValues[lower]);
+    }
+
+    @Override
+    public void step() throws InterruptedException, ExecutionException, EndSimulationException {
+        if (this.remainingSteps == 0) {
+            throw new EndSimulationException();
+        }
+        List<Future<Void>> steps = new ArrayList<>(this.replicas.size());
+        for (CitySimulation replica : this.replicas) {
+            steps.add(this.executor.submit(() -> {
+                Reference.pool.setCurrentExecutor(Reference.pool.main);
+                replica.step();
+                return null;
+            }));
+        }
+        for (Future<Void> step : steps) {
+            step.get();
+        }
+        this.remainingSteps -= 1;
+        this.currentTime = this.currentTime.plus(this.timeStepSize);
+        if (this.dataLoggerReference != null) {
+            this.dataLoggerReference.step(this.currentTime).get();
+        }
+    }
+
+    @Override
+    public void stop() {
+        this.executor.shutdown();
+        for (CitySimulation replica : this.replicas) {
+            replica.stop();
+        }
+        if (this.dataLoggerReference != null) {
+            HashMap<String, String> metadata = new HashMap<>();
+            metadata.put(CitySimulation.METADATA_KEY_MODEL_VERSION, CitySimulation.inferModelVersion());
+            metadata.put(METADATA_KEY_NUMBER_REPLICAS, String.valueOf(this.replicas.size()));
+            try {
+                logger.info("Attempting to write ensemble results to disk.");
+                this.dataLoggerReference.write(metadata).get();
+            } catch (InterruptedException|ExecutionException e) {
+                logger.error("Failed to write ensemble results.");
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -10,7 +10,7 @@ import java.util.Optional;
  */
 public class Environment {
 
-    private final TimeSeries<Double> temperatureTimeSeries;
+    private final DoubleTimeSeries temperatureTimeSeries;
     private int index;
     private double currentTemperature;
 
@@ -19,7 +19,7 @@ public class Environment {
      * @param temperatureTimeSeries time series of all temperature values for the simulation
      * @param timeStepSize time step size of the time series
      */
-    public Environment(TimeSeries<Double> temperatureTimeSeries, Duration timeStepSize) {
+    public Environment(DoubleTimeSeries temperatureTimeSeries, Duration timeStepSize) {
         this.temperatureTimeSeries = temperatureTimeSeries;
         Optional<Duration> inferredTimeStepSize = this.temperatureTimeSeries.getConstantTimeStepSize();
         if (!inferredTimeStepSize.isPresent() || !inferredTimeStepSize.get().equals(timeStepSize)) {
@@ -30,13 +30,22 @@ public class Environment {
             throw new IllegalArgumentException(msg);
         }
         this.index = 0;
-        this.currentTemperature = this.temperatureTimeSeries.getValues().get(this.index);
+        this.currentTemperature = this.temperatureTimeSeries.get(this.index);
 
     }
 
     public void step() {
         this.index += 1;
-        this.currentTemperature = this.temperatureTimeSeries.getValues().get(this.index);
+        this.currentTemperature = this.temperatureTimeSeries.get(this.index);
+    }
+
+    /**
+     *
+     * @param step the number of time steps since the start of the temperature time series
+     * @return city-wide temperature at the given time step
+     */
+    public double getTemperature(int step) {
+        return this.temperatureTimeSeries.get(step);
     }
 
     /**
@@ -29,4 +29,39 @@ public abstract class HeatingControlStrategy {
     public abstract CompletableFuture<Optional<Double>> heatingSetPoint(ZonedDateTime timeStamp,
                                                                         Set<PersonReference> peopleInDwelling);
 
+    /**
+     * Determines the current heating set point for the heating system of a dwelling.
+     * <br><br>
+     * By default, this is the set point of the time stamp of the context. Strategies may
+     * override it to avoid calendar calculations.
+     *
+     * @param context The current time step.
+     * @param peopleInDwelling The people that currently occupy the dwelling.
+     * @return the heating set point for the heating system; see
+     *         {@link #heatingSetPoint(ZonedDateTime, Set)}
+     */
+    public CompletableFuture<Optional<Double>> heatingSetPoint(StepContext context,
+                                                               Set<PersonReference> peopleInDwelling) {
+        return this.heatingSetPoint(context.getTime(), peopleInDwelling);
+    }
+
+    /**
+     * Determines the current heating set point for the heating system of a dwelling, knowing
+     * only how many people occupy it.
+     * <br><br>
+     * This is used whenever the occupancy of dwellings is generated ahead of time, in which case
+     * there are no references to the people in the dwelling. Every strategy must implement it,
+     * and must decide here as it would in {@link #heatingSetPoint(ZonedDateTime, Set)} for
+     * people of the given numbers; otherwise engines generating occupancy ahead of time yield
+     * different results than the actor engine.
+     *
+     * @param context The current time step.
+     * @param numberPeopleAtHome The number of people currently in the dwelling.
+     * @param numberPeopleAsleep The number of people currently asleep in the dwelling.
+     * @return the heating set point for the heating system; see
+     *         {@link #heatingSetPoint(ZonedDateTime, Set)}
+     */
+    public abstract CompletableFuture<Optional<Double>> heatingSetPoint(StepContext context, int numberPeopleAtHome,
+                                                                        int numberPeopleAsleep);
+
 }
@@ -17,4 +17,15 @@ public class HeatingControlStrategyReference extends Reference<HeatingControlStr
         return this.referent.heatingSetPoint(timeStamp, peopleInDwelling)
                 .thenApplyAsync((setPoint) -> setPoint, pool.currentExecutor());
     }
+
+    public CompletableFuture<Optional<Double>> heatingSetPoint(StepContext context, Set<PersonReference> peopleInDwelling) {
+        return this.referent.heatingSetPoint(context, peopleInDwelling)
+                .thenApplyAsync((setPoint) -> setPoint, pool.currentExecutor());
+    }
+
+    public CompletableFuture<Optional<Double>> heatingSetPoint(StepContext context, int numberPeopleAtHome,
+                                                               int numberPeopleAsleep) {
+        return this.referent.heatingSetPoint(context, numberPeopleAtHome, numberPeopleAsleep)
+                .thenApplyAsync((setPoint) -> setPoint, pool.currentExecutor());
+    }
 }
@@ -3,20 +3,29 @@ package uk.ac.cam.eeci.energyagents;
 import org.javatuples.Pair;
 
 import java.time.*;
+import java.time.zone.ZoneRules;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * A time heterogeneous Markov chain for with different probabilities for one week.
+ * <br><br>
+ * The chain is compiled on construction: times of day are mapped to integer slots of the day,
+ * and identical Markov chains of different slots are shared. Moving the chain hence needs
+ * neither hash lookups nor allocations.
  *
  * @param <T> The type of the states of the Markov chain.
  */
 public class HeterogeneousMarkovChain<T> {
 
-    private final Map<LocalTime, MarkovChain<T>> weekdayChain;
-    private final Map<LocalTime, MarkovChain<T>> weekendChain;
+    private final static int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    private final MarkovChain<T>[] weekdayChain;
+    private final MarkovChain<T>[] weekendChain;
+    private final int slotSizeInSeconds;
     private final ZoneId timeZone;
+    private final ZoneRules timeZoneRules;
+    private final boolean timeZoneHasFixedOffset;
+    private final int fixedOffsetInSeconds;
 
     /**
      *
@@ -27,9 +36,51 @@ public class HeterogeneousMarkovChain<T> {
     public HeterogeneousMarkovChain(Map<LocalTime, MarkovChain<T>> weekdayChain,
                                     Map<LocalTime, MarkovChain<T>> weekendChain,
                                     ZoneId timeZone) {
-        this.weekdayChain = weekdayChain;
-        this.weekendChain = weekendChain;
+        this.slotSizeInSeconds = slotSizeInSeconds(weekdayChain.keySet(), weekendChain.keySet());
+        Map<Map<Pair<T, T>, Double>, MarkovChain<T>> internedChains = new HashMap<>();
+        this.weekdayChain = this.compile(weekdayChain, internedChains);
+        this.weekendChain = this.compile(weekendChain, internedChains);
         this.timeZone = timeZone;
+        this.timeZoneRules = timeZone.getRules();
+        this.timeZoneHasFixedOffset = this.timeZoneRules.isFixedOffset();
+        this.fixedOffsetInSeconds = this.timeZoneHasFixedOffset ?
+                this.timeZoneRules.getOffset(Instant.EPOCH).getTotalSeconds() : 0;
+    }
+
+    private static int slotSizeInSeconds(Set<LocalTime> weekdayTimes, Set<LocalTime> weekendTimes) {
+        Set<LocalTime> times = new HashSet<>(weekdayTimes);
+        times.addAll(weekendTimes);
+        int slotSize = SECONDS_PER_DAY;
+        for (LocalTime time : times) {
+            if (time.getNano() != 0) {
+                String msg = String.format("Times of the markov chain must be full seconds, but %s is not.", time);
+                throw new IllegalArgumentException(msg);
+            }
+            slotSize = greatestCommonDivisor(slotSize, time.toSecondOfDay());
+        }
+        return slotSize;
+    }
+
+    private static int greatestCommonDivisor(int a, int b) {
+        while (b != 0) {
+            int remainder = a % b;
+            a = b;
+            b = remainder;
+        }
+        return a;
+    }
+
+    private MarkovChain<T>[] compile(Map<LocalTime, MarkovChain<T>> dayChain,
+                                     Map<Map<Pair<T, T>, Double>, MarkovChain<T>> internedChains) {
+        MarkovChain<T>[] slots = new MarkovChain[SECONDS_PER_DAY / this.slotSizeInSeconds];
+        for (Map.Entry<LocalTime, MarkovChain<T>> entry : dayChain.entrySet()) {
+            MarkovChain<T> chain = entry.getValue();
+            if (chain != null) {
+                chain = internedChains.computeIfAbsent(chain.probabilities, p -> entry.getValue());
+            }
+            slots[entry.getKey().toSecondOfDay() / this.slotSizeInSeconds] = chain;
+        }
+        return slots;
     }
 
     /**
@@ -41,39 +92,77 @@ public class HeterogeneousMarkovChain<T> {
      * @return the next state of the Markov chain
      */
     public T move(T currentState, ZonedDateTime dateTime, Random randomNumberGenerator) {
-        Map<LocalTime, MarkovChain<T>> dayChain = null;
-        switch(dateTime.getDayOfWeek()) {
-            case MONDAY:
-            case TUESDAY:
-            case WEDNESDAY:
-            case THURSDAY:
-            case FRIDAY:
-                dayChain = this.weekdayChain;
-                break;
-            case SATURDAY:
-            case SUNDAY:
-                dayChain = this.weekendChain;
-                break;
+        return this.chainAt(dateTime).move(currentState, randomNumberGenerator);
+    }
+
+    /**
+     * Move to the next Markov state.
+     * <br><br>
+     * Whenever the context is in the time zone of this chain, no calendar calculations are necessary.
+     *
+     * @param currentState The current state of the Markov chain.
+     * @param context the current time step
+     * @param randomNumberGenerator an object that returns a random number between 0 and 1
+     * @return the next state of the Markov chain
+     */
+    public T move(T currentState, StepContext context, Random randomNumberGenerator) {
+        return this.chainAt(context).move(currentState, randomNumberGenerator);
+    }
+
+    /**
+     * @param context any time step
+     * @return the time invariant Markov chain moving the states in the time step
+     */
+    MarkovChain<T> chainAt(StepContext context) {
+        if (!context.getZone().equals(this.timeZone)) {
+            return this.chainAt(context.getTime());
         }
-        T nextState = null;
-        try {
-            nextState = dayChain.get(dateTime.withZoneSameInstant(this.timeZone).toLocalTime())
-                    .move(currentState, randomNumberGenerator);
-        } catch (NullPointerException npe) {
+        MarkovChain<T> chain = this.chainAt(context.isWeekend(), context.getSecondOfDay(), context.getNanoOfSecond());
+        if (chain == null) {
+            String msg = String.format("%s is not a valid date time for this markov chain.", context.getTime());
+            throw new IllegalArgumentException(msg);
+        }
+        return chain;
+    }
+
+    private MarkovChain<T> chainAt(ZonedDateTime dateTime) {
+        boolean weekend = dateTime.getDayOfWeek() == DayOfWeek.SATURDAY || dateTime.getDayOfWeek() == DayOfWeek.SUNDAY;
+        int offset = this.timeZoneHasFixedOffset ? this.fixedOffsetInSeconds :
+                this.timeZoneRules.getOffset(dateTime.toInstant()).getTotalSeconds();
+        int secondOfDay = (int) Math.floorMod(dateTime.toEpochSecond() + offset, (long) SECONDS_PER_DAY);
+        MarkovChain<T> chain = this.chainAt(weekend, secondOfDay, dateTime.getNano());
+        if (chain == null) {
             String msg = String.format("%s is not a valid date time for this markov chain.", dateTime);
             throw new IllegalArgumentException(msg);
         }
-        return nextState;
+        return chain;
+    }
+
+    private MarkovChain<T> chainAt(boolean weekend, int secondOfDay, int nanoOfSecond) {
+        if (nanoOfSecond != 0 || secondOfDay % this.slotSizeInSeconds != 0) {
+            return null;
+        }
+        MarkovChain<T>[] dayChain = weekend ? this.weekendChain : this.weekdayChain;
+        return dayChain[secondOfDay / this.slotSizeInSeconds];
     }
 
 
     /**
      * A time invariant first order Markov chain.
+     * <br><br>
+     * Transition probabilities are compiled into one flat table of cumulative probabilities,
+     * ordered by start state and -- for enums -- by the ordinal of the end state. Moving the
+     * chain is a search within the few entries of the current state.
+     *
      * @param <T> The type of the states.
      */
     public static class MarkovChain<T> {
 
         private final Map<Pair<T, T>, Double> probabilities;
+        private final Map<T, Integer> indexOfState; // null if states are enums, which are indexed by ordinal
+        private final int[] firstTransitionOfState; // one additional entry marking the end of the last state
+        private final double[] cumulativeProbabilities;
+        private final Object[] nextStates;
 
         /**
          *
@@ -81,53 +170,139 @@ public class HeterogeneousMarkovChain<T> {
          */
         public MarkovChain(Map<Pair<T, T>, Double> probabilities) {
             this.probabilities = probabilities;
-            this.validateChain();
+            List<Pair<T, T>> transitions = new ArrayList<>(probabilities.keySet());
+            boolean statesAreEnums = transitions.stream()
+                    .allMatch(pair -> pair.getValue0() instanceof Enum && pair.getValue1() instanceof Enum);
+            if (statesAreEnums) {
+                this.indexOfState = null;
+                transitions.sort(Comparator
+                        .comparingInt((Pair<T, T> pair) -> ((Enum<?>) pair.getValue0()).ordinal())
+                        .thenComparingInt(pair -> ((Enum<?>) pair.getValue1()).ordinal()));
+            } else {
+                this.indexOfState = new HashMap<>();
+                transitions.forEach(pair -> this.indexOfState.putIfAbsent(pair.getValue0(), this.indexOfState.size()));
+                transitions.sort(Comparator.comparingInt(pair -> this.indexOfState.get(pair.getValue0())));
+            }
+            int numberStates = transitions.stream().mapToInt(pair -> this.indexOf(pair.getValue0()) + 1).max().orElse(0);
+            this.firstTransitionOfState = new int[numberStates + 1];
+            this.cumulativeProbabilities = new double[transitions.size()];
+            this.nextStates = new Object[transitions.size()];
+            int transition = 0;
+            for (int state = 0; state < numberStates; state++) {
+                this.firstTransitionOfState[state] = transition;
+                double summedProbabilities = 0;
+                while (transition < transitions.size() && this.indexOf(transitions.get(transition).getValue0()) == state) {
+                    Pair<T, T> statePair = transitions.get(transition);
+                    summedProbabilities += probabilities.get(statePair);
+                    this.cumulativeProbabilities[transition] = summedProbabilities;
+                    this.nextStates[transition] = statePair.getValue1();
+                    transition++;
+                }
+                assert transition == this.firstTransitionOfState[state] || Math.abs(summedProbabilities - 1.0) < 0.001;
+            }
+            this.firstTransitionOfState[numberStates] = transition;
+        }
+
+        private int indexOf(T state) {
+            if (this.indexOfState == null) {
+                return state instanceof Enum ? ((Enum<?>) state).ordinal() : -1;
+            }
+            Integer index = this.indexOfState.get(state);
+            return index == null ? -1 : index;
         }
 
         /**
-         * Move to the next state.
+         * @param currentState any state
+         * @return the probability to remain in the state; NaN if there are no transitions from the state
+         */
+        double stayProbability(T currentState) {
+            int state = this.indexOf(currentState);
+            if (state < 0 || state >= this.firstTransitionOfState.length - 1
+                    || this.firstTransitionOfState[state] == this.firstTransitionOfState[state + 1]) {
+                return Double.NaN;
+            }
+            for (int i = this.firstTransitionOfState[state]; i < this.firstTransitionOfState[state + 1]; i++) {
+                if (this.indexOf((T) this.nextStates[i]) == state) {
+                    return this.cumulativeProbabilities[i] - this.cumulativeBefore(i, state);
+                }
+            }
+            return 0.0;
+        }
+
+        /**
+         * Move to a state other than the current one, chosen with the probabilities of the
+         * transitions conditioned on leaving the current state.
          *
          * @param currentState the current state of the Markov chain
-         * @param randomNumberGenerator an object that returns a random number between 0 and 1
-         * @return the next state of the Markov chain
+         * @param randomNumber a random number between 0 (inclusive) and 1 (exclusive)
+         * @return the next state of the Markov chain, other than the current one
          */
-        public T move(T currentState, Random randomNumberGenerator) {
-            List<Pair<T, T>> possibleTransitions = this.possibleTransitions(currentState)
-                .collect(Collectors.toList());
-            double randomNumber = randomNumberGenerator.nextDouble();
-            T nextState = null;
-            double summedProbabilities = 0;
-            for (Pair<T, T> statePair : possibleTransitions) {
-                double thisProbability = this.probabilities.get(statePair);
-                if (randomNumber < summedProbabilities + thisProbability) {
-                    nextState = statePair.getValue1();
-                    break;
+        T leave(T currentState, double randomNumber) {
+            int state = this.indexOf(currentState);
+            if (state >= 0 && state < this.firstTransitionOfState.length - 1) {
+                int first = this.firstTransitionOfState[state];
+                int end = this.firstTransitionOfState[state + 1];
+                int stay = -1;
+                for (int i = first; i < end; i++) {
+                    if (this.indexOf((T) this.nextStates[i]) == state) {
+                        stay = i;
+                    }
                 }
-                else {
-                    summedProbabilities += thisProbability;
+                double total = end > first ? this.cumulativeProbabilities[end - 1] : 0.0;
+                double stayProbability = stay < 0 ? 0.0 : this.cumulativeProbabilities[stay] - this.cumulativeBefore(stay, state);
+                // draw from the cumulative probabilities with the interval of staying cut out
+                double x = randomNumber * (total - stayProbability);
+                if (stay >= 0 && x >= this.cumulativeBefore(stay, state)) {
+                    x += stayProbability;
+                }
+                int last = -1;
+                for (int i = first; i < end; i++) {
+                    if (i == stay || this.cumulativeProbabilities[i] == this.cumulativeBefore(i, state)) {
+                        continue;
+                    }
+                    last = i;
+                    if (x < this.cumulativeProbabilities[i]) {
+                        return (T) this.nextStates[i];
+                    }
+                }
+                if (last >= 0) {
+                    return (T) this.nextStates[last]; // rounding pushed the number beyond the last transition
                 }
             }
-            if (nextState == null) {
-                throw new IllegalStateException("Could not determine next state. Markov chain is invalid.");
-            }
-            return nextState;
+            throw new IllegalStateException("Could not determine next state. Markov chain is invalid.");
         }
 
-        private Stream<Pair<T, T>> possibleTransitions(T fromState) {
-            return probabilities.keySet().stream().filter(statePair -> statePair.getValue0() == fromState);
+        private double cumulativeBefore(int transition, int state) {
+            return transition > this.firstTransitionOfState[state] ? this.cumulativeProbabilities[transition - 1] : 0.0;
         }
 
-        private void validateChain() {
-            Set<T> startStates = new HashSet<>();
-            for (Pair<T, T> statePair : this.probabilities.keySet()) {
-                startStates.add(statePair.getValue0());
-            }
-            for (T startState : startStates) {
-                double summedProbabilities = this.possibleTransitions(startState)
-                        .mapToDouble(this.probabilities::get)
-                        .sum();
-                assert Math.abs(summedProbabilities - 1.0) < 0.001;
+        /**
+         * Move to the next state.
+         *
+         * @param currentState the current state of the Markov chain
+         * @param randomNumberGenerator an object that returns a random number between 0 and 1
+         * @return the next state of the Markov chain
+         */
+        public T move(T currentState, Random randomNumberGenerator) {
+            double randomNumber = randomNumberGenerator.nextDouble();
+            int state = this.indexOf(currentState);
+            if (state >= 0 && state < this.firstTransitionOfState.length - 1) {
+                int low = this.firstTransitionOfState[state];
+                int high = this.firstTransitionOfState[state + 1];
+                // first transition whose cumulative probability exceeds the random number
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (randomNumber < this.cumulativeProbabilities[middle]) {
+                        high = middle;
+                    } else {
+                        low = middle + 1;
+                    }
+                }
+                if (low < this.firstTransitionOfState[state + 1]) {
+                    return (T) this.nextStates[low];
+                }
             }
+            throw new IllegalStateException("Could not determine next state. Markov chain is invalid.");
         }
     }
 }
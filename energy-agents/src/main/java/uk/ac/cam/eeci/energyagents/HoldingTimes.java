@@ -0,0 +1,100 @@
+package uk.ac.cam.eeci.energyagents;
+
+/**
+ * The holding times of the states of a {@link HeterogeneousMarkovChain} over a horizon of time
+ * steps, for moving the chain from one transition to the next instead of from one step to the next.
+ * <br><br>
+ * For each state, the logarithms of the probabilities to remain in the state are summed up over
+ * the horizon. The probability to remain in a state from one step up to another one is then the
+ * exponential of the difference of two of these sums, and the step of the next transition can be
+ * sampled from a single random number by a binary search. Steps in which remaining in a state is
+ * impossible are kept apart, as their logarithm is not finite. The next state is sampled from
+ * the transitions of the step of the transition, conditioned on leaving the state. Transitions
+ * hence follow the same distribution as when moving the chain in every step.
+ *
+ * @param <T> The type of the states of the Markov chain.
+ */
+class HoldingTimes<T extends Enum<T>> {
+
+    private final int firstStep;
+    private final int numberSteps;
+    private final HeterogeneousMarkovChain.MarkovChain<T>[] chainOfStep;
+    private final double[][] logSurvival; // per state, sums of the logs of staying over the steps before each step
+    private final int[][] nextCertainDeparture; // per state, the first step not before each step that can't be stayed in
+
+    /**
+     * @param markovChain the markov chain
+     * @param states all states of the markov chain
+     * @param horizon the context of each step of the horizon, consecutive
+     * @throws IllegalArgumentException if any step of the horizon is not a valid time for the chain
+     */
+    HoldingTimes(HeterogeneousMarkovChain<T> markovChain, T[] states, StepContext[] horizon) {
+        this.firstStep = horizon.length > 0 ? horizon[0].getStepIndex() : 0;
+        this.numberSteps = horizon.length;
+        this.chainOfStep = new HeterogeneousMarkovChain.MarkovChain[this.numberSteps];
+        for (int step = 0; step < this.numberSteps; step++) {
+            this.chainOfStep[step] = markovChain.chainAt(horizon[step]);
+        }
+        this.logSurvival = new double[states.length][];
+        this.nextCertainDeparture = new int[states.length][];
+        for (T state : states) {
+            double[] logSurvival = new double[this.numberSteps + 1];
+            int[] nextCertainDeparture = new int[this.numberSteps + 1];
+            boolean[] certainDeparture = new boolean[this.numberSteps];
+            for (int step = 0; step < this.numberSteps; step++) {
+                double stayProbability = this.chainOfStep[step].stayProbability(state);
+                certainDeparture[step] = !(stayProbability > 0.0); // includes states without transitions
+                logSurvival[step + 1] = logSurvival[step] + (certainDeparture[step] ? 0.0 : Math.log(stayProbability));
+            }
+            nextCertainDeparture[this.numberSteps] = this.numberSteps;
+            for (int step = this.numberSteps - 1; step >= 0; step--) {
+                nextCertainDeparture[step] = certainDeparture[step] ? step : nextCertainDeparture[step + 1];
+            }
+            this.logSurvival[state.ordinal()] = logSurvival;
+            this.nextCertainDeparture[state.ordinal()] = nextCertainDeparture;
+        }
+    }
+
+    /**
+     * @param state the current state
+     * @param stepIndex the index of the first step in which the state could be left
+     * @param randomNumber a random number between 0 (inclusive) and 1 (exclusive)
+     * @return the index of the step in which the state is left; the index of the step after the
+     *         horizon if the state is not left within the horizon
+     */
+    int departure(T state, int stepIndex, double randomNumber) {
+        int step = stepIndex - this.firstStep;
+        if (step >= this.numberSteps) {
+            return this.firstStep + this.numberSteps;
+        }
+        double[] logSurvival = this.logSurvival[state.ordinal()];
+        int certainDeparture = this.nextCertainDeparture[state.ordinal()][step];
+        // the state is left in the first step after which the probability of having stayed
+        // all along falls below the random number
+        double threshold = logSurvival[step] + Math.log(randomNumber);
+        int low = step + 1;
+        int high = certainDeparture + 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (logSurvival[middle] < threshold) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        if (low <= certainDeparture) {
+            return this.firstStep + low - 1;
+        }
+        return this.firstStep + certainDeparture;
+    }
+
+    /**
+     * @param state the current state
+     * @param stepIndex the index of the step in which the state is left
+     * @param randomNumber a random number between 0 (inclusive) and 1 (exclusive)
+     * @return the next state, other than the current one
+     */
+    T destination(T state, int stepIndex, double randomNumber) {
+        return this.chainOfStep[stepIndex - this.firstStep].leave(state, randomNumber);
+    }
+}
@@ -9,11 +9,12 @@ import java.io.IOException;
 import java.io.Reader;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Objects;
 
 import uk.ac.cam.eeci.energyagents.Person.Activity;
 import uk.ac.cam.eeci.energyagents.HeterogeneousMarkovChain.MarkovChain;
@@ -30,6 +31,9 @@ public abstract class MarkovChainReader {
     private final static String FROM_ACTIVITY_COLUMN_NAME = "from_activity";
     private final static String TO_ACTIVITY_COLUMN_NAME = "to_activity";
     private final static String PROBABILITY_COLUMN_NAME = "probability";
+    private final static String WEEKDAY = "weekday";
+    private final static String WEEKEND = "weekend";
+    final static String[] DAYS = {WEEKDAY, WEEKEND};
 
     static class MarkovChainEntry {
 
@@ -46,6 +50,43 @@ public abstract class MarkovChainReader {
             this.toActivity = to;
             this.probability = probability;
         }
+
+        String getDay() {
+            return this.day;
+        }
+
+        LocalTime getTimeOfDay() {
+            return this.timeOfDay;
+        }
+
+        Activity getFromActivity() {
+            return this.fromActivity;
+        }
+
+        Activity getToActivity() {
+            return this.toActivity;
+        }
+
+        double getProbability() {
+            return this.probability;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            MarkovChainEntry that = (MarkovChainEntry) o;
+            return Double.compare(that.probability, this.probability) == 0 &&
+                    this.day.equals(that.day) &&
+                    this.timeOfDay.equals(that.timeOfDay) &&
+                    this.fromActivity == that.fromActivity &&
+                    this.toActivity == that.toActivity;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.day, this.timeOfDay, this.fromActivity, this.toActivity, this.probability);
+        }
     }
 
     /**
@@ -59,8 +100,11 @@ public abstract class MarkovChainReader {
      */
     public static HeterogeneousMarkovChain<Activity> readMarkovChainFromFile(Reader reader, Duration timeStepSize,
                                                                              ZoneId timeZone) throws IOException {
-        List<CSVRecord> list = new CSVParser(reader, CSVFormat.DEFAULT).getRecords();
-        CSVRecord header = list.get(0);
+        Iterator<CSVRecord> records = new CSVParser(reader, CSVFormat.DEFAULT).iterator();
+        if (!records.hasNext()) {
+            throw new IOException("Invalid format of markov chain csv. Header is missing.");
+        }
+        CSVRecord header = records.next();
         if (header.size() != 5) {
             String msg = "Invalid format of markov chain csv. Must have 5 columns.";
             throw new IOException(msg);
@@ -71,33 +115,69 @@ public abstract class MarkovChainReader {
         final int toActivityColumnIndex = MarkovChainReader.columnIndex(header, TO_ACTIVITY_COLUMN_NAME);
         final int probabilityColumnIndex = MarkovChainReader.columnIndex(header, PROBABILITY_COLUMN_NAME);
 
-        List<MarkovChainEntry> entries = list.stream().skip(1)
-                .map(record -> entryFromCSVRecord(record, dayColumnIndex, timeColumnIndex, fromActivityColumnIndex,
-                        toActivityColumnIndex, probabilityColumnIndex))
-                .collect(Collectors.toList());
-
-        return buildMarkovChainFromEntries(entries, timeStepSize, timeZone);
+        Builder builder = new Builder(timeStepSize);
+        while (records.hasNext()) {
+            builder.add(entryFromCSVRecord(records.next(), dayColumnIndex, timeColumnIndex, fromActivityColumnIndex,
+                    toActivityColumnIndex, probabilityColumnIndex));
+        }
+        return builder.build(timeZone);
     }
 
     static HeterogeneousMarkovChain<Activity> buildMarkovChainFromEntries(List<MarkovChainEntry> entries,
                                                                           Duration timeStepSize,
                                                                           ZoneId timeZone) {
-        Map<String, Map<LocalTime, MarkovChain<Activity>>> chain = new HashMap<>();
-        String[] days = {"weekday", "weekend"};
-        for (String day : days) {
-            Map<LocalTime, MarkovChain<Activity>> dayChain = new HashMap<>();
-            for (LocalTime time : MarkovChainReader.allTimeStampsOfOneDay(timeStepSize)) {
-                Map<Pair<Activity, Activity>, Double> probabilities = new HashMap<>();
-                entries.stream()
-                        .filter(entry -> entry.day.equals(day))
-                        .filter(entry -> entry.timeOfDay.equals(time))
-                        .forEach(entry -> probabilities.put(new Pair<>(entry.fromActivity, entry.toActivity),
-                                entry.probability));
-                dayChain.put(time, new HeterogeneousMarkovChain.MarkovChain<>(probabilities));
+        Builder builder = new Builder(timeStepSize);
+        entries.forEach(builder::add);
+        return builder.build(timeZone);
+    }
+
+    /**
+     * Groups markov chain entries by day and time of day in a single pass.
+     * <br><br>
+     * Entries for days other than weekday and weekend, or for times of day that are no time
+     * steps, are ignored. Slots with identical transition probabilities share one chain.
+     */
+    private static class Builder {
+
+        private final List<LocalTime> timeStamps;
+        private final Map<String, Map<LocalTime, Map<Pair<Activity, Activity>, Double>>> probabilities;
+
+        private Builder(Duration timeStepSize) {
+            this.timeStamps = MarkovChainReader.allTimeStampsOfOneDay(timeStepSize);
+            this.probabilities = new HashMap<>();
+            for (String day : DAYS) {
+                Map<LocalTime, Map<Pair<Activity, Activity>, Double>> dayProbabilities = new HashMap<>();
+                for (LocalTime time : this.timeStamps) {
+                    dayProbabilities.put(time, new HashMap<>());
+                }
+                this.probabilities.put(day, dayProbabilities);
+            }
+        }
+
+        private void add(MarkovChainEntry entry) {
+            Map<LocalTime, Map<Pair<Activity, Activity>, Double>> dayProbabilities = this.probabilities.get(entry.day);
+            if (dayProbabilities == null) {
+                return;
+            }
+            Map<Pair<Activity, Activity>, Double> slotProbabilities = dayProbabilities.get(entry.timeOfDay);
+            if (slotProbabilities != null) {
+                slotProbabilities.put(new Pair<>(entry.fromActivity, entry.toActivity), entry.probability);
+            }
+        }
+
+        private HeterogeneousMarkovChain<Activity> build(ZoneId timeZone) {
+            Map<Map<Pair<Activity, Activity>, Double>, MarkovChain<Activity>> internedChains = new HashMap<>();
+            Map<String, Map<LocalTime, MarkovChain<Activity>>> chain = new HashMap<>();
+            for (String day : DAYS) {
+                Map<LocalTime, MarkovChain<Activity>> dayChain = new HashMap<>();
+                for (Map.Entry<LocalTime, Map<Pair<Activity, Activity>, Double>> slot
+                        : this.probabilities.get(day).entrySet()) {
+                    dayChain.put(slot.getKey(), internedChains.computeIfAbsent(slot.getValue(), MarkovChain::new));
+                }
+                chain.put(day, dayChain);
             }
-            chain.put(day, dayChain);
+            return new HeterogeneousMarkovChain<>(chain.get(WEEKDAY), chain.get(WEEKEND), timeZone);
         }
-        return new HeterogeneousMarkovChain<>(chain.get("weekday"), chain.get("weekend"), timeZone);
     }
 
     private static MarkovChainEntry entryFromCSVRecord(CSVRecord record, int day, int time, int from, int to, int probability) {
@@ -119,7 +199,7 @@ public abstract class MarkovChainReader {
     }
 
     private static List<LocalTime> allTimeStampsOfOneDay(Duration timeStepSize) {
-        List<LocalTime> list = new LinkedList<>();
+        List<LocalTime> list = new ArrayList<>();
         LocalDate date = LocalDate.of(2017, 1, 1); // arbitrary date
         LocalDateTime tsp = LocalDateTime.of(date, LocalTime.MIDNIGHT);
         do {
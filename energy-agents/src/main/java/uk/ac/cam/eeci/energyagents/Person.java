@@ -1,5 +1,8 @@
 package uk.ac.cam.eeci.energyagents;
 
+import uk.ac.cam.eeci.framework.IPlaceable;
+import uk.ac.cam.eeci.framework.Reference;
+
 import java.time.*;
 import java.util.HashSet;
 import java.util.Random;
@@ -7,8 +10,12 @@ import java.util.Set;
 
 /**
  * The model of a citizen making choices on activities and locations.
+ * <br><br>
+ * A person is placed on the same worker as its home, as it is talking to it regularly: whenever
+ * the person enters or leaves its home, or falls asleep or wakes up in there, it pushes the change
+ * of occupancy to its home.
  */
-public class Person {
+public class Person implements IPlaceable {
 
     /**
      * Activities of citizens.
@@ -17,6 +24,24 @@ public class Person {
         HOME, SLEEP_AT_HOME, NOT_AT_HOME
     }
 
+    /**
+     * Generators of the random numbers of people.
+     */
+    public enum RandomNumberGenerator {
+        /** {@link Random}, reproducing the results of earlier versions. */
+        JAVA_UTIL_RANDOM,
+        /** {@link CounterBasedRandom}, drawing numbers without any synchronisation. */
+        COUNTER_BASED;
+
+        /**
+         * @param seed the random seed of a person
+         * @return a new generator of random numbers for the person
+         */
+        public Random create(long seed) {
+            return this == COUNTER_BASED ? new CounterBasedRandom(seed) : new Random(seed);
+        }
+    }
+
     public final static Set<Activity> HOME_ACTIVITIES;
     public final static Set<Activity> SLEEP_ACTIVITIES;
     private final static Set<Activity> OWN_HOME_ACTIVITIES;
@@ -35,11 +60,13 @@ public class Person {
     private final double passiveMetabolicRate;
     private final Random randomNumberGenerator;
     private final Duration timeStepSize;
-    private PersonReference reference;
     private final DwellingReference home;
-    private ZonedDateTime currentTime;
+    private final ZonedDateTime initialDateTime;
+    private int stepsTaken;
     private Activity currentActivity;
     private boolean atHome;
+    private boolean asleep;
+    private double metabolicHeatGainAtHome;
 
     /**
      *
@@ -61,26 +88,88 @@ public class Person {
         this.activeMetabolicRate = activeMetabolicRate;
         this.passiveMetabolicRate = passiveMetabolicRate;
         this.currentActivity = initialActivity;
-        this.currentTime = initialDateTime;
+        this.initialDateTime = initialDateTime;
+        this.stepsTaken = 0;
         this.timeStepSize = timeStepSize;
-        this.reference = new PersonReference(this);
-        this.randomNumberGenerator = randomNumberGenerator;
         this.home = home;
+        this.randomNumberGenerator = randomNumberGenerator;
         this.atHome = false;
+        this.asleep = false;
+        this.metabolicHeatGainAtHome = 0.0;
         this.updateLocation();
     }
 
     /**
-     * Run simulation for one time step.
+     * Run simulation for the time step following the previous one.
      *
      * Chooses new activity.
-     * Updates internal time by time step.
      */
     public void step() {
-        this.currentActivity = this.markovChain.move(this.currentActivity, this.currentTime,
-                this.randomNumberGenerator);
+        ZonedDateTime time = this.initialDateTime.plus(this.timeStepSize.multipliedBy(this.stepsTaken));
+        this.step(new StepContext(this.stepsTaken, time));
+    }
+
+    /**
+     * Run simulation for one time step.
+     *
+     * Chooses new activity.
+     *
+     * @param context the current time step
+     */
+    public void step(StepContext context) {
+        this.currentActivity = this.markovChain.move(this.currentActivity, context, this.randomNumberGenerator);
         this.updateLocation();
-        this.currentTime = this.currentTime.plus(this.timeStepSize);
+        this.stepsTaken = context.getStepIndex() + 1;
+    }
+
+    /**
+     * Chooses the activity of the next time step without entering or leaving the home.
+     * <br><br>
+     * Meant for generating the activity trajectory of a person ahead of time, independent
+     * of the dwelling: the person does not keep track of its location anymore.
+     *
+     * @param context the current time step
+     * @return the new activity
+     */
+    public Activity advance(StepContext context) {
+        this.currentActivity = this.markovChain.move(this.currentActivity, context, this.randomNumberGenerator);
+        this.stepsTaken = context.getStepIndex() + 1;
+        return this.currentActivity;
+    }
+
+    /**
+     * Samples the step in which the person leaves its current activity, without changing it.
+     * <br><br>
+     * Like {@link #advance(StepContext)}, meant for generating the activity trajectory of a person
+     * ahead of time, but from one change of activity to the next.
+     *
+     * @param holdingTimes the holding times of the activities of this person's markov chain
+     * @param stepIndex the index of the first step in which the activity could change
+     * @return the index of the step in which the activity changes
+     */
+    int sampleDeparture(HoldingTimes<Activity> holdingTimes, int stepIndex) {
+        return holdingTimes.departure(this.currentActivity, stepIndex, this.randomNumberGenerator.nextDouble());
+    }
+
+    /**
+     * Chooses the activity following the current one without entering or leaving the home.
+     *
+     * @param holdingTimes the holding times of the activities of this person's markov chain
+     * @param stepIndex the index of the step in which the activity changes
+     * @return the new activity
+     */
+    Activity depart(HoldingTimes<Activity> holdingTimes, int stepIndex) {
+        this.currentActivity = holdingTimes.destination(this.currentActivity, stepIndex,
+                this.randomNumberGenerator.nextDouble());
+        this.stepsTaken = stepIndex + 1;
+        return this.currentActivity;
+    }
+
+    /**
+     * @return the markov chain determining the activities of this person
+     */
+    HeterogeneousMarkovChain<Activity> getMarkovChain() {
+        return this.markovChain;
     }
 
     /**
@@ -91,27 +180,73 @@ public class Person {
         return this.currentActivity;
     }
 
+    /**
+     * Overwrites the current activity with one recorded earlier, leaving the location of the
+     * person untouched.
+     *
+     * @param activity the activity
+     */
+    void restoreActivity(Activity activity) {
+        this.currentActivity = activity;
+    }
+
     /**
      *
      * @return the metabolic rate depending on current activity
      */
     public double getCurrentMetabolicRate() {
-        if (SLEEP_ACTIVITIES.contains(this.currentActivity)) {
+        return this.getMetabolicRate(this.currentActivity);
+    }
+
+    /**
+     *
+     * @param activity any activity
+     * @return the metabolic rate of this person during the given activity
+     */
+    public double getMetabolicRate(Activity activity) {
+        if (SLEEP_ACTIVITIES.contains(activity)) {
             return this.passiveMetabolicRate;
         } else {
             return this.activeMetabolicRate;
         }
     }
 
+    /**
+     * @param activity any activity
+     * @return true if a person with the given activity is in its own home
+     */
+    static boolean isAtOwnHome(Activity activity) {
+        return OWN_HOME_ACTIVITIES.contains(activity);
+    }
+
+    /**
+     *
+     * @return a {@link DwellingReference} to this person's home
+     */
+    public DwellingReference getHome() {
+        return this.home;
+    }
+
+    @Override
+    public Reference<?> placementAnchor() {
+        return this.home;
+    }
+
     private void updateLocation() {
-        if (this.atHome && !OWN_HOME_ACTIVITIES.contains(this.currentActivity)) {
-            this.atHome = false;
-            this.home.leave(this.reference);
-        } else if (!this.atHome && OWN_HOME_ACTIVITIES.contains(this.currentActivity)) {
-            this.atHome = true;
-            this.home.enter(this.reference);
+        boolean atHome = OWN_HOME_ACTIVITIES.contains(this.currentActivity);
+        boolean asleep = atHome && SLEEP_ACTIVITIES.contains(this.currentActivity);
+        if (atHome != this.atHome || asleep != this.asleep) {
+            double metabolicHeatGainAtHome = atHome ? this.getMetabolicRate(this.currentActivity) : 0.0;
+            this.home.updateOccupancy(toInt(atHome) - toInt(this.atHome), toInt(asleep) - toInt(this.asleep),
+                    metabolicHeatGainAtHome - this.metabolicHeatGainAtHome);
+            this.atHome = atHome;
+            this.asleep = asleep;
+            this.metabolicHeatGainAtHome = metabolicHeatGainAtHome;
         }
+    }
 
+    private static int toInt(boolean value) {
+        return value ? 1 : 0;
     }
 
 }
@@ -1,6 +1,7 @@
 package uk.ac.cam.eeci.energyagents;
 
 import org.javatuples.Pair;
+import uk.ac.cam.eeci.energyagents.Person.Activity;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
@@ -8,6 +9,8 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An urban district comprising of several dwellings.
+ * <br><br>
+ * Activity counts of the district are accumulated in a single pass over its people.
  */
 public class PersonDistrict {
 
@@ -31,6 +34,35 @@ public class PersonDistrict {
                 .thenApply(nothing -> values);
     }
 
+    /**
+     * @return the number of people in the district currently performing each activity; activities
+     *         nobody performs are left out
+     */
+    public CompletableFuture<Map<Activity, Long>> getCurrentActivityCounts() {
+        Activity[] activities = new Activity[this.people.size()];
+        CompletableFuture<Void>[] updates = new CompletableFuture[this.people.size()];
+        for (int i = 0; i < this.people.size(); ++i) {
+            final int position = i;
+            updates[i] = this.people.get(i).getCurrentActivity()
+                    .thenAccept(activity -> activities[position] = activity);
+        }
+        return CompletableFuture.allOf(updates)
+                .thenApply(nothing -> countActivities(activities));
+    }
+
+    private static Map<Activity, Long> countActivities(Activity[] activities) {
+        long[] counts = new long[Activity.values().length];
+        for (Activity activity : activities) {
+            counts[activity.ordinal()]++;
+        }
+        Map<Activity, Long> countsByActivity = new EnumMap<>(Activity.class);
+        for (Activity activity : Activity.values()) {
+            if (counts[activity.ordinal()] > 0) {
+                countsByActivity.put(activity, counts[activity.ordinal()]);
+            }
+        }
+        return countsByActivity;
+    }
 
     private CompletableFuture<Pair<PersonReference, Enum>> getActivity(PersonReference person) {
         return person.getCurrentActivity().thenApplyAsync(temp -> new Pair<>(person, temp));
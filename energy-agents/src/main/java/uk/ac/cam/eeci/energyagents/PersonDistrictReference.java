@@ -15,4 +15,9 @@ public class PersonDistrictReference extends Reference<PersonDistrict> {
         return this.referent.getAllCurrentActivities()
                 .thenApplyAsync((values) -> values, pool.currentExecutor());
     }
+
+    public CompletableFuture<Map<Person.Activity, Long>> getCurrentActivityCounts() {
+        return this.referent.getCurrentActivityCounts()
+                .thenApplyAsync((counts) -> counts, pool.currentExecutor());
+    }
 }
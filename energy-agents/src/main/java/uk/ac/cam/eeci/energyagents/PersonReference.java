@@ -15,6 +15,11 @@ public class PersonReference extends Reference<Person> {
                 .thenRunAsync(() ->{}, pool.currentExecutor());
     }
 
+    public CompletableFuture<Void> step(StepContext context) {
+        return CompletableFuture.runAsync(() -> this.referent.step(context), this.executor)
+                .thenRunAsync(() ->{}, pool.currentExecutor());
+    }
+
     public CompletableFuture<Person.Activity> getCurrentActivity() {
         return CompletableFuture.supplyAsync(this.referent::getCurrentActivity, this.executor)
                 .thenApplyAsync(i -> i, pool.currentExecutor());
@@ -0,0 +1,223 @@
+package uk.ac.cam.eeci.energyagents;
+
+import java.sql.*;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+/**
+ * Writes simulation results into the output database.
+ * <br><br>
+ * All results are written through a single connection in few, large transactions, using one
+ * prepared statement per table. Indexes on the result tables are created only once all rows
+ * are written, when the writer is closed. Results of each data point go into a table of their
+ * own with the columns timestamp, id, and value.
+ */
+class ResultDatabaseWriter implements AutoCloseable {
+
+    private final static int ROWS_PER_TRANSACTION = 1_000_000;
+
+    private final Connection conn;
+    private final Map<String, Table> tables;
+    private int uncommittedRows;
+
+    /**
+     * @param outputFilename the output database; existing result tables are replaced
+     * @throws SQLException if the database cannot be opened
+     */
+    ResultDatabaseWriter(String outputFilename) throws SQLException {
+        this.conn = DriverManager.getConnection(String.format("jdbc:sqlite:%s", outputFilename));
+        try (Statement stat = this.conn.createStatement()) {
+            stat.execute("pragma journal_mode = WAL;");
+            stat.execute("pragma synchronous = NORMAL;");
+        }
+        this.conn.setAutoCommit(false);
+        this.tables = new LinkedHashMap<>();
+        this.uncommittedRows = 0;
+    }
+
+    /**
+     * Writes the complete record of a data point.
+     *
+     * @param dataPointName the name of the data point, used as table name
+     * @param record the columns of all data point sources
+     * @throws SQLException if writing fails
+     */
+    void writeDataPoint(String dataPointName, DataPointRecord record) throws SQLException {
+        List<Integer> ids = record.getIds();
+        int[] rowOrder = rowOrder(ids);
+        Table table = this.createTable(dataPointName, record.getValueType() == DataPointRecord.ValueType.DOUBLE);
+        String[] categoryNames = record.getCategories().stream().map(Object::toString).toArray(String[]::new);
+        TimeIndex index = record.getTimeIndex();
+        for (int i = 0; i < index.size(); i++) {
+            Timestamp timestamp = Timestamp.from(index.get(i).toInstant());
+            for (int position : rowOrder) {
+                int id = ids.get(position);
+                switch (record.getValueType()) {
+                    case DOUBLE:
+                        table.addRow(timestamp, id, record.getDouble(position, i));
+                        break;
+                    case CATEGORY:
+                        table.addRow(timestamp, id, categoryNames[record.getCategoryCode(position, i)]);
+                        break;
+                    default:
+                        table.addRow(timestamp, id, record.getValue(position, i));
+                }
+            }
+            this.executeBatch(table, ids.size());
+        }
+    }
+
+    /**
+     * Writes the values of a data point at a single time step.
+     *
+     * @param dataPointName the name of the data point, used as table name
+     * @param ids the ids of the data point sources
+     * @param time the time of the values
+     * @param values the values, in the order of the ids
+     * @throws SQLException if writing fails
+     */
+    void writeTimeStep(String dataPointName, List<Integer> ids, ZonedDateTime time, List<?> values)
+            throws SQLException {
+        Table table = this.tables.get(dataPointName);
+        if (table == null) {
+            int[] rowOrder = rowOrder(ids);
+            table = this.createTable(dataPointName, values.get(rowOrder[0]) instanceof Double);
+            table.rowOrder = rowOrder;
+        }
+        Timestamp timestamp = Timestamp.from(time.toInstant());
+        for (int position : table.rowOrder) {
+            table.addRow(timestamp, ids.get(position), values.get(position));
+        }
+        this.executeBatch(table, ids.size());
+    }
+
+    /**
+     * Writes metadata of the simulation into its own table.
+     *
+     * @param metadata the metadata as key value pairs
+     * @throws SQLException if writing fails
+     */
+    void writeMetadata(Map<String, String> metadata) throws SQLException {
+        try (Statement stat = this.conn.createStatement()) {
+            stat.executeUpdate(String.format("drop table if exists %s;", DataLogger.METADATA_TABLE_NAME));
+            stat.executeUpdate(String.format(
+                    "create table %s (key VARCHAR(100), value VARCHAR(100));", DataLogger.METADATA_TABLE_NAME));
+        }
+        try (PreparedStatement prep = this.conn.prepareStatement(
+                String.format("insert into %s values (?, ?);", DataLogger.METADATA_TABLE_NAME))) {
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                prep.setString(1, entry.getKey());
+                prep.setString(2, entry.getValue());
+                prep.addBatch();
+            }
+            prep.executeBatch();
+        }
+        this.conn.commit();
+    }
+
+    /**
+     * Commits all rows written so far.
+     *
+     * @throws SQLException if committing fails
+     */
+    void commit() throws SQLException {
+        this.conn.commit();
+        this.uncommittedRows = 0;
+    }
+
+    /**
+     * Creates indexes on all result tables, commits, and closes the database.
+     *
+     * @throws SQLException if indexing or committing fails
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            try (Statement stat = this.conn.createStatement()) {
+                for (String tableName : this.tables.keySet()) {
+                    stat.executeUpdate(String.format(
+                            "create index if not exists %s_id_timestamp on %s (id, timestamp);", tableName, tableName));
+                }
+            }
+            this.conn.commit();
+        } finally {
+            for (Table table : this.tables.values()) {
+                table.insert.close();
+            }
+            this.conn.close();
+        }
+    }
+
+    private Table createTable(String dataPointName, boolean containsDoubles) throws SQLException {
+        String valueDataType = containsDoubles ? "DOUBLE PRECISION" : "VARCHAR(100)";
+        try (Statement stat = this.conn.createStatement()) {
+            stat.executeUpdate(String.format("drop table if exists %s;", dataPointName));
+            stat.executeUpdate(String.format(
+                    "create table %s (timestamp TIMESTAMP, id INTEGER, value %s);", dataPointName, valueDataType));
+        }
+        Table table = new Table(
+                this.conn.prepareStatement(String.format("insert into %s values (?, ?, ?);", dataPointName)),
+                containsDoubles);
+        this.tables.put(dataPointName, table);
+        return table;
+    }
+
+    /**
+     * Rows of each time step are written in the same order by {@link #writeDataPoint} and
+     * {@link #writeTimeStep}, so that both produce the same database.
+     *
+     * @param ids the ids of the data point sources
+     * @return the positions of the ids in the order their rows are written
+     */
+    private static int[] rowOrder(List<Integer> ids) {
+        Map<Integer, Integer> positionOfId = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            positionOfId.put(ids.get(i), i);
+        }
+        return positionOfId.values().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private void executeBatch(Table table, int numberRows) throws SQLException {
+        table.insert.executeBatch();
+        this.uncommittedRows += numberRows;
+        if (this.uncommittedRows >= ROWS_PER_TRANSACTION) {
+            this.commit();
+        }
+    }
+
+    private static class Table {
+        private final PreparedStatement insert;
+        private final boolean containsDoubles;
+        private int[] rowOrder; // positions of values in the order rows are written, when written by time step
+
+        private Table(PreparedStatement insert, boolean containsDoubles) {
+            this.insert = insert;
+            this.containsDoubles = containsDoubles;
+        }
+
+        private void addRow(Timestamp timestamp, int id, double value) throws SQLException {
+            this.insert.setTimestamp(1, timestamp);
+            this.insert.setInt(2, id);
+            this.insert.setDouble(3, value);
+            this.insert.addBatch();
+        }
+
+        private void addRow(Timestamp timestamp, int id, String value) throws SQLException {
+            this.insert.setTimestamp(1, timestamp);
+            this.insert.setInt(2, id);
+            this.insert.setString(3, value);
+            this.insert.addBatch();
+        }
+
+        private void addRow(Timestamp timestamp, int id, Object value) throws SQLException {
+            this.insert.setTimestamp(1, timestamp);
+            this.insert.setInt(2, id);
+            if (this.containsDoubles) {
+                this.insert.setDouble(3, (Double) value);
+            } else {
+                this.insert.setString(3, value.toString());
+            }
+            this.insert.addBatch();
+        }
+    }
+}
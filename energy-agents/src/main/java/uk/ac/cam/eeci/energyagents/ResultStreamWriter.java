@@ -0,0 +1,143 @@
+package uk.ac.cam.eeci.energyagents;
+
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes the values of data points to the output database on a background thread while the
+ * simulation is running.
+ * <br><br>
+ * Values of one time step of one data point are handed over as a batch through a bounded queue.
+ * Whenever the queue is full, producers block until the writer caught up, hence memory
+ * consumption is independent of the length of the simulation. Tables and rows are identical to
+ * the ones written by {@link DataLogger} in memory mode.
+ * <br><br>
+ * If writing fails, the writer discards all further batches so that producers never block, and
+ * any further hand over fails with an {@link IllegalStateException}.
+ */
+class ResultStreamWriter {
+
+    private final static Batch END_OF_STREAM = new Batch(null, null, null, null);
+
+    private final String outputFilename;
+    private final BlockingQueue<Batch> queue;
+    private final Thread thread;
+    private volatile Exception failure;
+
+    /**
+     * @param outputFilename the output database to which data points are written
+     * @param capacity the maximum number of batches waiting to be written
+     */
+    ResultStreamWriter(String outputFilename, int capacity) {
+        this.outputFilename = outputFilename;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::run, "result-stream-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Hands over the values of a data point at one time step. Blocks while the queue is full.
+     *
+     * @param dataPointName the name of the data point
+     * @param ids the ids of the data point sources
+     * @param time the time of the values
+     * @param values the values, in the order of the ids
+     * @throws IllegalStateException if writing has failed before
+     */
+    void write(String dataPointName, List<Integer> ids, ZonedDateTime time, List<?> values) {
+        this.checkFailure();
+        this.put(new Batch(dataPointName, ids, time, values));
+    }
+
+    /**
+     * Writes all remaining batches and terminates the background thread.
+     *
+     * @throws IllegalStateException if writing has failed
+     */
+    void finish() {
+        this.put(END_OF_STREAM);
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.checkFailure();
+    }
+
+    private void checkFailure() {
+        Exception failure = this.failure;
+        if (failure != null) {
+            throw new IllegalStateException("Failed to write results to database.", failure);
+        }
+    }
+
+    private void put(Batch batch) {
+        try {
+            this.queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        boolean endOfStream = false;
+        try (ResultDatabaseWriter writer = new ResultDatabaseWriter(this.outputFilename)) {
+            Set<String> failedDataPoints = new HashSet<>();
+            List<Batch> batches = new ArrayList<>();
+            while (!endOfStream) {
+                batches.add(this.queue.take());
+                this.queue.drainTo(batches);
+                endOfStream = batches.remove(END_OF_STREAM);
+                for (Batch batch : batches) {
+                    if (!failedDataPoints.contains(batch.dataPointName)) {
+                        try {
+                            writer.writeTimeStep(batch.dataPointName, batch.ids, batch.time, batch.values);
+                        } catch (SQLException ex) {
+                            ex.printStackTrace();
+                            System.out.println(String.format("Failed to write datapoint %s.", batch.dataPointName));
+                            failedDataPoints.add(batch.dataPointName);
+                        }
+                    }
+                }
+                batches.clear();
+            }
+        } catch (SQLException|RuntimeException ex) {
+            ex.printStackTrace();
+            System.out.println("Failed to write results to database.");
+            this.failure = ex;
+            if (!endOfStream) {
+                this.discardRemainingBatches();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void discardRemainingBatches() {
+        try {
+            while (this.queue.take() != END_OF_STREAM) {
+                // producers must not block forever
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Batch {
+        private final String dataPointName;
+        private final List<Integer> ids;
+        private final ZonedDateTime time;
+        private final List<?> values;
+
+        private Batch(String dataPointName, List<Integer> ids, ZonedDateTime time, List<?> values) {
+            this.dataPointName = dataPointName;
+            this.ids = ids;
+            this.time = time;
+            this.values = values;
+        }
+    }
+}
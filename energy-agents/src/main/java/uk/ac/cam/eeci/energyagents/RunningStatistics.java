@@ -0,0 +1,100 @@
+package uk.ac.cam.eeci.energyagents;
+
+/**
+ * Statistics of a sequence of values, accumulated in a single pass without storing the values.
+ * <br><br>
+ * Mean and variance are updated with Welford's algorithm, which avoids the cancellation of a
+ * plain sum of squares.
+ */
+public class RunningStatistics {
+
+    private long count;
+    private double mean;
+    private double sumOfSquaredDeviations;
+    private double min;
+    private double max;
+
+    public RunningStatistics() {
+        this.reset();
+    }
+
+    /**
+     * Forgets all values accumulated so far.
+     */
+    public void reset() {
+        this.count = 0;
+        this.mean = 0.0;
+        this.sumOfSquaredDeviations = 0.0;
+        this.min = Double.POSITIVE_INFINITY;
+        this.max = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * @param value the next value
+     */
+    public void accept(double value) {
+        this.count++;
+        double deviation = value - this.mean;
+        this.mean += deviation / this.count;
+        this.sumOfSquaredDeviations += deviation * (value - this.mean);
+        this.min = Math.min(this.min, value);
+        this.max = Math.max(this.max, value);
+    }
+
+    /**
+     * @param values the next values
+     * @param from the index of the first value, inclusive
+     * @param to the index of the last value, exclusive
+     */
+    public void accept(double[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            this.accept(values[i]);
+        }
+    }
+
+    /**
+     * @return the number of values
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return the sum of all values
+     */
+    public double getSum() {
+        return this.mean * this.count;
+    }
+
+    /**
+     * @return the arithmetic mean of all values; 0 if there are none
+     */
+    public double getMean() {
+        return this.mean;
+    }
+
+    /**
+     * @return the sample standard deviation of all values; NaN for a single value and 0 if there
+     *         are none
+     */
+    public double getStandardDeviation() {
+        if (this.count == 0) {
+            return 0.0;
+        }
+        return Math.sqrt(this.sumOfSquaredDeviations / (this.count - 1));
+    }
+
+    /**
+     * @return the smallest value; positive infinity if there are none
+     */
+    public double getMin() {
+        return this.min;
+    }
+
+    /**
+     * @return the largest value; negative infinity if there are none
+     */
+    public double getMax() {
+        return this.max;
+    }
+}
@@ -5,15 +5,21 @@ import org.apache.logging.log4j.Logger;
 import uk.ac.cam.eeci.energyagents.strategy.HeatingControlStrategyFactory;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
-import java.util.stream.Collector;
 import java.util.List;
-import java.util.function.Function;
+import java.util.function.BiFunction;
 import java.util.function.IntToDoubleFunction;
 
 /**
@@ -42,6 +48,7 @@ public class ScenarioBuilder {
     public final static String SQL_COLUMNS_PAR_LEAVE_HOME_TIME = "leaveHomeTime";
     public final static String SQL_COLUMNS_PAR_COME_HOME_TIME = "comeHomeTime";
     public final static String SQL_COLUMNS_PAR_BED_TIME = "bedTime";
+    public final static String SQL_COLUMNS_PAR_HEATING_CONTROL_STRATEGY = "heatingControlStrategy";
     public final static String SQL_COLUMNS_ENV_INDEX = "index";
     public final static String SQL_COLUMNS_ENV_TEMPERATURE = "temperature";
     public final static String SQL_COLUMNS_DW_INDEX = "index";
@@ -82,6 +89,10 @@ public class ScenarioBuilder {
     public final static String THERMAL_POWER_DATA_POINT_NAME = "thermalPower";
     public final static String AVERAGE_THERMAL_POWER_DATA_POINT_NAME = "averageThermalPower";
     public final static String STD_THERMAL_POWER_DATA_POINT_NAME = "stdThermalPower";
+    public final static String ENSEMBLE_MEAN_SUFFIX = "EnsembleMean";
+    public final static String ENSEMBLE_P05_SUFFIX = "EnsembleP05";
+    public final static String ENSEMBLE_MEDIAN_SUFFIX = "EnsembleMedian";
+    public final static String ENSEMBLE_P95_SUFFIX = "EnsembleP95";
 
     public final static ZoneOffset TIME_ZONE = ZoneOffset.UTC;
 
@@ -116,12 +127,39 @@ public class ScenarioBuilder {
      * @throws IOException whenever reading from input database fails
      */
     public static CitySimulation readScenario(String databasePath, String outputPath) throws IOException {
+        return readScenario(databasePath, outputPath, new ScenarioOptions());
+    }
+
+    /**
+     * Reads a CitySimulation Scenario from database, or from its compiled scenario, see
+     * {@link ScenarioOptions#withCompiledScenarioDirectory(String)}.
+     * @param databasePath the path to the input database.
+     * @param outputPath the path to the database to which results shall be written
+     * @param options the way the scenario is run
+     * @return a CitySimulation
+     * @throws IOException whenever reading from input database fails
+     */
+    public static CitySimulation readScenario(String databasePath, String outputPath, ScenarioOptions options)
+            throws IOException {
+        CompiledScenario.Recorder recorder = null;
+        Path compiledScenarioFile = null;
+        byte[] hash = null;
+        if (options.getCompiledScenarioDirectory() != null) {
+            hash = CompiledScenario.hash(Paths.get(databasePath));
+            compiledScenarioFile = CompiledScenario.file(Paths.get(options.getCompiledScenarioDirectory()), hash);
+            Optional<CompiledScenario> compiledScenario = openCompiledScenario(compiledScenarioFile, hash);
+            if (compiledScenario.isPresent()) {
+                SharedScenario shared = new SharedScenario(compiledScenario.get());
+                return readReplica(shared, 0, 0, options, databasePath, outputPath, new HashMap<>());
+            }
+            recorder = new CompiledScenario.Recorder();
+        }
         CitySimulation simulation = null;
         Connection conn = null;
         try {
             Class.forName("org.sqlite.JDBC");
             conn = DriverManager.getConnection(String.format("jdbc:sqlite:%s", databasePath));
-            simulation = readScenario(conn, databasePath, outputPath);
+            simulation = readScenario(conn, databasePath, outputPath, options, recorder);
         } catch (ClassNotFoundException|SQLException|IOException ex) {
             LOGGER.error(String.format("Failed to read scenario from %s.", databasePath), ex);
             throw new IOException("Failed to read scenario");
@@ -134,29 +172,286 @@ public class ScenarioBuilder {
                 }
             }
         }
+        if (recorder != null) {
+            writeCompiledScenario(recorder, compiledScenarioFile, hash);
+        }
         return simulation;
     }
 
-    private static CitySimulation readScenario(Connection con, String inputPath, String outputPath)
+    /**
+     * Reads an ensemble of replicas of a CitySimulation Scenario from database, or from its compiled scenario.
+     * <br><br>
+     * The scenario is read and compiled only once, and all replicas share its immutable parts.
+     * @param databasePath the path to the input database.
+     * @param outputPath the path to the database to which results shall be written; replicas
+     *                   write into databases next to it, see {@link Ensemble#replicaFilename(String, int)}
+     * @param numberReplicas the number of replicas
+     * @param output whether each replica writes its results or results are summarised across replicas
+     * @param options the way the scenario is run
+     * @return an Ensemble
+     * @throws IOException whenever reading from input database fails
+     */
+    public static Ensemble readEnsemble(String databasePath, String outputPath, int numberReplicas,
+                                        Ensemble.Output output, ScenarioOptions options)
+            throws IOException {
+        if (numberReplicas < 1) {
+            throw new IllegalArgumentException("An ensemble requires at least one replica.");
+        }
+        SharedScenario shared = new SharedScenario(compileScenario(databasePath,
+                options.getCompiledScenarioDirectory()));
+        List<CitySimulation> replicas = new ArrayList<>(numberReplicas);
+        List<Map<Integer, DwellingDistrictReference>> districtsOfReplicas = new ArrayList<>(numberReplicas);
+        for (int replica = 0; replica < numberReplicas; replica++) {
+            String replicaOutputPath = output == Ensemble.Output.REPLICAS
+                    ? Ensemble.replicaFilename(outputPath, replica)
+                    : null;
+            Map<Integer, DwellingDistrictReference> districtReferences = new HashMap<>();
+            replicas.add(readReplica(shared, 0, replica, options, databasePath, replicaOutputPath,
+                    districtReferences));
+            districtsOfReplicas.add(districtReferences);
+        }
+        DataLoggerReference dataLoggerReference = null;
+        if (output == Ensemble.Output.STATISTICS) {
+            dataLoggerReference = createEnsembleDataLogger(districtsOfReplicas, shared.parameters, databasePath,
+                    outputPath, options.getLoggingMode(), options.getSink());
+        }
+        return new Ensemble(replicas, dataLoggerReference, shared.parameters.initialTime,
+                shared.parameters.timeStepSize, shared.parameters.numberTimeSteps);
+    }
+
+    /**
+     * Reads a parameter sweep of a CitySimulation Scenario from database, or from its compiled scenario.
+     * <br><br>
+     * Each row of the parameters table defines a variant of the scenario: its set points, its
+     * times of the heating schedule, and optionally a type of heating control strategy of all
+     * dwellings. Start time, time step size, number of time steps, and logging of all variants are
+     * those of the first row. The scenario is read and compiled only once, and all variants share
+     * its immutable parts.
+     * @param databasePath the path to the input database.
+     * @param outputPath the path to the database to which results shall be written; variants
+     *                   write into databases next to it, see {@link Ensemble#variantFilename(String, int)}
+     * @param identicalOccupants whether people follow the same trajectories of activities in all
+     *                           variants; otherwise people of each variant use random numbers of their own
+     * @param options the way the scenario is run
+     * @return an Ensemble of all variants
+     * @throws IOException whenever reading from input database fails
+     */
+    public static Ensemble readSweep(String databasePath, String outputPath, boolean identicalOccupants,
+                                     ScenarioOptions options)
+            throws IOException {
+        SharedScenario shared = new SharedScenario(compileScenario(databasePath,
+                options.getCompiledScenarioDirectory()));
+        int numberVariants = shared.variants.size();
+        List<CitySimulation> variants = new ArrayList<>(numberVariants);
+        for (int variant = 0; variant < numberVariants; variant++) {
+            int replica = identicalOccupants ? 0 : variant;
+            variants.add(readReplica(shared, variant, replica, options, databasePath,
+                    Ensemble.variantFilename(outputPath, variant), new HashMap<>()));
+        }
+        return new Ensemble(variants, null, shared.parameters.initialTime, shared.parameters.timeStepSize,
+                shared.parameters.numberTimeSteps);
+    }
+
+    /**
+     * Reads the compiled scenario of the database, compiling it first if it is unknown.
+     */
+    private static CompiledScenario compileScenario(String databasePath, String compiledScenarioDirectory)
+            throws IOException {
+        Path compiledScenarioFile = null;
+        byte[] hash = null;
+        if (compiledScenarioDirectory != null) {
+            hash = CompiledScenario.hash(Paths.get(databasePath));
+            compiledScenarioFile = CompiledScenario.file(Paths.get(compiledScenarioDirectory), hash);
+            Optional<CompiledScenario> compiledScenario = openCompiledScenario(compiledScenarioFile, hash);
+            if (compiledScenario.isPresent()) {
+                return compiledScenario.get();
+            }
+        }
+        CompiledScenario.Recorder recorder = new CompiledScenario.Recorder();
+        Connection conn = null;
+        try {
+            Class.forName("org.sqlite.JDBC");
+            conn = DriverManager.getConnection(String.format("jdbc:sqlite:%s", databasePath));
+            recordScenario(conn, recorder);
+        } catch (ClassNotFoundException|SQLException|IOException ex) {
+            LOGGER.error(String.format("Failed to read scenario from %s.", databasePath), ex);
+            throw new IOException("Failed to read scenario");
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        if (compiledScenarioFile != null) {
+            writeCompiledScenario(recorder, compiledScenarioFile, hash);
+        }
+        return recorder.compile();
+    }
+
+    private static Optional<CompiledScenario> openCompiledScenario(Path compiledScenarioFile, byte[] hash) {
+        try {
+            Optional<CompiledScenario> compiledScenario = CompiledScenario.open(compiledScenarioFile, hash);
+            if (compiledScenario.isPresent()) {
+                LOGGER.info(String.format("Reading compiled scenario %s.", compiledScenarioFile));
+            }
+            return compiledScenario;
+        } catch (IOException ex) {
+            LOGGER.warn(String.format("Ignoring compiled scenario %s.", compiledScenarioFile), ex);
+            return Optional.empty();
+        }
+    }
+
+    private static void writeCompiledScenario(CompiledScenario.Recorder recorder, Path compiledScenarioFile,
+                                              byte[] hash) {
+        try {
+            recorder.write(compiledScenarioFile, hash);
+            LOGGER.info(String.format("Compiled scenario to %s.", compiledScenarioFile));
+        } catch (IOException ex) {
+            LOGGER.warn(String.format("Failed to write compiled scenario %s.", compiledScenarioFile), ex);
+        }
+    }
+
+    /**
+     * Records all rows of the scenario database, without creating any agents.
+     */
+    private static void recordScenario(Connection con, CompiledScenario.Recorder recorder)
+            throws SQLException, IOException {
+        for (CompiledScenario.ParameterRow parameterRow : readParameters(con)) {
+            recorder.record(parameterRow);
+        }
+        Map<Integer, String> markovChainTableNames = readMarkovChainTableNames(con);
+        recorder.recordMarkovChainIds(markovChainTableNames);
+        for (String tableName : new TreeSet<>(markovChainTableNames.values())) {
+            recorder.recordMarkovChainTable(tableName, readMarkovChainEntries(con, tableName));
+        }
+        readTemperatureTimeSeries(con, recorder);
+        readDwellings(con, null, recorder);
+        readPeople(con, null, recorder);
+    }
+
+    private static CitySimulation readScenario(Connection con, String inputPath, String outputPath,
+                                               ScenarioOptions options, CompiledScenario.Recorder recorder)
             throws SQLException, IOException {
-        SimulationParameter parameters = readSimulationParameters(con);
-        HeatingControlStrategyFactory heatingControlStrategyFactory = readHeatingControlStrategyFactory(con);
-        EnvironmentReference environmentReference = readEnvironment(con, parameters.timeStepSize);
-        Map<Integer, DwellingReference> dwellingReferences = readDwellings(con, parameters, environmentReference,
-                heatingControlStrategyFactory);
-        Map<Integer, DwellingDistrictReference> districtReferences = readDistricts(con, dwellingReferences);
-        Map<Integer, PersonReference> peopleReferences = readPeople(con, dwellingReferences, parameters);
-        Map<Integer, PersonDistrictReference> pdistrictReferences = readPdistricts(con, peopleReferences);
-        DataLoggerReference dataLoggerReference = createDataLogger(dwellingReferences, peopleReferences,
-                districtReferences, pdistrictReferences, parameters, inputPath, outputPath);
+        List<CompiledScenario.ParameterRow> parameterRows = readParameters(con);
+        CompiledScenario.ParameterRow parameterRow = parameterRows.get(0);
+        SimulationParameter parameters = toSimulationParameter(parameterRow);
+        HeatingControlStrategyFactory heatingControlStrategyFactory = toHeatingControlStrategyFactory(parameterRow);
+        Map<Integer, String> markovChainTableNames = readMarkovChainTableNames(con);
+        if (recorder != null) {
+            for (CompiledScenario.ParameterRow row : parameterRows) {
+                recorder.record(row);
+            }
+            recorder.recordMarkovChainIds(markovChainTableNames);
+        }
+        ExecutorService markovChainLoader = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(markovChainTableNames.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            // markov chains load in the background while dwellings and people are read
+            Map<Integer, CompletableFuture<HeterogeneousMarkovChain<Person.Activity>>> markovChains =
+                    readMarkovChains(inputPath, markovChainTableNames, parameters, markovChainLoader, recorder);
+            EnvironmentReference environmentReference = new EnvironmentReference(
+                    new Environment(readTemperatureTimeSeries(con, recorder), parameters.timeStepSize));
+            Dwellings dwellings = new Dwellings(parameters, environmentReference, heatingControlStrategyFactory,
+                    parameterRow.controlStrategyType, options.getIntegrator());
+            readDwellings(con, dwellings, recorder);
+            Map<Integer, DwellingDistrictReference> districtReferences = createDistricts(dwellings.references,
+                    dwellings.districtOfDwelling);
+            People people = new People(parameters, dwellings.references, markovChains, 0,
+                    options.getRandomNumberGenerator());
+            readPeople(con, people, recorder);
+            for (Integer markovChainId : markovChains.keySet()) {
+                awaitMarkovChain(markovChains, markovChainId); // fails on unreadable tables nobody uses, too
+            }
+            return createSimulation(parameters, environmentReference, dwellings, districtReferences, people,
+                    inputPath, outputPath, options);
+        } finally {
+            markovChainLoader.shutdownNow();
+        }
+    }
+
+    /**
+     * The immutable parts of a compiled scenario, shared by all replicas and variants built from it.
+     */
+    private static class SharedScenario {
+
+        private final CompiledScenario scenario;
+        private final SimulationParameter parameters;
+        private final List<CompiledScenario.ParameterRow> variants;
+        private final Map<Integer, CompletableFuture<HeterogeneousMarkovChain<Person.Activity>>> markovChains;
+        private final DoubleTimeSeries temperatureTimeSeries;
+
+        private SharedScenario(CompiledScenario scenario) {
+            this.scenario = scenario;
+            this.variants = scenario.allParameters();
+            this.parameters = toSimulationParameter(this.variants.get(0));
+            this.markovChains = buildMarkovChains(scenario, this.parameters);
+            this.temperatureTimeSeries = new DoubleTimeSeries();
+            CompiledScenario.Rows<CompiledScenario.EnvironmentRow> environmentRows = scenario.environmentRows();
+            while (environmentRows.next()) {
+                CompiledScenario.EnvironmentRow row = environmentRows.row();
+                this.temperatureTimeSeries.add(toTimeStamp(row.epochSecond, row.nano), row.temperature);
+            }
+        }
+    }
+
+    /**
+     * Creates a simulation of the shared scenario, heated as defined by the given row of the
+     * parameters table, and with people using the random numbers of the given replica.
+     */
+    private static CitySimulation readReplica(SharedScenario shared, int variant, int replica,
+                                              ScenarioOptions options, String inputPath, String outputPath,
+                                              Map<Integer, DwellingDistrictReference> districtReferences)
+            throws IOException {
+        SimulationParameter parameters = shared.parameters;
+        CompiledScenario.ParameterRow variantRow = shared.variants.get(variant);
+        EnvironmentReference environmentReference = new EnvironmentReference(
+                new Environment(shared.temperatureTimeSeries, parameters.timeStepSize));
+        Dwellings dwellings = new Dwellings(parameters, environmentReference,
+                toHeatingControlStrategyFactory(variantRow), variantRow.controlStrategyType, options.getIntegrator());
+        CompiledScenario.Rows<CompiledScenario.DwellingRow> dwellingRows = shared.scenario.dwellingRows();
+        while (dwellingRows.next()) {
+            dwellings.add(dwellingRows.row());
+        }
+        districtReferences.putAll(createDistricts(dwellings.references, dwellings.districtOfDwelling));
+        People people = new People(parameters, dwellings.references, shared.markovChains, replica,
+                options.getRandomNumberGenerator());
+        CompiledScenario.Rows<CompiledScenario.PersonRow> personRows = shared.scenario.personRows();
+        try {
+            while (personRows.next()) {
+                people.add(personRows.row());
+            }
+        } catch (SQLException ex) {
+            throw new IOException(ex); // markov chains of compiled scenarios are never read from database
+        }
+        return createSimulation(parameters, environmentReference, dwellings, districtReferences, people,
+                inputPath, outputPath, options);
+    }
+
+    private static CitySimulation createSimulation(SimulationParameter parameters,
+                                                   EnvironmentReference environmentReference, Dwellings dwellings,
+                                                   Map<Integer, DwellingDistrictReference> districtReferences,
+                                                   People people, String inputPath, String outputPath,
+                                                   ScenarioOptions options) {
+        DataLoggerReference dataLoggerReference = null;
+        if (outputPath != null) {
+            Map<Integer, PersonDistrictReference> pdistrictReferences = createPdistricts(people.references,
+                    people.homeOfPerson, dwellings.districtOfDwelling);
+            dataLoggerReference = createDataLogger(dwellings.references, people.references, districtReferences,
+                    pdistrictReferences, parameters, inputPath, outputPath, options.getLoggingMode(),
+                    options.getSink());
+        }
         return new CitySimulation(
-                dwellingReferences.values(),
-                peopleReferences.values(),
+                dwellings.references.values(),
+                people.references.values(),
                 environmentReference,
                 dataLoggerReference,
                 parameters.initialTime,
                 parameters.timeStepSize,
-                parameters.numberTimeSteps
+                parameters.numberTimeSteps,
+                options.getEngine()
         );
     }
 
@@ -166,6 +461,10 @@ public class ScenarioBuilder {
                 .atZone(TIME_ZONE);
     }
 
+    private static ZonedDateTime toTimeStamp(long epochSecond, int nano) {
+        return Instant.ofEpochSecond(epochSecond, nano).atZone(TIME_ZONE);
+    }
+
     private static LocalTime readLocalTime(ResultSet rs, String columnName) throws SQLException, IOException {
         try {
             return LocalTime.parse(rs.getString(columnName), DateTimeFormatter.ISO_LOCAL_TIME);
@@ -178,162 +477,205 @@ public class ScenarioBuilder {
         return HeatingControlStrategyFactory.ControlStrategyType.valueOf(rs.getString(columnName));
     }
 
-    private static EnvironmentReference readEnvironment(Connection conn, Duration timeStepSize) throws SQLException {
-        TimeSeries<Double> temperatureTimeSeries = new TimeSeries<>();
+    private static DoubleTimeSeries readTemperatureTimeSeries(Connection conn, CompiledScenario.Recorder recorder)
+            throws SQLException {
+        DoubleTimeSeries temperatureTimeSeries = new DoubleTimeSeries();
+        CompiledScenario.EnvironmentRow row = new CompiledScenario.EnvironmentRow();
         Statement stat = conn.createStatement();
         ResultSet rs = stat.executeQuery(String.format("select * from %s;", SQL_TABLES_ENVIRONMENT));
         while (rs.next()) {
             ZonedDateTime timeStamp = readTimeStamp(rs, SQL_COLUMNS_ENV_INDEX);
-            Double value = rs.getDouble(SQL_COLUMNS_ENV_TEMPERATURE);
+            double value = rs.getDouble(SQL_COLUMNS_ENV_TEMPERATURE);
             temperatureTimeSeries.add(timeStamp, value);
+            if (recorder != null) {
+                row.epochSecond = timeStamp.toEpochSecond();
+                row.nano = timeStamp.getNano();
+                row.temperature = value;
+                recorder.record(row);
+            }
         }
         rs.close();
-        Environment env = new Environment(temperatureTimeSeries, timeStepSize);
-        return new EnvironmentReference(env);
+        return temperatureTimeSeries;
     }
 
-    private static Map<Integer, DwellingReference> readDwellings(Connection conn, SimulationParameter parameters,
-                                                                 EnvironmentReference env,
-                                                                 HeatingControlStrategyFactory controlStrategyFactory)
-            throws SQLException {
-        Map<Integer, DwellingReference> dwellings = new HashMap<>();
-        Statement stat = conn.createStatement();
-        ResultSet rs = stat.executeQuery(String.format("select * from %s;", SQL_TABLES_DWELLINGS));
-        while (rs.next()) {
-            dwellings.put(
-                    rs.getInt(SQL_COLUMNS_DW_INDEX),
+    /**
+     * Creates dwellings from rows of the scenario, independent of where the rows are read from.
+     * A control strategy type of -1 keeps the type of control strategy of each row; any other
+     * overrides it for all dwellings.
+     */
+    private static class Dwellings {
+
+        private final SimulationParameter parameters;
+        private final EnvironmentReference env;
+        private final HeatingControlStrategyFactory controlStrategyFactory;
+        private final int controlStrategyType;
+        private final DwellingBlock block;
+        // dwellings with the same type of control strategy share one reference to it
+        private final Map<HeatingControlStrategyFactory.ControlStrategyType, HeatingControlStrategyReference>
+                controlStrategies = new EnumMap<>(HeatingControlStrategyFactory.ControlStrategyType.class);
+        private final HeatingControlStrategyFactory.ControlStrategyType[] controlStrategyTypes =
+                HeatingControlStrategyFactory.ControlStrategyType.values();
+        private final Map<Integer, DwellingReference> references = new HashMap<>();
+        private final Map<Integer, Integer> districtOfDwelling = new HashMap<>();
+
+        private Dwellings(SimulationParameter parameters, EnvironmentReference env,
+                          HeatingControlStrategyFactory controlStrategyFactory, int controlStrategyType,
+                          DwellingBlock.Integrator integrator) {
+            this.parameters = parameters;
+            this.env = env;
+            this.controlStrategyFactory = controlStrategyFactory;
+            this.controlStrategyType = controlStrategyType;
+            this.block = new DwellingBlock(integrator);
+        }
+
+        private void add(CompiledScenario.DwellingRow row) {
+            double[] p = row.parameters;
+            int controlStrategyType = this.controlStrategyType < 0 ? row.controlStrategyType : this.controlStrategyType;
+            this.districtOfDwelling.put(row.id, row.districtId);
+            this.references.put(
+                    row.id,
                     new DwellingReference(new Dwelling(
-                            rs.getDouble(SQL_COLUMNS_DW_THERMAL_MASS_CAPACITY),
-                            rs.getDouble(SQL_COLUMNS_DW_THERMAL_MASS_AREA),
-                            rs.getDouble(SQL_COLUMNS_DW_FLOOR_AREA),
-                            rs.getDouble(SQL_COLUMNS_DW_ROOM_HEIGHT),
-                            rs.getDouble(SQL_COLUMNS_DW_WINDOW_TO_WALL_RATIO),
-                            rs.getDouble(SQL_COLUMNS_DW_U_VALUE_WALL),
-                            rs.getDouble(SQL_COLUMNS_DW_U_VALUE_ROOF),
-                            rs.getDouble(SQL_COLUMNS_DW_U_VALUE_FLOOR),
-                            rs.getDouble(SQL_COLUMNS_DW_U_VALUE_WINDOW),
-                            rs.getDouble(SQL_COLUMNS_DW_TR_ADJ_GROUND),
-                            rs.getDouble(SQL_COLUMNS_DW_NATURAL_VENTILATION_RATE),
-                            rs.getDouble(SQL_COLUMNS_DW_MAX_HEATING_POWER),
-                            rs.getDouble(SQL_COLUMNS_DW_INITIAL_TEMPERATURE),
-                            parameters.initialTime,
-                            parameters.timeStepSize,
-                            new HeatingControlStrategyReference(controlStrategyFactory.build(
-                                readControlStrategyType(rs, SQL_COLUMNS_DW_HEATING_CONTROL_STRATEGY))
+                            p[0], p[1], p[2], p[3], p[4], p[5], p[6], p[7], p[8], p[9], p[10], p[11], p[12],
+                            this.parameters.initialTime,
+                            this.parameters.timeStepSize,
+                            this.controlStrategies.computeIfAbsent(
+                                this.controlStrategyTypes[controlStrategyType],
+                                type -> new HeatingControlStrategyReference(this.controlStrategyFactory.build(type))
                             ),
-                            env
+                            this.env,
+                            this.block
                     ))
             );
         }
-        rs.close();
-        return dwellings;
     }
 
-    private static Map<Integer, DwellingDistrictReference> readDistricts(Connection conn,
-                                                                         Map<Integer, DwellingReference> dwellings)
+    private static void readDwellings(Connection conn, Dwellings dwellings, CompiledScenario.Recorder recorder)
             throws SQLException {
-        Map<Integer, List<Integer>> districtsToDwellingId = new HashMap<>();
+        CompiledScenario.DwellingRow row = new CompiledScenario.DwellingRow();
         Statement stat = conn.createStatement();
         ResultSet rs = stat.executeQuery(String.format("select * from %s;", SQL_TABLES_DWELLINGS));
         while (rs.next()) {
-            int dwellingId = rs.getInt(SQL_COLUMNS_DW_INDEX);
-            int districtId = rs.getInt(SQL_COLUMNS_DW_DISTRICT_ID);
-            if(!districtsToDwellingId.keySet().contains(districtId)){
-                districtsToDwellingId.put(districtId, new LinkedList<>());
+            row.id = rs.getInt(SQL_COLUMNS_DW_INDEX);
+            row.districtId = rs.getInt(SQL_COLUMNS_DW_DISTRICT_ID);
+            row.parameters[0] = rs.getDouble(SQL_COLUMNS_DW_THERMAL_MASS_CAPACITY);
+            row.parameters[1] = rs.getDouble(SQL_COLUMNS_DW_THERMAL_MASS_AREA);
+            row.parameters[2] = rs.getDouble(SQL_COLUMNS_DW_FLOOR_AREA);
+            row.parameters[3] = rs.getDouble(SQL_COLUMNS_DW_ROOM_HEIGHT);
+            row.parameters[4] = rs.getDouble(SQL_COLUMNS_DW_WINDOW_TO_WALL_RATIO);
+            row.parameters[5] = rs.getDouble(SQL_COLUMNS_DW_U_VALUE_WALL);
+            row.parameters[6] = rs.getDouble(SQL_COLUMNS_DW_U_VALUE_ROOF);
+            row.parameters[7] = rs.getDouble(SQL_COLUMNS_DW_U_VALUE_FLOOR);
+            row.parameters[8] = rs.getDouble(SQL_COLUMNS_DW_U_VALUE_WINDOW);
+            row.parameters[9] = rs.getDouble(SQL_COLUMNS_DW_TR_ADJ_GROUND);
+            row.parameters[10] = rs.getDouble(SQL_COLUMNS_DW_NATURAL_VENTILATION_RATE);
+            row.parameters[11] = rs.getDouble(SQL_COLUMNS_DW_MAX_HEATING_POWER);
+            row.parameters[12] = rs.getDouble(SQL_COLUMNS_DW_INITIAL_TEMPERATURE);
+            row.controlStrategyType = readControlStrategyType(rs, SQL_COLUMNS_DW_HEATING_CONTROL_STRATEGY).ordinal();
+            if (dwellings != null) {
+                dwellings.add(row);
+            }
+            if (recorder != null) {
+                recorder.record(row);
             }
-            districtsToDwellingId.get(districtId).add(dwellingId);
         }
         rs.close();
+    }
 
+    private static Map<Integer, DwellingDistrictReference> createDistricts(Map<Integer, DwellingReference> dwellings,
+                                                                           Map<Integer, Integer> districtOfDwelling) {
+        Map<Integer, Set<DwellingReference>> dwellingsInDistricts = new HashMap<>();
+        for (Map.Entry<Integer, Integer> entry : districtOfDwelling.entrySet()) {
+            dwellingsInDistricts.computeIfAbsent(entry.getValue(), districtId -> new HashSet<>())
+                    .add(dwellings.get(entry.getKey()));
+        }
         Map<Integer, DwellingDistrictReference> districts = new HashMap<>();
-        for(Map.Entry<Integer, List<Integer>> entry : districtsToDwellingId.entrySet()){
-            List<DwellingReference> dwellingsInDistrict = new LinkedList<>();
-            for(Integer i : entry.getValue()){
-                dwellingsInDistrict.add(dwellings.get(i));
-            }
-            districts.put(entry.getKey(), new DwellingDistrictReference(new DwellingDistrict(new HashSet<>(dwellingsInDistrict))));
+        for (Map.Entry<Integer, Set<DwellingReference>> entry : dwellingsInDistricts.entrySet()) {
+            districts.put(entry.getKey(), new DwellingDistrictReference(new DwellingDistrict(entry.getValue())));
         }
         return districts;
     }
 
-    private static Map<Integer, PersonDistrictReference> readPdistricts(Connection conn,
-                                                                         Map<Integer, PersonReference> people)
-            throws SQLException {
-        Map<Integer, Integer> dwellingsToDistrictId = new HashMap<>();
-        Statement stat2 = conn.createStatement();
-        ResultSet rs2 = stat2.executeQuery(String.format("select * from %s;", SQL_TABLES_DWELLINGS));
-        while (rs2.next()) {
-            int dwellingId = rs2.getInt(SQL_COLUMNS_DW_INDEX);
-            int districtId = rs2.getInt(SQL_COLUMNS_DW_DISTRICT_ID);
-            dwellingsToDistrictId.put(dwellingId, districtId);
+    private static Map<Integer, PersonDistrictReference> createPdistricts(Map<Integer, PersonReference> people,
+                                                                          Map<Integer, Integer> homeOfPerson,
+                                                                          Map<Integer, Integer> districtOfDwelling) {
+        Map<Integer, Set<PersonReference>> peopleInDistricts = new HashMap<>();
+        for (Map.Entry<Integer, Integer> entry : homeOfPerson.entrySet()) {
+            peopleInDistricts.computeIfAbsent(districtOfDwelling.get(entry.getValue()), districtId -> new HashSet<>())
+                    .add(people.get(entry.getKey()));
+        }
+        Map<Integer, PersonDistrictReference> pdistricts = new HashMap<>();
+        for (Map.Entry<Integer, Set<PersonReference>> entry : peopleInDistricts.entrySet()) {
+            pdistricts.put(entry.getKey(), new PersonDistrictReference(new PersonDistrict(entry.getValue())));
         }
-        rs2.close();
+        return pdistricts;
+    }
 
-        Map<Integer, List<Integer>> districtsToPersonId = new HashMap<>();
-        Statement stat = conn.createStatement();
-        ResultSet rs = stat.executeQuery(String.format("select * from %s;", SQL_TABLES_PEOPLE));
-        while (rs.next()) {
-            int personId = rs.getInt(SQL_COLUMNS_PPL_INDEX);
-            int dwellingId = rs.getInt(SQL_COLUMNS_PPL_DWELLING_ID);
-            int districtId = dwellingsToDistrictId.get(dwellingId);
-            if(!districtsToPersonId.keySet().contains(districtId)){
-                districtsToPersonId.put(districtId, new LinkedList<>());
-            }
-            districtsToPersonId.get(districtId).add(personId);
+    /**
+     * Creates the people of a replica from rows of the scenario, independent of where the rows are
+     * read from. Replica 0 uses the random seeds of the rows as they are.
+     */
+    private static class People {
+
+        private final SimulationParameter parameters;
+        private final Map<Integer, DwellingReference> dwellings;
+        private final Map<Integer, CompletableFuture<HeterogeneousMarkovChain<Person.Activity>>> markovChains;
+        private final int replica;
+        private final Person.RandomNumberGenerator randomNumberGenerator;
+        private final Person.Activity[] activities = Person.Activity.values();
+        private final Map<Integer, PersonReference> references = new HashMap<>();
+        private final Map<Integer, Integer> homeOfPerson = new HashMap<>();
+
+        private People(SimulationParameter parameters, Map<Integer, DwellingReference> dwellings,
+                       Map<Integer, CompletableFuture<HeterogeneousMarkovChain<Person.Activity>>> markovChains,
+                       int replica, Person.RandomNumberGenerator randomNumberGenerator) {
+            this.parameters = parameters;
+            this.dwellings = dwellings;
+            this.markovChains = markovChains;
+            this.replica = replica;
+            this.randomNumberGenerator = randomNumberGenerator;
         }
-        rs.close();
 
-        Map<Integer, PersonDistrictReference> pdistricts = new HashMap<>();
-        for(Map.Entry<Integer, List<Integer>> entry : districtsToPersonId.entrySet()){
-            List<PersonReference> peopleInDistrict = new LinkedList<>();
-            for(Integer i : entry.getValue()){
-                peopleInDistrict.add(people.get(i));
-            }
-            pdistricts.put(entry.getKey(), new PersonDistrictReference(new PersonDistrict(new HashSet<>(peopleInDistrict))));
+        private void add(CompiledScenario.PersonRow row) throws SQLException, IOException {
+            this.homeOfPerson.put(row.id, row.dwellingId);
+            this.references.put(
+                    row.id,
+                    new PersonReference(new Person(
+                        awaitMarkovChain(this.markovChains, row.markovChainId),
+                        row.activeMetabolicRate,
+                        row.passiveMetabolicRate,
+                        this.activities[row.initialActivity],
+                        this.parameters.initialTime,
+                        this.parameters.timeStepSize,
+                        this.dwellings.get(row.dwellingId),
+                        this.randomNumberGenerator.create(Ensemble.replicaSeed(row.randomSeed, this.replica))
+            )));
         }
-        return pdistricts;
-}
+    }
 
-    private static Map<Integer, PersonReference> readPeople(Connection conn, Map<Integer, DwellingReference> dwellings,
-                                                    SimulationParameter parameters) throws SQLException, IOException {
-        Map<Integer, HeterogeneousMarkovChain<Person.Activity>> markovChains = readMarkovChains(conn, parameters);
-        Map<Integer, Person> people = new HashMap<>();
+    private static void readPeople(Connection conn, People people, CompiledScenario.Recorder recorder)
+            throws SQLException, IOException {
+        CompiledScenario.PersonRow row = new CompiledScenario.PersonRow();
         Statement stat = conn.createStatement();
         ResultSet rs = stat.executeQuery(String.format("select * from %s;", SQL_TABLES_PEOPLE));
         while (rs.next()) {
-            int personId = rs.getInt(SQL_COLUMNS_PPL_INDEX);
-            int homeId = rs.getInt(SQL_COLUMNS_PPL_DWELLING_ID);
-            int markovChainId = rs.getInt(SQL_COLUMNS_PPL_MARKOV_ID);
-            int randomSeed = rs.getInt(SQL_COLUMNS_PPL_RANDOM_SEED);
-            int activeMetabolicRate = rs.getInt(SQL_COLUMNS_PPL_ACTIVE_METABOLIC_RATE);
-            int passiveMetabolicRate = rs.getInt(SQL_COLUMNS_PPL_PASSIVE_METABOLIC_RATE);
-            Person.Activity initialActivity = Person.Activity.valueOf(rs.getString(SQL_COLUMNS_PPL_INITIAL_ACTIVITY));
-            people.put(
-                    personId,
-                    new Person(
-                        markovChains.get(markovChainId),
-                        activeMetabolicRate,
-                        passiveMetabolicRate,
-                        initialActivity,
-                        parameters.initialTime,
-                        parameters.timeStepSize,
-                        dwellings.get(homeId),
-                        new Random(randomSeed)
-            ));
+            row.id = rs.getInt(SQL_COLUMNS_PPL_INDEX);
+            row.dwellingId = rs.getInt(SQL_COLUMNS_PPL_DWELLING_ID);
+            row.markovChainId = rs.getInt(SQL_COLUMNS_PPL_MARKOV_ID);
+            row.randomSeed = rs.getInt(SQL_COLUMNS_PPL_RANDOM_SEED);
+            row.activeMetabolicRate = rs.getInt(SQL_COLUMNS_PPL_ACTIVE_METABOLIC_RATE);
+            row.passiveMetabolicRate = rs.getInt(SQL_COLUMNS_PPL_PASSIVE_METABOLIC_RATE);
+            row.initialActivity = Person.Activity.valueOf(rs.getString(SQL_COLUMNS_PPL_INITIAL_ACTIVITY)).ordinal();
+            if (people != null) {
+                people.add(row);
+            }
+            if (recorder != null) {
+                recorder.record(row);
+            }
         }
         rs.close();
-        Map<Integer, PersonReference> peopleReference = new HashMap<>();
-        for (Map.Entry<Integer, Person> entry : people.entrySet()) {
-            Person person = entry.getValue();
-            PersonReference ref = new PersonReference(person);
-            peopleReference.put(entry.getKey(), ref);
-        }
-        return peopleReference;
     }
 
-    private static Map<Integer, HeterogeneousMarkovChain<Person.Activity>> readMarkovChains(Connection conn,
-                                                                                            SimulationParameter parameters)
-            throws SQLException, IOException {
+    private static Map<Integer, String> readMarkovChainTableNames(Connection conn) throws SQLException {
         Map<Integer, String> markovChainTableNames = new HashMap<>();
         Statement stat = conn.createStatement();
         ResultSet rs = stat.executeQuery(String.format("select * from %s;", SQL_TABLES_MARKOV_CHAINS));
@@ -343,19 +685,114 @@ public class ScenarioBuilder {
                     rs.getString(SQL_COLUMNS_MARKOVS_TABLENAME));
         }
         rs.close();
-        Map<Integer, HeterogeneousMarkovChain<Person.Activity>> markovChains = new HashMap<>();
+        return markovChainTableNames;
+    }
+
+    /**
+     * Loads all markov chain tables concurrently, each worker reading its share of the tables
+     * through a read-only connection of its own. Tables of identical content share one chain.
+     */
+    private static Map<Integer, CompletableFuture<HeterogeneousMarkovChain<Person.Activity>>> readMarkovChains(
+            String databasePath, Map<Integer, String> markovChainTableNames, SimulationParameter parameters,
+            ExecutorService executor, CompiledScenario.Recorder recorder) {
+        List<String> tableNames = new ArrayList<>(new TreeSet<>(markovChainTableNames.values()));
+        Map<String, CompletableFuture<HeterogeneousMarkovChain<Person.Activity>>> chainOfTable = new HashMap<>();
+        for (String tableName : tableNames) {
+            chainOfTable.put(tableName, new CompletableFuture<>());
+        }
+        Map<Set<MarkovChainReader.MarkovChainEntry>, CompletableFuture<HeterogeneousMarkovChain<Person.Activity>>>
+                internedChains = new ConcurrentHashMap<>();
+        int numberWorkers = Math.max(1, Math.min(tableNames.size(), Runtime.getRuntime().availableProcessors()));
+        for (int worker = 0; worker < numberWorkers; worker++) {
+            List<String> share = new ArrayList<>();
+            for (int i = worker; i < tableNames.size(); i += numberWorkers) {
+                share.add(tableNames.get(i));
+            }
+            executor.execute(() -> {
+                Properties readOnly = new Properties();
+                readOnly.setProperty("open_mode", "1"); // SQLITE_OPEN_READONLY
+                try (Connection conn = DriverManager.getConnection(
+                        String.format("jdbc:sqlite:%s", databasePath), readOnly)) {
+                    for (String tableName : share) {
+                        List<MarkovChainReader.MarkovChainEntry> entries = readMarkovChainEntries(conn, tableName);
+                        if (recorder != null) {
+                            recorder.recordMarkovChainTable(tableName, entries);
+                        }
+                        CompletableFuture<HeterogeneousMarkovChain<Person.Activity>> chain = new CompletableFuture<>();
+                        CompletableFuture<HeterogeneousMarkovChain<Person.Activity>> internedChain =
+                                internedChains.putIfAbsent(new HashSet<>(entries), chain);
+                        if (internedChain == null) {
+                            chain.complete(MarkovChainReader.buildMarkovChainFromEntries(entries,
+                                    parameters.timeStepSize, TIME_ZONE));
+                            internedChain = chain;
+                        }
+                        internedChain.whenComplete((c, ex) -> {
+                            if (ex == null) {
+                                chainOfTable.get(tableName).complete(c);
+                            } else {
+                                chainOfTable.get(tableName).completeExceptionally(ex);
+                            }
+                        });
+                    }
+                } catch (SQLException|IOException|RuntimeException ex) {
+                    for (String tableName : share) {
+                        chainOfTable.get(tableName).completeExceptionally(ex);
+                    }
+                }
+            });
+        }
+        Map<Integer, CompletableFuture<HeterogeneousMarkovChain<Person.Activity>>> markovChains = new HashMap<>();
         for (Map.Entry<Integer, String> entry : markovChainTableNames.entrySet()) {
-            markovChains.put(
-                    entry.getKey(),
-                    readMarkovChain(conn, entry.getValue(), parameters
-                    )
-            );
+            markovChains.put(entry.getKey(), chainOfTable.get(entry.getValue()));
+        }
+        CompletableFuture.allOf(chainOfTable.values().toArray(new CompletableFuture[chainOfTable.size()]))
+                .thenRun(() -> LOGGER.info(String.format("Read %d distinct markov chains for %d markov chain ids.",
+                        internedChains.size(), markovChains.size())));
+        return markovChains;
+    }
+
+    /**
+     * Builds the markov chains of a compiled scenario. Tables of identical content share one chain.
+     */
+    private static Map<Integer, CompletableFuture<HeterogeneousMarkovChain<Person.Activity>>> buildMarkovChains(
+            CompiledScenario scenario, SimulationParameter parameters) {
+        Map<Set<MarkovChainReader.MarkovChainEntry>, HeterogeneousMarkovChain<Person.Activity>> internedChains =
+                new HashMap<>();
+        List<HeterogeneousMarkovChain<Person.Activity>> chainOfTable = new ArrayList<>();
+        for (List<MarkovChainReader.MarkovChainEntry> entries : scenario.markovChainTables()) {
+            chainOfTable.add(internedChains.computeIfAbsent(new HashSet<>(entries),
+                    unused -> MarkovChainReader.buildMarkovChainFromEntries(entries, parameters.timeStepSize,
+                            TIME_ZONE)));
         }
+        Map<Integer, CompletableFuture<HeterogeneousMarkovChain<Person.Activity>>> markovChains = new HashMap<>();
+        for (Map.Entry<Integer, Integer> entry : scenario.markovChainIds().entrySet()) {
+            markovChains.put(entry.getKey(), CompletableFuture.completedFuture(chainOfTable.get(entry.getValue())));
+        }
+        LOGGER.info(String.format("Built %d distinct markov chains for %d markov chain ids.",
+                internedChains.size(), markovChains.size()));
         return markovChains;
     }
 
-    private static HeterogeneousMarkovChain<Person.Activity> readMarkovChain(Connection conn, String tablename,
-                                                                             SimulationParameter parameters)
+    private static HeterogeneousMarkovChain<Person.Activity> awaitMarkovChain(
+            Map<Integer, CompletableFuture<HeterogeneousMarkovChain<Person.Activity>>> markovChains,
+            int markovChainId) throws SQLException, IOException {
+        CompletableFuture<HeterogeneousMarkovChain<Person.Activity>> markovChain = markovChains.get(markovChainId);
+        if (markovChain == null) {
+            return null;
+        }
+        try {
+            return markovChain.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof SQLException) {
+                throw (SQLException) ex.getCause();
+            } else if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private static List<MarkovChainReader.MarkovChainEntry> readMarkovChainEntries(Connection conn, String tablename)
             throws SQLException, IOException {
         List<MarkovChainReader.MarkovChainEntry> entries = new ArrayList<>();
         Statement stat = conn.createStatement();
@@ -370,133 +807,104 @@ public class ScenarioBuilder {
             ));
         }
         rs.close();
-        return MarkovChainReader.buildMarkovChainFromEntries(entries, parameters.timeStepSize,
-                TIME_ZONE);
+        return entries;
     }
 
-    private static SimulationParameter readSimulationParameters(Connection conn) throws SQLException {
-        List<SimulationParameter> parameters = new ArrayList<>();
-        Statement stat = conn.createStatement();
-        ResultSet rs = stat.executeQuery(String.format("select * from %s;", SQL_TABLES_PARAMETERS));
-        while (rs.next()) {
-            parameters.add(new SimulationParameter(
-                    readTimeStamp(rs, SQL_COLUMNS_PAR_INITIAL_DATETIME),
-                    Duration.ofMinutes(rs.getInt(SQL_COLUMNS_PAR_TIME_STEP_SIZE)),
-                    rs.getInt(SQL_COLUMNS_PAR_NUMBER_TIME_STEPS),
-                    rs.getBoolean(SQL_COLUMNS_PAR_LOG_THERMAL_POWER),
-                    rs.getBoolean(SQL_COLUMNS_PAR_LOG_TEMPERATURE),
-                    rs.getBoolean(SQL_COLUMNS_PAR_LOG_ACTIVITY),
-                    rs.getBoolean(SQL_COLUMNS_PAR_LOG_AGGREGATED)
-            ));
-        }
-        rs.close();
-        if (parameters.size() < 1) {
-            String msg = String.format("Simulation parameter missing in table %s.", SQL_TABLES_PARAMETERS);
-            throw new SQLException(msg);
-        }
-        return parameters.get(0); // there could be more, but at the moment don't care
-    }
-
-    private static HeatingControlStrategyFactory readHeatingControlStrategyFactory(Connection conn)
+    private static List<CompiledScenario.ParameterRow> readParameters(Connection conn)
             throws SQLException, IOException {
-        List<HeatingControlStrategyFactory> factories = new ArrayList<>();
+        List<CompiledScenario.ParameterRow> parameters = new ArrayList<>();
         Statement stat = conn.createStatement();
         ResultSet rs = stat.executeQuery(String.format("select * from %s;", SQL_TABLES_PARAMETERS));
+        boolean hasControlStrategyType = hasColumn(rs, SQL_COLUMNS_PAR_HEATING_CONTROL_STRATEGY);
         while (rs.next()) {
-            factories.add(new HeatingControlStrategyFactory(
-                    rs.getDouble(SQL_COLUMNS_PAR_SET_POINT_WHILE_HOME),
-                    rs.getDouble(SQL_COLUMNS_PAR_SET_POINT_WHILE_ASLEEP),
-                    readLocalTime(rs, SQL_COLUMNS_PAR_WAKE_UP_TIME),
-                    readLocalTime(rs, SQL_COLUMNS_PAR_LEAVE_HOME_TIME),
-                    readLocalTime(rs, SQL_COLUMNS_PAR_COME_HOME_TIME),
-                    readLocalTime(rs, SQL_COLUMNS_PAR_BED_TIME),
-                    TIME_ZONE
-            ));
+            CompiledScenario.ParameterRow row = new CompiledScenario.ParameterRow();
+            ZonedDateTime initialTime = readTimeStamp(rs, SQL_COLUMNS_PAR_INITIAL_DATETIME);
+            row.initialEpochSecond = initialTime.toEpochSecond();
+            row.initialNano = initialTime.getNano();
+            row.timeStepSizeInSeconds = Duration.ofMinutes(rs.getInt(SQL_COLUMNS_PAR_TIME_STEP_SIZE)).getSeconds();
+            row.numberTimeSteps = rs.getInt(SQL_COLUMNS_PAR_NUMBER_TIME_STEPS);
+            row.logThermalPower = rs.getBoolean(SQL_COLUMNS_PAR_LOG_THERMAL_POWER);
+            row.logTemperature = rs.getBoolean(SQL_COLUMNS_PAR_LOG_TEMPERATURE);
+            row.logActivity = rs.getBoolean(SQL_COLUMNS_PAR_LOG_ACTIVITY);
+            row.logAggregated = rs.getBoolean(SQL_COLUMNS_PAR_LOG_AGGREGATED);
+            row.setPointWhileHome = rs.getDouble(SQL_COLUMNS_PAR_SET_POINT_WHILE_HOME);
+            row.setPointWhileAsleep = rs.getDouble(SQL_COLUMNS_PAR_SET_POINT_WHILE_ASLEEP);
+            row.wakeUpTime = readLocalTime(rs, SQL_COLUMNS_PAR_WAKE_UP_TIME).toNanoOfDay();
+            row.leaveHomeTime = readLocalTime(rs, SQL_COLUMNS_PAR_LEAVE_HOME_TIME).toNanoOfDay();
+            row.comeHomeTime = readLocalTime(rs, SQL_COLUMNS_PAR_COME_HOME_TIME).toNanoOfDay();
+            row.bedTime = readLocalTime(rs, SQL_COLUMNS_PAR_BED_TIME).toNanoOfDay();
+            if (hasControlStrategyType && rs.getString(SQL_COLUMNS_PAR_HEATING_CONTROL_STRATEGY) != null) {
+                row.controlStrategyType = readControlStrategyType(rs, SQL_COLUMNS_PAR_HEATING_CONTROL_STRATEGY)
+                        .ordinal();
+            }
+            parameters.add(row);
         }
         rs.close();
-        if (factories.size() < 1) {
+        if (parameters.size() < 1) {
             String msg = String.format("Simulation parameter missing in table %s.", SQL_TABLES_PARAMETERS);
             throw new SQLException(msg);
         }
-        return factories.get(0); // there could be more, but at the moment don't care
-    }
-
-
-// Class DoubleStatistics
-// sourced from https://stackoverflow.com/questions/36263352/java-streams-standard-deviation/36264148#36264148
-// code by Tunaki
-static class DoubleStatistics extends DoubleSummaryStatistics {
-
-    private double sumOfSquare = 0.0d;
-    private double sumOfSquareCompensation; // Low order bits of sum
-    private double simpleSumOfSquare; // Used to compute right sum for
-                                        // non-finite inputs
-
-    @Override
-    public void accept(double value) {
-        super.accept(value);
-        double squareValue = value * value;
-        simpleSumOfSquare += squareValue;
-        sumOfSquareWithCompensation(squareValue);
-    }
-
-    public DoubleStatistics combine(DoubleStatistics other) {
-        super.combine(other);
-        simpleSumOfSquare += other.simpleSumOfSquare;
-        sumOfSquareWithCompensation(other.sumOfSquare);
-        sumOfSquareWithCompensation(other.sumOfSquareCompensation);
-        return this;
-    }
-
-    private void sumOfSquareWithCompensation(double value) {
-        double tmp = value - sumOfSquareCompensation;
-        double velvel = sumOfSquare + tmp; // Little wolf of rounding error
-        sumOfSquareCompensation = (velvel - sumOfSquare) - tmp;
-        sumOfSquare = velvel;
+        return parameters;
     }
 
-    public double getSumOfSquare() {
-        double tmp = sumOfSquare + sumOfSquareCompensation;
-        if (Double.isNaN(tmp) && Double.isInfinite(simpleSumOfSquare)) {
-            return simpleSumOfSquare;
+    private static boolean hasColumn(ResultSet rs, String columnName) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        for (int column = 1; column <= metaData.getColumnCount(); column++) {
+            if (metaData.getColumnName(column).equals(columnName)) {
+                return true;
+            }
         }
-        return tmp;
+        return false;
     }
 
-    public final double getStandardDeviation() {
-        long count = getCount();
-        double sumOfSquare = getSumOfSquare();
-        double average = getAverage();
-        return count > 0 ? Math.sqrt((sumOfSquare - count * Math.pow(average, 2)) / (count - 1)) : 0.0d;
+    private static SimulationParameter toSimulationParameter(CompiledScenario.ParameterRow row) {
+        return new SimulationParameter(
+                toTimeStamp(row.initialEpochSecond, row.initialNano),
+                Duration.ofSeconds(row.timeStepSizeInSeconds),
+                row.numberTimeSteps,
+                row.logThermalPower,
+                row.logTemperature,
+                row.logActivity,
+                row.logAggregated
+        );
     }
 
-    public static Collector<Double, ?, DoubleStatistics> collector() {
-        return Collector.of(DoubleStatistics::new, DoubleStatistics::accept, DoubleStatistics::combine);
+    private static HeatingControlStrategyFactory toHeatingControlStrategyFactory(CompiledScenario.ParameterRow row) {
+        return new HeatingControlStrategyFactory(
+                row.setPointWhileHome,
+                row.setPointWhileAsleep,
+                LocalTime.ofNanoOfDay(row.wakeUpTime),
+                LocalTime.ofNanoOfDay(row.leaveHomeTime),
+                LocalTime.ofNanoOfDay(row.comeHomeTime),
+                LocalTime.ofNanoOfDay(row.bedTime),
+                TIME_ZONE
+        );
     }
-}
-// ends here
 
     private static DataLoggerReference createDataLogger(Map<Integer, DwellingReference> dwellings,
                                                         Map<Integer, PersonReference> people,
                                                         Map<Integer, DwellingDistrictReference> districts,
                                                         Map<Integer, PersonDistrictReference> pdistricts,
                                                         SimulationParameter parameters,
-                                                        String inputPath, String outputPath) {
+                                                        String inputPath, String outputPath,
+                                                        DataLogger.Mode loggingMode, DataLogger.Sink sink) {
         Set<DataPoint> dataPoints = new HashSet<>();
+        int expectedNumberTimeSteps = parameters.numberTimeSteps;
         if (parameters.logTemperature) {
             if (parameters.logAggregated) {
                 dataPoints.add(new DataPoint<>(
                         AVERAGE_TEMPERATURE_DATA_POINT_NAME,
                         districts,
-                        (district -> district.getAllCurrentAirTemperatures()
-                                .thenApply(Map::values)
-                                .thenApply(values -> values.stream().mapToDouble(Double::doubleValue).average().getAsDouble()))
+                        (district, time) -> district.getCurrentAirTemperatureStatistics(time)
+                                .thenApply(RunningStatistics::getMean),
+                        expectedNumberTimeSteps
                 ));
             } else {
                 dataPoints.add(new DataPoint<>(
                         TEMPERATURE_DATA_POINT_NAME,
                         dwellings,
-                        (DwellingReference::getCurrentAirTemperature)
+                        (DwellingReference::getCurrentAirTemperature),
+                        expectedNumberTimeSteps
                 ));
             }
         }
@@ -505,22 +913,23 @@ static class DoubleStatistics extends DoubleSummaryStatistics {
                 dataPoints.add(new DataPoint<>(
                         AVERAGE_THERMAL_POWER_DATA_POINT_NAME,
                         districts,
-                        (district -> district.getAllCurrentThermalPowers()
-                                .thenApply(Map::values)
-                                .thenApply(values -> values.stream().mapToDouble(Double::doubleValue).average().getAsDouble()))
+                        (district, time) -> district.getCurrentThermalPowerStatistics(time)
+                                .thenApply(RunningStatistics::getMean),
+                        expectedNumberTimeSteps
                 ));
                 dataPoints.add(new DataPoint<>(
                         STD_THERMAL_POWER_DATA_POINT_NAME,
                         districts,
-                        (district -> district.getAllCurrentThermalPowers()
-                                .thenApply(Map::values)
-                                .thenApply(values -> values.stream().map(Double::doubleValue).collect(DoubleStatistics.collector()).getStandardDeviation()))
+                        (district, time) -> district.getCurrentThermalPowerStatistics(time)
+                                .thenApply(RunningStatistics::getStandardDeviation),
+                        expectedNumberTimeSteps
                 ));
             } else {
                 dataPoints.add(new DataPoint<>(
                         THERMAL_POWER_DATA_POINT_NAME,
                         dwellings,
-                        (DwellingReference::getCurrentThermalPower)
+                        (DwellingReference::getCurrentThermalPower),
+                        expectedNumberTimeSteps
                 ));
             }
         }
@@ -529,23 +938,107 @@ static class DoubleStatistics extends DoubleSummaryStatistics {
                 dataPoints.add(new DataPoint<>(
                         ACTIVITY_COUNTS_DATA_POINT_NAME,
                         pdistricts,
-                        (pdistrict -> pdistrict.getAllCurrentActivities()
-                                .thenApply(Map::values)
-                                .thenApply(values -> values.stream().collect(Collectors.groupingBy(Function.identity(),Collectors.counting())))) 
+                        (PersonDistrictReference::getCurrentActivityCounts),
+                        expectedNumberTimeSteps
                 ));
             } else {
                 dataPoints.add(new DataPoint<>(
                         ACTIVITY_DATA_POINT_NAME,
                         people,
-                        (PersonReference::getCurrentActivity)
+                        (PersonReference::getCurrentActivity),
+                        expectedNumberTimeSteps
                 ));
             }
         }
         DataLogger dataLogger = new DataLogger(
                 dataPoints.stream().map(DataPointReference::new).collect(Collectors.toSet()),
                 inputPath,
-                outputPath
+                outputPath,
+                loggingMode,
+                sink
         );
         return new DataLoggerReference(dataLogger);
     }
+
+    /**
+     * Creates the data logger of an ensemble, summarising the district averages of all replicas by
+     * their mean and percentiles across replicas.
+     */
+    private static DataLoggerReference createEnsembleDataLogger(
+            List<Map<Integer, DwellingDistrictReference>> districtsOfReplicas, SimulationParameter parameters,
+            String inputPath, String outputPath, DataLogger.Mode loggingMode, DataLogger.Sink sink) {
+        Map<Integer, List<DwellingDistrictReference>> replicasOfDistricts = new HashMap<>();
+        for (Map<Integer, DwellingDistrictReference> districts : districtsOfReplicas) {
+            for (Map.Entry<Integer, DwellingDistrictReference> entry : districts.entrySet()) {
+                replicasOfDistricts.computeIfAbsent(entry.getKey(), districtId -> new ArrayList<>())
+                        .add(entry.getValue());
+            }
+        }
+        Set<DataPoint> dataPoints = new HashSet<>();
+        if (parameters.logTemperature) {
+            addEnsembleDataPoints(dataPoints, AVERAGE_TEMPERATURE_DATA_POINT_NAME, replicasOfDistricts,
+                    DwellingDistrictReference::getCurrentAirTemperatureStatistics, parameters.numberTimeSteps);
+        }
+        if (parameters.logThermalPower) {
+            addEnsembleDataPoints(dataPoints, AVERAGE_THERMAL_POWER_DATA_POINT_NAME, replicasOfDistricts,
+                    DwellingDistrictReference::getCurrentThermalPowerStatistics, parameters.numberTimeSteps);
+        }
+        DataLogger dataLogger = new DataLogger(
+                dataPoints.stream().map(DataPointReference::new).collect(Collectors.toSet()),
+                inputPath,
+                outputPath,
+                loggingMode,
+                sink
+        );
+        return new DataLoggerReference(dataLogger);
+    }
+
+    private static void addEnsembleDataPoints(
+            Set<DataPoint> dataPoints, String name, Map<Integer, List<DwellingDistrictReference>> replicasOfDistricts,
+            BiFunction<DwellingDistrictReference, ZonedDateTime, CompletableFuture<RunningStatistics>> statistics,
+            int expectedNumberTimeSteps) {
+        BiFunction<List<DwellingDistrictReference>, ZonedDateTime, CompletableFuture<double[]>> sortedAverages =
+                (replicas, time) -> {
+                    CompletableFuture<RunningStatistics>[] replicaStatistics = new CompletableFuture[replicas.size()];
+                    for (int i = 0; i < replicaStatistics.length; i++) {
+                        replicaStatistics[i] = statistics.apply(replicas.get(i), time);
+                    }
+                    return CompletableFuture.allOf(replicaStatistics).thenApply(unused -> {
+                        double[] averages = new double[replicaStatistics.length];
+                        for (int i = 0; i < averages.length; i++) {
+                            averages[i] = replicaStatistics[i].join().getMean();
+                        }
+                        Arrays.sort(averages);
+                        return averages;
+                    });
+                };
+        dataPoints.add(new DataPoint<>(
+                name + ENSEMBLE_MEAN_SUFFIX,
+                replicasOfDistricts,
+                (replicas, time) -> sortedAverages.apply(replicas, time)
+                        .thenApply(averages -> Arrays.stream(averages).average().orElse(Double.NaN)),
+                expectedNumberTimeSteps
+        ));
+        dataPoints.add(new DataPoint<>(
+                name + ENSEMBLE_P05_SUFFIX,
+                replicasOfDistricts,
+                (replicas, time) -> sortedAverages.apply(replicas, time)
+                        .thenApply(averages -> Ensemble.percentile(averages, 5)),
+                expectedNumberTimeSteps
+        ));
+        dataPoints.add(new DataPoint<>(
+                name + ENSEMBLE_MEDIAN_SUFFIX,
+                replicasOfDistricts,
+                (replicas, time) -> sortedAverages.apply(replicas, time)
+                        .thenApply(averages -> Ensemble.percentile(averages, 50)),
+                expectedNumberTimeSteps
+        ));
+        dataPoints.add(new DataPoint<>(
+                name + ENSEMBLE_P95_SUFFIX,
+                replicasOfDistricts,
+                (replicas, time) -> sortedAverages.apply(replicas, time)
+                        .thenApply(averages -> Ensemble.percentile(averages, 95)),
+                expectedNumberTimeSteps
+        ));
+    }
 }
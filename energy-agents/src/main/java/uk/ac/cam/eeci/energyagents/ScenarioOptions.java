@@ -0,0 +1,154 @@
+package uk.ac.cam.eeci.energyagents;
+
+import uk.ac.cam.eeci.framework.WorkerPool;
+
+/**
+ * The way a scenario is run, independent of what the scenario is: the engine, the logging of
+ * results, the discretisation of the thermal model, and the random numbers of people.
+ * <br><br>
+ * Options are immutable; each <code>with</code> method returns a copy that differs in a single
+ * option only, e.g.
+ * <pre>
+ *     new ScenarioOptions().withEngine(CitySimulation.Engine.PIPELINED).withSink(DataLogger.Sink.COLUMNAR)
+ * </pre>
+ * The default options reproduce {@link ScenarioBuilder#readScenario(String, String)}.
+ */
+public final class ScenarioOptions {
+
+    private final CitySimulation.Engine engine;
+    private final DataLogger.Mode loggingMode;
+    private final DataLogger.Sink sink;
+    private final String compiledScenarioDirectory;
+    private final Person.RandomNumberGenerator randomNumberGenerator;
+    private final DwellingBlock.Integrator integrator;
+    private final WorkerPool.Backend backend;
+
+    /**
+     * Creates the default options: the actor engine logging into the output database in memory,
+     * no compiled scenarios, random numbers of java.util.Random, the Crank-Nicolson integrator,
+     * and one thread per worker.
+     */
+    public ScenarioOptions() {
+        this(CitySimulation.Engine.ACTOR, DataLogger.Mode.IN_MEMORY, DataLogger.Sink.SQLITE, null,
+                Person.RandomNumberGenerator.JAVA_UTIL_RANDOM, DwellingBlock.Integrator.CRANK_NICOLSON,
+                WorkerPool.Backend.SINGLE_THREAD);
+    }
+
+    private ScenarioOptions(CitySimulation.Engine engine, DataLogger.Mode loggingMode, DataLogger.Sink sink,
+                            String compiledScenarioDirectory, Person.RandomNumberGenerator randomNumberGenerator,
+                            DwellingBlock.Integrator integrator, WorkerPool.Backend backend) {
+        this.engine = engine;
+        this.loggingMode = loggingMode;
+        this.sink = sink;
+        this.compiledScenarioDirectory = compiledScenarioDirectory;
+        this.randomNumberGenerator = randomNumberGenerator;
+        this.integrator = integrator;
+        this.backend = backend;
+    }
+
+    /**
+     * @param engine the engine stepping people and dwellings
+     * @return a copy of these options with the given engine
+     */
+    public ScenarioOptions withEngine(CitySimulation.Engine engine) {
+        return new ScenarioOptions(engine, this.loggingMode, this.sink, this.compiledScenarioDirectory,
+                this.randomNumberGenerator, this.integrator, this.backend);
+    }
+
+    /**
+     * @param loggingMode whether results are kept in memory or streamed to the output
+     * @return a copy of these options with the given logging mode
+     */
+    public ScenarioOptions withLoggingMode(DataLogger.Mode loggingMode) {
+        return new ScenarioOptions(this.engine, loggingMode, this.sink, this.compiledScenarioDirectory,
+                this.randomNumberGenerator, this.integrator, this.backend);
+    }
+
+    /**
+     * @param sink whether results are written into the output database or into columnar files
+     * @return a copy of these options with the given sink
+     */
+    public ScenarioOptions withSink(DataLogger.Sink sink) {
+        return new ScenarioOptions(this.engine, this.loggingMode, sink, this.compiledScenarioDirectory,
+                this.randomNumberGenerator, this.integrator, this.backend);
+    }
+
+    /**
+     * Compiled scenarios are kept in the given directory, keyed by the content of the input
+     * database. If the input database has been compiled before, the scenario is read from its
+     * compiled scenario without accessing the database; otherwise the database is read and
+     * compiled for later runs.
+     *
+     * @param compiledScenarioDirectory the directory of compiled scenarios; null to always read the database
+     * @return a copy of these options with the given directory of compiled scenarios
+     */
+    public ScenarioOptions withCompiledScenarioDirectory(String compiledScenarioDirectory) {
+        return new ScenarioOptions(this.engine, this.loggingMode, this.sink, compiledScenarioDirectory,
+                this.randomNumberGenerator, this.integrator, this.backend);
+    }
+
+    /**
+     * @param randomNumberGenerator the generator of the random numbers of people
+     * @return a copy of these options with the given generator of random numbers
+     */
+    public ScenarioOptions withRandomNumberGenerator(Person.RandomNumberGenerator randomNumberGenerator) {
+        return new ScenarioOptions(this.engine, this.loggingMode, this.sink, this.compiledScenarioDirectory,
+                randomNumberGenerator, this.integrator, this.backend);
+    }
+
+    /**
+     * @param integrator the discretisation in time of the thermal model of dwellings
+     * @return a copy of these options with the given integrator
+     */
+    public ScenarioOptions withIntegrator(DwellingBlock.Integrator integrator) {
+        return new ScenarioOptions(this.engine, this.loggingMode, this.sink, this.compiledScenarioDirectory,
+                this.randomNumberGenerator, integrator, this.backend);
+    }
+
+    /**
+     * @param backend the execution backend of the worker pool of the actor engine
+     * @return a copy of these options with the given backend
+     */
+    public ScenarioOptions withBackend(WorkerPool.Backend backend) {
+        return new ScenarioOptions(this.engine, this.loggingMode, this.sink, this.compiledScenarioDirectory,
+                this.randomNumberGenerator, this.integrator, backend);
+    }
+
+    public CitySimulation.Engine getEngine() {
+        return this.engine;
+    }
+
+    public DataLogger.Mode getLoggingMode() {
+        return this.loggingMode;
+    }
+
+    public DataLogger.Sink getSink() {
+        return this.sink;
+    }
+
+    public String getCompiledScenarioDirectory() {
+        return this.compiledScenarioDirectory;
+    }
+
+    public Person.RandomNumberGenerator getRandomNumberGenerator() {
+        return this.randomNumberGenerator;
+    }
+
+    public DwellingBlock.Integrator getIntegrator() {
+        return this.integrator;
+    }
+
+    /**
+     * The worker pool, see {@link uk.ac.cam.eeci.framework.Reference#pool}, must be created with
+     * this backend before the scenario is read.
+     *
+     * @return the backend of the actor engine; {@link WorkerPool.Backend#DIRECT} for all other
+     *         engines, as they require it
+     */
+    public WorkerPool.Backend getBackend() {
+        if (this.engine != CitySimulation.Engine.ACTOR) {
+            return WorkerPool.Backend.DIRECT;
+        }
+        return this.backend;
+    }
+}
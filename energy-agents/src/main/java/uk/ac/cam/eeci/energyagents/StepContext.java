@@ -0,0 +1,90 @@
+package uk.ac.cam.eeci.energyagents;
+
+import java.time.DayOfWeek;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * The simulation-wide time of a single time step.
+ * <br><br>
+ * The context is determined once per time step and handed to all agents, so that agents neither
+ * need to keep their own clocks nor to repeat calendar calculations. All calendar fields are
+ * given in the time zone of the time stamp.
+ */
+public final class StepContext {
+
+    private final int stepIndex;
+    private final ZonedDateTime time;
+    private final long epochSecond;
+    private final boolean weekend;
+    private final int secondOfDay;
+    private final int nanoOfSecond;
+
+    /**
+     * @param stepIndex the number of time steps since the start of the simulation
+     * @param time the time at the beginning of the time step
+     */
+    public StepContext(int stepIndex, ZonedDateTime time) {
+        this.stepIndex = stepIndex;
+        this.time = time;
+        this.epochSecond = time.toEpochSecond();
+        DayOfWeek dayOfWeek = time.getDayOfWeek();
+        this.weekend = dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY;
+        this.secondOfDay = time.toLocalTime().toSecondOfDay();
+        this.nanoOfSecond = time.getNano();
+    }
+
+    /**
+     * @return the number of time steps since the start of the simulation
+     */
+    public int getStepIndex() {
+        return this.stepIndex;
+    }
+
+    /**
+     * @return the time at the beginning of the time step
+     */
+    public ZonedDateTime getTime() {
+        return this.time;
+    }
+
+    /**
+     * @return the time zone of all calendar fields
+     */
+    public ZoneId getZone() {
+        return this.time.getZone();
+    }
+
+    /**
+     * @return the time in seconds since the epoch
+     */
+    public long getEpochSecond() {
+        return this.epochSecond;
+    }
+
+    /**
+     * @return true if the time step is on a Saturday or Sunday
+     */
+    public boolean isWeekend() {
+        return this.weekend;
+    }
+
+    /**
+     * @return the seconds since midnight
+     */
+    public int getSecondOfDay() {
+        return this.secondOfDay;
+    }
+
+    /**
+     * @return the fraction of the second in nanoseconds
+     */
+    public int getNanoOfSecond() {
+        return this.nanoOfSecond;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StepContext(%d, %s)", this.stepIndex, this.time);
+    }
+}
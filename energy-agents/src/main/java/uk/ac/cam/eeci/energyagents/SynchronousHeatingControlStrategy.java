@@ -0,0 +1,70 @@
+package uk.ac.cam.eeci.energyagents;
+
+import java.util.Optional;
+
+/**
+ * A control strategy for the heating system of dwellings that decides immediately.
+ * <br><br>
+ * In contrast to {@link HeatingControlStrategy}, the heating set point is returned as a primitive
+ * instead of a future, with NaN if the heating system is switched off. The strategy can base its
+ * decisions on the current time step and on the number of people in the dwelling only.
+ */
+public interface SynchronousHeatingControlStrategy {
+
+    /**
+     * Determines the current heating set point for the heating system of a dwelling.
+     *
+     * @param context The current time step.
+     * @param numberPeopleAtHome The number of people currently in the dwelling.
+     * @param numberPeopleAsleep The number of people currently asleep in the dwelling.
+     * @return the heating set point for the heating system; NaN if a switch off of the heating
+     *         system is demanded
+     */
+    double currentHeatingSetPoint(StepContext context, int numberPeopleAtHome, int numberPeopleAsleep);
+
+    /**
+     * Determines the current heating set points for the heating systems of many dwellings.
+     *
+     * @param context The current time step.
+     * @param numberPeopleAtHome The number of people currently in each dwelling.
+     * @param numberPeopleAsleep The number of people currently asleep in each dwelling.
+     * @param from The index of the first dwelling, inclusive.
+     * @param to The index of the last dwelling, exclusive.
+     * @param heatingSetPoints The array to write the heating set point of each dwelling to; see
+     *                         {@link #currentHeatingSetPoint(StepContext, int, int)}
+     */
+    default void currentHeatingSetPoints(StepContext context, int[] numberPeopleAtHome, int[] numberPeopleAsleep,
+                                         int from, int to, double[] heatingSetPoints) {
+        for (int i = from; i < to; i++) {
+            heatingSetPoints[i] = this.currentHeatingSetPoint(context, numberPeopleAtHome[i], numberPeopleAsleep[i]);
+        }
+    }
+
+    /**
+     * Makes any heating control strategy usable as a synchronous one.
+     * <br><br>
+     * Strategies that are not synchronous themselves are adapted by waiting for their set point.
+     * This must hence only be used where the messages the strategy sends are plain method calls,
+     * as with the {@link uk.ac.cam.eeci.framework.WorkerPool.Backend#DIRECT} backend.
+     *
+     * @param strategy any heating control strategy
+     * @return the strategy itself if synchronous; an adapter otherwise
+     */
+    static SynchronousHeatingControlStrategy of(HeatingControlStrategy strategy) {
+        if (strategy instanceof SynchronousHeatingControlStrategy) {
+            return (SynchronousHeatingControlStrategy) strategy;
+        }
+        return (context, numberPeopleAtHome, numberPeopleAsleep) -> strategy
+                .heatingSetPoint(context, numberPeopleAtHome, numberPeopleAsleep)
+                .join()
+                .orElse(Double.NaN);
+    }
+
+    /**
+     * @param heatingSetPoint a heating set point; NaN if off
+     * @return the heating set point as expected by {@link HeatingControlStrategy}
+     */
+    static Optional<Double> toOptional(double heatingSetPoint) {
+        return Double.isNaN(heatingSetPoint) ? Optional.empty() : Optional.of(heatingSetPoint);
+    }
+}
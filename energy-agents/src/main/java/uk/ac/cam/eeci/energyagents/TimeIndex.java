@@ -0,0 +1,172 @@
+package uk.ac.cam.eeci.energyagents;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The time stamps of a time series.
+ * <br><br>
+ * As long as the time stamps are regular, i.e. each one is the first time stamp plus a multiple
+ * of a constant time step size, they are not stored but computed when accessed. Once a time stamp
+ * breaks the rule, all time stamps are stored explicitly.
+ */
+public final class TimeIndex {
+
+    private final static int INITIAL_CAPACITY = 16;
+
+    private ZonedDateTime start;
+    private Duration timeStepSize;
+    private ZonedDateTime[] timeStamps; // null while regular
+    private int size;
+
+    public TimeIndex() {
+        this.start = null;
+        this.timeStepSize = null;
+        this.timeStamps = null;
+        this.size = 0;
+    }
+
+    /**
+     * @param start the first time stamp
+     * @param timeStepSize the constant time step size
+     * @param size the number of time stamps
+     */
+    public TimeIndex(ZonedDateTime start, Duration timeStepSize, int size) {
+        this.start = start;
+        this.timeStepSize = timeStepSize;
+        this.timeStamps = null;
+        this.size = size;
+    }
+
+    /**
+     * Creates a copy of another index that can be extended independently.
+     *
+     * @param other the index to copy
+     */
+    public TimeIndex(TimeIndex other) {
+        this.start = other.start;
+        this.timeStepSize = other.timeStepSize;
+        this.timeStamps = other.timeStamps == null ? null : other.timeStamps.clone();
+        this.size = other.size;
+    }
+
+    /**
+     * Adds a new time stamp to the end of the index.
+     *
+     * @param timeStamp the new time stamp
+     */
+    public void add(ZonedDateTime timeStamp) {
+        if (this.timeStamps == null) {
+            if (this.size == 0) {
+                this.start = timeStamp;
+            } else if (this.size == 1) {
+                this.timeStepSize = Duration.between(this.start, timeStamp);
+                if (!this.start.plus(this.timeStepSize).equals(timeStamp)) {
+                    this.storeTimeStampsExplicitly();
+                }
+            } else if (!this.get(this.size).equals(timeStamp)) {
+                this.storeTimeStampsExplicitly();
+            }
+        }
+        if (this.timeStamps != null) {
+            if (this.size == this.timeStamps.length) {
+                this.timeStamps = Arrays.copyOf(this.timeStamps, this.size * 2);
+            }
+            this.timeStamps[this.size] = timeStamp;
+        }
+        this.size++;
+    }
+
+    private void storeTimeStampsExplicitly() {
+        ZonedDateTime[] timeStamps = new ZonedDateTime[Math.max(INITIAL_CAPACITY, this.size * 2)];
+        for (int i = 0; i < this.size; i++) {
+            timeStamps[i] = this.get(i);
+        }
+        this.timeStamps = timeStamps;
+    }
+
+    /**
+     * @param i the position of the time stamp
+     * @return the time stamp at the given position
+     */
+    public ZonedDateTime get(int i) {
+        if (this.timeStamps != null) {
+            return this.timeStamps[i];
+        }
+        return i == 0 ? this.start : this.start.plus(this.timeStepSize.multipliedBy(i));
+    }
+
+    /**
+     * @return the number of time stamps
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return true if the time stamps are not stored explicitly
+     */
+    public boolean isRegular() {
+        return this.timeStamps == null;
+    }
+
+    /**
+     *
+     * @return the constant time step size if time step size is constant
+     */
+    public Optional<Duration> getConstantTimeStepSize() {
+        if (this.size < 2) {
+            return Optional.empty();
+        }
+        if (this.timeStamps == null) {
+            return Optional.of(Duration.ofSeconds(this.timeStepSize.getSeconds()));
+        }
+        long reference = this.timeStamps[0].until(this.timeStamps[1], ChronoUnit.SECONDS);
+        for (int i = 1; i < this.size - 1; i++) {
+            if (this.timeStamps[i].until(this.timeStamps[i + 1], ChronoUnit.SECONDS) != reference) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(Duration.ofSeconds(reference));
+    }
+
+    /**
+     * @return all time stamps, as a view on the index
+     */
+    public List<ZonedDateTime> asList() {
+        return new AbstractList<ZonedDateTime>() {
+            @Override
+            public ZonedDateTime get(int i) {
+                if (i < 0 || i >= TimeIndex.this.size) {
+                    throw new IndexOutOfBoundsException(String.format("Index %d of %d.", i, TimeIndex.this.size));
+                }
+                return TimeIndex.this.get(i);
+            }
+
+            @Override
+            public int size() {
+                return TimeIndex.this.size;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof TimeIndex))
+            return false;
+        if (other == this)
+            return true;
+
+        return this.asList().equals(((TimeIndex) other).asList());
+    }
+
+    @Override
+    public int hashCode() {
+        return this.asList().hashCode();
+    }
+}
@@ -1,25 +1,41 @@
 package uk.ac.cam.eeci.energyagents;
 
-import java.time.Duration;
 import java.time.ZonedDateTime;
-import java.time.temporal.ChronoUnit;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A time series of values.
+ * <br><br>
+ * For primitive values, prefer {@link DoubleTimeSeries}, {@link IntTimeSeries}, or
+ * {@link ByteTimeSeries}, which do not box their values.
  *
  * @param <K> the type of the values of the time series
  */
-public class TimeSeries<K> {
+public class TimeSeries<K> extends AbstractTimeSeries {
 
-    private List<ZonedDateTime> index;
     private List<K> values;
 
     public TimeSeries() {
-        this.index = new ArrayList<>();
+        super(new TimeIndex());
         this.values = new ArrayList<>();
     }
 
+    /**
+     * @param index the time stamps of all values; not copied
+     * @param values all values of the time series; not copied
+     * @throws IllegalArgumentException if index and values differ in length
+     */
+    public TimeSeries(TimeIndex index, List<K> values) {
+        super(index);
+        if (index.size() != values.size()) {
+            String msg = String.format("Index has %d time stamps, but there are %d values.",
+                    index.size(), values.size());
+            throw new IllegalArgumentException(msg);
+        }
+        this.values = values;
+    }
+
     /**
      * Adds a new value to the end of the time series.
      *
@@ -39,41 +55,6 @@ public class TimeSeries<K> {
         return this.values;
     }
 
-    /**
-     *
-     * @return the time index of the time series
-     */
-    public List<ZonedDateTime> getIndex() {
-        return this.index;
-    }
-
-    /**
-     *
-     * @return the constant time step size if time step size is constant
-     */
-    public Optional<Duration> getConstantTimeStepSize() {
-        List<Duration> timeStepSizes = new ArrayList<>();
-        List<ZonedDateTime> index = this.getIndex();
-        for (int i = 0; i < this.size() - 1; i++) {
-            timeStepSizes.add(Duration.ofSeconds(index.get(i).until(index.get(i + 1), ChronoUnit.SECONDS)));
-        }
-        Duration reference = timeStepSizes.get(0);
-        for (Duration timeStepSize : timeStepSizes) {
-            if (!timeStepSize.equals(reference)) {
-                return Optional.empty();
-            }
-        }
-        return Optional.of(reference);
-    }
-
-    /**
-     *
-     * @return the lenght of the time series
-     */
-    public int size() {
-        return this.index.size();
-    }
-
     @Override
     public boolean equals(Object other) {
         if (!(other instanceof TimeSeries))
@@ -2,8 +2,11 @@ package uk.ac.cam.eeci.energyagents.strategy;
 
 import uk.ac.cam.eeci.energyagents.HeatingControlStrategy;
 import uk.ac.cam.eeci.energyagents.PersonReference;
+import uk.ac.cam.eeci.energyagents.StepContext;
+import uk.ac.cam.eeci.energyagents.SynchronousHeatingControlStrategy;
 
 import java.time.ZonedDateTime;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
@@ -13,7 +16,8 @@ import java.util.concurrent.CompletableFuture;
  *
  * Good luck strategy, you can make it!
  */
-public class ClimateChangingControlStrategy extends HeatingControlStrategy {
+public class ClimateChangingControlStrategy extends HeatingControlStrategy
+        implements SynchronousHeatingControlStrategy {
 
     private final double heatingSetPoint;
 
@@ -31,4 +35,20 @@ public class ClimateChangingControlStrategy extends HeatingControlStrategy {
         return CompletableFuture.completedFuture(Optional.of(this.heatingSetPoint));
     }
 
+    @Override
+    public CompletableFuture<Optional<Double>> heatingSetPoint(StepContext context, int numberPeopleAtHome,
+                                                               int numberPeopleAsleep) {
+        return CompletableFuture.completedFuture(Optional.of(this.heatingSetPoint));
+    }
+
+    @Override
+    public double currentHeatingSetPoint(StepContext context, int numberPeopleAtHome, int numberPeopleAsleep) {
+        return this.heatingSetPoint;
+    }
+
+    @Override
+    public void currentHeatingSetPoints(StepContext context, int[] numberPeopleAtHome, int[] numberPeopleAsleep,
+                                        int from, int to, double[] heatingSetPoints) {
+        Arrays.fill(heatingSetPoints, from, to, this.heatingSetPoint);
+    }
 }
@@ -6,7 +6,10 @@ import uk.ac.cam.eeci.energyagents.strategy.TimeScheduleControlStrategy.TimeSlot
 import java.time.LocalTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 import static uk.ac.cam.eeci.energyagents.strategy.TimeScheduleControlStrategy.DayType.WEEKDAY;
 import static uk.ac.cam.eeci.energyagents.strategy.TimeScheduleControlStrategy.DayType.WEEKEND;
@@ -14,7 +17,8 @@ import static uk.ac.cam.eeci.energyagents.strategy.TimeScheduleControlStrategy.D
 /**
  * HeatingControlStrategyFactory builds HeatingControlStrategies.<br><br>
  *
- * It has all necessary parameters to build all possible control strategies.
+ * It has all necessary parameters to build all possible control strategies. As control strategies
+ * have no state, each type of strategy is built only once and then shared by all dwellings.
  */
 public class HeatingControlStrategyFactory {
 
@@ -60,6 +64,7 @@ public class HeatingControlStrategyFactory {
     private final LocalTime comeHomeTime;
     private final LocalTime bedTime;
     private final ZoneId timeZone;
+    private final Map<ControlStrategyType, HeatingControlStrategy> strategies;
 
     /**
      *
@@ -82,15 +87,20 @@ public class HeatingControlStrategyFactory {
         this.comeHomeTime = comeHomeTime;
         this.bedTime = bedTime;
         this.timeZone = timeZone;
+        this.strategies = Collections.synchronizedMap(new EnumMap<>(ControlStrategyType.class));
     }
 
     /**
      * Builds a heating control strategy.
      *
      * @param type the type of strategy to be build
-     * @return a new heating control strategy2
+     * @return the heating control strategy of that type; the same instance for every call
      */
     public HeatingControlStrategy build(ControlStrategyType type){
+        return this.strategies.computeIfAbsent(type, this::buildNew);
+    }
+
+    private HeatingControlStrategy buildNew(ControlStrategyType type){
         switch (type) {
             case OFF:
                 return this.noHeatingStrategy();
@@ -2,8 +2,11 @@ package uk.ac.cam.eeci.energyagents.strategy;
 
 import uk.ac.cam.eeci.energyagents.PersonReference;
 import uk.ac.cam.eeci.energyagents.HeatingControlStrategy;
+import uk.ac.cam.eeci.energyagents.StepContext;
+import uk.ac.cam.eeci.energyagents.SynchronousHeatingControlStrategy;
 
 import java.time.ZonedDateTime;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
@@ -13,12 +16,28 @@ import java.util.concurrent.CompletableFuture;
  * <br><br>
  * Comfort for purists.
  */
-public class NoHeatingStrategy extends HeatingControlStrategy {
-
+public class NoHeatingStrategy extends HeatingControlStrategy implements SynchronousHeatingControlStrategy {
 
     @Override
     public CompletableFuture<Optional<Double>> heatingSetPoint(ZonedDateTime timeStamp,
                                                                Set<PersonReference> peopleInDwelling) {
         return CompletableFuture.completedFuture(Optional.empty());
     }
+
+    @Override
+    public CompletableFuture<Optional<Double>> heatingSetPoint(StepContext context, int numberPeopleAtHome,
+                                                               int numberPeopleAsleep) {
+        return CompletableFuture.completedFuture(Optional.empty());
+    }
+
+    @Override
+    public double currentHeatingSetPoint(StepContext context, int numberPeopleAtHome, int numberPeopleAsleep) {
+        return Double.NaN;
+    }
+
+    @Override
+    public void currentHeatingSetPoints(StepContext context, int[] numberPeopleAtHome, int[] numberPeopleAsleep,
+                                        int from, int to, double[] heatingSetPoints) {
+        Arrays.fill(heatingSetPoints, from, to, Double.NaN);
+    }
 }
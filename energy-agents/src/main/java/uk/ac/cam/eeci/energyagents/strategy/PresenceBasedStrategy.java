@@ -3,6 +3,8 @@ package uk.ac.cam.eeci.energyagents.strategy;
 import uk.ac.cam.eeci.energyagents.Person;
 import uk.ac.cam.eeci.energyagents.PersonReference;
 import uk.ac.cam.eeci.energyagents.HeatingControlStrategy;
+import uk.ac.cam.eeci.energyagents.StepContext;
+import uk.ac.cam.eeci.energyagents.SynchronousHeatingControlStrategy;
 
 import java.time.ZonedDateTime;
 import java.util.Collection;
@@ -20,7 +22,7 @@ import java.util.concurrent.ConcurrentHashMap;
  * * one set point while there is at least someone at home, but not active
  * * when no one is home, the heating system will be off.
  */
-public class PresenceBasedStrategy extends HeatingControlStrategy {
+public class PresenceBasedStrategy extends HeatingControlStrategy implements SynchronousHeatingControlStrategy {
 
     private final double setPointWhileActiveAtHome;
     private final double setPointWhileSleepingAtHome;
@@ -50,6 +52,18 @@ public class PresenceBasedStrategy extends HeatingControlStrategy {
                 .thenApply((a) -> this.determineSetPoint(activities.values()));
     }
 
+    @Override
+    public CompletableFuture<Optional<Double>> heatingSetPoint(StepContext context, int numberPeopleAtHome,
+                                                               int numberPeopleAsleep) {
+        return CompletableFuture.completedFuture(SynchronousHeatingControlStrategy.toOptional(
+                this.determineSetPoint(numberPeopleAtHome, numberPeopleAsleep)));
+    }
+
+    @Override
+    public double currentHeatingSetPoint(StepContext context, int numberPeopleAtHome, int numberPeopleAsleep) {
+        return this.determineSetPoint(numberPeopleAtHome, numberPeopleAsleep);
+    }
+
     private Optional<Double> determineSetPoint(Collection<Person.Activity> activities) {
         boolean someOneNotAtHomeWhileBeingHome = activities.stream()
                 .anyMatch((act) -> !Person.HOME_ACTIVITIES.contains(act));
@@ -58,13 +72,18 @@ public class PresenceBasedStrategy extends HeatingControlStrategy {
                     "This should never happen.";
             throw new IllegalStateException(msg);
         }
-        boolean someOneHome = !activities.isEmpty();
-        boolean allAsleep = activities.stream().allMatch(Person.SLEEP_ACTIVITIES::contains);
+        int numberAsleep = (int) activities.stream().filter(Person.SLEEP_ACTIVITIES::contains).count();
+        return SynchronousHeatingControlStrategy.toOptional(this.determineSetPoint(activities.size(), numberAsleep));
+    }
+
+    private double determineSetPoint(int numberPeopleAtHome, int numberPeopleAsleep) {
+        boolean someOneHome = numberPeopleAtHome > 0;
+        boolean allAsleep = numberPeopleAsleep == numberPeopleAtHome;
         if (someOneHome && allAsleep)
-            return Optional.of(this.setPointWhileSleepingAtHome);
+            return this.setPointWhileSleepingAtHome;
         else if (someOneHome)
-            return Optional.of(this.setPointWhileActiveAtHome);
+            return this.setPointWhileActiveAtHome;
         else
-            return Optional.empty();
+            return Double.NaN;
     }
 }
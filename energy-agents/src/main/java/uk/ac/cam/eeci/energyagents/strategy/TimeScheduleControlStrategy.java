@@ -2,17 +2,19 @@ package uk.ac.cam.eeci.energyagents.strategy;
 
 import uk.ac.cam.eeci.energyagents.PersonReference;
 import uk.ac.cam.eeci.energyagents.HeatingControlStrategy;
+import uk.ac.cam.eeci.energyagents.StepContext;
+import uk.ac.cam.eeci.energyagents.SynchronousHeatingControlStrategy;
 
 import java.time.Duration;
 import java.time.LocalTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
 
 /**
  * A heating control strategy of piecewise constant heating set points based purely on current time.
@@ -25,8 +27,12 @@ import java.util.stream.Collectors;
  *     <li>weekends share the same schedule</li>
  *     <li>no other form of days possible (bank holidays, vacation, etc.)</li>
  * </ul>
+ * The schedule is compiled into a table of set points on construction, so that looking up the
+ * current set point is a single array read. As the strategy has no state, a single instance can
+ * be shared by many dwellings.
  */
-public class TimeScheduleControlStrategy extends HeatingControlStrategy {
+public class TimeScheduleControlStrategy extends HeatingControlStrategy
+        implements SynchronousHeatingControlStrategy {
 
     public enum DayType {
         /** Monday, Tuesday, Wednesday, Thursday, or Friday */
@@ -61,6 +67,8 @@ public class TimeScheduleControlStrategy extends HeatingControlStrategy {
         private final LocalTime startTime;
         private final LocalTime endTime;
         private final double heatingSetPoint;
+        private final long startNanoOfDay;
+        private final long endNanoOfDay;
 
         /**
          *
@@ -77,6 +85,8 @@ public class TimeScheduleControlStrategy extends HeatingControlStrategy {
             else
                 this.endTime = endTime.minus(Duration.ofMillis(1)); // so that this time is considered same day
             this.heatingSetPoint = heatingSetPoint;
+            this.startNanoOfDay = startTime.toNanoOfDay();
+            this.endNanoOfDay = endTime == LocalTime.MIDNIGHT ? NANOS_PER_DAY : endTime.toNanoOfDay();
             if (this.endTime.isBefore(this.startTime)) {
                 String msg = String.format("Start time must be before end time, but they were: start %s, end %s.",
                         startTime, endTime);
@@ -94,8 +104,17 @@ public class TimeScheduleControlStrategy extends HeatingControlStrategy {
         }
     }
 
+    private final static long NANOS_PER_DAY = 86_400_000_000_000L;
+    private final static long NANOS_PER_SECOND = 1_000_000_000L;
+    private final static long MAX_CELLS_PER_DAY = 86_400; // a resolution of one second
+
     private final List<TimeSlot> timeSlots;
     private final ZoneId zoneId;
+    // the schedule is cut into cells of equal length, so that no time slot starts or ends within a cell
+    private final long nanosPerCell;
+    private final int cellsPerDay;
+    // two entries per cell and day type: the set point at the start of the cell, and within it; NaN if off
+    private final double[] setPointTable;
 
     /**
      *
@@ -109,32 +128,116 @@ public class TimeScheduleControlStrategy extends HeatingControlStrategy {
         }
         this.timeSlots = timeSlots;
         this.zoneId = zoneId;
+        long nanosPerCell = NANOS_PER_DAY;
+        for (TimeSlot timeSlot : timeSlots) {
+            nanosPerCell = greatestCommonDivisor(nanosPerCell, timeSlot.startNanoOfDay);
+            nanosPerCell = greatestCommonDivisor(nanosPerCell, timeSlot.endNanoOfDay);
+        }
+        if (NANOS_PER_DAY / nanosPerCell <= MAX_CELLS_PER_DAY) {
+            this.nanosPerCell = nanosPerCell;
+            this.cellsPerDay = (int) (NANOS_PER_DAY / nanosPerCell);
+            this.setPointTable = this.compileSetPointTable();
+        } else {
+            // time slots are not aligned to full seconds; look them up one by one instead
+            this.nanosPerCell = 0;
+            this.cellsPerDay = 0;
+            this.setPointTable = null;
+        }
+    }
+
+    private double[] compileSetPointTable() {
+        double[] table = new double[DayType.values().length * this.cellsPerDay * 2];
+        Arrays.fill(table, Double.NaN);
+        for (TimeSlot timeSlot : this.timeSlots) {
+            int offset = timeSlot.dayType.ordinal() * this.cellsPerDay * 2;
+            int firstCell = (int) (timeSlot.startNanoOfDay / this.nanosPerCell);
+            int endCell = (int) (timeSlot.endNanoOfDay / this.nanosPerCell);
+            for (int cell = firstCell; cell < endCell; cell++) {
+                if (cell > firstCell) {
+                    table[offset + 2 * cell] = timeSlot.heatingSetPoint;
+                }
+                table[offset + 2 * cell + 1] = timeSlot.heatingSetPoint;
+            }
+        }
+        return table;
+    }
+
+    @Override
+    public CompletableFuture<Optional<Double>> heatingSetPoint(StepContext context,
+                                                               Set<PersonReference> peopleInDwelling) {
+        return CompletableFuture.completedFuture(
+                SynchronousHeatingControlStrategy.toOptional(this.currentHeatingSetPoint(context)));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Double>> heatingSetPoint(StepContext context, int numberPeopleAtHome,
+                                                               int numberPeopleAsleep) {
+        return CompletableFuture.completedFuture(
+                SynchronousHeatingControlStrategy.toOptional(this.currentHeatingSetPoint(context)));
     }
 
     @Override
     public CompletableFuture<Optional<Double>> heatingSetPoint(ZonedDateTime timeStamp,
                                                                Set<PersonReference> peopleInDwelling) {
-        Optional<TimeSlot> currentTimeSlot = this.chooseCurrentTimeSlot(timeStamp);
-        if (currentTimeSlot.isPresent()) {
-            return CompletableFuture.completedFuture(Optional.of(currentTimeSlot.get().heatingSetPoint));
+        long nanoOfDay = timeStamp.withZoneSameInstant(this.zoneId).toLocalTime().toNanoOfDay();
+        return CompletableFuture.completedFuture(SynchronousHeatingControlStrategy.toOptional(
+                this.lookUpHeatingSetPoint(DayType.fromTimeZone(timeStamp), nanoOfDay)));
+    }
+
+    @Override
+    public double currentHeatingSetPoint(StepContext context, int numberPeopleAtHome, int numberPeopleAsleep) {
+        return this.currentHeatingSetPoint(context);
+    }
+
+    @Override
+    public void currentHeatingSetPoints(StepContext context, int[] numberPeopleAtHome, int[] numberPeopleAsleep,
+                                        int from, int to, double[] heatingSetPoints) {
+        Arrays.fill(heatingSetPoints, from, to, this.currentHeatingSetPoint(context));
+    }
+
+    private double currentHeatingSetPoint(StepContext context) {
+        DayType dayType = context.isWeekend() ? DayType.WEEKEND : DayType.WEEKDAY;
+        long nanoOfDay;
+        if (context.getZone().equals(this.zoneId)) {
+            nanoOfDay = context.getSecondOfDay() * NANOS_PER_SECOND + context.getNanoOfSecond();
+        } else {
+            nanoOfDay = context.getTime().withZoneSameInstant(this.zoneId).toLocalTime().toNanoOfDay();
+        }
+        return this.lookUpHeatingSetPoint(dayType, nanoOfDay);
+    }
+
+    private double lookUpHeatingSetPoint(DayType dayType, long nanoOfDay) {
+        if (this.setPointTable != null) {
+            return this.setPointTable[this.tableIndex(dayType, nanoOfDay)];
         }
         else {
-            return CompletableFuture.completedFuture(Optional.empty());
+            return this.searchSetPoint(dayType, nanoOfDay);
+        }
+    }
+
+    private int tableIndex(DayType dayType, long nanoOfDay) {
+        int cell = (int) (nanoOfDay / this.nanosPerCell);
+        int withinCell = nanoOfDay % this.nanosPerCell == 0 ? 0 : 1;
+        return (dayType.ordinal() * this.cellsPerDay + cell) * 2 + withinCell;
+    }
+
+    private double searchSetPoint(DayType dayType, long nanoOfDay) {
+        for (TimeSlot timeSlot : this.timeSlots) {
+            if (timeSlot.dayType == dayType && timeSlot.startNanoOfDay < nanoOfDay
+                    && timeSlot.endNanoOfDay > nanoOfDay) {
+                return timeSlot.heatingSetPoint;
+            }
         }
+        return Double.NaN;
     }
 
-    private Optional<TimeSlot> chooseCurrentTimeSlot(ZonedDateTime currentTime) {
-        DayType dayType = DayType.fromTimeZone(currentTime);
-        LocalTime currentLocalTime = currentTime.withZoneSameInstant(this.zoneId).toLocalTime();
-        List<TimeSlot> matchingTimeSlots = this.timeSlots.stream()
-                .filter(timeSlot -> timeSlot.dayType == dayType && timeSlot.startTime.isBefore(currentLocalTime)
-                                    && timeSlot.endTime.isAfter(currentLocalTime))
-                .collect(Collectors.toList());
-        assert matchingTimeSlots.size() <= 1;
-        if (matchingTimeSlots.size() == 1)
-            return Optional.of(matchingTimeSlots.get(0));
-        else
-            return Optional.empty();
+    private static long greatestCommonDivisor(long a, long b) {
+        while (b != 0) {
+            long remainder = a % b;
+            a = b;
+            b = remainder;
+        }
+        return a;
     }
 
     private static boolean atLeastTwoTimeSlotsOverlap(List<TimeSlot> timeSlots) {
@@ -2,10 +2,14 @@ package uk.ac.cam.eeci.energyagents.test;
 
 import uk.ac.cam.eeci.framework.EndSimulationException;
 import uk.ac.cam.eeci.framework.Reference;
+import uk.ac.cam.eeci.framework.WorkerPool;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import uk.ac.cam.eeci.energyagents.*;
+import uk.ac.cam.eeci.energyagents.test.utils.Utils;
 
 import java.time.Duration;
 import java.time.ZoneOffset;
@@ -30,7 +34,7 @@ public class TestCitySimulation {
 
     @Before
     public void setUp() {
-        when(this.dwelling.step()).thenReturn(CompletableFuture.completedFuture(null));
+        when(this.dwelling.step(any())).thenReturn(CompletableFuture.completedFuture(null));
         when(this.dataLogger.step(any())).thenReturn(CompletableFuture.completedFuture(null));
         when(this.dataLogger.write(any())).thenReturn(CompletableFuture.completedFuture(null));
         this.citySimulation = new CitySimulation(
@@ -44,16 +48,108 @@ public class TestCitySimulation {
         Reference.pool.setCurrentExecutor(Reference.pool.main);
     }
 
+    @After
+    public void tearDown() {
+        Utils.resetScienceOS();
+    }
+
+    private CitySimulation bulkSynchronousSimulation() {
+        return this.bulkSynchronousSimulation(CitySimulation.Engine.BULK_SYNCHRONOUS);
+    }
+
+    private CitySimulation bulkSynchronousSimulation(CitySimulation.Engine engine) {
+        Reference.pool = new WorkerPool(2, WorkerPool.Placement.WEIGHTED, WorkerPool.Backend.DIRECT);
+        DwellingReference dwellingReference = new DwellingReference(this.dwelling);
+        when(this.person.getHome()).thenReturn(dwellingReference);
+        Dwelling emptyDwelling = mock(Dwelling.class);
+        when(emptyDwelling.step(any())).thenReturn(CompletableFuture.completedFuture(null));
+        return new CitySimulation(
+                Arrays.asList(dwellingReference, new DwellingReference(emptyDwelling)),
+                Arrays.asList(new PersonReference(this.person)),
+                new EnvironmentReference(this.environment),
+                new DataLoggerReference(this.dataLogger),
+                INITIAL_DATETIME,
+                TIME_STEP_SIZE,
+                100,
+                engine);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void bulkSynchronousEngineRequiresDirectBackend() {
+        new CitySimulation(
+                Arrays.asList(new DwellingReference(this.dwelling)),
+                Arrays.asList(new PersonReference(this.person)),
+                new EnvironmentReference(this.environment),
+                new DataLoggerReference(this.dataLogger),
+                INITIAL_DATETIME,
+                TIME_STEP_SIZE,
+                100,
+                CitySimulation.Engine.BULK_SYNCHRONOUS);
+    }
+
+    @Test
+    public void bulkSynchronousEngineStepsAllAgents() throws InterruptedException, ExecutionException,
+            EndSimulationException {
+        CitySimulation simulation = this.bulkSynchronousSimulation();
+        simulation.step();
+        verify(this.person, times(1)).step(any());
+        verify(this.dwelling, times(1)).step(any());
+        verify(this.environment, times(1)).step();
+        verify(this.dataLogger, times(1)).step(any());
+        simulation.stop();
+    }
+
+    @Test
+    public void bulkSynchronousEngineStepsPeopleBeforeDwellings() throws InterruptedException, ExecutionException,
+            EndSimulationException {
+        CitySimulation simulation = this.bulkSynchronousSimulation();
+        simulation.step();
+        InOrder inOrder = inOrder(this.person, this.dwelling);
+        inOrder.verify(this.person).step(any());
+        inOrder.verify(this.dwelling).step(any());
+        simulation.stop();
+    }
+
+    @Test
+    public void horizonMajorEngineRunsWholeHorizonInFirstStep() throws InterruptedException, ExecutionException,
+            EndSimulationException {
+        when(this.person.getCurrentActivity()).thenReturn(Person.Activity.HOME);
+        CitySimulation simulation = this.bulkSynchronousSimulation(CitySimulation.Engine.HORIZON_MAJOR);
+        simulation.step();
+        verify(this.person, times(100)).step(any());
+        verify(this.dwelling, times(100)).step(any());
+        verify(this.dataLogger, times(1)).step(any());
+        simulation.step();
+        verify(this.person, times(100)).step(any());
+        verify(this.environment, times(2)).step();
+        verify(this.dataLogger, times(2)).step(any());
+        simulation.stop();
+    }
+
+    @Test
+    public void pipelinedEngineGeneratesTrajectoriesAheadOfDwellings() throws InterruptedException,
+            ExecutionException, EndSimulationException {
+        when(this.person.getCurrentActivity()).thenReturn(Person.Activity.NOT_AT_HOME);
+        when(this.person.getMetabolicRate(any())).thenReturn(100.0);
+        when(this.person.advance(any())).thenReturn(Person.Activity.HOME);
+        CitySimulation simulation = this.bulkSynchronousSimulation(CitySimulation.Engine.PIPELINED);
+        simulation.step();
+        verify(this.person, atLeast(2)).advance(any());
+        verify(this.person, never()).step(any());
+        verify(this.dwelling, times(1)).step(any());
+        simulation.stop();
+    }
+
     @Test
     public void stepsDwelling() throws InterruptedException, ExecutionException, EndSimulationException {
         this.citySimulation.step();
-        verify(this.dwelling, times(1)).step();
+        verify(this.dwelling, times(1)).step(any());
     }
 
     @Test
     public void stepsPerson() throws InterruptedException, ExecutionException, EndSimulationException {
         this.citySimulation.step();
-        verify(this.person, times(1)).step();
+        verify(this.person, times(1)).step(any());
     }
 
     @Test
@@ -0,0 +1,80 @@
+package uk.ac.cam.eeci.energyagents.test;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.cam.eeci.energyagents.CounterBasedRandom;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class TestCounterBasedRandom {
+
+    private final static long SEED = 42;
+    private final static int NUMBER_DRAWS = 1000;
+
+    private double[] stream;
+
+    @Before
+    public void setUp() {
+        CounterBasedRandom random = new CounterBasedRandom(SEED);
+        this.stream = new double[NUMBER_DRAWS];
+        for (int i = 0; i < NUMBER_DRAWS; i++) {
+            this.stream[i] = random.nextDouble();
+        }
+    }
+
+    @Test
+    public void isReproducible() {
+        CounterBasedRandom random = new CounterBasedRandom(SEED);
+        for (int i = 0; i < NUMBER_DRAWS; i++) {
+            assertThat(random.nextDouble(), is(equalTo(this.stream[i])));
+        }
+    }
+
+    @Test
+    public void drawsNumbersBetweenZeroAndOne() {
+        for (double randomNumber : this.stream) {
+            assertThat(randomNumber, is(both(greaterThanOrEqualTo(0.0)).and(lessThan(1.0))));
+        }
+    }
+
+    @Test
+    public void computesAnyNumberOfTheStreamDirectly() {
+        CounterBasedRandom random = new CounterBasedRandom(SEED);
+        assertThat(random.doubleAt(517), is(equalTo(this.stream[517])));
+        assertThat(random.getCounter(), is(equalTo(0L)));
+    }
+
+    @Test
+    public void jumpsWithinTheStream() {
+        CounterBasedRandom random = new CounterBasedRandom(SEED);
+        random.setCounter(517);
+        assertThat(random.nextDouble(), is(equalTo(this.stream[517])));
+        assertThat(random.getCounter(), is(equalTo(518L)));
+    }
+
+    @Test
+    public void fillsBlocksAsIfDrawingOneByOne() {
+        CounterBasedRandom random = new CounterBasedRandom(SEED);
+        double[] block = new double[NUMBER_DRAWS];
+        random.nextDoubles(block);
+        assertThat(block, is(equalTo(this.stream)));
+        assertThat(random.getCounter(), is(equalTo((long) NUMBER_DRAWS)));
+    }
+
+    @Test
+    public void restartsStreamWhenReseeded() {
+        CounterBasedRandom random = new CounterBasedRandom(SEED + 7);
+        random.nextDouble();
+        random.setSeed(SEED);
+        assertThat(random.nextDouble(), is(equalTo(this.stream[0])));
+    }
+
+    @Test
+    public void streamsOfAdjacentSeedsDiffer() {
+        CounterBasedRandom random = new CounterBasedRandom(SEED + 1);
+        for (int i = 0; i < NUMBER_DRAWS; i++) {
+            assertThat(random.nextDouble(), is(not(equalTo(this.stream[i]))));
+        }
+    }
+}
@@ -3,6 +3,8 @@ package uk.ac.cam.eeci.energyagents.test;
 import org.junit.Before;
 import org.junit.Test;
 import uk.ac.cam.eeci.energyagents.DataPoint;
+import uk.ac.cam.eeci.energyagents.DataPointRecord;
+import uk.ac.cam.eeci.energyagents.Person.Activity;
 import uk.ac.cam.eeci.energyagents.TimeSeries;
 
 import static org.junit.Assert.*;
@@ -146,5 +148,73 @@ public class TestDataPoint {
         assertThat(secondDataPoint.getRecord().keySet(), containsInAnyOrder(100023, 56));
     }
 
+    @Test
+    public void columnarRecordHoldsDoubles() throws ExecutionException, InterruptedException {
+        this.dataPoint.step(INITIAL_TIME).get();
+        this.source1.value = 6.0;
+        this.dataPoint.step(INITIAL_TIME.plus(TIME_STEP_SIZE)).get();
+        DataPointRecord record = this.dataPoint.getColumnarRecord();
+
+        int column = record.getIds().indexOf(1);
+        assertThat(record.getValueType(), is(equalTo(DataPointRecord.ValueType.DOUBLE)));
+        assertThat(record.size(), is(equalTo(2)));
+        assertThat(record.getDouble(column, 0), is(equalTo(4.0)));
+        assertThat(record.getDouble(column, 1), is(equalTo(6.0)));
+    }
 
+    @Test
+    public void columnarRecordHoldsEnumsAsCategories() throws ExecutionException, InterruptedException {
+        Map<Integer, Activity> activities = new HashMap<>();
+        activities.put(1, Activity.SLEEP_AT_HOME);
+        activities.put(2, Activity.NOT_AT_HOME);
+        DataPoint<Activity, Activity> activityDataPoint = new DataPoint<>(
+                "activity",
+                activities,
+                CompletableFuture::completedFuture
+        );
+        activityDataPoint.step(INITIAL_TIME).get();
+        DataPointRecord record = activityDataPoint.getColumnarRecord();
+
+        int column = record.getIds().indexOf(2);
+        assertThat(record.getValueType(), is(equalTo(DataPointRecord.ValueType.CATEGORY)));
+        assertThat(record.getCategories().get(record.getCategoryCode(column, 0)), is(equalTo(Activity.NOT_AT_HOME)));
+        assertThat(activityDataPoint.getRecord().get(1).getValues().get(0), is(equalTo(Activity.SLEEP_AT_HOME)));
+    }
+
+    @Test
+    public void keepsAllValuesWhenTypeOfValuesChanges() throws ExecutionException, InterruptedException {
+        Object[] currentValue = {4.0};
+        Map<Integer, Object[]> sources = new HashMap<>();
+        sources.put(1, currentValue);
+        DataPoint<Object[], Object> mixedDataPoint = new DataPoint<>(
+                "mixed",
+                sources,
+                source -> CompletableFuture.completedFuture(source[0])
+        );
+        mixedDataPoint.step(INITIAL_TIME).get();
+        currentValue[0] = "four";
+        mixedDataPoint.step(INITIAL_TIME.plus(TIME_STEP_SIZE)).get();
+
+        assertThat(mixedDataPoint.getColumnarRecord().getValueType(), is(equalTo(DataPointRecord.ValueType.OBJECT)));
+        assertThat(mixedDataPoint.getRecord().get(1).getValues().get(0), is(equalTo((Object) 4.0)));
+        assertThat(mixedDataPoint.getRecord().get(1).getValues().get(1), is(equalTo((Object) "four")));
+    }
+
+    @Test
+    public void recordGrowsBeyondExpectedNumberOfTimeSteps() throws ExecutionException, InterruptedException {
+        DataPoint<DataPointValueSource, Double> smallDataPoint = new DataPoint<>(
+                DATA_POINT_NAME,
+                this.indexedSources,
+                DataPointValueSource::getDataPointValue,
+                1
+        );
+        for (int step = 0; step < 5; step++) {
+            this.source1.value = (double) step;
+            smallDataPoint.step(INITIAL_TIME.plus(TIME_STEP_SIZE.multipliedBy(step))).get();
+        }
+        Map<Integer, TimeSeries<Double>> record = smallDataPoint.getRecord();
+
+        assertThat(record.get(1).getValues(), contains(0.0, 1.0, 2.0, 3.0, 4.0));
+        assertThat(record.get(2).size(), is(equalTo(5)));
+    }
 }
@@ -0,0 +1,66 @@
+package uk.ac.cam.eeci.energyagents.test;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.cam.eeci.energyagents.DoubleTimeSeries;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+
+public class TestDoubleTimeSeries {
+
+    private final static ZonedDateTime INITIAL_DATETIME = ZonedDateTime.of(2017, 2, 22, 9, 50, 0, 0, ZoneOffset.UTC);
+    private final static Duration TIME_STEP_SIZE = Duration.ofMinutes(10);
+    private DoubleTimeSeries timeSeries;
+
+    @Before
+    public void setUp() {
+        this.timeSeries = new DoubleTimeSeries();
+        for (int i = 0; i < 100; i++) {
+            this.timeSeries.add(INITIAL_DATETIME.plus(TIME_STEP_SIZE.multipliedBy(i)), i * 0.5);
+        }
+    }
+
+    @Test
+    public void keepsAllValues() {
+        assertThat(this.timeSeries.size(), is(equalTo(100)));
+        assertThat(this.timeSeries.get(0), is(equalTo(0.0)));
+        assertThat(this.timeSeries.get(99), is(equalTo(49.5)));
+    }
+
+    @Test
+    public void doesNotStoreRegularTimeIndex() {
+        assertThat(this.timeSeries.getTimeIndex().isRegular(), is(equalTo(true)));
+        assertThat(this.timeSeries.getIndex().get(99), is(equalTo(INITIAL_DATETIME.plus(TIME_STEP_SIZE.multipliedBy(99)))));
+        assertThat(this.timeSeries.getConstantTimeStepSize(), is(equalTo(Optional.of(TIME_STEP_SIZE))));
+    }
+
+    @Test
+    public void storesIrregularTimeIndex() {
+        ZonedDateTime lastTimeStamp = INITIAL_DATETIME.plus(TIME_STEP_SIZE.multipliedBy(200));
+        this.timeSeries.add(lastTimeStamp, 1.0);
+        assertThat(this.timeSeries.getTimeIndex().isRegular(), is(equalTo(false)));
+        assertThat(this.timeSeries.getIndex().get(99), is(equalTo(INITIAL_DATETIME.plus(TIME_STEP_SIZE.multipliedBy(99)))));
+        assertThat(this.timeSeries.getIndex().get(100), is(equalTo(lastTimeStamp)));
+        assertThat(this.timeSeries.getConstantTimeStepSize(), is(equalTo(Optional.empty())));
+    }
+
+    @Test
+    public void equalsTimeSeriesCreatedAtOnce() {
+        double[] values = new double[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i * 0.5;
+        }
+        assertThat(new DoubleTimeSeries(INITIAL_DATETIME, TIME_STEP_SIZE, values), is(equalTo(this.timeSeries)));
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void rejectsAccessBeyondEnd() {
+        this.timeSeries.get(100);
+    }
+}
@@ -16,6 +16,8 @@ import static org.junit.Assert.*;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.argThat;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
@@ -32,19 +34,13 @@ public class TestDwelling {
     private DwellingReference dwellingReference;
     private HeatingControlStrategyReference controlStrategy = mock(HeatingControlStrategyReference.class);
     private EnvironmentReference environment = mock(EnvironmentReference.class);
-    private PersonReference person = mock(PersonReference.class);
-    private Set<PersonReference> personInSet;
 
     @Before
     public void setUp() {
-        this.personInSet = new HashSet<>();
-        this.personInSet.add(this.person);
-        when(this.controlStrategy.heatingSetPoint(any(), any()))
+        when(this.controlStrategy.heatingSetPoint(any(StepContext.class), anyInt(), anyInt()))
                 .thenReturn(CompletableFuture.completedFuture(Optional.of(21.9)));
         when(this.environment.getCurrentTemperature())
                 .thenReturn(CompletableFuture.completedFuture(INITIAL_DWELLING_TEMPERATURE));
-        when(this.person.getCurrentMetabolicRate())
-                .thenReturn(CompletableFuture.completedFuture(2.0));
         double floorArea = 100;
         this.dwelling = new Dwelling(165000 * floorArea, 2.5 * floorArea, floorArea,
                 3, 0.19, 0.26, 0.12, 0.40, 1.95,
@@ -56,28 +52,46 @@ public class TestDwelling {
     @Test
     public void testDwellingAsksControlStrategyForSetPoints() {
         this.dwelling.step();
-        verify(this.controlStrategy, atLeastOnce()).heatingSetPoint(eq(INITIAL_TIME), any());
+        verify(this.controlStrategy, atLeastOnce()).heatingSetPoint(atTime(INITIAL_TIME), anyInt(), anyInt());
     }
 
     @Test
     public void testWhenPersonEntersDwellingItIsHandedOverToControlStrategy() {
-        this.dwelling.enter(this.person);
+        this.dwelling.updateOccupancy(1, 0, 2.0);
         this.dwelling.step();
-        verify(this.controlStrategy, atLeastOnce()).heatingSetPoint(INITIAL_TIME, this.personInSet);
+        verify(this.controlStrategy, atLeastOnce()).heatingSetPoint(atTime(INITIAL_TIME), eq(1), eq(0));
+    }
+
+    @Test
+    public void testWhenPersonFallsAsleepItIsHandedOverToControlStrategy() {
+        this.dwelling.updateOccupancy(1, 0, 2.0);
+        this.dwelling.updateOccupancy(0, 1, -1.0);
+        this.dwelling.step();
+        verify(this.controlStrategy, atLeastOnce()).heatingSetPoint(atTime(INITIAL_TIME), eq(1), eq(1));
+    }
+
+    @Test
+    public void testKeepsCountOfOccupancy() {
+        this.dwelling.updateOccupancy(1, 0, 2.0);
+        this.dwelling.updateOccupancy(1, 1, 1.0);
+        this.dwelling.updateOccupancy(-1, 0, -2.0);
+        assertThat(this.dwelling.getNumberPeopleAtHome(), is(equalTo(1)));
+        assertThat(this.dwelling.getNumberPeopleAsleep(), is(equalTo(1)));
+        assertThat(this.dwelling.getMetabolicHeatGain(), is(closeTo(1.0, EPSILON)));
     }
 
     @Test
     public void testDwellingIsEmptyAtStartup() {
         this.dwelling.step();
-        verify(this.controlStrategy, atLeastOnce()).heatingSetPoint(INITIAL_TIME, new HashSet<>());
+        verify(this.controlStrategy, atLeastOnce()).heatingSetPoint(atTime(INITIAL_TIME), eq(0), eq(0));
     }
 
     @Test
     public void testWhenPersonLeavesItIsNotHandedOverToControlStrategy() {
-        this.dwelling.enter(this.person);
-        this.dwelling.leave(this.person);
+        this.dwelling.updateOccupancy(1, 0, 2.0);
+        this.dwelling.updateOccupancy(-1, 0, -2.0);
         this.dwelling.step();
-        verify(this.controlStrategy, atLeastOnce()).heatingSetPoint(INITIAL_TIME, new HashSet<>());
+        verify(this.controlStrategy, atLeastOnce()).heatingSetPoint(atTime(INITIAL_TIME), eq(0), eq(0));
     }
 
     @Test
@@ -112,7 +126,7 @@ public class TestDwelling {
 
     @Test
     public void testDwellingGetsHeatedWhenBelowHeatingSetPoint() {
-        when(this.controlStrategy.heatingSetPoint(eq(INITIAL_TIME), any()))
+        when(this.controlStrategy.heatingSetPoint(atTime(INITIAL_TIME), anyInt(), anyInt()))
                 .thenReturn(CompletableFuture.completedFuture(Optional.of(23.0)));
         this.dwelling.step();
         assertThat(this.dwelling.getCurrentAirTemperature(), is(greaterThan(INITIAL_DWELLING_TEMPERATURE)));
@@ -124,19 +138,24 @@ public class TestDwelling {
     public void switchesOffHeatingSystemWithoutHeatingSetPoint() {
         when(this.environment.getCurrentTemperature())
                 .thenReturn(CompletableFuture.completedFuture(0.0)); // it's cold outside!
-        when(this.controlStrategy.heatingSetPoint(eq(INITIAL_TIME), any()))
+        when(this.controlStrategy.heatingSetPoint(atTime(INITIAL_TIME), anyInt(), anyInt()))
                 .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
         this.dwelling.step();
         assertThat(this.dwelling.getCurrentThermalPower(), is(closeTo(0.0, EPSILON)));
     }
 
+    private static StepContext atTime(ZonedDateTime time) {
+        return argThat(context -> context.getTime().equals(time));
+    }
+
     @Test
     public void advancesTime() {
         this.dwelling.step();
         this.dwelling.step();
         verify(this.controlStrategy, times(1)).heatingSetPoint(
-                INITIAL_TIME.plus(TIME_STEP_SIZE),
-                new HashSet<>()
+                atTime(INITIAL_TIME.plus(TIME_STEP_SIZE)),
+                eq(0),
+                eq(0)
         );
     }
 
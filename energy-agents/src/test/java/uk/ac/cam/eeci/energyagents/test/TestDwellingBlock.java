@@ -0,0 +1,157 @@
+package uk.ac.cam.eeci.energyagents.test;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.cam.eeci.energyagents.DwellingBlock;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class TestDwellingBlock {
+
+    private final static double INITIAL_DWELLING_TEMPERATURE = 22;
+    private final static Duration TIME_STEP_SIZE = Duration.ofHours(1);
+    private final static int NUMBER_DWELLINGS = 5;
+    private final static double FLOOR_AREA = 100;
+    private final static double LIGHT_THERMAL_MASS_CAPACITY = 10000 * FLOOR_AREA;
+    private final static double EPSILON = 1e-9;
+    private DwellingBlock block;
+
+    @Before
+    public void setUp() {
+        this.block = new DwellingBlock(2);
+        for (int i = 0; i < NUMBER_DWELLINGS; i++) {
+            addDwelling(this.block, FLOOR_AREA + i);
+        }
+    }
+
+    private static int addDwelling(DwellingBlock block, double floorArea) {
+        return block.add(165000 * floorArea, 2.5 * floorArea, floorArea,
+                3, 0.19, 0.26, 0.12, 0.40, 1.95,
+                0.91, 0.65, 10 * floorArea,
+                INITIAL_DWELLING_TEMPERATURE, TIME_STEP_SIZE);
+    }
+
+    private static DwellingBlock lightDwelling(DwellingBlock.Integrator integrator, Duration timeStepSize) {
+        DwellingBlock block = new DwellingBlock(1, integrator);
+        block.add(LIGHT_THERMAL_MASS_CAPACITY, 2.5 * FLOOR_AREA, FLOOR_AREA,
+                3, 0.19, 0.26, 0.12, 0.40, 1.95,
+                0.91, 0.65, 10 * FLOOR_AREA,
+                INITIAL_DWELLING_TEMPERATURE, timeStepSize);
+        return block;
+    }
+
+    @Test
+    public void growsBeyondInitialCapacity() {
+        assertThat(this.block.size(), is(equalTo(NUMBER_DWELLINGS)));
+        assertThat(this.block.getAirTemperature(NUMBER_DWELLINGS - 1), is(equalTo(INITIAL_DWELLING_TEMPERATURE)));
+    }
+
+    @Test
+    public void noHeatingWhenSetPointIsNaN() {
+        this.block.setInputs(0, 0.0, 0.0, Double.NaN);
+        this.block.step(0, 1);
+        assertThat(this.block.getThermalPower(0), is(equalTo(0.0)));
+        assertThat(this.block.getAirTemperature(0), is(lessThan(INITIAL_DWELLING_TEMPERATURE)));
+    }
+
+    @Test
+    public void heatsWhenBelowSetPoint() {
+        this.block.setInputs(0, 0.0, 0.0, 21.0);
+        this.block.step(0, 1);
+        assertThat(this.block.getThermalPower(0), is(greaterThan(0.0)));
+    }
+
+    @Test
+    public void stepsOnlyGivenRange() {
+        for (int i = 0; i < NUMBER_DWELLINGS; i++) {
+            this.block.setInputs(i, 0.0, 0.0, Double.NaN);
+        }
+        this.block.step(1, 3);
+        assertThat(this.block.getAirTemperature(0), is(equalTo(INITIAL_DWELLING_TEMPERATURE)));
+        assertThat(this.block.getAirTemperature(1), is(lessThan(INITIAL_DWELLING_TEMPERATURE)));
+        assertThat(this.block.getAirTemperature(2), is(lessThan(INITIAL_DWELLING_TEMPERATURE)));
+        assertThat(this.block.getAirTemperature(3), is(equalTo(INITIAL_DWELLING_TEMPERATURE)));
+    }
+
+    @Test
+    public void bulkStepEqualsSingleSteps() {
+        DwellingBlock[] singles = new DwellingBlock[NUMBER_DWELLINGS];
+        for (int i = 0; i < NUMBER_DWELLINGS; i++) {
+            singles[i] = new DwellingBlock(1);
+            addDwelling(singles[i], FLOOR_AREA + i);
+        }
+        for (int step = 0; step < 24; step++) {
+            for (int i = 0; i < NUMBER_DWELLINGS; i++) {
+                double externalTemperature = -5.0 + step;
+                double internalGain = 50.0 * i;
+                double setPoint = i % 2 == 0 ? 21.0 : Double.NaN;
+                this.block.setInputs(i, externalTemperature, internalGain, setPoint);
+                singles[i].setInputs(0, externalTemperature, internalGain, setPoint);
+                singles[i].step(0, 1);
+            }
+            this.block.step(0, NUMBER_DWELLINGS);
+            for (int i = 0; i < NUMBER_DWELLINGS; i++) {
+                assertThat(this.block.getAirTemperature(i), is(equalTo(singles[i].getAirTemperature(0))));
+                assertThat(this.block.getThermalPower(i), is(equalTo(singles[i].getThermalPower(0))));
+            }
+        }
+    }
+
+    @Test
+    public void crankNicolsonReproducesPreviousResults() {
+        // results of the Crank-Nicolson step before the integrator could be chosen
+        double[] externalTemperatures = {0.0, -5.0, 3.0, 10.0};
+        double[] setPoints = {Double.NaN, 21.0, 21.0, 18.0};
+        double[] airTemperatures = {21.017252956370616, 20.999999999999996, 21.0, 20.271544389961505};
+        double[] thermalPowers = {0.0, 614.4080588111656, 664.5957795257505, 0.0};
+        double[] saturatedAirTemperatures = {22.039584908498227, 21.383811869929207, 21.33347581911097,
+                21.449793755642755};
+        for (int step = 0; step < externalTemperatures.length; step++) {
+            this.block.setInputs(0, externalTemperatures[step], 300.0, setPoints[step]);
+            this.block.setInputs(1, externalTemperatures[step], 0.0, 23.0);
+            this.block.step(0, 2);
+            assertThat(this.block.getAirTemperature(0), is(equalTo(airTemperatures[step])));
+            assertThat(this.block.getThermalPower(0), is(equalTo(thermalPowers[step])));
+            assertThat(this.block.getAirTemperature(1), is(equalTo(saturatedAirTemperatures[step])));
+            assertThat(this.block.getThermalPower(1), is(equalTo(10 * (FLOOR_AREA + 1))));
+        }
+    }
+
+    @Test
+    public void exponentialIntegratorIsIndependentOfTimeStepSize() {
+        DwellingBlock hourly = lightDwelling(DwellingBlock.Integrator.EXPONENTIAL, Duration.ofHours(1));
+        DwellingBlock tenMinutes = lightDwelling(DwellingBlock.Integrator.EXPONENTIAL, Duration.ofMinutes(10));
+        for (int hour = 0; hour < 24; hour++) {
+            hourly.setInputs(0, 0.0, 100.0, Double.NaN);
+            hourly.step(0, 1);
+            for (int step = 0; step < 6; step++) {
+                tenMinutes.setInputs(0, 0.0, 100.0, Double.NaN);
+                tenMinutes.step(0, 1);
+            }
+            assertThat(hourly.getAirTemperature(0), is(closeTo(tenMinutes.getAirTemperature(0), EPSILON)));
+        }
+    }
+
+    @Test
+    public void crankNicolsonDriftsAtCoarseTimeSteps() {
+        DwellingBlock hourly = lightDwelling(DwellingBlock.Integrator.CRANK_NICOLSON, Duration.ofHours(1));
+        DwellingBlock exact = lightDwelling(DwellingBlock.Integrator.EXPONENTIAL, Duration.ofHours(1));
+        hourly.setInputs(0, 0.0, 100.0, Double.NaN);
+        hourly.step(0, 1);
+        exact.setInputs(0, 0.0, 100.0, Double.NaN);
+        exact.step(0, 1);
+        assertThat(hourly.getAirTemperature(0), is(not(closeTo(exact.getAirTemperature(0), 0.05))));
+    }
+
+    @Test
+    public void exponentialIntegratorHeatsToSetPoint() {
+        DwellingBlock block = lightDwelling(DwellingBlock.Integrator.EXPONENTIAL, Duration.ofHours(1));
+        block.setInputs(0, 0.0, 0.0, 16.0);
+        block.step(0, 1);
+        assertThat(block.getThermalPower(0), is(both(greaterThan(0.0)).and(lessThan(10 * FLOOR_AREA))));
+        assertThat(block.getAirTemperature(0), is(closeTo(16.0, 1e-6)));
+    }
+}
@@ -5,7 +5,10 @@ import org.junit.Test;
 import uk.ac.cam.eeci.energyagents.Dwelling;
 import uk.ac.cam.eeci.energyagents.DwellingDistrict;
 import uk.ac.cam.eeci.energyagents.DwellingReference;
+import uk.ac.cam.eeci.energyagents.RunningStatistics;
 
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
@@ -14,6 +17,8 @@ import java.util.concurrent.ExecutionException;
 import static org.junit.Assert.*;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class TestDwellingDistrict {
@@ -22,6 +27,7 @@ public class TestDwellingDistrict {
     private final static Double INITIAL_TEMPERATURE_2 = 20.0;
     private final static Double INITIAL_THERMAL_POWER_1 = 100.0;
     private final static Double INITIAL_THERMAL_POWER_2 = 267.4;
+    private final static ZonedDateTime TIME = ZonedDateTime.of(2017, 2, 23, 17, 16, 0, 0, ZoneOffset.UTC);
 
     private DwellingDistrict district;
     private Dwelling dwelling1 = mock(Dwelling.class);
@@ -49,4 +55,27 @@ public class TestDwellingDistrict {
         assertThat(values.values(), containsInAnyOrder(INITIAL_THERMAL_POWER_1, INITIAL_THERMAL_POWER_2));
     }
 
+    @Test
+    public void returnsMeanTemperature() throws ExecutionException, InterruptedException {
+        RunningStatistics statistics = this.district.getCurrentAirTemperatureStatistics(TIME).get();
+        assertThat(statistics.getMean(), is(closeTo((INITIAL_TEMPERATURE_1 + INITIAL_TEMPERATURE_2) / 2, 0.0001)));
+    }
+
+    @Test
+    public void returnsStandardDeviationOfThermalPower() throws ExecutionException, InterruptedException {
+        RunningStatistics statistics = this.district.getCurrentThermalPowerStatistics(TIME).get();
+        double expected = Math.abs(INITIAL_THERMAL_POWER_1 - INITIAL_THERMAL_POWER_2) / Math.sqrt(2);
+        assertThat(statistics.getStandardDeviation(), is(closeTo(expected, 0.0001)));
+    }
+
+    @Test
+    public void queriesEachDwellingOncePerTime() throws ExecutionException, InterruptedException {
+        this.district.getCurrentThermalPowerStatistics(TIME).get();
+        this.district.getCurrentThermalPowerStatistics(TIME).get();
+        verify(this.dwelling1, times(1)).getCurrentThermalPower();
+
+        this.district.getCurrentThermalPowerStatistics(TIME.plusMinutes(1)).get();
+        verify(this.dwelling1, times(2)).getCurrentThermalPower();
+    }
+
 }
@@ -14,6 +14,7 @@ import java.util.concurrent.ExecutionException;
 import static org.junit.Assert.*;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -25,13 +26,12 @@ public class TestDwellingWithBrokenHVAC {
     private final static Double MAX_HEATING_POWER = 0.0;
     private final static Duration TIME_STEP_SIZE = Duration.ofHours(1);
     private HeatingControlStrategyReference controlStrategy = mock(HeatingControlStrategyReference.class);
-    private Person person = mock(Person.class);
     private Environment environment = mock(Environment.class);
     private Dwelling dwelling;
 
     @Before
     public void setUp() {
-        when(this.controlStrategy.heatingSetPoint(any(), any()))
+        when(this.controlStrategy.heatingSetPoint(any(StepContext.class), anyInt(), anyInt()))
                 .thenReturn(CompletableFuture.completedFuture(Optional.of(20.0)));
         when(this.environment.getCurrentTemperature()).thenReturn(INITIAL_DWELLING_TEMPERATURE);
         double floorArea = 100;
@@ -84,16 +84,14 @@ public class TestDwellingWithBrokenHVAC {
 
     @Test
     public void dwellingGetsWarmerThroughMetabolicHeatGains() throws ExecutionException, InterruptedException {
-        when(this.person.getCurrentMetabolicRate()).thenReturn(50.0);
-        this.dwelling.enter(new PersonReference(this.person));
+        this.dwelling.updateOccupancy(1, 0, 50.0);
         this.dwelling.step().get();
         assertThat(this.dwelling.getCurrentAirTemperature(), is(greaterThan(INITIAL_DWELLING_TEMPERATURE)));
     }
 
     @Test
     public void dwellingDoesNotGetWarmerWithZeroMetabolicHeatGain() throws ExecutionException, InterruptedException {
-        when(this.person.getCurrentMetabolicRate()).thenReturn(0.0);
-        this.dwelling.enter(new PersonReference(this.person));
+        this.dwelling.updateOccupancy(1, 0, 0.0);
         this.dwelling.step().get();
         assertThat(this.dwelling.getCurrentAirTemperature(), is(closeTo(INITIAL_DWELLING_TEMPERATURE, EPSILON)));
     }
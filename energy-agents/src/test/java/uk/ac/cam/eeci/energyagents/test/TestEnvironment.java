@@ -3,7 +3,7 @@ package uk.ac.cam.eeci.energyagents.test;
 import org.junit.Before;
 import org.junit.Test;
 import uk.ac.cam.eeci.energyagents.Environment;
-import uk.ac.cam.eeci.energyagents.TimeSeries;
+import uk.ac.cam.eeci.energyagents.DoubleTimeSeries;
 
 import static org.junit.Assert.*;
 import static org.hamcrest.Matchers.*;
@@ -16,12 +16,12 @@ public class TestEnvironment {
     private final ZonedDateTime INITIAL_DATETIME = ZonedDateTime.of(2017, 2, 22, 9, 50, 0, 0, ZoneOffset.UTC);
     private final Duration TIME_STEP_SIZE = Duration.ofMinutes(10);
     private final Double EPSILON = 0.000001;
-    private TimeSeries<Double> temperatureTimeSeries;
+    private DoubleTimeSeries temperatureTimeSeries;
     private Environment environment;
 
     @Before
     public void setUp() {
-        this.temperatureTimeSeries = new TimeSeries<>();
+        this.temperatureTimeSeries = new DoubleTimeSeries();
         this.temperatureTimeSeries.add(INITIAL_DATETIME, 24.0);
         this.temperatureTimeSeries.add(INITIAL_DATETIME.plus(TIME_STEP_SIZE), 25.0);
         this.environment = new Environment(temperatureTimeSeries, this.TIME_STEP_SIZE);
@@ -45,7 +45,7 @@ public class TestEnvironment {
 
     @Test(expected=IllegalArgumentException.class)
     public void validatesConstantTimeStepSize() {
-        this.temperatureTimeSeries = new TimeSeries<>();
+        this.temperatureTimeSeries = new DoubleTimeSeries();
         this.temperatureTimeSeries.add(INITIAL_DATETIME, 24.0);
         this.temperatureTimeSeries.add(INITIAL_DATETIME.plus(TIME_STEP_SIZE), 25.0);
         this.temperatureTimeSeries.add(INITIAL_DATETIME.plus(TIME_STEP_SIZE.multipliedBy(4)), 26.0);
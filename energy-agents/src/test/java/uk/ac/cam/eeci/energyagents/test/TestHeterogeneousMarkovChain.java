@@ -16,6 +16,7 @@ import java.util.*;
 
 import uk.ac.cam.eeci.energyagents.HeterogeneousMarkovChain;
 import uk.ac.cam.eeci.energyagents.HeterogeneousMarkovChain.MarkovChain;
+import uk.ac.cam.eeci.energyagents.StepContext;
 
 @RunWith(Parameterized.class)
 public class TestHeterogeneousMarkovChain {
@@ -100,10 +101,41 @@ public class TestHeterogeneousMarkovChain {
         this.chain.move(startState, invalid, this.randomNumberGenerator);
     }
 
+    @Test(expected=IllegalArgumentException.class)
+    public void testFailsWithFractionsOfSeconds() {
+        ZonedDateTime invalid = ZonedDateTime.of(2017, 2, 10, 15, 20, 0, 1, ZoneOffset.UTC);
+        this.chain.move(startState, invalid, this.randomNumberGenerator);
+    }
+
+    @Test
+    public void testRespectsTimeZoneWithDaylightSavingTime() {
+        ZonedDateTime beforeWorkInSummer = ZonedDateTime.of(2017, 7, 14, 10, 0, 0, 0, ZoneId.of("Europe/Paris"));
+        double frequency = this.frequency(this.startState, beforeWorkInSummer, this.startState);
+        assertThat(frequency, is(equalTo(0.0)));
+    }
+
     @Test
     public void testRespectsTimeZone() {
         ZonedDateTime beforeWork = ZonedDateTime.of(2017, 2, 10, 9, 0, 0, 0, ZoneId.of("Europe/Paris"));
         double frequency = this.frequency(this.startState, beforeWork, this.startState);
         assertThat(frequency, is(equalTo(0.0)));
     }
+
+    @Test
+    public void testMovesIdenticallyWithStepContext() {
+        Random otherRandomNumberGenerator = new Random(SEED);
+        ZonedDateTime time = ZonedDateTime.of(2017, 2, 10, 0, 0, 0, 0, ZoneId.of("Europe/Paris"));
+        for (int step = 0; step < 1008; step++) {
+            StepContext context = new StepContext(step, time);
+            assertThat(this.chain.move(this.startState, context, this.randomNumberGenerator),
+                    is(equalTo(this.chain.move(this.startState, time, otherRandomNumberGenerator))));
+            time = time.plus(Duration.ofMinutes(10));
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testFailsWithInvalidStepContext() {
+        ZonedDateTime invalid = ZonedDateTime.of(2017, 2, 10, 15, 21, 0, 0, ZoneOffset.UTC);
+        this.chain.move(startState, new StepContext(0, invalid), this.randomNumberGenerator);
+    }
 }
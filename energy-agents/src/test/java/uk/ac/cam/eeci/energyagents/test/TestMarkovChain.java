@@ -83,6 +83,40 @@ public class TestMarkovChain
         assertThat(chosenStates.stream().distinct().count(), is(equalTo(1L)));
     }
 
+    @Test
+    public void testIsIndependentOfOrderOfProbabilities() {
+        Map<Pair<State, State>, Double> probabilities = new LinkedHashMap<>();
+        probabilities.put(new Pair<>(State.C, State.C), 1.0);
+        probabilities.put(new Pair<>(State.B, State.B), 1.0);
+        probabilities.put(new Pair<>(State.A, State.C), 0.10);
+        probabilities.put(new Pair<>(State.A, State.B), 0.40);
+        probabilities.put(new Pair<>(State.A, State.A), 0.50);
+        HeterogeneousMarkovChain.MarkovChain<State> reversedChain = new HeterogeneousMarkovChain.MarkovChain<>(probabilities);
+        Random otherRandomNumberGenerator = new Random(SEED);
+        for (int i = 0; i < NUMBER_EXECUTIONS; i++) {
+            assertThat(reversedChain.move(State.A, otherRandomNumberGenerator),
+                    is(equalTo(this.chain.move(State.A, this.randomNumberGenerator))));
+        }
+    }
+
+    @Test
+    public void testWorksWithStatesOtherThanEnums() {
+        Map<Pair<String, String>, Double> probabilities = new HashMap<>();
+        probabilities.put(new Pair<>("a", "b"), 1.0);
+        probabilities.put(new Pair<>("b", "a"), 1.0);
+        HeterogeneousMarkovChain.MarkovChain<String> stringChain = new HeterogeneousMarkovChain.MarkovChain<>(probabilities);
+        assertThat(stringChain.move("a", this.randomNumberGenerator), is(equalTo("b")));
+        assertThat(stringChain.move("b", this.randomNumberGenerator), is(equalTo("a")));
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testFailsForStateWithoutTransitions() {
+        Map<Pair<State, State>, Double> probabilities = new HashMap<>();
+        probabilities.put(new Pair<>(State.B, State.B), 1.0);
+        this.chain = new HeterogeneousMarkovChain.MarkovChain<>(probabilities);
+        this.chain.move(State.A, this.randomNumberGenerator);
+    }
+
     @Test(expected=AssertionError.class)
     public void testFailsWithTotalProbabilityViolated() {
         Map<Pair<State, State>, Double> probabilities = new HashMap<>();
@@ -8,12 +8,14 @@ import java.util.Random;
 import static org.junit.Assert.*;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.Mockito.*;
+import static org.mockito.Mockito.argThat;
 
 import org.junit.Test;
 import uk.ac.cam.eeci.energyagents.HeterogeneousMarkovChain;
 import uk.ac.cam.eeci.energyagents.Person;
 import uk.ac.cam.eeci.energyagents.DwellingReference;
 import uk.ac.cam.eeci.energyagents.Person.Activity;
+import uk.ac.cam.eeci.energyagents.StepContext;
 
 public class TestPerson {
 
@@ -41,7 +43,7 @@ public class TestPerson {
 
     @Test
     public void testUpdatesStateAccordingToMarkovChainDuringStep() {
-        when(this.markovChain.move(INITIAL_ACTIVITY, INITIAL_DATETIME, this.randomNumberGenerator))
+        when(this.markovChain.move(eq(INITIAL_ACTIVITY), at(INITIAL_DATETIME), eq(this.randomNumberGenerator)))
                 .thenReturn(Activity.SLEEP_AT_HOME);
         person.step();
         assertThat(person.getCurrentActivity(), is(equalTo(Activity.SLEEP_AT_HOME)));
@@ -49,62 +51,74 @@ public class TestPerson {
 
     @Test
     public void testUpdatesTimeDuringStep() {
-        when(this.markovChain.move(INITIAL_ACTIVITY, INITIAL_DATETIME, this.randomNumberGenerator))
+        when(this.markovChain.move(eq(INITIAL_ACTIVITY), at(INITIAL_DATETIME), eq(this.randomNumberGenerator)))
                 .thenReturn(Activity.SLEEP_AT_HOME);
         person.step();
         reset(this.markovChain);
         person.step();
         verify(this.markovChain)
-                .move(Activity.SLEEP_AT_HOME, INITIAL_DATETIME.plus(TIME_STEP_SIZE), this.randomNumberGenerator);
+                .move(eq(Activity.SLEEP_AT_HOME), at(INITIAL_DATETIME.plus(TIME_STEP_SIZE)), eq(this.randomNumberGenerator));
     }
 
     @Test
     public void testEntersHomeWhenStartingBeingAtHome() {
-        when(this.markovChain.move(INITIAL_ACTIVITY, INITIAL_DATETIME, this.randomNumberGenerator))
+        when(this.markovChain.move(eq(INITIAL_ACTIVITY), at(INITIAL_DATETIME), eq(this.randomNumberGenerator)))
                 .thenReturn(Activity.HOME);
         person.step();
-        verify(this.home).enter(any());
+        verify(this.home).updateOccupancy(1, 0, ACTIVE_METABOLIC_RATE);
     }
 
     @Test
     public void testDoesNotEnterHomeTwice() {
-        when(this.markovChain.move(INITIAL_ACTIVITY, INITIAL_DATETIME, this.randomNumberGenerator))
+        when(this.markovChain.move(eq(INITIAL_ACTIVITY), at(INITIAL_DATETIME), eq(this.randomNumberGenerator)))
                 .thenReturn(Activity.HOME);
         person.step();
-        when(this.markovChain.move(INITIAL_ACTIVITY, INITIAL_DATETIME, this.randomNumberGenerator))
+        when(this.markovChain.move(eq(INITIAL_ACTIVITY), at(INITIAL_DATETIME), eq(this.randomNumberGenerator)))
                 .thenReturn(Activity.SLEEP_AT_HOME);
         person.step();
-        verify(this.home, times(1)).enter(any());
+        verify(this.home, times(1)).updateOccupancy(1, 0, ACTIVE_METABOLIC_RATE);
     }
 
     @Test
     public void testLeavesHomeWhenStartingToNotBeThere() {
-        when(this.markovChain.move(INITIAL_ACTIVITY, INITIAL_DATETIME, this.randomNumberGenerator))
+        when(this.markovChain.move(eq(INITIAL_ACTIVITY), at(INITIAL_DATETIME), eq(this.randomNumberGenerator)))
                 .thenReturn(Activity.HOME);
         person.step();
-        when(this.markovChain.move(INITIAL_ACTIVITY, INITIAL_DATETIME, this.randomNumberGenerator))
+        when(this.markovChain.move(eq(INITIAL_ACTIVITY), at(INITIAL_DATETIME), eq(this.randomNumberGenerator)))
                 .thenReturn(Activity.NOT_AT_HOME);
         person.step();
-        verify(this.home).leave(any());
+        verify(this.home).updateOccupancy(-1, 0, -ACTIVE_METABOLIC_RATE);
     }
 
     @Test
     public void testDoesNotLeaveHomeTwice() {
-        when(this.markovChain.move(INITIAL_ACTIVITY, INITIAL_DATETIME, this.randomNumberGenerator))
+        when(this.markovChain.move(eq(INITIAL_ACTIVITY), at(INITIAL_DATETIME), eq(this.randomNumberGenerator)))
                 .thenReturn(Activity.HOME);
         person.step();
-        when(this.markovChain.move(Activity.HOME, INITIAL_DATETIME, this.randomNumberGenerator))
+        when(this.markovChain.move(eq(Activity.HOME), at(INITIAL_DATETIME), eq(this.randomNumberGenerator)))
                 .thenReturn(Activity.NOT_AT_HOME);
         person.step();
-        when(this.markovChain.move(Activity.NOT_AT_HOME, INITIAL_DATETIME, this.randomNumberGenerator))
+        when(this.markovChain.move(eq(Activity.NOT_AT_HOME), at(INITIAL_DATETIME), eq(this.randomNumberGenerator)))
                 .thenReturn(Activity.NOT_AT_HOME);
         person.step();
-        verify(this.home, times(1)).leave(any());
+        verify(this.home, times(1)).updateOccupancy(-1, 0, -ACTIVE_METABOLIC_RATE);
+    }
+
+    @Test
+    public void testTellsHomeWhenFallingAsleep() {
+        when(this.markovChain.move(eq(INITIAL_ACTIVITY), at(INITIAL_DATETIME), eq(this.randomNumberGenerator)))
+                .thenReturn(Activity.HOME);
+        person.step();
+        when(this.markovChain.move(eq(Activity.HOME), at(INITIAL_DATETIME.plus(TIME_STEP_SIZE)),
+                eq(this.randomNumberGenerator)))
+                .thenReturn(Activity.SLEEP_AT_HOME);
+        person.step();
+        verify(this.home).updateOccupancy(0, 1, PASSIVE_METABOLIC_RATE - ACTIVE_METABOLIC_RATE);
     }
 
     @Test
     public void returnsActiveMetabolicRateWhenActiveAtHome() {
-        when(this.markovChain.move(INITIAL_ACTIVITY, INITIAL_DATETIME, this.randomNumberGenerator))
+        when(this.markovChain.move(eq(INITIAL_ACTIVITY), at(INITIAL_DATETIME), eq(this.randomNumberGenerator)))
                 .thenReturn(Activity.HOME);
         person.step();
         assertThat(this.person.getCurrentMetabolicRate(), is(equalTo(ACTIVE_METABOLIC_RATE)));
@@ -112,7 +126,7 @@ public class TestPerson {
 
     @Test
     public void returnsActiveMetabolicRateWhenOutside() {
-        when(this.markovChain.move(INITIAL_ACTIVITY, INITIAL_DATETIME, this.randomNumberGenerator))
+        when(this.markovChain.move(eq(INITIAL_ACTIVITY), at(INITIAL_DATETIME), eq(this.randomNumberGenerator)))
                 .thenReturn(Activity.NOT_AT_HOME);
         person.step();
         assertThat(this.person.getCurrentMetabolicRate(), is(equalTo(ACTIVE_METABOLIC_RATE)));
@@ -120,10 +134,14 @@ public class TestPerson {
 
     @Test
     public void returnsPassiveMetabolicRateWhenAsleep() {
-        when(this.markovChain.move(INITIAL_ACTIVITY, INITIAL_DATETIME, this.randomNumberGenerator))
+        when(this.markovChain.move(eq(INITIAL_ACTIVITY), at(INITIAL_DATETIME), eq(this.randomNumberGenerator)))
                 .thenReturn(Activity.SLEEP_AT_HOME);
         person.step();
         assertThat(this.person.getCurrentMetabolicRate(), is(equalTo(PASSIVE_METABOLIC_RATE)));
     }
 
+    private static StepContext at(ZonedDateTime time) {
+        return argThat(context -> context != null && context.getTime().equals(time));
+    }
+
 }
@@ -0,0 +1,51 @@
+package uk.ac.cam.eeci.energyagents.test;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.cam.eeci.energyagents.RunningStatistics;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class TestRunningStatistics {
+
+    private final static double[] VALUES = {1.0, 2.0, 3.0, 4.0, 10.0};
+
+    private RunningStatistics statistics;
+
+    @Before
+    public void setUp() {
+        this.statistics = new RunningStatistics();
+        this.statistics.accept(VALUES, 0, VALUES.length);
+    }
+
+    @Test
+    public void countsValues() {
+        assertThat(this.statistics.getCount(), is(equalTo(5L)));
+    }
+
+    @Test
+    public void determinesMean() {
+        assertThat(this.statistics.getMean(), is(closeTo(4.0, 0.0001)));
+    }
+
+    @Test
+    public void determinesSampleStandardDeviation() {
+        assertThat(this.statistics.getStandardDeviation(), is(closeTo(Math.sqrt(12.5), 0.0001)));
+    }
+
+    @Test
+    public void determinesMinAndMax() {
+        assertThat(this.statistics.getMin(), is(equalTo(1.0)));
+        assertThat(this.statistics.getMax(), is(equalTo(10.0)));
+    }
+
+    @Test
+    public void forgetsValuesOnReset() {
+        this.statistics.reset();
+        this.statistics.accept(7.0);
+
+        assertThat(this.statistics.getCount(), is(equalTo(1L)));
+        assertThat(this.statistics.getMean(), is(equalTo(7.0)));
+    }
+}
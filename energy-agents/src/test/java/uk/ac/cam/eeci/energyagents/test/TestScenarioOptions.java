@@ -0,0 +1,44 @@
+package uk.ac.cam.eeci.energyagents.test;
+
+import org.junit.Test;
+import uk.ac.cam.eeci.energyagents.CitySimulation;
+import uk.ac.cam.eeci.energyagents.DataLogger;
+import uk.ac.cam.eeci.energyagents.DwellingBlock;
+import uk.ac.cam.eeci.energyagents.Person;
+import uk.ac.cam.eeci.energyagents.ScenarioOptions;
+import uk.ac.cam.eeci.framework.WorkerPool;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class TestScenarioOptions {
+
+    @Test
+    public void defaultsToActorEngineLoggingInMemory() {
+        ScenarioOptions options = new ScenarioOptions();
+        assertThat(options.getEngine(), is(equalTo(CitySimulation.Engine.ACTOR)));
+        assertThat(options.getLoggingMode(), is(equalTo(DataLogger.Mode.IN_MEMORY)));
+        assertThat(options.getSink(), is(equalTo(DataLogger.Sink.SQLITE)));
+        assertThat(options.getCompiledScenarioDirectory(), is(nullValue()));
+        assertThat(options.getRandomNumberGenerator(), is(equalTo(Person.RandomNumberGenerator.JAVA_UTIL_RANDOM)));
+        assertThat(options.getIntegrator(), is(equalTo(DwellingBlock.Integrator.CRANK_NICOLSON)));
+        assertThat(options.getBackend(), is(equalTo(WorkerPool.Backend.SINGLE_THREAD)));
+    }
+
+    @Test
+    public void copiesDifferInASingleOption() {
+        ScenarioOptions options = new ScenarioOptions().withSink(DataLogger.Sink.COLUMNAR);
+        ScenarioOptions copy = options.withIntegrator(DwellingBlock.Integrator.EXPONENTIAL);
+        assertThat(options.getIntegrator(), is(equalTo(DwellingBlock.Integrator.CRANK_NICOLSON)));
+        assertThat(copy.getIntegrator(), is(equalTo(DwellingBlock.Integrator.EXPONENTIAL)));
+        assertThat(copy.getSink(), is(equalTo(DataLogger.Sink.COLUMNAR)));
+    }
+
+    @Test
+    public void enginesOtherThanActorRunOnDirectBackend() {
+        ScenarioOptions options = new ScenarioOptions().withBackend(WorkerPool.Backend.FORK_JOIN);
+        assertThat(options.getBackend(), is(equalTo(WorkerPool.Backend.FORK_JOIN)));
+        assertThat(options.withEngine(CitySimulation.Engine.PIPELINED).getBackend(),
+                is(equalTo(WorkerPool.Backend.DIRECT)));
+    }
+}
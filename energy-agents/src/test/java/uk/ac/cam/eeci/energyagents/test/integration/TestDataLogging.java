@@ -11,6 +11,10 @@ import uk.ac.cam.eeci.energyagents.Person.Activity;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.*;
 import java.time.*;
 import java.util.*;
@@ -21,6 +25,7 @@ import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static uk.ac.cam.eeci.energyagents.test.utils.Utils.resetScienceOS;
@@ -59,6 +64,15 @@ public class TestDataLogging {
                 .collect(Collectors.toList());
         this.initDwellings();
         this.initPeople();
+        this.tempFile = File.createTempFile("energy-agents", ".db");
+        this.conductor = this.createConductor(DataLogger.Mode.IN_MEMORY, this.tempFile.getCanonicalPath());
+    }
+
+    private Conductor createConductor(DataLogger.Mode mode, String outputPath) {
+        return this.createConductor(mode, DataLogger.Sink.SQLITE, outputPath);
+    }
+
+    private Conductor createConductor(DataLogger.Mode mode, DataLogger.Sink sink, String outputPath) {
         List<DwellingReference> dwellingReferences = Stream.of(this.dwelling1, this.dwelling2)
                 .map(DwellingReference::new)
                 .collect(Collectors.toList());
@@ -88,16 +102,17 @@ public class TestDataLogging {
                 indexedPeople,
                 (PersonReference::getCurrentActivity)
         );
-        this.tempFile = File.createTempFile("energy-agents", ".db");
         DataLoggerReference dataLoggerReference = new DataLoggerReference(new DataLogger(
                 Stream.of(this.temperatureDataPoint, this.activityDataPoint, this.thermalPowerDataPoint)
                         .map(DataPointReference::new)
                         .collect(Collectors.toList()),
                 null,
-                this.tempFile.getCanonicalPath()
+                outputPath,
+                mode,
+                sink
         ));
 
-        this.conductor = new Conductor(new CitySimulation(dwellingReferences,
+        return new Conductor(new CitySimulation(dwellingReferences,
                 new HashSet<>(peopleReferences),
                 new EnvironmentReference(this.environment),
                 dataLoggerReference,
@@ -113,8 +128,8 @@ public class TestDataLogging {
     }
 
     private void initDwellings() {
-        when(this.dwelling1.step()).thenReturn(CompletableFuture.completedFuture(null));
-        when(this.dwelling2.step()).thenReturn(CompletableFuture.completedFuture(null));
+        when(this.dwelling1.step(any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(this.dwelling2.step(any())).thenReturn(CompletableFuture.completedFuture(null));
         when(this.dwelling1.getCurrentAirTemperature()).thenReturn(20.0);
         when(this.dwelling2.getCurrentAirTemperature()).thenReturn(30.0);
         when(this.dwelling1.getCurrentThermalPower()).thenReturn(100.1);
@@ -248,6 +263,119 @@ public class TestDataLogging {
         assertThat(values.get(2).getIndex(), is(equalTo(this.timeIndexInUTC)));
     }
 
+    @Test
+    public void streamingKeepsNoValuesInMemory() throws IOException {
+        this.createConductor(DataLogger.Mode.STREAMING, this.tempFile.getCanonicalPath()).run();
+        Map<Integer, TimeSeries<Double>> temperatures = this.temperatureDataPoint.getRecord();
+        assertThat(temperatures.get(0).getValues(), is(empty()));
+        assertThat(temperatures.get(1).getValues(), is(empty()));
+    }
+
+    @Test
+    public void streamingWritesIdenticalDatabase() throws IOException, SQLException, ClassNotFoundException {
+        this.conductor.run();
+        resetScienceOS();
+        File streamedFile = File.createTempFile("energy-agents-streamed", ".db");
+        streamedFile.deleteOnExit();
+        this.createConductor(DataLogger.Mode.STREAMING, streamedFile.getCanonicalPath()).run();
+
+        for (String table : Arrays.asList("temperature", "thermalPower", "activity")) {
+            assertThat(readTable(streamedFile.getCanonicalPath(), table),
+                    is(equalTo(readTable(this.tempFile.getCanonicalPath(), table))));
+        }
+        assertThat(readTable(streamedFile.getCanonicalPath(), DataLogger.METADATA_TABLE_NAME).size(), is(equalTo(4)));
+    }
+
+    @Test
+    public void indexesResultTables() throws IOException, SQLException, ClassNotFoundException {
+        this.conductor.run();
+        Class.forName("org.sqlite.JDBC");
+        List<String> indexedTables = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection(String.format("jdbc:sqlite:%s", this.tempFile.getCanonicalPath()));
+             Statement stat = conn.createStatement();
+             ResultSet rs = stat.executeQuery("SELECT tbl_name FROM sqlite_master WHERE type='index';")) {
+            while (rs.next()) {
+                indexedTables.add(rs.getString(1));
+            }
+        }
+        assertThat(indexedTables, containsInAnyOrder("temperature", "thermalPower", "activity"));
+    }
+
+    @Test
+    public void writesTemperatureToColumnarFile() throws IOException {
+        String outputPath = this.tempFile.getCanonicalPath();
+        this.createConductor(DataLogger.Mode.IN_MEMORY, DataLogger.Sink.COLUMNAR, outputPath).run();
+        File columnarFile = new File(DataLogger.columnarFilename(outputPath, "temperature"));
+        columnarFile.deleteOnExit();
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(columnarFile.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[8];
+        buffer.get(magic);
+        assertThat(new String(magic, StandardCharsets.US_ASCII), is(equalTo("EACOLUMN")));
+        assertThat(buffer.getInt(), is(equalTo(1))); // version
+        assertThat(buffer.getInt(), is(equalTo(1))); // float64
+        assertThat(buffer.getLong(), is(equalTo(this.timeIndex.get(0).toInstant().toEpochMilli())));
+        assertThat(buffer.getLong(), is(equalTo(TIME_STEP_SIZE.toMillis())));
+        assertThat(buffer.getInt(), is(equalTo(NUMBER_STEPS)));
+        assertThat(buffer.getInt(), is(equalTo(2)));
+        assertThat(buffer.getInt(), is(equalTo(0)));
+        assertThat(buffer.getInt(), is(equalTo(1)));
+        buffer.position(48); // header padded to multiple of 8 bytes
+        for (double expected : new double[]{20.0, 30.0}) {
+            for (int i = 0; i < NUMBER_STEPS; i++) {
+                assertThat(buffer.getDouble(), is(equalTo(expected)));
+            }
+        }
+        assertThat(buffer.hasRemaining(), is(false));
+    }
+
+    @Test
+    public void writesActivityToColumnarFileWithDictionary() throws IOException {
+        String outputPath = this.tempFile.getCanonicalPath();
+        this.createConductor(DataLogger.Mode.IN_MEMORY, DataLogger.Sink.COLUMNAR, outputPath).run();
+        File columnarFile = new File(DataLogger.columnarFilename(outputPath, "activity"));
+        columnarFile.deleteOnExit();
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(columnarFile.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(12);
+        assertThat(buffer.getInt(), is(equalTo(2))); // dictionary codes
+        buffer.position(36);
+        int numberColumns = buffer.getInt();
+        buffer.position(buffer.position() + numberColumns * Integer.BYTES);
+        List<String> dictionary = new ArrayList<>();
+        int dictionarySize = buffer.getInt();
+        for (int i = 0; i < dictionarySize; i++) {
+            byte[] entry = new byte[buffer.getInt()];
+            buffer.get(entry);
+            dictionary.add(new String(entry, StandardCharsets.UTF_8));
+        }
+        buffer.position((buffer.position() + 7) / 8 * 8);
+        for (String expected : new String[]{"HOME", "NOT_AT_HOME", "SLEEP_AT_HOME"}) {
+            for (int i = 0; i < NUMBER_STEPS; i++) {
+                assertThat(dictionary.get(buffer.getInt()), is(equalTo(expected)));
+            }
+        }
+    }
+
+    private static List<List<Object>> readTable(String filename, String table)
+            throws ClassNotFoundException, SQLException {
+        Class.forName("org.sqlite.JDBC");
+        List<List<Object>> rows = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection(String.format("jdbc:sqlite:%s", filename));
+             Statement stat = conn.createStatement();
+             ResultSet rs = stat.executeQuery(String.format("select * from %s order by rowid;", table))) {
+            int numberColumns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                List<Object> row = new ArrayList<>();
+                for (int i = 1; i <= numberColumns; i++) {
+                    row.add(rs.getObject(i));
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
     @Test
     public void writesMetadataToDatabase() throws IOException, ClassNotFoundException, SQLException {
         this.conductor.run();
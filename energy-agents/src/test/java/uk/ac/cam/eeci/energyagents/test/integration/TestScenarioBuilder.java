@@ -1,6 +1,8 @@
 package uk.ac.cam.eeci.energyagents.test.integration;
 
 import uk.ac.cam.eeci.framework.Conductor;
+import uk.ac.cam.eeci.framework.Reference;
+import uk.ac.cam.eeci.framework.WorkerPool;
 import org.hamcrest.Matchers;
 import org.javatuples.Pair;
 import org.javatuples.Triplet;
@@ -9,7 +11,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import uk.ac.cam.eeci.energyagents.CitySimulation;
+import uk.ac.cam.eeci.energyagents.Ensemble;
+import uk.ac.cam.eeci.energyagents.Person;
 import uk.ac.cam.eeci.energyagents.ScenarioBuilder;
+import uk.ac.cam.eeci.energyagents.ScenarioOptions;
 import uk.ac.cam.eeci.energyagents.TimeSeries;
 import uk.ac.cam.eeci.energyagents.test.utils.Utils;
 
@@ -45,6 +50,7 @@ public class TestScenarioBuilder {
     private final static ZonedDateTime INITIAL_DATE_TIME = ZonedDateTime.of(2015, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
     private final static Duration TIME_STEPS_SIZE = Duration.ofHours(12);
     private final static ZonedDateTime[] TIME_INDEX;
+    private final static double MAX_HEATING_POWER = 10000; // W; dwellings of the input file are not heated
 
     static {
         DWELLING_INDICES = new ArrayList<>();
@@ -98,6 +104,29 @@ public class TestScenarioBuilder {
         conn.close();
     }
 
+    private void heatDwellings() throws IOException, ClassNotFoundException, SQLException {
+        Class.forName("org.sqlite.JDBC");
+        Connection conn = DriverManager.getConnection(String.format("jdbc:sqlite:%s", this.tempInputFile.getCanonicalPath()));
+        Statement stat = conn.createStatement();
+
+        stat.executeUpdate(String.format("update %s set %s = %s;", ScenarioBuilder.SQL_TABLES_DWELLINGS,
+                ScenarioBuilder.SQL_COLUMNS_DW_MAX_HEATING_POWER, MAX_HEATING_POWER));
+        conn.close();
+    }
+
+    private void addWarmerSweepVariant() throws IOException, ClassNotFoundException, SQLException {
+        this.heatDwellings();
+        Class.forName("org.sqlite.JDBC");
+        Connection conn = DriverManager.getConnection(String.format("jdbc:sqlite:%s", this.tempInputFile.getCanonicalPath()));
+        Statement stat = conn.createStatement();
+
+        stat.executeUpdate(String.format("insert into %s select * from %s;", ScenarioBuilder.SQL_TABLES_PARAMETERS,
+                ScenarioBuilder.SQL_TABLES_PARAMETERS));
+        stat.executeUpdate(String.format("update %s set %s = %s + 4 where rowid = (select max(rowid) from %s);",
+                ScenarioBuilder.SQL_TABLES_PARAMETERS, ScenarioBuilder.SQL_COLUMNS_PAR_SET_POINT_WHILE_HOME,
+                ScenarioBuilder.SQL_COLUMNS_PAR_SET_POINT_WHILE_HOME, ScenarioBuilder.SQL_TABLES_PARAMETERS));
+        conn.close();
+    }
 
     @Test(expected = IOException.class)
     public void throwsIOExceptionWhenInputFileDoesNotExist() throws IOException {
@@ -189,7 +218,237 @@ public class TestScenarioBuilder {
     }
 
     @Test
-    public void temperatureAverageExistsWhenAggregatedResultsDemanded() throws IOException, SQLException, ClassNotFoundException {
+    public void bulkSynchronousEngineReproducesActorEngine() throws IOException, SQLException, ClassNotFoundException {
+        String outputPath = this.tempOutPutFile.getCanonicalPath();
+        this.citySimulation = ScenarioBuilder.readScenario(this.tempInputFile.getPath(), outputPath);
+        new Conductor(this.citySimulation).run();
+
+        Map<Integer, TimeSeries<String>> activityTimeSeries1 = readActivityRecordFromDB();
+        Map<Integer, TimeSeries<Double>> temperatureTimeSeries1 = readTemperatureRecordFromDB();
+
+        Reference.pool = new WorkerPool(4, WorkerPool.Placement.WEIGHTED, WorkerPool.Backend.DIRECT);
+        Reference.pool.setCurrentExecutor(Reference.pool.main);
+        this.citySimulation = ScenarioBuilder.readScenario(this.tempInputFile.getPath(), outputPath,
+                new ScenarioOptions().withEngine(CitySimulation.Engine.BULK_SYNCHRONOUS));
+        new Conductor(this.citySimulation).run();
+
+        Map<Integer, TimeSeries<String>> activityTimeSeries2 = readActivityRecordFromDB();
+        Map<Integer, TimeSeries<Double>> temperatureTimeSeries2 = readTemperatureRecordFromDB();
+
+        assertThat(activityTimeSeries2, is(equalTo(activityTimeSeries1)));
+        assertThat(temperatureTimeSeries2, is(equalTo(temperatureTimeSeries1)));
+    }
+
+    @Test
+    public void counterBasedRandomNumbersAreIndependentOfEngine() throws IOException, SQLException, ClassNotFoundException {
+        String outputPath = this.tempOutPutFile.getCanonicalPath();
+        this.citySimulation = ScenarioBuilder.readScenario(this.tempInputFile.getPath(), outputPath,
+                new ScenarioOptions().withRandomNumberGenerator(Person.RandomNumberGenerator.COUNTER_BASED));
+        new Conductor(this.citySimulation).run();
+
+        Map<Integer, TimeSeries<String>> activityTimeSeries1 = readActivityRecordFromDB();
+        Map<Integer, TimeSeries<Double>> temperatureTimeSeries1 = readTemperatureRecordFromDB();
+
+        Reference.pool = new WorkerPool(4, WorkerPool.Placement.WEIGHTED, WorkerPool.Backend.DIRECT);
+        Reference.pool.setCurrentExecutor(Reference.pool.main);
+        this.citySimulation = ScenarioBuilder.readScenario(this.tempInputFile.getPath(), outputPath,
+                new ScenarioOptions().withEngine(CitySimulation.Engine.PIPELINED)
+                        .withRandomNumberGenerator(Person.RandomNumberGenerator.COUNTER_BASED));
+        new Conductor(this.citySimulation).run();
+
+        assertThat(readActivityRecordFromDB(), is(equalTo(activityTimeSeries1)));
+        assertThat(readTemperatureRecordFromDB(), is(equalTo(temperatureTimeSeries1)));
+    }
+
+    @Test
+    public void horizonMajorEngineReproducesActorEngine() throws IOException, SQLException, ClassNotFoundException {
+        String outputPath = this.tempOutPutFile.getCanonicalPath();
+        this.citySimulation = ScenarioBuilder.readScenario(this.tempInputFile.getPath(), outputPath);
+        new Conductor(this.citySimulation).run();
+
+        Map<Integer, TimeSeries<String>> activityTimeSeries1 = readActivityRecordFromDB();
+        Map<Integer, TimeSeries<Double>> temperatureTimeSeries1 = readTemperatureRecordFromDB();
+
+        Reference.pool = new WorkerPool(4, WorkerPool.Placement.WEIGHTED, WorkerPool.Backend.DIRECT);
+        Reference.pool.setCurrentExecutor(Reference.pool.main);
+        this.citySimulation = ScenarioBuilder.readScenario(this.tempInputFile.getPath(), outputPath,
+                new ScenarioOptions().withEngine(CitySimulation.Engine.HORIZON_MAJOR));
+        new Conductor(this.citySimulation).run();
+
+        Map<Integer, TimeSeries<String>> activityTimeSeries2 = readActivityRecordFromDB();
+        Map<Integer, TimeSeries<Double>> temperatureTimeSeries2 = readTemperatureRecordFromDB();
+
+        assertThat(activityTimeSeries2, is(equalTo(activityTimeSeries1)));
+        assertThat(temperatureTimeSeries2, is(equalTo(temperatureTimeSeries1)));
+    }
+
+    @Test
+    public void pipelinedEngineReproducesActorEngine() throws IOException, SQLException, ClassNotFoundException {
+        String outputPath = this.tempOutPutFile.getCanonicalPath();
+        this.citySimulation = ScenarioBuilder.readScenario(this.tempInputFile.getPath(), outputPath);
+        new Conductor(this.citySimulation).run();
+
+        Map<Integer, TimeSeries<String>> activityTimeSeries1 = readActivityRecordFromDB();
+        Map<Integer, TimeSeries<Double>> temperatureTimeSeries1 = readTemperatureRecordFromDB();
+
+        Reference.pool = new WorkerPool(4, WorkerPool.Placement.WEIGHTED, WorkerPool.Backend.DIRECT);
+        Reference.pool.setCurrentExecutor(Reference.pool.main);
+        this.citySimulation = ScenarioBuilder.readScenario(this.tempInputFile.getPath(), outputPath,
+                new ScenarioOptions().withEngine(CitySimulation.Engine.PIPELINED));
+        new Conductor(this.citySimulation).run();
+
+        Map<Integer, TimeSeries<String>> activityTimeSeries2 = readActivityRecordFromDB();
+        Map<Integer, TimeSeries<Double>> temperatureTimeSeries2 = readTemperatureRecordFromDB();
+
+        assertThat(activityTimeSeries2, is(equalTo(activityTimeSeries1)));
+        assertThat(temperatureTimeSeries2, is(equalTo(temperatureTimeSeries1)));
+    }
+
+    @Test
+    public void horizonMajorEngineReproducesActorEngineWithHeating() throws IOException, SQLException, ClassNotFoundException {
+        this.heatDwellings();
+        assertEngineReproducesActorEngine(CitySimulation.Engine.HORIZON_MAJOR);
+    }
+
+    @Test
+    public void pipelinedEngineReproducesActorEngineWithHeating() throws IOException, SQLException, ClassNotFoundException {
+        this.heatDwellings();
+        assertEngineReproducesActorEngine(CitySimulation.Engine.PIPELINED);
+    }
+
+    private void assertEngineReproducesActorEngine(CitySimulation.Engine engine) throws IOException, SQLException, ClassNotFoundException {
+        String outputPath = this.tempOutPutFile.getCanonicalPath();
+        this.citySimulation = ScenarioBuilder.readScenario(this.tempInputFile.getPath(), outputPath);
+        new Conductor(this.citySimulation).run();
+
+        Map<Integer, TimeSeries<String>> activityTimeSeries1 = readActivityRecordFromDB();
+        Map<Integer, TimeSeries<Double>> temperatureTimeSeries1 = readTemperatureRecordFromDB();
+
+        Reference.pool = new WorkerPool(4, WorkerPool.Placement.WEIGHTED, WorkerPool.Backend.DIRECT);
+        Reference.pool.setCurrentExecutor(Reference.pool.main);
+        this.citySimulation = ScenarioBuilder.readScenario(this.tempInputFile.getPath(), outputPath,
+                new ScenarioOptions().withEngine(engine));
+        new Conductor(this.citySimulation).run();
+
+        assertThat(readActivityRecordFromDB(), is(equalTo(activityTimeSeries1)));
+        assertThat(readTemperatureRecordFromDB(), is(equalTo(temperatureTimeSeries1)));
+    }
+
+    @Test
+    public void eventDrivenEngineFollowsDistributionOfActorEngine() throws IOException, SQLException, ClassNotFoundException {
+        String outputPath = this.tempOutPutFile.getCanonicalPath();
+        this.citySimulation = ScenarioBuilder.readScenario(this.tempInputFile.getPath(), outputPath);
+        new Conductor(this.citySimulation).run();
+
+        Map<Integer, TimeSeries<String>> activityTimeSeries1 = readActivityRecordFromDB();
+
+        Reference.pool = new WorkerPool(4, WorkerPool.Placement.WEIGHTED, WorkerPool.Backend.DIRECT);
+        Reference.pool.setCurrentExecutor(Reference.pool.main);
+        this.citySimulation = ScenarioBuilder.readScenario(this.tempInputFile.getPath(), outputPath,
+                new ScenarioOptions().withEngine(CitySimulation.Engine.EVENT_DRIVEN));
+        new Conductor(this.citySimulation).run();
+
+        Map<Integer, TimeSeries<String>> activityTimeSeries2 = readActivityRecordFromDB();
+
+        assertThat(activityTimeSeries2.keySet(), is(equalTo(activityTimeSeries1.keySet())));
+        for (TimeSeries<String> timeSeries : activityTimeSeries2.values()) {
+            assertThat(timeSeries.getIndex(), Matchers.contains(TIME_INDEX));
+        }
+        Map<String, Double> shares1 = shareOfActivities(activityTimeSeries1);
+        Map<String, Double> shares2 = shareOfActivities(activityTimeSeries2);
+        assertThat(shares2.keySet(), is(equalTo(shares1.keySet())));
+        for (String activity : shares1.keySet()) {
+            assertThat(shares2.get(activity), is(closeTo(shares1.get(activity), 0.05)));
+        }
+    }
+
+    @Test
+    public void compiledScenarioReproducesDatabase() throws IOException, SQLException, ClassNotFoundException {
+        String outputPath = this.tempOutPutFile.getCanonicalPath();
+        Path compiledScenarioDirectory = Files.createTempDirectory("energy-agents-test-compiled-scenarios");
+        this.citySimulation = ScenarioBuilder.readScenario(this.tempInputFile.getPath(), outputPath);
+        new Conductor(this.citySimulation).run();
+
+        Map<Integer, TimeSeries<String>> activityTimeSeries1 = readActivityRecordFromDB();
+        Map<Integer, TimeSeries<Double>> temperatureTimeSeries1 = readTemperatureRecordFromDB();
+
+        // first run compiles the scenario, second run reads the compiled scenario
+        for (int run = 0; run < 2; run++) {
+            Utils.resetScienceOS();
+            this.citySimulation = ScenarioBuilder.readScenario(this.tempInputFile.getPath(), outputPath,
+                    new ScenarioOptions().withCompiledScenarioDirectory(compiledScenarioDirectory.toString()));
+            new Conductor(this.citySimulation).run();
+
+            assertThat(Files.list(compiledScenarioDirectory).count(), is(equalTo(1L)));
+            assertThat(readActivityRecordFromDB(), is(equalTo(activityTimeSeries1)));
+            assertThat(readTemperatureRecordFromDB(), is(equalTo(temperatureTimeSeries1)));
+        }
+    }
+
+    @Test
+    public void firstReplicaOfEnsembleReproducesSingleRun() throws IOException, SQLException, ClassNotFoundException {
+        String outputPath = this.tempOutPutFile.getCanonicalPath();
+        this.citySimulation = ScenarioBuilder.readScenario(this.tempInputFile.getPath(), outputPath);
+        new Conductor(this.citySimulation).run();
+
+        Map<Integer, TimeSeries<String>> activityTimeSeries1 = readActivityRecordFromDB();
+        Map<Integer, TimeSeries<Double>> temperatureTimeSeries1 = readTemperatureRecordFromDB();
+
+        Utils.resetScienceOS();
+        Ensemble ensemble = ScenarioBuilder.readEnsemble(this.tempInputFile.getPath(), outputPath, 3,
+                Ensemble.Output.REPLICAS, new ScenarioOptions());
+        new Conductor(ensemble).run();
+
+        Path firstReplica = FileSystems.getDefault().getPath(Ensemble.replicaFilename(outputPath, 0));
+        Path secondReplica = FileSystems.getDefault().getPath(Ensemble.replicaFilename(outputPath, 1));
+        Files.copy(secondReplica, this.tempOutPutFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Map<Integer, TimeSeries<String>> activityTimeSeries2 = readActivityRecordFromDB();
+        Files.copy(firstReplica, this.tempOutPutFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        assertThat(readActivityRecordFromDB(), is(equalTo(activityTimeSeries1)));
+        assertThat(readTemperatureRecordFromDB(), is(equalTo(temperatureTimeSeries1)));
+        assertThat(activityTimeSeries2, is(not(equalTo(activityTimeSeries1))));
+    }
+
+    @Test
+    public void ensembleStatisticsExistForEachDistrict() throws IOException, SQLException, ClassNotFoundException {
+        String outputPath = this.tempOutPutFile.getCanonicalPath();
+        Ensemble ensemble = ScenarioBuilder.readEnsemble(this.tempInputFile.getPath(), outputPath, 3,
+                Ensemble.Output.STATISTICS, new ScenarioOptions());
+        new Conductor(ensemble).run();
+
+        List<String> tableNames = getTableNames(outputPath);
+
+        assertThat(tableNames, hasItems(
+                ScenarioBuilder.AVERAGE_TEMPERATURE_DATA_POINT_NAME + ScenarioBuilder.ENSEMBLE_MEAN_SUFFIX,
+                ScenarioBuilder.AVERAGE_TEMPERATURE_DATA_POINT_NAME + ScenarioBuilder.ENSEMBLE_P05_SUFFIX,
+                ScenarioBuilder.AVERAGE_TEMPERATURE_DATA_POINT_NAME + ScenarioBuilder.ENSEMBLE_MEDIAN_SUFFIX,
+                ScenarioBuilder.AVERAGE_TEMPERATURE_DATA_POINT_NAME + ScenarioBuilder.ENSEMBLE_P95_SUFFIX
+        ));
+    }
+
+    @Test
+    public void variantsOfSweepShareOccupantsButNotTemperatures() throws IOException, SQLException, ClassNotFoundException {
+        this.addWarmerSweepVariant();
+        String outputPath = this.tempOutPutFile.getCanonicalPath();
+        Ensemble sweep = ScenarioBuilder.readSweep(this.tempInputFile.getPath(), outputPath, true,
+                new ScenarioOptions());
+        new Conductor(sweep).run();
+
+        assertThat(sweep.getNumberReplicas(), is(equalTo(2)));
+        Path firstVariant = FileSystems.getDefault().getPath(Ensemble.variantFilename(outputPath, 0));
+        Path secondVariant = FileSystems.getDefault().getPath(Ensemble.variantFilename(outputPath, 1));
+        Files.copy(firstVariant, this.tempOutPutFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Map<Integer, TimeSeries<String>> activityTimeSeries1 = readActivityRecordFromDB();
+        Map<Integer, TimeSeries<Double>> temperatureTimeSeries1 = readTemperatureRecordFromDB();
+        Files.copy(secondVariant, this.tempOutPutFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        assertThat(readActivityRecordFromDB(), is(equalTo(activityTimeSeries1)));
+        assertThat(readTemperatureRecordFromDB(), is(not(equalTo(temperatureTimeSeries1))));
+    }
+
+    @Test
+    public void temperatureAverageExistsWhenAggregatedResultsDemanded()throws IOException, SQLException, ClassNotFoundException {
         this.demandAggregatedResults();
         this.citySimulation = ScenarioBuilder.readScenario(this.tempInputFile.getPath(), this.tempOutPutFile.getCanonicalPath());
         new Conductor(this.citySimulation).run();
@@ -324,4 +583,18 @@ public class TestScenarioBuilder {
         return timeSeries;
     }
 
+    private static Map<String, Double> shareOfActivities(Map<Integer, TimeSeries<String>> activityTimeSeries) {
+        Map<String, Double> shares = new HashMap<>();
+        int numberValues = 0;
+        for (TimeSeries<String> timeSeries : activityTimeSeries.values()) {
+            for (String activity : timeSeries.getValues()) {
+                shares.merge(activity, 1.0, Double::sum);
+                numberValues++;
+            }
+        }
+        for (Map.Entry<String, Double> share : shares.entrySet()) {
+            share.setValue(share.getValue() / numberValues);
+        }
+        return shares;
+    }
 }
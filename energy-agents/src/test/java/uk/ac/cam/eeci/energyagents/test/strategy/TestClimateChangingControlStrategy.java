@@ -4,6 +4,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
+import uk.ac.cam.eeci.energyagents.StepContext;
+import uk.ac.cam.eeci.energyagents.SynchronousHeatingControlStrategy;
 import uk.ac.cam.eeci.energyagents.strategy.ClimateChangingControlStrategy;
 
 import static org.junit.Assert.*;
@@ -37,4 +39,13 @@ public class TestClimateChangingControlStrategy extends StrategyTestBase {
         assertThat(heatingSetPoint, is(closeTo(HEATING_SET_POINT, EPSILON)));
     }
 
+    @Test
+    public void returnsConstantHeatingSetPointsSynchronously() {
+        double[] heatingSetPoints = new double[2];
+        ((SynchronousHeatingControlStrategy) this.strategy).currentHeatingSetPoints(
+                new StepContext(0, this.timeStamp), new int[]{0, 1}, new int[]{0, 1}, 0, 2, heatingSetPoints);
+        assertThat(heatingSetPoints[0], is(closeTo(HEATING_SET_POINT, EPSILON)));
+        assertThat(heatingSetPoints[1], is(closeTo(HEATING_SET_POINT, EPSILON)));
+    }
+
 }
@@ -49,4 +49,10 @@ public class TestHeatingControlStrategyFactory {
     public void buildsPresenceTriggeredStrategy() {
         assertThat(this.factory.build(HeatingControlStrategyFactory.ControlStrategyType.PRESENCE_TRIGGERED), is(instanceOf(PresenceBasedStrategy.class)));
     }
+
+    @Test
+    public void sharesStrategiesOfSameType() {
+        assertThat(this.factory.build(HeatingControlStrategyFactory.ControlStrategyType.TIME_TRIGGERED),
+                is(sameInstance(this.factory.build(HeatingControlStrategyFactory.ControlStrategyType.TIME_TRIGGERED))));
+    }
 }
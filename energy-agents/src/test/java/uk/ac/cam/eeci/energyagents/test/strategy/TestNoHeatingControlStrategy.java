@@ -4,6 +4,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
+import uk.ac.cam.eeci.energyagents.StepContext;
+import uk.ac.cam.eeci.energyagents.SynchronousHeatingControlStrategy;
 import uk.ac.cam.eeci.energyagents.strategy.NoHeatingStrategy;
 
 import java.util.HashSet;
@@ -35,4 +37,11 @@ public class TestNoHeatingControlStrategy extends StrategyTestBase {
         assertThat(heatingSetPoint.isPresent(), is(equalTo(false)));
     }
 
+    @Test
+    public void returnsNaNSynchronously() {
+        double heatingSetPoint = ((SynchronousHeatingControlStrategy) this.strategy)
+                .currentHeatingSetPoint(new StepContext(0, this.timeStamp), 2, 0);
+        assertThat(Double.isNaN(heatingSetPoint), is(equalTo(true)));
+    }
+
 }
@@ -7,6 +7,8 @@ import org.junit.runners.Parameterized;
 import uk.ac.cam.eeci.energyagents.Person;
 import uk.ac.cam.eeci.energyagents.HeatingControlStrategy;
 import uk.ac.cam.eeci.energyagents.PersonReference;
+import uk.ac.cam.eeci.energyagents.StepContext;
+import uk.ac.cam.eeci.energyagents.SynchronousHeatingControlStrategy;
 import uk.ac.cam.eeci.energyagents.strategy.PresenceBasedStrategy;
 
 import java.time.ZoneId;
@@ -107,4 +109,32 @@ public class TestPresenceBasedStrategy {
                 is(equalTo(SET_POINT_WHILE_SLEEPING_AT_HOME)));
     }
 
+    @Test
+    public void noSetPointWhenNoOneAtHomeByOccupancy() throws ExecutionException, InterruptedException {
+        StepContext context = new StepContext(0, this.timeStamp);
+        assertThat(this.strategy.heatingSetPoint(context, 0, 0).get().isPresent(), is(equalTo(false)));
+    }
+
+    @Test
+    public void activeSetPointWhenOneOfTwoAsleepByOccupancy() throws ExecutionException, InterruptedException {
+        StepContext context = new StepContext(0, this.timeStamp);
+        assertThat(this.strategy.heatingSetPoint(context, 2, 1).get().get(), is(equalTo(SET_POINT_WHILE_ACTIVE_AT_HOME)));
+    }
+
+    @Test
+    public void sleepingSetPointWhenAllAsleepByOccupancy() throws ExecutionException, InterruptedException {
+        StepContext context = new StepContext(0, this.timeStamp);
+        assertThat(this.strategy.heatingSetPoint(context, 2, 2).get().get(), is(equalTo(SET_POINT_WHILE_SLEEPING_AT_HOME)));
+    }
+
+    @Test
+    public void synchronousSetPointsByOccupancy() {
+        StepContext context = new StepContext(0, this.timeStamp);
+        SynchronousHeatingControlStrategy strategy = (SynchronousHeatingControlStrategy) this.strategy;
+        double[] setPoints = new double[3];
+        strategy.currentHeatingSetPoints(context, new int[]{0, 2, 2}, new int[]{0, 1, 2}, 0, 3, setPoints);
+        assertThat(Double.isNaN(setPoints[0]), is(equalTo(true)));
+        assertThat(setPoints[1], is(equalTo(SET_POINT_WHILE_ACTIVE_AT_HOME)));
+        assertThat(setPoints[2], is(equalTo(SET_POINT_WHILE_SLEEPING_AT_HOME)));
+    }
 }
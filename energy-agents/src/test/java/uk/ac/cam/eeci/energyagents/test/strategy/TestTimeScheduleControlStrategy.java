@@ -8,6 +8,7 @@ import uk.ac.cam.eeci.energyagents.Person;
 import uk.ac.cam.eeci.energyagents.PersonReference;
 import uk.ac.cam.eeci.energyagents.test.utils.Utils;
 import uk.ac.cam.eeci.energyagents.HeatingControlStrategy;
+import uk.ac.cam.eeci.energyagents.StepContext;
 import uk.ac.cam.eeci.energyagents.strategy.TimeScheduleControlStrategy;
 
 import static org.mockito.Mockito.mock;
@@ -120,6 +121,24 @@ public class TestTimeScheduleControlStrategy {
         assertThat(this.strategy.heatingSetPoint(MONDAY_NOON, this.people).get(), is(equalTo(Optional.empty())));
     }
 
+    @Test
+    public void noSetPointAtStartOfTimeSlot() throws ExecutionException, InterruptedException {
+        assertThat(this.strategy.heatingSetPoint(MONDAY_PM.withHour(13), this.people).get(),
+                is(equalTo(Optional.empty())));
+    }
+
+    @Test
+    public void setPointShortlyAfterStartOfTimeSlot() throws ExecutionException, InterruptedException {
+        assertThat(this.strategy.heatingSetPoint(MONDAY_PM.withHour(13).withSecond(1), this.people).get(),
+                is(equalTo(Optional.of(WEEKDAY_PM_SET_POINT))));
+    }
+
+    @Test
+    public void setPointMondayAMOfStepContext() throws ExecutionException, InterruptedException {
+        assertThat(this.strategy.heatingSetPoint(new StepContext(0, MONDAY_AM), this.people).get(),
+                is(equalTo(Optional.of(WEEKDAY_AM_SET_POINT))));
+    }
+
     @Test
     public void setPointMondayPM() throws ExecutionException, InterruptedException {
         assertThat(this.strategy.heatingSetPoint(MONDAY_PM, this.people).get(),
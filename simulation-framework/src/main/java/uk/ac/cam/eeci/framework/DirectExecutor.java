@@ -0,0 +1,52 @@
+package uk.ac.cam.eeci.framework;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An executor running each task immediately on the thread submitting it.
+ * <br><br>
+ * Messages sent to referents served by this executor are plain method calls. It is up to the
+ * caller to make sure that no referent is accessed by two threads at the same time.
+ */
+class DirectExecutor extends AbstractExecutorService {
+
+    private volatile boolean shutdown = false;
+
+    @Override
+    public void execute(Runnable task) {
+        if (this.shutdown) {
+            throw new RejectedExecutionException("Executor has been shut down.");
+        }
+        task.run();
+    }
+
+    @Override
+    public void shutdown() {
+        this.shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        this.shutdown = true;
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return this.shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return this.shutdown;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return this.shutdown;
+    }
+}
@@ -0,0 +1,25 @@
+package uk.ac.cam.eeci.framework;
+
+/**
+ * A referent that tells the {@link WorkerPool} how it wants to be placed.
+ * <br><br>
+ * Referents not implementing this interface are placed with a weight of 1 and without any
+ * affinity to other referents.
+ */
+public interface IPlaceable {
+
+    /**
+     * @return the relative cost of serving this referent, used to balance the load between workers
+     */
+    default double placementWeight() {
+        return 1.0;
+    }
+
+    /**
+     * @return a reference whose worker shall serve this referent as well, or null if there is none;
+     *         messages between co-located referents never leave their worker
+     */
+    default Reference<?> placementAnchor() {
+        return null;
+    }
+}
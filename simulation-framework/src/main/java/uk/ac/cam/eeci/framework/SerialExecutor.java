@@ -0,0 +1,106 @@
+package uk.ac.cam.eeci.framework;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A light-weight mailbox executing its tasks one after the other on a shared carrier executor.
+ * <br><br>
+ * Tasks submitted to the same mailbox never run concurrently and run in submission order, just
+ * like on a single thread executor, but the mailbox does not own a thread. While a task is
+ * running, the mailbox is the current executor of the {@link WorkerPool}.
+ * <br><br>
+ * A task failing with any exception or error does not stop the mailbox from serving later
+ * tasks. Tasks submitted as futures, e.g. through {@link java.util.concurrent.CompletableFuture}
+ * or {@link #submit(Runnable)}, fail their future; tasks submitted through
+ * {@link #execute(Runnable)} fail on the carrier, which reports them like any other executor.
+ */
+class SerialExecutor extends AbstractExecutorService {
+
+    private final static int MAX_TASKS_PER_RUN = 64; // hand carrier over to other mailboxes from time to time
+
+    private final Executor carrier;
+    private final ThreadLocal<ExecutorService> currentExecutor;
+    private final Queue<Runnable> tasks;
+    private final AtomicInteger numberPendingTasks;
+    private volatile boolean shutdown;
+
+    /**
+     * @param carrier the executor on which tasks are run
+     * @param currentExecutor the thread local holding the current executor of the worker pool
+     */
+    SerialExecutor(Executor carrier, ThreadLocal<ExecutorService> currentExecutor) {
+        this.carrier = carrier;
+        this.currentExecutor = currentExecutor;
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.numberPendingTasks = new AtomicInteger(0);
+        this.shutdown = false;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (this.shutdown) {
+            throw new RejectedExecutionException("Mailbox has been shut down.");
+        }
+        this.tasks.add(task);
+        if (this.numberPendingTasks.getAndIncrement() == 0) {
+            this.carrier.execute(this::run);
+        }
+    }
+
+    private void run() {
+        ExecutorService previousExecutor = this.currentExecutor.get();
+        this.currentExecutor.set(this);
+        boolean moreTasks = true;
+        try {
+            for (int i = 0; i < MAX_TASKS_PER_RUN && moreTasks; i++) {
+                try {
+                    this.tasks.poll().run();
+                } finally {
+                    moreTasks = this.numberPendingTasks.decrementAndGet() > 0;
+                }
+            }
+        } finally {
+            this.currentExecutor.set(previousExecutor);
+            if (moreTasks) {
+                this.carrier.execute(this::run);
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        this.shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        this.shutdown = true;
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return this.shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return this.shutdown && this.numberPendingTasks.get() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!this.isTerminated()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,106 @@
+package uk.ac.cam.eeci.framework;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A map comparing its keys by identity, like {@link java.util.IdentityHashMap}, but holding
+ * them weakly, like {@link java.util.WeakHashMap}.
+ * <br><br>
+ * Entries of keys that have been garbage collected are removed by {@link #expungeStaleEntries()},
+ * which returns their values so that the owner of the map can release whatever it accounted for
+ * them. The map is not synchronised.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values; values must not reference their keys.
+ */
+class WeakIdentityMap<K, V> {
+
+    private final ReferenceQueue<K> staleKeys;
+    private final Map<Key<K>, V> entries;
+
+    WeakIdentityMap() {
+        this.staleKeys = new ReferenceQueue<>();
+        this.entries = new HashMap<>();
+    }
+
+    /**
+     * @param key any object
+     * @return the value of the key; null if there is none
+     */
+    V get(K key) {
+        return this.entries.get(new Key<>(key, null));
+    }
+
+    /**
+     * @param key any object
+     * @return whether the map contains a value of the key
+     */
+    boolean containsKey(K key) {
+        return this.entries.containsKey(new Key<>(key, null));
+    }
+
+    /**
+     * @param key any object
+     * @param value the value of the key
+     */
+    void put(K key, V value) {
+        this.entries.put(new Key<>(key, this.staleKeys), value);
+    }
+
+    /**
+     * @return the number of entries, including entries of garbage collected keys that have not
+     *         been expunged yet
+     */
+    int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Removes all entries of keys that have been garbage collected.
+     *
+     * @return the values of the removed entries
+     */
+    List<V> expungeStaleEntries() {
+        List<V> values = new ArrayList<>();
+        for (java.lang.ref.Reference<? extends K> key = this.staleKeys.poll(); key != null;
+             key = this.staleKeys.poll()) {
+            V value = this.entries.remove(key);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    private static class Key<K> extends WeakReference<K> {
+
+        private final int hash;
+
+        private Key(K referent, ReferenceQueue<K> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true; // stale keys equal only themselves
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Object referent = this.get();
+            return referent != null && referent == ((Key<?>) other).get();
+        }
+    }
+}
@@ -1,31 +1,156 @@
 package uk.ac.cam.eeci.framework;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by daniel on 08/02/17.
  */
 public class WorkerPool {
+
+    /**
+     * The way referents are assigned to workers.
+     */
+    public enum Placement {
+        /** By hash code of the referent. Cheap, but may lead to skewed queues. */
+        HASH,
+        /** One worker after the other, ignoring weights. */
+        ROUND_ROBIN,
+        /** To the worker with the least summed weight of referents so far. */
+        WEIGHTED
+    }
+
+    /**
+     * The way referents are executed.
+     */
+    public enum Backend {
+        /** One thread per worker; each referent is served by exactly one of these threads. */
+        SINGLE_THREAD,
+        /**
+         * A work-stealing fork join pool with one thread per worker; each referent has its own
+         * serial mailbox on that pool.
+         */
+        FORK_JOIN,
+        /** Each referent has its own serial mailbox served by virtual threads. Requires Java 21. */
+        VIRTUAL_THREAD,
+        /**
+         * Referents are served directly on the thread sending them a message. The pool itself
+         * adds no concurrency; engines stepping referents in bulk use the workers' threads on
+         * their own.
+         */
+        DIRECT
+    }
+
     public ExecutorService[] poolpool;
     public ExecutorService main;
-    private ThreadLocal<ExecutorService> currentExec = new ThreadLocal<>();
+    private final ThreadLocal<ExecutorService> currentExec;
     // each object has a unique thread, but each thread serves many objects.
+    private final Placement placement;
+    private final Backend backend;
+    private final int numberWorkers;
+    private final ExecutorService carrier;
+    private final ExecutorService direct;
+    // referents and mailboxes are held weakly, so that the pool does not keep agents of earlier
+    // simulations alive
+    private final WeakIdentityMap<Object, Placed> placedReferents;
+    private final WeakIdentityMap<ExecutorService, Integer> slotOfExecutor;
+    private final double[] load;
+    private final int[] numberReferents;
+    private int nextSlot;
+    private int numberMailboxReferents;
+
+    /**
+     * The executor a referent was placed on, together with what it added to the load of that
+     * executor's worker, so that the load can be released once the referent is collected.
+     */
+    private static final class Placed {
+        private final ExecutorService executor;
+        private final int slot;
+        private final double weight;
 
+        private Placed(ExecutorService executor, int slot, double weight) {
+            this.executor = executor;
+            this.slot = slot;
+            this.weight = weight;
+        }
+    }
 
     public WorkerPool(int N) {
+        this(N, Placement.WEIGHTED);
+    }
+
+    public WorkerPool(int N, Placement placement) {
+        this(N, placement, Backend.SINGLE_THREAD);
+    }
+
+    public WorkerPool(int N, Placement placement, Backend backend) {
         int i;
-        poolpool = new ExecutorService[N];
+        this.placement = placement;
+        this.backend = backend;
+        this.numberWorkers = N;
+        this.placedReferents = new WeakIdentityMap<>();
+        this.slotOfExecutor = new WeakIdentityMap<>();
+        if (backend == Backend.DIRECT) {
+            this.direct = new DirectExecutor();
+            this.currentExec = ThreadLocal.withInitial(() -> this.direct);
+            this.slotOfExecutor.put(this.direct, 0);
+        } else {
+            this.direct = null;
+            this.currentExec = new ThreadLocal<>();
+        }
+        switch (backend) {
+            case SINGLE_THREAD:
+                this.carrier = null;
+                poolpool = new ExecutorService[N];
+                for(i=0; i<N; ++i) {
+                    poolpool[i] = Executors.newSingleThreadExecutor();
+                    ExecutorService p = poolpool[i];
+                    p.execute(() -> {
+                        currentExec.set(p);
+                    });
+                    this.slotOfExecutor.put(p, i);
+                }
+                break;
+            case FORK_JOIN:
+                this.carrier = new ForkJoinPool(N, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+                poolpool = new ExecutorService[0];
+                break;
+            case VIRTUAL_THREAD:
+                this.carrier = newVirtualThreadPerTaskExecutor();
+                poolpool = new ExecutorService[0];
+                break;
+            case DIRECT:
+                this.carrier = null;
+                poolpool = new ExecutorService[0];
+                break;
+            default:
+                String msg = String.format("Unknown backend %s.", backend);
+                throw new IllegalStateException(msg);
+        }
         main = Executors.newSingleThreadExecutor();
         main.execute(() -> {
             currentExec.set(main);
         });
-        for(i=0; i<N; ++i) {
-            poolpool[i] = Executors.newSingleThreadExecutor();
-            ExecutorService p = poolpool[i];
-            p.execute(() -> {
-                currentExec.set(p);
-            });
+        this.load = new double[poolpool.length];
+        this.numberReferents = new int[poolpool.length];
+        this.nextSlot = 0;
+        this.numberMailboxReferents = 0;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            String msg = String.format("Virtual threads are not available in Java %s.",
+                    System.getProperty("java.version"));
+            throw new UnsupportedOperationException(msg, e);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Could not create virtual thread executor.", e);
         }
     }
 
@@ -35,6 +160,12 @@ public class WorkerPool {
         for(i=0; i<poolpool.length; ++i) {
             poolpool[i].shutdown();
         }
+        if (this.direct != null) {
+            this.direct.shutdown();
+        }
+        if (this.carrier != null) {
+            this.carrier.shutdown();
+        }
     }
 
     public ExecutorService currentExecutor() {
@@ -44,9 +175,149 @@ public class WorkerPool {
         currentExec.set(t);
     }
 
-    public ExecutorService executorFor(Object obj) {
-        int poolNumber = obj.hashCode()%poolpool.length;
-        return(poolpool[poolNumber]);
+    /**
+     * @return the backend executing the referents
+     */
+    public Backend getBackend() {
+        return this.backend;
+    }
+
+    /**
+     * @return the number of threads serving referents; for the {@link Backend#DIRECT} backend
+     *         the number of threads a bulk stepping engine should use
+     */
+    public int getNumberWorkers() {
+        return this.numberWorkers;
+    }
+
+    /**
+     * Chooses the executor serving the given referent.
+     * <br><br>
+     * The same referent is always served by the same executor, even if it is referenced multiple
+     * times. Referents declaring an anchor through {@link IPlaceable} are served by the executor of
+     * their anchor. The pool does not keep referents alive; once they are collected, the load they
+     * were placed with is released again.
+     *
+     * @param obj the referent
+     * @return the executor serving the referent
+     */
+    public synchronized ExecutorService executorFor(Object obj) {
+        this.expungeCollectedReferents();
+        Placed placed = this.placedReferents.get(obj);
+        if (placed != null) {
+            return placed.executor;
+        }
+        ExecutorService executor = null;
+        double weight = 1.0;
+        if (obj instanceof IPlaceable) {
+            IPlaceable placeable = (IPlaceable) obj;
+            weight = placeable.placementWeight();
+            executor = this.ownExecutorOf(placeable.placementAnchor());
+        }
+        if (executor == null) {
+            executor = this.newExecutorFor(obj);
+        }
+        int slot = this.slotOfExecutor.get(executor);
+        this.placedReferents.put(obj, new Placed(executor, slot, weight));
+        if (this.backend == Backend.SINGLE_THREAD) {
+            this.load[slot] += weight;
+            this.numberReferents[slot] += 1;
+        } else {
+            this.numberMailboxReferents += 1;
+        }
+        return executor;
+    }
+
+    private void expungeCollectedReferents() {
+        for (Placed placed : this.placedReferents.expungeStaleEntries()) {
+            if (this.backend == Backend.SINGLE_THREAD) {
+                this.load[placed.slot] -= placed.weight;
+                this.numberReferents[placed.slot] -= 1;
+            } else {
+                this.numberMailboxReferents -= 1;
+            }
+        }
+        this.slotOfExecutor.expungeStaleEntries();
+    }
+
+    private ExecutorService ownExecutorOf(Reference<?> anchor) {
+        if (anchor == null || !this.slotOfExecutor.containsKey(anchor.executor)) {
+            return null;
+        }
+        return anchor.executor;
+    }
+
+    private ExecutorService newExecutorFor(Object obj) {
+        if (this.backend == Backend.DIRECT) {
+            return this.direct;
+        }
+        if (this.backend == Backend.SINGLE_THREAD) {
+            return poolpool[this.chooseSlot(obj)];
+        }
+        ExecutorService mailbox = new SerialExecutor(this.carrier, this.currentExec);
+        this.slotOfExecutor.put(mailbox, this.slotOfExecutor.size());
+        return mailbox;
+    }
+
+    private int chooseSlot(Object obj) {
+        switch (this.placement) {
+            case HASH:
+                return Math.floorMod(obj.hashCode(), poolpool.length);
+            case ROUND_ROBIN:
+                int slot = this.nextSlot;
+                this.nextSlot = (this.nextSlot + 1) % poolpool.length;
+                return slot;
+            case WEIGHTED:
+                int leastLoaded = 0;
+                for (int i = 1; i < poolpool.length; i++) {
+                    if (this.load[i] < this.load[leastLoaded]) {
+                        leastLoaded = i;
+                    }
+                }
+                return leastLoaded;
+            default:
+                String msg = String.format("Unknown placement %s.", this.placement);
+                throw new IllegalStateException(msg);
+        }
+    }
+
+    /**
+     * @return the summed weight of all referents placed on each worker; empty for backends
+     *         with mailboxes, as those share their load dynamically
+     */
+    public synchronized double[] getLoad() {
+        this.expungeCollectedReferents();
+        return Arrays.copyOf(this.load, this.load.length);
+    }
+
+    /**
+     * @return the number of referents placed on each worker; empty for backends with mailboxes
+     */
+    public synchronized int[] getNumberReferents() {
+        this.expungeCollectedReferents();
+        return Arrays.copyOf(this.numberReferents, this.numberReferents.length);
+    }
+
+    /**
+     * @return a human readable summary of the load of all workers
+     */
+    public synchronized String loadReport() {
+        this.expungeCollectedReferents();
+        if (this.backend == Backend.DIRECT) {
+            return String.format("%s backend serving %d referents on the calling threads.",
+                    this.backend, this.numberMailboxReferents);
+        }
+        if (this.backend != Backend.SINGLE_THREAD) {
+            return String.format("%s backend serving %d referents through %d mailboxes on %d workers.",
+                    this.backend, this.numberMailboxReferents, this.slotOfExecutor.size(), this.numberWorkers);
+        }
+        double total = Arrays.stream(this.load).sum();
+        double max = Arrays.stream(this.load).max().orElse(0.0);
+        double mean = total / this.load.length;
+        double imbalance = mean > 0 ? max / mean : 1.0;
+        return String.format("%s placement of %d referents on %d workers: load %s, max/mean %.3f.",
+                this.placement, Arrays.stream(this.numberReferents).sum(), this.load.length,
+                Arrays.toString(this.load), imbalance);
     }
 
     public ExecutorService mainExecutor() {
@@ -0,0 +1,277 @@
+package uk.ac.cam.eeci.framework.test;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+import uk.ac.cam.eeci.framework.Conductor;
+import uk.ac.cam.eeci.framework.IPlaceable;
+import uk.ac.cam.eeci.framework.Reference;
+import uk.ac.cam.eeci.framework.WorkerPool;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestWorkerPool {
+
+    private final static int NUMBER_WORKERS = 4;
+
+    private WorkerPool pool;
+
+    private static class NegativeHash {
+        @Override
+        public int hashCode() {
+            return -7;
+        }
+    }
+
+    private static class Heavy implements IPlaceable {
+        private final double weight;
+
+        private Heavy(double weight) {
+            this.weight = weight;
+        }
+
+        @Override
+        public double placementWeight() {
+            return this.weight;
+        }
+    }
+
+    private static class Anchored implements IPlaceable {
+        private final Reference<?> anchor;
+
+        private Anchored(Reference<?> anchor) {
+            this.anchor = anchor;
+        }
+
+        @Override
+        public Reference<?> placementAnchor() {
+            return this.anchor;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    @Test
+    public void hashPlacementHandlesNegativeHashCodes() {
+        this.pool = new WorkerPool(NUMBER_WORKERS, WorkerPool.Placement.HASH);
+        ExecutorService executor = this.pool.executorFor(new NegativeHash());
+        assertSame(this.pool.poolpool[1], executor);
+    }
+
+    @Test
+    public void roundRobinPlacementSpreadsReferentsEvenly() {
+        this.pool = new WorkerPool(NUMBER_WORKERS, WorkerPool.Placement.ROUND_ROBIN);
+        for (int i = 0; i < 10 * NUMBER_WORKERS; i++) {
+            this.pool.executorFor(new Object());
+        }
+        assertArrayEquals(new int[]{10, 10, 10, 10}, this.pool.getNumberReferents());
+    }
+
+    @Test
+    public void weightedPlacementBalancesDeclaredWeights() {
+        this.pool = new WorkerPool(2, WorkerPool.Placement.WEIGHTED);
+        this.pool.executorFor(new Heavy(3.0));
+        this.pool.executorFor(new Heavy(1.0));
+        this.pool.executorFor(new Heavy(1.0));
+        this.pool.executorFor(new Heavy(1.0));
+        assertArrayEquals(new double[]{3.0, 3.0}, this.pool.getLoad(), 1e-9);
+    }
+
+    @Test
+    public void placesReferentAlwaysOnSameWorker() {
+        this.pool = new WorkerPool(NUMBER_WORKERS, WorkerPool.Placement.ROUND_ROBIN);
+        Object referent = new Object();
+        ExecutorService first = this.pool.executorFor(referent);
+        this.pool.executorFor(new Object());
+        assertSame(first, this.pool.executorFor(referent));
+    }
+
+    @Test
+    public void placesReferentWithItsAnchor() {
+        this.pool = new WorkerPool(NUMBER_WORKERS, WorkerPool.Placement.ROUND_ROBIN);
+        WorkerPool previous = Reference.pool;
+        Reference.pool = this.pool;
+        try {
+            Reference<Object> anchor = new Reference<>(new Object());
+            for (int i = 0; i < 2 * NUMBER_WORKERS; i++) {
+                assertSame(anchor.executor, new Reference<>(new Anchored(anchor)).executor);
+            }
+        } finally {
+            Reference.pool = previous;
+        }
+    }
+
+    @Test
+    public void reportsLoadOfAllWorkers() {
+        this.pool = new WorkerPool(NUMBER_WORKERS, WorkerPool.Placement.WEIGHTED);
+        for (int i = 0; i < 6; i++) {
+            this.pool.executorFor(new Object());
+        }
+        assertArrayEquals(new double[]{2.0, 2.0, 1.0, 1.0}, this.pool.getLoad(), 1e-9);
+        assertTrue(this.pool.loadReport().contains("6 referents on 4 workers"));
+    }
+
+    @Test
+    public void forkJoinBackendKeepsOrderPerReferent() throws ExecutionException, InterruptedException {
+        this.pool = new WorkerPool(NUMBER_WORKERS, WorkerPool.Placement.WEIGHTED, WorkerPool.Backend.FORK_JOIN);
+        this.assertSerialExecutionPerReferent();
+    }
+
+    @Test
+    public void virtualThreadBackendKeepsOrderPerReferent() throws ExecutionException, InterruptedException {
+        try {
+            this.pool = new WorkerPool(NUMBER_WORKERS, WorkerPool.Placement.WEIGHTED,
+                    WorkerPool.Backend.VIRTUAL_THREAD);
+        } catch (UnsupportedOperationException e) {
+            this.pool = new WorkerPool(1);
+            Assume.assumeNoException(e);
+        }
+        this.assertSerialExecutionPerReferent();
+    }
+
+    @Test
+    public void mailboxIsCurrentExecutorWhileRunning() throws ExecutionException, InterruptedException {
+        this.pool = new WorkerPool(NUMBER_WORKERS, WorkerPool.Placement.WEIGHTED, WorkerPool.Backend.FORK_JOIN);
+        ExecutorService mailbox = this.pool.executorFor(new Object());
+        ExecutorService current = CompletableFuture.supplyAsync(this.pool::currentExecutor, mailbox).get();
+        assertSame(mailbox, current);
+    }
+
+    @Test
+    public void mailboxKeepsServingAfterFailedTask()
+            throws ExecutionException, InterruptedException, TimeoutException {
+        this.pool = new WorkerPool(NUMBER_WORKERS, WorkerPool.Placement.WEIGHTED, WorkerPool.Backend.FORK_JOIN);
+        ExecutorService mailbox = this.pool.executorFor(new Object());
+        CompletableFuture<Void> failed = CompletableFuture.runAsync(() -> {
+            throw new StackOverflowError();
+        }, mailbox);
+        mailbox.execute(() -> {
+            throw new IllegalStateException("failing task of test");
+        });
+        assertEquals(42, (int) CompletableFuture.supplyAsync(() -> 42, mailbox).get(10, TimeUnit.SECONDS));
+        try {
+            failed.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof StackOverflowError);
+        }
+    }
+
+    @Test
+    public void forkJoinBackendPlacesReferentWithItsAnchor() {
+        this.pool = new WorkerPool(NUMBER_WORKERS, WorkerPool.Placement.WEIGHTED, WorkerPool.Backend.FORK_JOIN);
+        WorkerPool previous = Reference.pool;
+        Reference.pool = this.pool;
+        try {
+            Reference<Object> anchor = new Reference<>(new Object());
+            assertSame(anchor.executor, new Reference<>(new Anchored(anchor)).executor);
+            assertNotSame(anchor.executor, new Reference<>(new Object()).executor);
+        } finally {
+            Reference.pool = previous;
+        }
+    }
+
+    @Test
+    public void runsGameOfLifeOnForkJoinBackend() {
+        WorkerPool previous = Reference.pool;
+        this.pool = new WorkerPool(NUMBER_WORKERS, WorkerPool.Placement.WEIGHTED, WorkerPool.Backend.FORK_JOIN);
+        Reference.pool = this.pool;
+        try {
+            Reference.pool.setCurrentExecutor(Reference.pool.main);
+            new Conductor(new Simulation()).run();
+        } finally {
+            Reference.pool = previous;
+            Reference.pool.setCurrentExecutor(Reference.pool.main); // Conductor's static block ran on this pool
+        }
+    }
+
+    @Test
+    public void directBackendRunsTasksOnCallingThread() throws ExecutionException, InterruptedException {
+        this.pool = new WorkerPool(NUMBER_WORKERS, WorkerPool.Placement.WEIGHTED, WorkerPool.Backend.DIRECT);
+        ExecutorService executor = this.pool.executorFor(new Object());
+        Thread caller = Thread.currentThread();
+        CompletableFuture<Thread> thread = CompletableFuture.supplyAsync(Thread::currentThread, executor);
+        assertTrue(thread.isDone());
+        assertSame(caller, thread.get());
+    }
+
+    @Test
+    public void directBackendIsCurrentExecutorOfAnyThread() throws ExecutionException, InterruptedException {
+        this.pool = new WorkerPool(NUMBER_WORKERS, WorkerPool.Placement.WEIGHTED, WorkerPool.Backend.DIRECT);
+        ExecutorService executor = this.pool.executorFor(new Object());
+        assertSame(executor, this.pool.currentExecutor());
+        assertSame(executor, CompletableFuture.supplyAsync(this.pool::currentExecutor).get());
+    }
+
+    @Test
+    public void doesNotKeepPlacedReferentsAlive() throws InterruptedException {
+        this.pool = new WorkerPool(NUMBER_WORKERS, WorkerPool.Placement.WEIGHTED);
+        this.assertReferentsAreCollectable();
+        assertArrayEquals(new double[NUMBER_WORKERS], this.pool.getLoad(), 1e-9);
+        assertArrayEquals(new int[NUMBER_WORKERS], this.pool.getNumberReferents());
+    }
+
+    @Test
+    public void forkJoinBackendDoesNotKeepPlacedReferentsAlive() throws InterruptedException {
+        this.pool = new WorkerPool(NUMBER_WORKERS, WorkerPool.Placement.WEIGHTED, WorkerPool.Backend.FORK_JOIN);
+        this.assertReferentsAreCollectable();
+        assertTrue(this.pool.loadReport().contains("serving 0 referents"));
+    }
+
+    private void assertReferentsAreCollectable() throws InterruptedException {
+        Object referent = new Object();
+        ExecutorService executor = this.pool.executorFor(referent);
+        assertSame(executor, this.pool.executorFor(referent));
+        WeakReference<Object> placed = new WeakReference<>(referent);
+        referent = null;
+        for (int i = 0; i < 100 && placed.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(placed.get());
+    }
+
+    private void assertSerialExecutionPerReferent() throws ExecutionException, InterruptedException {
+        final int numberReferents = 50;
+        final int numberMessages = 200;
+        List<CompletableFuture<Void>> messages = new ArrayList<>();
+        List<List<Integer>> received = new ArrayList<>();
+        AtomicInteger concurrentViolations = new AtomicInteger(0);
+        for (int r = 0; r < numberReferents; r++) {
+            ExecutorService executor = this.pool.executorFor(new Object());
+            List<Integer> log = new ArrayList<>();
+            AtomicInteger running = new AtomicInteger(0);
+            received.add(log);
+            for (int m = 0; m < numberMessages; m++) {
+                final int message = m;
+                messages.add(CompletableFuture.runAsync(() -> {
+                    if (running.incrementAndGet() != 1) {
+                        concurrentViolations.incrementAndGet();
+                    }
+                    log.add(message);
+                    running.decrementAndGet();
+                }, executor));
+            }
+        }
+        CompletableFuture.allOf(messages.toArray(new CompletableFuture[messages.size()])).get();
+        assertEquals(0, concurrentViolations.get());
+        for (List<Integer> log : received) {
+            for (int m = 0; m < numberMessages; m++) {
+                assertEquals(m, (int) log.get(m));
+            }
+        }
+    }
+}
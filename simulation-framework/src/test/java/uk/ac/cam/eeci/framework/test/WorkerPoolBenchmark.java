@@ -0,0 +1,86 @@
+package uk.ac.cam.eeci.framework.test;
+
+import uk.ac.cam.eeci.framework.WorkerPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Measures how the execution backends of the {@link WorkerPool} scale with the number of workers.
+ * <br><br>
+ * Each time step, every referent receives one message doing a little bit of work, and the step ends
+ * once all messages have been answered -- the same pattern a city simulation step follows. Run with:
+ * <br><br>
+ * java -cp target/classes:target/test-classes uk.ac.cam.eeci.framework.test.WorkerPoolBenchmark
+ * [numberReferents] [numberSteps] [maxWorkers]
+ */
+public class WorkerPoolBenchmark {
+
+    private final static int WORK_PER_MESSAGE = 200; // iterations of a cheap floating point loop
+
+    private static class Agent {
+        private double state = 1.0;
+
+        private void step() {
+            for (int i = 0; i < WORK_PER_MESSAGE; i++) {
+                this.state = this.state * 0.999 + 0.001;
+            }
+        }
+    }
+
+    public static void main(String... args) throws ExecutionException, InterruptedException {
+        int numberReferents = args.length > 0 ? Integer.valueOf(args[0]) : 100000;
+        int numberSteps = args.length > 1 ? Integer.valueOf(args[1]) : 20;
+        int maxWorkers = args.length > 2 ? Integer.valueOf(args[2]) : Runtime.getRuntime().availableProcessors();
+        System.out.println(String.format("%d referents, %d steps, %d cores available.",
+                numberReferents, numberSteps, Runtime.getRuntime().availableProcessors()));
+        System.out.println("backend,workers,messagesPerSecond");
+        for (WorkerPool.Backend backend : WorkerPool.Backend.values()) {
+            for (int workers = 1; workers <= maxWorkers; workers *= 2) {
+                WorkerPool pool;
+                try {
+                    pool = new WorkerPool(workers, WorkerPool.Placement.ROUND_ROBIN, backend);
+                } catch (UnsupportedOperationException e) {
+                    System.out.println(String.format("%s,%d,unavailable", backend, workers));
+                    break;
+                }
+                double throughput = run(pool, numberReferents, numberSteps);
+                System.out.println(String.format("%s,%d,%.0f", backend, workers, throughput));
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static double run(WorkerPool pool, int numberReferents, int numberSteps)
+            throws ExecutionException, InterruptedException {
+        List<Agent> agents = new ArrayList<>();
+        List<ExecutorService> executors = new ArrayList<>();
+        for (int i = 0; i < numberReferents; i++) {
+            Agent agent = new Agent();
+            agents.add(agent);
+            executors.add(pool.executorFor(agent));
+        }
+        CompletableFuture.runAsync(() -> {}, pool.main).get();
+        step(pool, agents, executors); // warm up
+        long start = System.nanoTime();
+        for (int s = 0; s < numberSteps; s++) {
+            step(pool, agents, executors);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return numberReferents * (double) numberSteps / seconds;
+    }
+
+    private static void step(WorkerPool pool, List<Agent> agents, List<ExecutorService> executors)
+            throws ExecutionException, InterruptedException {
+        CompletableFuture<Void>[] steps = new CompletableFuture[agents.size()];
+        for (int i = 0; i < agents.size(); i++) {
+            Agent agent = agents.get(i);
+            steps[i] = CompletableFuture.runAsync(agent::step, executors.get(i))
+                    .thenRunAsync(() -> {}, pool.main);
+        }
+        CompletableFuture.allOf(steps).get();
+    }
+}